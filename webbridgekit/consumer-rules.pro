@@ -0,0 +1,8 @@
+# onConnectionUpdated是BluetoothGattCallback的隐藏回调，不在android.jar中，
+# R8无法识别这是对框架方法的重写，需要显式保留，否则连接参数更新回调会被移除
+-keepclassmembers class com.webbridgesdk.webbridgekit.HandlerGattCallback {
+    public void onConnectionUpdated(android.bluetooth.BluetoothGatt, int, int, int, int);
+}
+-keepclassmembers class com.webbridgesdk.webbridgekit.AndroidGattTransport$Forwarder {
+    public void onConnectionUpdated(android.bluetooth.BluetoothGatt, int, int, int, int);
+}
@@ -0,0 +1,214 @@
+package com.webbridgesdk.webbridgekit;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCallback;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 基于系统BluetoothGatt的GATT传输层
+ * Android 13起回调直接携带特征值内容，系统可以直接在BLE线程上回调；更低版本系统先在Binder线程上
+ * 写入共享的characteristic对象再回调，因此在Binder线程上接收，取出内容后由HandlerGattCallback转发到BLE线程。
+ */
+class AndroidGattTransport implements GattTransport {
+    private final Context context;
+
+    AndroidGattTransport(Context context) {
+        this.context = context;
+    }
+
+    @Override
+    public Link connect(BluetoothDevice device, Callback callback, Handler handler) {
+        SystemLink link = new SystemLink();
+        // 直接连接（autoConnect=false），失败时由BluetoothManager退避重试
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            link.gatt = device.connectGatt(context, false, new Forwarder(link, callback),
+                    BluetoothDevice.TRANSPORT_LE, BluetoothDevice.PHY_LE_1M_MASK, handler);
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            link.gatt = device.connectGatt(context, false, new HandlerGattCallback(link, callback, handler),
+                    BluetoothDevice.TRANSPORT_LE, BluetoothDevice.PHY_LE_1M_MASK);
+        } else {
+            link.gatt = device.connectGatt(context, false, new HandlerGattCallback(link, callback, handler),
+                    BluetoothDevice.TRANSPORT_LE);
+        }
+        return link.gatt == null ? null : link;
+    }
+
+    private static final class SystemLink implements Link {
+        BluetoothGatt gatt;
+
+        @Override
+        public boolean discoverServices() {
+            return gatt.discoverServices();
+        }
+
+        @Override
+        public List<BluetoothGattService> getServices() {
+            return gatt.getServices();
+        }
+
+        @Override
+        public BluetoothGattService getService(UUID uuid) {
+            return gatt.getService(uuid);
+        }
+
+        @Override
+        public boolean requestMtu(int mtu) {
+            return gatt.requestMtu(mtu);
+        }
+
+        @Override
+        public boolean requestConnectionPriority(int priority) {
+            return gatt.requestConnectionPriority(priority);
+        }
+
+        @Override
+        public void setPreferredPhy(int txPhy, int rxPhy, int phyOptions) {
+            gatt.setPreferredPhy(txPhy, rxPhy, phyOptions);
+        }
+
+        @Override
+        public boolean readCharacteristic(BluetoothGattCharacteristic characteristic) {
+            return gatt.readCharacteristic(characteristic);
+        }
+
+        @Override
+        public boolean writeCharacteristic(BluetoothGattCharacteristic characteristic) {
+            return gatt.writeCharacteristic(characteristic);
+        }
+
+        @Override
+        public boolean writeDescriptor(BluetoothGattDescriptor descriptor) {
+            return gatt.writeDescriptor(descriptor);
+        }
+
+        @Override
+        public boolean readDescriptor(BluetoothGattDescriptor descriptor) {
+            return gatt.readDescriptor(descriptor);
+        }
+
+        @Override
+        public boolean setCharacteristicNotification(BluetoothGattCharacteristic characteristic, boolean enable) {
+            return gatt.setCharacteristicNotification(characteristic, enable);
+        }
+
+        @Override
+        public boolean beginReliableWrite() {
+            return gatt.beginReliableWrite();
+        }
+
+        @Override
+        public boolean executeReliableWrite() {
+            return gatt.executeReliableWrite();
+        }
+
+        @Override
+        public void abortReliableWrite() {
+            gatt.abortReliableWrite();
+        }
+
+        @Override
+        public void disconnect() {
+            gatt.disconnect();
+        }
+
+        @Override
+        public void close() {
+            gatt.close();
+        }
+    }
+
+    /**
+     * Android 13起使用：系统在BLE线程上回调，把回调转发给传输层回调，BluetoothGatt参数换成对应的Link
+     * 特征值内容只取回调参数，不读取共享的characteristic对象
+     */
+    private static final class Forwarder extends BluetoothGattCallback {
+        private final Link link;
+        private final Callback callback;
+
+        Forwarder(Link link, Callback callback) {
+            this.link = link;
+            this.callback = callback;
+        }
+
+        @Override
+        public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
+            callback.onConnectionStateChange(link, status, newState);
+        }
+
+        @Override
+        public void onMtuChanged(BluetoothGatt gatt, int mtu, int status) {
+            callback.onMtuChanged(link, mtu, status);
+        }
+
+        @Override
+        public void onServicesDiscovered(BluetoothGatt gatt, int status) {
+            callback.onServicesDiscovered(link, status);
+        }
+
+        @Override
+        public void onServiceChanged(BluetoothGatt gatt) {
+            callback.onServiceChanged(link);
+        }
+
+        @Override
+        public void onCharacteristicRead(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic,
+                                         byte[] value, int status) {
+            callback.onCharacteristicRead(link, characteristic, value, status);
+        }
+
+        @Override
+        public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+            // 写入回调没有携带内容的版本；写入串行执行，此时特征值中是本次写入（或可靠写入回显）的值
+            byte[] value = characteristic.getValue();
+            callback.onCharacteristicWrite(link, characteristic, value == null ? null : value.clone(), status);
+        }
+
+        @Override
+        public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic,
+                                            byte[] value) {
+            callback.onCharacteristicChanged(link, characteristic, value);
+        }
+
+        @Override
+        public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
+            callback.onDescriptorWrite(link, descriptor, status);
+        }
+
+        @Override
+        public void onDescriptorRead(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status,
+                                     byte[] value) {
+            callback.onDescriptorRead(link, descriptor, value, status);
+        }
+
+        @Override
+        public void onReliableWriteCompleted(BluetoothGatt gatt, int status) {
+            callback.onReliableWriteCompleted(link, status);
+        }
+
+        @Override
+        public void onPhyUpdate(BluetoothGatt gatt, int txPhy, int rxPhy, int status) {
+            callback.onPhyUpdate(link, txPhy, rxPhy, status);
+        }
+
+        @Override
+        public void onPhyRead(BluetoothGatt gatt, int txPhy, int rxPhy, int status) {
+            callback.onPhyRead(link, txPhy, rxPhy, status);
+        }
+
+        /**
+         * 系统隐藏接口，Android 8.0起会回调到子类
+         */
+        public void onConnectionUpdated(BluetoothGatt gatt, int interval, int latency, int timeout, int status) {
+            callback.onConnectionUpdated(link, interval, latency, timeout, status);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.webbridgesdk.webbridgekit;
+
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * BLE数据通路的性能计数
+ * 按连接和按特征值统计收发字节数、写入次数和失败数、写入到确认的延迟分布、通知数量，
+ * 以及从GATT回调到交给WebView执行的延迟分布。
+ * 计数使用LongAdder和AtomicLongArray，记录时不加锁，可在任意线程调用；
+ * 快照和重置不是原子的，重置期间的少量计数可能计入下一个统计窗口。
+ */
+final class BleMetrics {
+    // 延迟分布的桶上限（微秒），最后一个桶记录超出上限的样本
+    private static final long[] BUCKET_BOUNDS_US = {
+            250, 500, 1_000, 2_000, 5_000, 10_000, 20_000, 50_000, 100_000, 200_000, 500_000, 1_000_000
+    };
+
+    private final Map<String, Counters> connections = new ConcurrentHashMap<>();
+    private final Map<String, Counters> characteristics = new ConcurrentHashMap<>();
+    private volatile long windowStartNanos = System.nanoTime();
+
+    /**
+     * 写请求已交给协议栈
+     */
+    void recordWriteIssued(String address, String uuid, int bytes) {
+        Counters connection = connection(address);
+        Counters characteristic = characteristic(address, uuid);
+        connection.writes.increment();
+        characteristic.writes.increment();
+        connection.bytesOut.add(bytes);
+        characteristic.bytesOut.add(bytes);
+    }
+
+    /**
+     * 写入结果，成功时记录写入到确认的延迟
+     */
+    void recordWriteResult(String address, String uuid, boolean success, long latencyMs) {
+        Counters connection = connection(address);
+        Counters characteristic = characteristic(address, uuid);
+        if (success) {
+            connection.writeLatency.record(latencyMs * 1000);
+            characteristic.writeLatency.record(latencyMs * 1000);
+        } else {
+            connection.writeFailures.increment();
+            characteristic.writeFailures.increment();
+        }
+    }
+
+    /**
+     * 收到通知或指示
+     */
+    void recordNotification(String address, String uuid, int bytes) {
+        Counters connection = connection(address);
+        Counters characteristic = characteristic(address, uuid);
+        connection.notifications.increment();
+        characteristic.notifications.increment();
+        connection.bytesIn.add(bytes);
+        characteristic.bytesIn.add(bytes);
+    }
+
+    /**
+     * 读取到特征值
+     */
+    void recordRead(String address, String uuid, int bytes) {
+        connection(address).bytesIn.add(bytes);
+        characteristic(address, uuid).bytesIn.add(bytes);
+    }
+
+    /**
+     * 从GATT回调到交给WebView执行的延迟
+     */
+    void recordDispatch(String address, String uuid, long latencyUs) {
+        connection(address).dispatchLatency.record(latencyUs);
+        characteristic(address, uuid).dispatchLatency.record(latencyUs);
+    }
+
+    /**
+     * 生成JSON快照
+     *
+     * @param reset 是否在快照后清零并开始新的统计窗口
+     */
+    String snapshot(boolean reset) {
+        long now = System.nanoTime();
+        long windowMs = Math.max(1, (now - windowStartNanos) / 1_000_000L);
+        if (reset) {
+            windowStartNanos = now;
+        }
+
+        StringBuilder json = new StringBuilder(512);
+        json.append("{\"windowMs\":").append(windowMs).append(",\"connections\":[");
+        appendAll(json, connections, windowMs, reset);
+        json.append("],\"characteristics\":[");
+        appendAll(json, characteristics, windowMs, reset);
+        json.append("]}");
+        return json.toString();
+    }
+
+    private static void appendAll(StringBuilder json, Map<String, Counters> counters, long windowMs, boolean reset) {
+        boolean first = true;
+        Iterator<Counters> iterator = counters.values().iterator();
+        while (iterator.hasNext()) {
+            Counters entry = iterator.next();
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            boolean idle = entry.appendJson(json, windowMs, reset);
+            if (reset && idle) {
+                // 整个窗口没有活动的记录不再保留
+                iterator.remove();
+            }
+        }
+    }
+
+    private Counters connection(String address) {
+        Counters counters = connections.get(address);
+        if (counters == null) {
+            counters = connections.computeIfAbsent(address, key -> new Counters(address, null));
+        }
+        return counters;
+    }
+
+    private Counters characteristic(String address, String uuid) {
+        String key = address + "|" + uuid;
+        Counters counters = characteristics.get(key);
+        if (counters == null) {
+            counters = characteristics.computeIfAbsent(key, k -> new Counters(address, uuid));
+        }
+        return counters;
+    }
+
+    /**
+     * 单个连接或特征值的计数
+     */
+    private static final class Counters {
+        final String address;
+        final String uuid; // 连接级计数为null
+        final LongAdder bytesIn = new LongAdder();
+        final LongAdder bytesOut = new LongAdder();
+        final LongAdder writes = new LongAdder();
+        final LongAdder writeFailures = new LongAdder();
+        final LongAdder notifications = new LongAdder();
+        final Histogram writeLatency = new Histogram();
+        final Histogram dispatchLatency = new Histogram();
+
+        Counters(String address, String uuid) {
+            this.address = address;
+            this.uuid = uuid;
+        }
+
+        /**
+         * @return 本窗口是否没有任何活动
+         */
+        boolean appendJson(StringBuilder json, long windowMs, boolean reset) {
+            long in = reset ? bytesIn.sumThenReset() : bytesIn.sum();
+            long out = reset ? bytesOut.sumThenReset() : bytesOut.sum();
+            long writeCount = reset ? writes.sumThenReset() : writes.sum();
+            long failures = reset ? writeFailures.sumThenReset() : writeFailures.sum();
+            long notificationCount = reset ? notifications.sumThenReset() : notifications.sum();
+
+            json.append("{\"address\":\"").append(address).append('"');
+            if (uuid != null) {
+                json.append(",\"uuid\":\"").append(uuid).append('"');
+            }
+            json.append(String.format(Locale.ROOT,
+                    ",\"bytesIn\":%d,\"bytesOut\":%d,\"writes\":%d,\"writeFailures\":%d,\"notifications\":%d,"
+                            + "\"notificationRate\":%.1f,\"bytesInRate\":%d,\"bytesOutRate\":%d",
+                    in, out, writeCount, failures, notificationCount,
+                    notificationCount * 1000.0 / windowMs, in * 1000 / windowMs, out * 1000 / windowMs));
+            json.append(",\"writeLatency\":");
+            long writeSamples = writeLatency.appendJson(json, reset);
+            json.append(",\"dispatchLatency\":");
+            long dispatchSamples = dispatchLatency.appendJson(json, reset);
+            json.append('}');
+            return in == 0 && out == 0 && writeCount == 0 && failures == 0 && notificationCount == 0
+                    && writeSamples == 0 && dispatchSamples == 0;
+        }
+    }
+
+    /**
+     * 固定桶的延迟分布，分位数取所在桶的上限
+     */
+    static final class Histogram {
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKET_BOUNDS_US.length + 1);
+        private final LongAdder totalUs = new LongAdder();
+
+        void record(long latencyUs) {
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS_US.length && latencyUs > BUCKET_BOUNDS_US[bucket]) {
+                bucket++;
+            }
+            counts.incrementAndGet(bucket);
+            totalUs.add(Math.max(0, latencyUs));
+        }
+
+        /**
+         * 输出 {"count","avgMs","p50Ms","p95Ms","p99Ms","bucketsMs":[..],"counts":[..]}
+         *
+         * @return 样本数
+         */
+        long appendJson(StringBuilder json, boolean reset) {
+            long[] values = new long[counts.length()];
+            long count = 0;
+            for (int i = 0; i < values.length; i++) {
+                values[i] = reset ? counts.getAndSet(i, 0) : counts.get(i);
+                count += values[i];
+            }
+            long total = reset ? totalUs.sumThenReset() : totalUs.sum();
+
+            json.append(String.format(Locale.ROOT,
+                    "{\"count\":%d,\"avgMs\":%.2f,\"p50Ms\":%s,\"p95Ms\":%s,\"p99Ms\":%s,\"bucketsMs\":[",
+                    count, count == 0 ? 0.0 : total / 1000.0 / count,
+                    percentile(values, count, 0.50), percentile(values, count, 0.95), percentile(values, count, 0.99)));
+            for (int i = 0; i < BUCKET_BOUNDS_US.length; i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append(formatMs(BUCKET_BOUNDS_US[i]));
+            }
+            json.append("],\"counts\":[");
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append(values[i]);
+            }
+            json.append("]}");
+            return count;
+        }
+
+        /**
+         * 分位数所在桶的上限（毫秒），落在最后一个桶时为null
+         */
+        private static String percentile(long[] values, long count, double quantile) {
+            if (count == 0) {
+                return "0";
+            }
+            long rank = (long) Math.ceil(count * quantile);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_BOUNDS_US.length; i++) {
+                seen += values[i];
+                if (seen >= rank) {
+                    return formatMs(BUCKET_BOUNDS_US[i]);
+                }
+            }
+            return "null";
+        }
+
+        private static String formatMs(long us) {
+            return us % 1000 == 0 ? Long.toString(us / 1000) : String.format(Locale.ROOT, "%.2f", us / 1000.0);
+        }
+    }
+}
@@ -0,0 +1,377 @@
+package com.webbridgesdk.webbridgekit;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.le.BluetoothLeScanner;
+import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanRecord;
+import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
+import android.os.Handler;
+import android.os.ParcelUuid;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * BLE扫描
+ * 基于BluetoothLeScanner，服务UUID交给硬件过滤，名称前缀和RSSI在回调中过滤；
+ * 同一设备只保留一条记录并更新RSSI，按节流间隔把完整列表交给H5，而不是每条广播回调一次。
+ * 所有状态只在传入Handler的线程（BLE线程）访问，系统在主线程上的扫描回调会先切换过去。
+ */
+class BleScanner {
+    private static final String TAG = "BleScanner";
+    static final long DEFAULT_SCAN_TIMEOUT = 10000; // 默认自动停止时间
+    static final long DEFAULT_THROTTLE_INTERVAL = 500; // 默认结果投递间隔
+    private static final long MIN_THROTTLE_INTERVAL = 100;
+    private static final int MAX_DEVICES = 200; // 单次扫描保留的最大设备数
+
+    /**
+     * 扫描事件的接收者，在Handler线程回调
+     */
+    interface Listener {
+        void onScanResults(String devicesJson);
+
+        void onScanStopped(String reason);
+
+        void onScanFailed(String message);
+    }
+
+    private final BluetoothAdapter bluetoothAdapter;
+    private final Handler handler;
+    private final Listener listener;
+    private final Map<String, ScannedDevice> devices = new LinkedHashMap<>();
+    private Options options;
+    private BluetoothLeScanner scanner;
+    private volatile boolean scanning = false;
+    private boolean dirty = false;
+    private boolean deliveryScheduled = false;
+
+    private final Runnable timeoutRunnable = () -> stopScan("timeout");
+    private final Runnable deliverRunnable = this::deliverResults;
+
+    private final ScanCallback scanCallback = new ScanCallback() {
+        @Override
+        public void onScanResult(int callbackType, ScanResult result) {
+            handler.post(() -> {
+                if (handleResult(result)) {
+                    scheduleDelivery();
+                }
+            });
+        }
+
+        @Override
+        public void onBatchScanResults(List<ScanResult> results) {
+            // 设置了reportDelay时由协议栈批量上报
+            handler.post(() -> {
+                boolean changed = false;
+                for (ScanResult result : results) {
+                    changed |= handleResult(result);
+                }
+                if (changed) {
+                    scheduleDelivery();
+                }
+            });
+        }
+
+        @Override
+        public void onScanFailed(int errorCode) {
+            Log.e(TAG, "扫描失败，错误码: " + errorCode);
+            handler.post(() -> {
+                resetState();
+                listener.onScanFailed("扫描失败，错误码: " + errorCode);
+            });
+        }
+    };
+
+    BleScanner(BluetoothAdapter bluetoothAdapter, Handler handler, Listener listener) {
+        this.bluetoothAdapter = bluetoothAdapter;
+        this.handler = handler;
+        this.listener = listener;
+    }
+
+    /**
+     * 开始扫描，已在扫描时先停止上一次扫描
+     */
+    void startScan(Options scanOptions) {
+        if (scanning) {
+            stopScan("restart");
+        }
+
+        scanner = bluetoothAdapter.getBluetoothLeScanner();
+        if (scanner == null) {
+            listener.onScanFailed("蓝牙未开启，无法扫描");
+            return;
+        }
+
+        options = scanOptions;
+        devices.clear();
+        dirty = false;
+
+        List<ScanFilter> filters = new ArrayList<>();
+        for (String serviceUuid : options.serviceUuids) {
+            filters.add(new ScanFilter.Builder()
+                    .setServiceUuid(ParcelUuid.fromString(serviceUuid))
+                    .build());
+        }
+
+        ScanSettings settings = new ScanSettings.Builder()
+                .setScanMode(options.scanMode)
+                .setReportDelay(options.reportDelayMs)
+                .build();
+
+        try {
+            scanner.startScan(filters, settings, scanCallback);
+        } catch (SecurityException e) {
+            Log.e(TAG, "Security exception when scanning: " + e.getMessage());
+            scanner = null;
+            listener.onScanFailed("缺少必要的蓝牙扫描权限");
+            return;
+        }
+
+        scanning = true;
+        if (options.timeoutMs > 0) {
+            handler.postDelayed(timeoutRunnable, options.timeoutMs);
+        }
+        Log.d(TAG, "开始扫描, 服务过滤: " + options.serviceUuids + ", 名称前缀: " + options.namePrefix
+                + ", 最小RSSI: " + options.minRssi + ", 超时: " + options.timeoutMs + "ms");
+    }
+
+    /**
+     * 停止扫描并投递最后一次结果
+     *
+     * @param reason 停止原因：manual、timeout、restart、release
+     */
+    void stopScan(String reason) {
+        if (!scanning) {
+            return;
+        }
+        try {
+            if (bluetoothAdapter.isEnabled()) {
+                // 取出协议栈中尚未上报的批量结果
+                scanner.flushPendingScanResults(scanCallback);
+                scanner.stopScan(scanCallback);
+            }
+        } catch (SecurityException | IllegalStateException e) {
+            Log.e(TAG, "Error stopping scan: " + e.getMessage());
+        }
+
+        if (dirty) {
+            deliverResults();
+        }
+        resetState();
+        Log.d(TAG, "扫描已停止: " + reason);
+        listener.onScanStopped(reason);
+    }
+
+    boolean isScanning() {
+        return scanning;
+    }
+
+    private void resetState() {
+        handler.removeCallbacks(timeoutRunnable);
+        handler.removeCallbacks(deliverRunnable);
+        scanning = false;
+        deliveryScheduled = false;
+        dirty = false;
+        scanner = null;
+    }
+
+    /**
+     * 处理一条扫描结果
+     *
+     * @return 设备列表是否有变化
+     */
+    private boolean handleResult(ScanResult result) {
+        if (!scanning || result == null || result.getDevice() == null) {
+            return false;
+        }
+        int rssi = result.getRssi();
+        if (rssi < options.minRssi) {
+            return false;
+        }
+
+        BluetoothDevice device = result.getDevice();
+        ScanRecord record = result.getScanRecord();
+        String name = record != null ? record.getDeviceName() : null;
+        if (name == null) {
+            try {
+                name = device.getName();
+            } catch (SecurityException e) {
+                name = null;
+            }
+        }
+        if (options.namePrefix != null && (name == null || !name.startsWith(options.namePrefix))) {
+            return false;
+        }
+
+        String address = device.getAddress();
+        ScannedDevice scanned = devices.get(address);
+        if (scanned == null) {
+            if (devices.size() >= MAX_DEVICES) {
+                return false;
+            }
+            scanned = new ScannedDevice(address);
+            devices.put(address, scanned);
+        } else if (scanned.rssi == rssi && (name == null || name.equals(scanned.name))) {
+            // 重复广播且内容无变化
+            return false;
+        }
+
+        scanned.name = name != null ? name : scanned.name;
+        scanned.rssi = rssi;
+        scanned.connectable = result.isConnectable();
+        if (record != null && record.getServiceUuids() != null) {
+            scanned.serviceUuids.clear();
+            for (ParcelUuid uuid : record.getServiceUuids()) {
+                scanned.serviceUuids.add(uuid.getUuid().toString());
+            }
+        }
+        dirty = true;
+        return true;
+    }
+
+    private void scheduleDelivery() {
+        if (deliveryScheduled) {
+            return;
+        }
+        deliveryScheduled = true;
+        handler.postDelayed(deliverRunnable, options.throttleMs);
+    }
+
+    /**
+     * 投递当前去重后的设备列表
+     * 格式：[{"address":"..","name":"..","rssi":-60,"connectable":true,"serviceUuids":[..]},..]
+     */
+    private void deliverResults() {
+        deliveryScheduled = false;
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+
+        StringBuilder json = new StringBuilder(devices.size() * 96 + 2);
+        json.append('[');
+        boolean first = true;
+        for (ScannedDevice device : devices.values()) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            json.append("{\"address\":\"").append(device.address)
+                    .append("\",\"name\":\"").append(sanitizeName(device.name))
+                    .append("\",\"rssi\":").append(device.rssi)
+                    .append(",\"connectable\":").append(device.connectable)
+                    .append(",\"serviceUuids\":[");
+            for (int i = 0; i < device.serviceUuids.size(); i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append('"').append(device.serviceUuids.get(i)).append('"');
+            }
+            json.append("]}");
+        }
+        json.append(']');
+        listener.onScanResults(json.toString());
+    }
+
+    /**
+     * 去掉会破坏JSON或JS字符串的字符
+     */
+    private static String sanitizeName(String name) {
+        if (name == null) {
+            return "Unknown";
+        }
+        StringBuilder builder = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c >= 32 && c != '"' && c != '\'' && c != '\\') {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 扫描参数
+     */
+    static class Options {
+        final List<String> serviceUuids = new ArrayList<>();
+        String namePrefix;                                   // 名称前缀过滤，null表示不过滤
+        int minRssi = Integer.MIN_VALUE;                     // 最小信号强度
+        long reportDelayMs = 0;                              // 协议栈批量上报延迟，0表示立即上报
+        long throttleMs = DEFAULT_THROTTLE_INTERVAL;         // 结果投递间隔
+        long timeoutMs = DEFAULT_SCAN_TIMEOUT;               // 自动停止时间，0表示不自动停止
+        int scanMode = ScanSettings.SCAN_MODE_LOW_LATENCY;
+
+        /**
+         * 从H5传入的JSON解析扫描参数
+         * {"serviceUuids":[".."],"namePrefix":"..","minRssi":-80,"reportDelayMs":0,
+         * "throttleMs":500,"timeoutMs":10000,"scanMode":"lowLatency|balanced|lowPower"}
+         */
+        static Options fromJson(String json) throws JSONException {
+            Options options = new Options();
+            if (json == null || json.trim().isEmpty()) {
+                return options;
+            }
+            JSONObject object = new JSONObject(json);
+            JSONArray uuids = object.optJSONArray("serviceUuids");
+            if (uuids != null) {
+                for (int i = 0; i < uuids.length(); i++) {
+                    String uuid = uuids.getString(i);
+                    try {
+                        UUID.fromString(uuid);
+                    } catch (IllegalArgumentException e) {
+                        throw new JSONException("无效的服务UUID: " + uuid);
+                    }
+                    options.serviceUuids.add(uuid);
+                }
+            }
+            String prefix = object.optString("namePrefix", "");
+            options.namePrefix = prefix.isEmpty() ? null : prefix;
+            if (object.has("minRssi")) {
+                options.minRssi = object.getInt("minRssi");
+            }
+            options.reportDelayMs = Math.max(0, object.optLong("reportDelayMs", 0));
+            options.throttleMs = Math.max(MIN_THROTTLE_INTERVAL, object.optLong("throttleMs", DEFAULT_THROTTLE_INTERVAL));
+            options.timeoutMs = Math.max(0, object.optLong("timeoutMs", DEFAULT_SCAN_TIMEOUT));
+            switch (object.optString("scanMode", "lowLatency").toLowerCase(Locale.ROOT)) {
+                case "balanced":
+                    options.scanMode = ScanSettings.SCAN_MODE_BALANCED;
+                    break;
+                case "lowpower":
+                    options.scanMode = ScanSettings.SCAN_MODE_LOW_POWER;
+                    break;
+                default:
+                    options.scanMode = ScanSettings.SCAN_MODE_LOW_LATENCY;
+                    break;
+            }
+            return options;
+        }
+    }
+
+    /**
+     * 去重后的扫描结果
+     */
+    private static class ScannedDevice {
+        final String address;
+        final List<String> serviceUuids = new ArrayList<>();
+        String name;
+        int rssi;
+        boolean connectable;
+
+        ScannedDevice(String address) {
+            this.address = address;
+        }
+    }
+}
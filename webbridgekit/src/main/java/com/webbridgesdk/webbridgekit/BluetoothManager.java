@@ -3,50 +3,213 @@ package com.webbridgesdk.webbridgekit;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothGatt;
-import android.bluetooth.BluetoothGattCallback;
 import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothGattDescriptor;
 import android.bluetooth.BluetoothGattService;
 import android.bluetooth.BluetoothProfile;
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Build;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.webkit.JavascriptInterface;
 import android.util.Log;
 
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 import java.util.Map;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 
 public class BluetoothManager {
     private static final String TAG = "BluetoothManager";
-    private static final long CONNECTION_TIMEOUT = 2000; // 2秒超时
-    private static final int RETRY_DELAY = 1000; // 重试延迟1秒
-    private static final int MAX_RETRIES = 2; // 最大重试次数
-    private static final int PREFERRED_MTU = 247; // 首选MTU大小
+    private static final long MAX_RETRY_DELAY = 8000; // 指数退避的最大重试间隔
+    private static final int DEFAULT_MTU = GattConnection.DEFAULT_MTU; // BLE默认ATT_MTU
+    private static final int MAX_MTU = 517; // ATT_MTU协议上限
+    private static final int DEFAULT_MAX_CONNECTIONS = 4; // 默认最大并发连接数
+    private static final int MAX_CONNECTIONS_LIMIT = 7; // Android协议栈通常支持的并发连接上限
+    private static final long STREAM_BUSY_RETRY_DELAY = 5; // 协议栈缓冲区已满时的重试间隔（毫秒）
+    private static final int STREAM_MAX_BUSY_RETRIES = 200; // 连续缓冲区已满的最大重试次数
+    private static final long STREAM_STALL_TIMEOUT = 5000; // 流式发送无进展的超时时间
+    private static final long GATT_OPERATION_TIMEOUT = 5000; // 单个GATT读写操作超时
+    private static final long MTU_REQUEST_TIMEOUT = 3000; // MTU协商超时
+    private static final long SERVICE_DISCOVERY_TIMEOUT = 10000; // 服务发现超时
+    private static final int MAX_CHUNK_RETRIES = 3; // 单个分片的最大重发次数
+    private static final long TRANSFER_RESUME_WINDOW = 5 * 60 * 1000; // 断线后保留传输等待续传的时间
+    private static final int MAX_TRANSFER_RECORDS = 16; // 超过后清理已结束的传输记录
+    private static final int DEFAULT_TRANSFER_PROGRESS_RATE = 4; // 默认每秒最多上报的进度次数
+    private static final long IDLE_PRIORITY_DELAY = 2000; // 批量发送结束多久后恢复均衡优先级
+    private static final int DEFAULT_PROBE_BYTES = 8192; // 吞吐量探测默认发送的字节数
+    private static final int MAX_PROBE_BYTES = 65536;
+    private static final long RELEASE_CLEANUP_TIMEOUT = 2000; // release等待BLE线程完成清理的最长时间
+    // 读取请求ID直接拼入回调的JSON，限制字符集
+    private static final Pattern REQUEST_ID_PATTERN = Pattern.compile("[A-Za-z0-9_.:-]{1,64}");
+    private static final String CCCD_UUID = "00002902-0000-1000-8000-00805f9b34fb"; // 客户端特征值配置描述符
+    private static final String EXTENDED_PROPERTIES_UUID = "00002900-0000-1000-8000-00805f9b34fb"; // 特征值扩展属性描述符
+    private static final String WRITE_ID_PREFIX = "w"; // 单次写入ID前缀，与传输ID的"t"区分
     private Context context;
     private BluetoothAdapter bluetoothAdapter;
-    private BluetoothGatt bluetoothGatt;
-    private BluetoothDevice currentDevice;
-    private Handler mainHandler;
-    private WebViewBridge webViewBridge;
-    private Runnable timeoutRunnable;
-    private int retryCount = 0;
-    private String lastMacAddress = null;
-    private Map<String, Boolean> characteristicNotificationEnabled = new HashMap<>();
-    private Map<String, Boolean> characteristicReading = new HashMap<>();
-    private boolean mtuConfigured = false;
+    private Handler mainHandler; // 只用于最终投递到WebView和按帧批量
+    // 所有BLE状态（连接池、GATT对象、操作队列）只在该线程上访问
+    private final HandlerThread bleThread;
+    private final Handler bleHandler;
+    private volatile ScriptTarget scriptTarget; // 在BLE线程读取，release时在主线程置空
+    private final GattTransport transport; // GATT连接和操作，默认为系统BluetoothGatt
+    // 连接池，按大写MAC地址索引；只在BLE线程修改，JS线程的查询接口只读
+    private final Map<String, GattConnection> connections = new ConcurrentHashMap<>();
+    private volatile String lastMacAddress = null; // 最近一次连接的设备，供不带地址的接口使用
+    private volatile int maxConnections = DEFAULT_MAX_CONNECTIONS;
     private boolean notificationsEnabled = true; // 添加通知控制开关，默认开启
-    private Map<String, ChunkedWriteData> chunkedWriteData = new HashMap<>();
+    private final BleMetrics metrics = new BleMetrics(); // 按连接和特征值的性能计数，不加锁
+    // GATT事件记录，默认开启，保留最近的流量供现场问题导出
+    private final TrafficRecorder trafficRecorder = new TrafficRecorder(TrafficRecorder.DEFAULT_CAPACITY);
+    private final NotificationBatcher notificationBatcher; // 通知批量投递，默认关闭
+    private BleScanner bleScanner; // BLE扫描，首次扫描时创建，只在BLE线程访问
+    // 分片传输，按传输ID索引；断线后保留，重连就绪后续传
+    private final Map<String, ChunkedTransfer> transfers = new ConcurrentHashMap<>();
+    private final AtomicInteger transferSequence = new AtomicInteger();
+    private volatile int transferProgressRate = DEFAULT_TRANSFER_PROGRESS_RATE;
+    private final AtomicInteger batchSequence = new AtomicInteger(); // 批量写入ID
+    private final AtomicInteger writeSequence = new AtomicInteger(); // 单次写入ID
+    // 按设备的通知订阅策略和引用计数，断线后保留；只在BLE线程修改
+    private final Map<String, SubscriptionRegistry> subscriptions = new ConcurrentHashMap<>();
+    // L2CAP面向连接通道，按大写MAC地址索引，与GATT连接并存
+    private final Map<String, L2capChannel> l2capChannels = new ConcurrentHashMap<>();
+    // 通知的分帧配置，按"地址|特征值UUID"索引；只在BLE线程修改和拼帧
+    private final Map<String, FrameAssembler> framers = new ConcurrentHashMap<>();
+    // 通知投递策略（限频、去重、采样），按"地址|特征值UUID"索引；只在BLE线程判断
+    private final Map<String, DeliveryPolicy> deliveryPolicies = new ConcurrentHashMap<>();
+    // 写入合并窗口（毫秒），按"地址|特征值UUID"索引，断线后保留
+    private final Map<String, Long> writeCoalescingWindows = new ConcurrentHashMap<>();
+    // 命令模板，按模板ID索引，对所有设备有效
+    private final Map<String, CommandTemplate> commandTemplates = new ConcurrentHashMap<>();
+    // 命令组帧缓冲区，只在BLE线程使用
+    private final byte[] commandBuffer = new byte[CommandTemplate.MAX_FRAME_SIZE];
+    // 特征值读取结果的缓存有效期（毫秒），按"地址|特征值UUID"索引，断线后保留
+    private final Map<String, Long> readCacheTtls = new ConcurrentHashMap<>();
+    private final ConnectionTuner connectionTuner; // 按外设型号自适应的连接参数
+    // GATT操作和连接超时的计时器，在独立线程上运行
+    private final TimeoutWheel timeoutWheel = new TimeoutWheel("ble-timeouts");
+    // 蓝牙适配器正在开启时收到的连接请求和就绪回调，适配器开启后执行
+    private final Set<String> pendingConnects = ConcurrentHashMap.newKeySet();
+    private final List<Runnable> adapterReadyCallbacks = new CopyOnWriteArrayList<>();
+    private final BroadcastReceiver adapterStateReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (BluetoothAdapter.ACTION_STATE_CHANGED.equals(intent.getAction())) {
+                handleAdapterStateChanged(intent.getIntExtra(BluetoothAdapter.EXTRA_STATE, BluetoothAdapter.ERROR));
+            }
+        }
+    };
+
+    /**
+     * 回调脚本的执行目标，默认为WebViewBridge
+     */
+    interface ScriptTarget {
+        void evaluateJavascript(String script);
+    }
 
     public BluetoothManager(Context context, WebViewBridge webViewBridge) {
+        this(context, webViewBridge::evaluateJavascript, new AndroidGattTransport(context));
+    }
+
+    /**
+     * 指定脚本目标和GATT传输层，测试中用于接入模拟外设
+     */
+    BluetoothManager(Context context, ScriptTarget scriptTarget, GattTransport transport) {
         this.context = context;
-        this.webViewBridge = webViewBridge;
+        this.scriptTarget = scriptTarget;
+        this.transport = transport;
         this.bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
         this.mainHandler = new Handler(Looper.getMainLooper());
+        this.bleThread = new HandlerThread("ble-io");
+        this.bleThread.start();
+        this.bleHandler = new Handler(bleThread.getLooper());
+        this.notificationBatcher = new NotificationBatcher(mainHandler, metrics, this::deliverNotificationBatch);
+        this.connectionTuner = new ConnectionTuner(context,
+                new DeviceCompatibilityChecker(context).getRecommendedConnectionParameters());
+        context.registerReceiver(adapterStateReceiver, new IntentFilter(BluetoothAdapter.ACTION_STATE_CHANGED));
+    }
+
+    /**
+     * 蓝牙适配器可用后执行回调，适配器正在开启时等待ACTION_STATE_CHANGED，其余情况立即执行
+     */
+    void runWhenAdapterReady(Runnable callback) {
+        if (isAdapterTurningOn()) {
+            adapterReadyCallbacks.add(callback);
+        } else {
+            mainHandler.post(callback);
+        }
+    }
+
+    /**
+     * 不在BLE线程上时把任务投递到BLE线程
+     * 用法：if (postToBleThread(() -> method(args))) return;
+     *
+     * @return 是否已投递（调用方应直接返回）
+     */
+    private boolean postToBleThread(Runnable task) {
+        if (Looper.myLooper() == bleThread.getLooper()) {
+            return false;
+        }
+        bleHandler.post(task);
+        return true;
+    }
+
+    private boolean isAdapterTurningOn() {
+        try {
+            return bluetoothAdapter != null && bluetoothAdapter.getState() == BluetoothAdapter.STATE_TURNING_ON;
+        } catch (SecurityException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 处理系统蓝牙开关状态变化，在主线程执行
+     */
+    private void handleAdapterStateChanged(int state) {
+        if (state == BluetoothAdapter.STATE_ON) {
+            Log.d(TAG, "蓝牙适配器已开启");
+            for (Runnable callback : adapterReadyCallbacks) {
+                callback.run();
+            }
+            adapterReadyCallbacks.clear();
+            for (String address : new ArrayList<>(pendingConnects)) {
+                pendingConnects.remove(address);
+                bleHandler.post(() -> startConnection(address));
+            }
+        } else if (state == BluetoothAdapter.STATE_OFF) {
+            Log.d(TAG, "蓝牙适配器已关闭");
+            if (!pendingConnects.isEmpty()) {
+                for (String address : pendingConnects) {
+                    notifyWebView("onBluetoothError", "蓝牙未启用", address);
+                }
+                pendingConnects.clear();
+            }
+            for (Runnable callback : adapterReadyCallbacks) {
+                callback.run();
+            }
+            adapterReadyCallbacks.clear();
+        }
     }
 
     @JavascriptInterface
@@ -72,13 +235,97 @@ public class BluetoothManager {
         }
     }
 
+    /**
+     * 使用默认参数开始BLE扫描（不过滤，10秒后自动停止）
+     */
+    @JavascriptInterface
+    public void startScan() {
+        startScan(null);
+    }
+
+    /**
+     * 开始BLE扫描，可发现未配对的设备
+     * 去重后的设备列表按节流间隔通过 onScanResults 回调，停止时回调 onScanStopped
+     *
+     * @param optionsJson 扫描参数，例如
+     *                    {"serviceUuids":["0000FFF0-..."],"namePrefix":"BLE","minRssi":-80,
+     *                    "reportDelayMs":0,"throttleMs":500,"timeoutMs":10000,"scanMode":"lowLatency"}
+     */
+    @JavascriptInterface
+    public void startScan(String optionsJson) {
+        if (isReleased()) {
+            Log.w(TAG, "BluetoothManager has been released");
+            return;
+        }
+        if (!isBluetoothEnabled()) {
+            notifyWebView("onBluetoothError", "蓝牙未开启，无法扫描");
+            return;
+        }
+        if (!hasBluetoothPermissions()) {
+            notifyWebView("onBluetoothError", "缺少必要的蓝牙权限");
+            return;
+        }
+
+        BleScanner.Options options;
+        try {
+            options = BleScanner.Options.fromJson(optionsJson);
+        } catch (Exception e) {
+            Log.e(TAG, "扫描参数无效: " + e.getMessage());
+            notifyWebView("onBluetoothError", "扫描参数无效");
+            return;
+        }
+
+        bleHandler.post(() -> {
+            if (isReleased()) {
+                return;
+            }
+            if (bleScanner == null) {
+                bleScanner = new BleScanner(bluetoothAdapter, bleHandler, new BleScanner.Listener() {
+                    @Override
+                    public void onScanResults(String devicesJson) {
+                        notifyWebView("onScanResults", devicesJson);
+                    }
+
+                    @Override
+                    public void onScanStopped(String reason) {
+                        notifyWebView("onScanStopped", reason);
+                    }
+
+                    @Override
+                    public void onScanFailed(String message) {
+                        notifyWebView("onBluetoothError", message);
+                    }
+                });
+            }
+            bleScanner.startScan(options);
+        });
+    }
+
+    /**
+     * 停止BLE扫描
+     */
+    @JavascriptInterface
+    public void stopScan() {
+        bleHandler.post(() -> {
+            if (bleScanner != null) {
+                bleScanner.stopScan("manual");
+            }
+        });
+    }
+
+    @JavascriptInterface
+    public boolean isScanning() {
+        BleScanner scanner = bleScanner;
+        return scanner != null && scanner.isScanning();
+    }
+
     @JavascriptInterface
     public String getPairedDevices() {
         if (isReleased()) {
             Log.w(TAG, "BluetoothManager has been released");
             return "[]";
         }
-        
+
         if (!isBluetoothEnabled()) {
             return "[]";
         }
@@ -106,67 +353,96 @@ public class BluetoothManager {
         }
     }
 
+    /**
+     * 连接设备并加入连接池，已连接的其他设备保持连接
+     * 如果该设备已在连接池中，则先清理旧连接再重新连接
+     *
+     * @param macAddress 设备MAC地址
+     */
     @JavascriptInterface
     public void connectToDevice(String macAddress) {
-        if (!isBluetoothEnabled()) {
-            notifyWebView("onBluetoothError", "蓝牙未启用");
+        if (postToBleThread(() -> connectToDevice(macAddress))) {
             return;
         }
-
-        // 确保蓝牙适配器处于活动状态
-        if (bluetoothAdapter == null || !bluetoothAdapter.isEnabled()) {
-            Log.e(TAG, "Bluetooth adapter not ready");
-            // 延迟500ms后重试
-            mainHandler.postDelayed(() -> connectToDevice(macAddress), 500);
+        if (macAddress == null) {
+            notifyWebView("onBluetoothError", "无效的MAC地址");
             return;
         }
+        String address = normalizeAddress(macAddress);
 
-        // 添加: 首次启动时额外检查和延迟以确保蓝牙初始化完成
-        if (retryCount == 0) {
-            Log.i(TAG, "首次连接尝试，添加额外初始化延迟");
-            mainHandler.postDelayed(() -> {
-                try {
-                    // 如果是全新的连接请求，重置重试计数
-                    if (!macAddress.equals(lastMacAddress)) {
-                        retryCount = 0;
-                        lastMacAddress = macAddress;
-                    }
-
-                    // 清理之前的连接
-                    cleanupConnection();
+        // 适配器正在开启时等待STATE_ON广播，不再轮询
+        if (isAdapterTurningOn()) {
+            Log.i(TAG, "蓝牙适配器正在开启，等待就绪后连接: " + address);
+            pendingConnects.add(address);
+            return;
+        }
 
-                    // 开始新的连接
-                    BluetoothDevice device = bluetoothAdapter.getRemoteDevice(macAddress);
+        if (!isBluetoothEnabled()) {
+            notifyWebView("onBluetoothError", "蓝牙未启用", address);
+            return;
+        }
 
-                    // 对于经典蓝牙设备，建议先配对
-                    int bondState = device.getBondState();
-                    if (bondState == BluetoothDevice.BOND_NONE) {
-                        Log.i(TAG, "设备未配对，尝试直接连接（可能是BLE设备）");
-                    }
+        startConnection(address);
+    }
 
-                    // 直接进行连接尝试
-                    connectToGattServer(device);
-                } catch (IllegalArgumentException e) {
-                    notifyWebView("onBluetoothError", "无效的MAC地址");
-                } catch (SecurityException e) {
-                    notifyWebView("onBluetoothError", "缺少必要的蓝牙权限");
+    /**
+     * 连接设备并指定通知订阅策略
+     * {"subscribe":"all"} 服务发现后订阅所有可通知的特征值（默认）
+     * {"subscribe":["0000fff1-..."]} 只订阅列表中的特征值
+     * {"subscribe":"onDemand"} 不自动订阅，由subscribe/unsubscribe按需开启
+     *
+     * @param macAddress  设备MAC地址
+     * @param optionsJson 连接选项
+     */
+    @JavascriptInterface
+    public void connectToDevice(String macAddress, String optionsJson) {
+        if (postToBleThread(() -> connectToDevice(macAddress, optionsJson))) {
+            return;
+        }
+        String address = normalizeAddress(macAddress);
+        if (address == null) {
+            notifyWebView("onBluetoothError", "无效的MAC地址");
+            return;
+        }
+        try {
+            JSONObject options = new JSONObject(optionsJson);
+            Object subscribe = options.opt("subscribe");
+            if (subscribe instanceof JSONArray) {
+                JSONArray array = (JSONArray) subscribe;
+                List<String> uuids = new ArrayList<>(array.length());
+                for (int i = 0; i < array.length(); i++) {
+                    uuids.add(array.getString(i));
                 }
-            }, 800); // 首次连接增加额外延迟
+                subscriptionsFor(address).setPolicy(SubscriptionRegistry.Policy.ALLOWLIST, uuids);
+            } else if (subscribe != null) {
+                subscriptionsFor(address).setPolicy(SubscriptionRegistry.parsePolicy(subscribe.toString()), null);
+            }
+        } catch (JSONException | IllegalArgumentException e) {
+            notifyWebView("onBluetoothError", "无效的连接选项: " + e.getMessage(), address);
             return;
         }
+        connectToDevice(address);
+    }
 
+    /**
+     * 清理该设备的旧连接并发起新的GATT连接
+     */
+    private void startConnection(String address) {
         try {
-            // 如果是全新的连接请求，重置重试计数
-            if (!macAddress.equals(lastMacAddress)) {
-                retryCount = 0;
-                lastMacAddress = macAddress;
+            // 清理该设备之前的连接，其他设备不受影响
+            GattConnection existing = connections.get(address);
+            if (existing != null) {
+                cleanupConnection(existing);
             }
 
-            // 清理之前的连接
-            cleanupConnection();
+            if (connections.size() >= maxConnections) {
+                Log.e(TAG, "Connection pool is full: " + connections.keySet());
+                notifyWebView("onBluetoothError", "已达到最大连接数: " + maxConnections, address);
+                return;
+            }
 
             // 开始新的连接
-            BluetoothDevice device = bluetoothAdapter.getRemoteDevice(macAddress);
+            BluetoothDevice device = bluetoothAdapter.getRemoteDevice(address);
 
             // 对于经典蓝牙设备，建议先配对
             int bondState = device.getBondState();
@@ -174,830 +450,3382 @@ public class BluetoothManager {
                 Log.i(TAG, "设备未配对，尝试直接连接（可能是BLE设备）");
             }
 
+            lastMacAddress = address;
+
             // 直接进行连接尝试
             connectToGattServer(device);
         } catch (IllegalArgumentException e) {
-            notifyWebView("onBluetoothError", "无效的MAC地址");
+            notifyWebView("onBluetoothError", "无效的MAC地址", address);
         } catch (SecurityException e) {
-            notifyWebView("onBluetoothError", "缺少必要的蓝牙权限");
+            notifyWebView("onBluetoothError", "缺少必要的蓝牙权限", address);
         }
     }
 
+    /**
+     * 断开连接池中的所有设备
+     */
     @JavascriptInterface
     public void disconnect() {
-        if (bluetoothGatt != null) {
-            notifyWebView("onBluetoothStateChange", "正在断开连接...");
-
-            // 直接执行断开，状态变化会通过onConnectionStateChange回调通知
-            bluetoothGatt.disconnect();
-
-            // 设置5秒超时，如果没收到断开回调就强制断开
-            mainHandler.postDelayed(() -> {
-                if (bluetoothGatt != null) {
-                    Log.w(TAG, "Disconnect timeout, forcing close");
-                    bluetoothGatt.close();
-                    bluetoothGatt = null;
-                    currentDevice = null;
-                    notifyWebView("onBluetoothDisconnected", "已断开连接");
-                }
-            }, 2000);
-        } else {
+        if (postToBleThread(this::disconnect)) {
+            return;
+        }
+        if (connections.isEmpty()) {
             notifyWebView("onBluetoothDisconnected", "已断开连接");
+            return;
         }
-
-        // 移除任何潜在的超时回调
-        if (timeoutRunnable != null) {
-            mainHandler.removeCallbacks(timeoutRunnable);
-            timeoutRunnable = null;
+        for (String address : new ArrayList<>(connections.keySet())) {
+            disconnect(address);
         }
     }
 
+    /**
+     * 断开指定设备，其他设备保持连接
+     *
+     * @param address 设备MAC地址
+     */
     @JavascriptInterface
-    public void writeData(String serviceUUID, String characteristicUUID, String data) {
-        if (bluetoothGatt == null) {
-            notifyWebView("onBluetoothError", "未连接到设备");
+    public void disconnect(String address) {
+        if (postToBleThread(() -> disconnect(address))) {
+            return;
+        }
+        closeL2capChannel(address);
+        GattConnection connection = getConnection(address);
+        if (connection == null) {
+            notifyWebView("onBluetoothDisconnected", "已断开连接", address);
             return;
         }
 
-        try {
-            BluetoothGattService service = bluetoothGatt.getService(UUID.fromString(serviceUUID));
-            if (service == null) {
-                notifyWebView("onBluetoothError", "未找到指定服务");
-                return;
-            }
-
-            BluetoothGattCharacteristic characteristic =
-                    service.getCharacteristic(UUID.fromString(characteristicUUID));
-            if (characteristic == null) {
-                notifyWebView("onBluetoothError", "未找到指定特征值");
-                return;
-            }
-
-            // 检查特征值是否支持写入
-            int properties = characteristic.getProperties();
-            if ((properties & BluetoothGattCharacteristic.PROPERTY_WRITE) == 0 &&
-                    (properties & BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE) == 0) {
-                notifyWebView("onBluetoothError", "该特征值不支持写入操作");
-                return;
-            }
-
-            // 检查数据大小是否超过MTU限制
-            byte[] dataBytes = data.getBytes();
-            if (dataBytes.length > 20) { // 默认MTU通常是20字节
-                // 改为调用分片方法，而不是返回错误
-                writeRawDataChunked(service, characteristic, dataBytes);
-                return;
-            }
+        // 移除任何潜在的超时和重试回调
+        if (connection.connectTimeout != null) {
+            connection.connectTimeout.cancel();
+            connection.connectTimeout = null;
+        }
+        if (connection.retryRunnable != null) {
+            bleHandler.removeCallbacks(connection.retryRunnable);
+            connection.retryRunnable = null;
+        }
+        if (connection.phase != GattConnection.Phase.IDLE) {
+            connection.moveTo(GattConnection.Phase.CLOSING);
+        }
 
-            // 设置写入超时
-            final Runnable writeTimeoutRunnable = () -> {
-                notifyWebView("onBluetoothError", "写入操作超时");
-            };
-            mainHandler.postDelayed(writeTimeoutRunnable, 5000); // 5秒超时
+        if (connection.gatt != null) {
+            notifyWebView("onBluetoothStateChange", "正在断开连接...", connection.address);
 
-            // 通知开始写入
-            notifyWebView("onBluetoothStateChange", "正在发送数据...");
+            // 直接执行断开，状态变化会通过onConnectionStateChange回调通知
+            connection.gatt.disconnect();
+
+            // 设置超时，如果没收到断开回调就强制断开
+            bleHandler.postDelayed(() -> {
+                if (connection.gatt != null && connections.get(connection.address) == connection) {
+                    Log.w(TAG, "Disconnect timeout, forcing close: " + connection.address);
+                    cleanupConnection(connection);
+                    notifyWebView("onBluetoothDisconnected", "已断开连接", connection.address);
+                }
+            }, 2000);
+        } else {
+            cleanupConnection(connection);
+            notifyWebView("onBluetoothDisconnected", "已断开连接", connection.address);
+        }
+    }
 
-            // 设置数据并写入
-            characteristic.setValue(dataBytes);
-            boolean writeResult = bluetoothGatt.writeCharacteristic(characteristic);
+    /**
+     * 设置连接池的最大并发连接数
+     *
+     * @param max 最大连接数（1-7）
+     */
+    @JavascriptInterface
+    public void setMaxConnections(int max) {
+        maxConnections = Math.max(1, Math.min(max, MAX_CONNECTIONS_LIMIT));
+        Log.d(TAG, "最大连接数已设置为: " + maxConnections);
+    }
 
-            if (!writeResult) {
-                mainHandler.removeCallbacks(writeTimeoutRunnable);
-                notifyWebView("onBluetoothError", "写入操作失败");
-                return;
+    /**
+     * 获取连接池中的设备列表
+     *
+     * @return JSON数组，如[{"address":"XX:XX","name":"Device","connected":true,"state":"READY","mtu":247}]
+     */
+    @JavascriptInterface
+    public String getConnectedDevices() {
+        List<String> deviceList = new ArrayList<>();
+        for (GattConnection connection : connections.values()) {
+            String name = null;
+            try {
+                name = connection.device != null ? connection.device.getName() : null;
+            } catch (SecurityException e) {
+                Log.e(TAG, "Security exception getting device name: " + e.getMessage());
             }
-
-            // 写入成功，等待onCharacteristicWrite回调
-            // 超时处理在onCharacteristicWrite中移除
-        } catch (IllegalArgumentException e) {
-            notifyWebView("onBluetoothError", "无效的UUID格式");
-        } catch (SecurityException e) {
-            notifyWebView("onBluetoothError", "缺少必要的蓝牙权限");
+            deviceList.add(String.format(
+                    "{\"address\":\"%s\",\"name\":\"%s\",\"connected\":%b,\"state\":\"%s\",\"mtu\":%d}",
+                    connection.address,
+                    name != null ? name : "Unknown",
+                    connection.isConnected(),
+                    connection.phase,
+                    connection.negotiatedMtu));
         }
+        return "[" + String.join(",", deviceList) + "]";
     }
 
     /**
-     * 分片发送原始字节数据
+     * 获取设备连接建立的分阶段耗时
      *
-     * @param service        蓝牙服务
-     * @param characteristic 特征值
-     * @param data           要发送的完整数据
+     * @return JSON对象，如{"address":"XX:XX","phase":"READY","attempts":1,"totalMs":420,"connectingMs":180,
+     * "mtuMs":60,"discoveringMs":120,"subscribingMs":60}；设备不在连接池中时返回"{}"
      */
-    private void writeRawDataChunked(BluetoothGattService service,
-                                     BluetoothGattCharacteristic characteristic,
-                                     byte[] data) {
-        writeRawHexDataChunked(service, characteristic, data);
+    @JavascriptInterface
+    public String getConnectionTimings(String address) {
+        GattConnection connection = getConnection(address);
+        return connection != null ? connection.timingReport() : "{}";
     }
 
     /**
-     * 将十六进制字符串转换为字节数组并发送到蓝牙设备
+     * 获取设备当前使用的自适应连接参数
      *
-     * @param serviceUUID        服务UUID
-     * @param characteristicUUID 特征值UUID
-     * @param hexString          十六进制字符串，如"7B864814071027923000280033BD7D"
+     * @return JSON对象，包含connectTimeoutMs、retryDelayMs、maxRetries、preferredMtu、chunkIntervalMs、
+     * operationTimeoutMs及统计的平均连接耗时、写入延迟和失败率；设备不在连接池中时返回"{}"
      */
     @JavascriptInterface
-    public void writeRawHexData(String serviceUUID, String characteristicUUID, String hexString) {
-        if (bluetoothGatt == null) {
-            notifyWebView("onBluetoothError", "未连接到设备");
-            return;
+    public String getConnectionProfile(String address) {
+        GattConnection connection = getConnection(address);
+        if (connection == null || connection.tuning == null) {
+            return "{}";
         }
+        synchronized (connection.tuning) {
+            return connection.tuning.toJson();
+        }
+    }
 
-        try {
-            BluetoothGattService service = bluetoothGatt.getService(UUID.fromString(serviceUUID));
-            if (service == null) {
-                notifyWebView("onBluetoothError", "未找到指定服务");
-                return;
-            }
+    @JavascriptInterface
+    public String writeData(String serviceUUID, String characteristicUUID, String data) {
+        return writeData(lastMacAddress, serviceUUID, characteristicUUID, data);
+    }
 
-            BluetoothGattCharacteristic characteristic =
-                    service.getCharacteristic(UUID.fromString(characteristicUUID));
-            if (characteristic == null) {
-                notifyWebView("onBluetoothError", "未找到指定特征值");
+    /**
+     * 向指定设备写入文本数据
+     *
+     * @param address            设备MAC地址
+     * @param serviceUUID        服务UUID
+     * @param characteristicUUID 特征值UUID
+     * @param data               文本数据
+     * @return 写入ID，与onWriteCompleted中的writeId对应
+     */
+    @JavascriptInterface
+    public String writeData(String address, String serviceUUID, String characteristicUUID, String data) {
+        String writeId = nextWriteId();
+        bleHandler.post(() -> {
+            GattConnection connection = getConnection(address);
+            if (connection == null || connection.gatt == null) {
+                notifyWebView("onBluetoothError", "未连接到设备", address);
                 return;
             }
 
-            // 检查特征值是否支持写入
-            int properties = characteristic.getProperties();
-            if ((properties & BluetoothGattCharacteristic.PROPERTY_WRITE) == 0 &&
-                    (properties & BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE) == 0) {
-                notifyWebView("onBluetoothError", "该特征值不支持写入操作");
-                return;
-            }
+            try {
+                BluetoothGattCharacteristic characteristic =
+                        findWritableCharacteristic(connection, serviceUUID, characteristicUUID);
+                if (characteristic == null) {
+                    return;
+                }
 
-            // 将十六进制字符串转换为字节数组
-            byte[] dataBytes = hexStringToByteArray(hexString);
-            if (dataBytes.length == 0) {
-                notifyWebView("onBluetoothError", "无效的十六进制字符串");
-                return;
+                writeBytes(connection, characteristic, data.getBytes(), writeId, "正在发送数据...");
+            } catch (IllegalArgumentException e) {
+                notifyWebView("onBluetoothError", "无效的UUID格式", connection.address);
+            } catch (SecurityException e) {
+                notifyWebView("onBluetoothError", "缺少必要的蓝牙权限", connection.address);
             }
+        });
+        return writeId;
+    }
+
+    /**
+     * 将十六进制字符串转换为字节数组并发送到蓝牙设备
+     *
+     * @param serviceUUID        服务UUID
+     * @param characteristicUUID 特征值UUID
+     * @param hexString          十六进制字符串，如"7B864814071027923000280033BD7D"
+     */
+    @JavascriptInterface
+    public String writeRawHexData(String serviceUUID, String characteristicUUID, String hexString) {
+        return writeRawHexData(lastMacAddress, serviceUUID, characteristicUUID, hexString);
+    }
 
-            // 检查数据大小是否超过MTU限制
-            if (dataBytes.length > 20) { // 默认MTU通常是20字节
-                // 改为调用分片方法，而不是返回错误
-                writeRawHexDataChunked(service, characteristic, dataBytes);
+    /**
+     * 将十六进制字符串转换为字节数组并发送到指定设备
+     *
+     * @param address            设备MAC地址
+     * @param serviceUUID        服务UUID
+     * @param characteristicUUID 特征值UUID
+     * @param hexString          十六进制字符串，如"7B864814071027923000280033BD7D"
+     * @return 写入ID，与onWriteCompleted中的writeId对应
+     */
+    @JavascriptInterface
+    public String writeRawHexData(String address, String serviceUUID, String characteristicUUID, String hexString) {
+        String writeId = nextWriteId();
+        bleHandler.post(() -> {
+            GattConnection connection = getConnection(address);
+            if (connection == null || connection.gatt == null) {
+                notifyWebView("onBluetoothError", "未连接到设备", address);
                 return;
             }
 
-            // 设置写入超时
-            final Runnable writeTimeoutRunnable = () -> {
-                notifyWebView("onBluetoothError", "写入操作超时");
-            };
-            mainHandler.postDelayed(writeTimeoutRunnable, 5000); // 5秒超时
-
-            // 通知开始写入
-            notifyWebView("onBluetoothStateChange", "正在发送十六进制数据...");
+            try {
+                BluetoothGattCharacteristic characteristic =
+                        findWritableCharacteristic(connection, serviceUUID, characteristicUUID);
+                if (characteristic == null) {
+                    return;
+                }
 
-            // 设置数据并写入
-            characteristic.setValue(dataBytes);
-            boolean writeResult = bluetoothGatt.writeCharacteristic(characteristic);
+                // 将十六进制字符串转换为字节数组
+                byte[] dataBytes = HexCodec.decode(hexString);
+                if (dataBytes.length == 0) {
+                    notifyWebView("onBluetoothError", "无效的十六进制字符串", connection.address);
+                    return;
+                }
 
-            if (!writeResult) {
-                mainHandler.removeCallbacks(writeTimeoutRunnable);
-                notifyWebView("onBluetoothError", "写入操作失败");
-                return;
+                writeBytes(connection, characteristic, dataBytes, writeId, "正在发送十六进制数据...");
+            } catch (IllegalArgumentException e) {
+                notifyWebView("onBluetoothError", "无效的参数: " + e.getMessage(), connection.address);
+            } catch (SecurityException e) {
+                notifyWebView("onBluetoothError", "缺少必要的蓝牙权限", connection.address);
+            } catch (Exception e) {
+                notifyWebView("onBluetoothError", "发送数据出错: " + e.getMessage(), connection.address);
             }
-
-            // 写入成功，等待onCharacteristicWrite回调
-        } catch (IllegalArgumentException e) {
-            notifyWebView("onBluetoothError", "无效的参数: " + e.getMessage());
-        } catch (SecurityException e) {
-            notifyWebView("onBluetoothError", "缺少必要的蓝牙权限");
-        } catch (Exception e) {
-            notifyWebView("onBluetoothError", "发送数据出错: " + e.getMessage());
-        }
+        });
+        return writeId;
     }
 
     /**
-     * 分片发送大数据包
+     * 将Base64字符串解码后发送到最近连接的设备
      *
-     * @param service        蓝牙服务
-     * @param characteristic 特征值
-     * @param data           要发送的完整数据
+     * @param serviceUUID        服务UUID
+     * @param characteristicUUID 特征值UUID
+     * @param base64             Base64字符串，支持标准和URL安全字母表
      */
-    private void writeRawHexDataChunked(BluetoothGattService service,
-                                        BluetoothGattCharacteristic characteristic,
-                                        byte[] data) {
-        final int CHUNK_SIZE = 20; // 每片的最大字节数
-        final int totalChunks = (int) Math.ceil((double) data.length / CHUNK_SIZE);
-
-        Log.d(TAG, "数据大小: " + data.length + "字节，将分为" + totalChunks + "片发送");
-        notifyWebView("onBluetoothStateChange",
-                String.format("数据大小: %d字节，将分为%d片发送", data.length, totalChunks));
-
-        // 创建队列来存储所有数据片段
-        ArrayList<byte[]> chunks = new ArrayList<>();
-        for (int i = 0; i < data.length; i += CHUNK_SIZE) {
-            int end = Math.min(i + CHUNK_SIZE, data.length);
-            byte[] chunk = new byte[end - i];
-            System.arraycopy(data, i, chunk, 0, end - i);
-            chunks.add(chunk);
-        }
-
-        // 使用递归函数发送每一片
-        sendNextChunk(characteristic, chunks, 0, totalChunks);
+    @JavascriptInterface
+    public String writeBase64Data(String serviceUUID, String characteristicUUID, String base64) {
+        return writeBase64Data(lastMacAddress, serviceUUID, characteristicUUID, base64);
     }
 
     /**
-     * 递归发送下一个数据片段
+     * 将Base64字符串解码后发送到指定设备
+     * 二进制数据使用Base64比十六进制少约三分之一的桥接数据量
      *
-     * @param characteristic 特征值
-     * @param chunks         所有数据片段的列表
-     * @param index          当前要发送的片段索引
-     * @param totalChunks    总片段数
+     * @param address            设备MAC地址
+     * @param serviceUUID        服务UUID
+     * @param characteristicUUID 特征值UUID
+     * @param base64             Base64字符串，支持标准和URL安全字母表
+     * @return 写入ID，与onWriteCompleted中的writeId对应
      */
-    private void sendNextChunk(BluetoothGattCharacteristic characteristic,
-                               ArrayList<byte[]> chunks, int index, int totalChunks) {
-        sendNextChunk(characteristic, chunks, index, totalChunks, characteristic.getUuid().toString());
+    @JavascriptInterface
+    public String writeBase64Data(String address, String serviceUUID, String characteristicUUID, String base64) {
+        String writeId = nextWriteId();
+        bleHandler.post(() -> {
+            GattConnection connection = getConnection(address);
+            if (connection == null || connection.gatt == null) {
+                notifyWebView("onBluetoothError", "未连接到设备", address);
+                return;
+            }
+
+            try {
+                BluetoothGattCharacteristic characteristic =
+                        findWritableCharacteristic(connection, serviceUUID, characteristicUUID);
+                if (characteristic == null) {
+                    return;
+                }
+
+                byte[] dataBytes = HexCodec.decodeBase64(base64);
+                if (dataBytes.length == 0) {
+                    notifyWebView("onBluetoothError", "无效的Base64字符串", connection.address);
+                    return;
+                }
+
+                writeBytes(connection, characteristic, dataBytes, writeId, "正在发送数据...");
+            } catch (IllegalArgumentException e) {
+                notifyWebView("onBluetoothError", "无效的参数: " + e.getMessage(), connection.address);
+            } catch (SecurityException e) {
+                notifyWebView("onBluetoothError", "缺少必要的蓝牙权限", connection.address);
+            }
+        });
+        return writeId;
     }
 
     /**
-     * 递归发送下一个数据片段（带特征值UUID参数）
+     * 注册命令模板，之后可通过sendCommand只传字段值发送命令，帧头帧尾和校验由原生层生成
+     * 模板示例：
+     * {"service":"..","characteristic":"..","header":"7B","footer":"7D","checksum":"crc16modbus",
+     * "fields":[{"name":"cmd","type":"u8"},{"name":"len","type":"length"},{"name":"data","type":"hex"}]}
+     * 字段类型可选u8、u16、u32、i8、i16、i32、hex、const、length；同一ID重复注册时替换原模板。
      *
-     * @param characteristic     特征值
-     * @param chunks             所有数据片段的列表
-     * @param index              当前要发送的片段索引
-     * @param totalChunks        总片段数
-     * @param characteristicUUID 特征值UUID
+     * @param templateId 模板ID，只能包含字母、数字和_-.:，最长64个字符
      */
-    private void sendNextChunk(BluetoothGattCharacteristic characteristic,
-                               ArrayList<byte[]> chunks, int index, int totalChunks,
-                               String characteristicUUID) {
-        if (index >= chunks.size() || bluetoothGatt == null) {
-            Log.d(TAG, "分片发送完成或连接已断开");
+    @JavascriptInterface
+    public void registerCommandTemplate(String templateId, String templateJson) {
+        if (templateId == null || !REQUEST_ID_PATTERN.matcher(templateId).matches()) {
+            notifyWebView("onBluetoothError", "无效的模板ID");
             return;
         }
+        try {
+            commandTemplates.put(templateId, CommandTemplate.fromJson(templateJson));
+        } catch (JSONException | NullPointerException e) {
+            notifyWebView("onBluetoothError", "无效的命令模板: " + e.getMessage());
+        }
+    }
 
-        byte[] chunk = chunks.get(index);
+    /**
+     * 删除命令模板
+     */
+    @JavascriptInterface
+    public void removeCommandTemplate(String templateId) {
+        if (templateId != null) {
+            commandTemplates.remove(templateId);
+        }
+    }
 
-        // 设置状态更新
-        final int currentChunk = index + 1;
-        notifyWebView("onBluetoothStateChange",
-                String.format("正在发送第%d/%d片数据...", currentChunk, totalChunks));
+    /**
+     * 按模板向最近连接的设备发送命令
+     */
+    @JavascriptInterface
+    public String sendCommand(String templateId, String paramsJson) {
+        return sendCommand(lastMacAddress, templateId, paramsJson);
+    }
 
-        // 保存分片信息到Map中
-        if (!chunkedWriteData.containsKey(characteristicUUID)) {
-            ChunkedWriteData writeData = new ChunkedWriteData();
-            writeData.chunks = chunks;
-            writeData.currentIndex = index;
-            writeData.totalChunks = totalChunks;
-            chunkedWriteData.put(characteristicUUID, writeData);
-        }
+    /**
+     * 按模板组帧并发送到指定设备，写入结果与writeData相同，通过onWriteCompleted回调
+     *
+     * @param templateId 已注册的模板ID
+     * @param paramsJson 字段值，如{"cmd":1,"data":"0102"}；整数字段传数字，hex字段传十六进制字符串
+     * @return 写入ID，与onWriteCompleted中的writeId对应
+     */
+    @JavascriptInterface
+    public String sendCommand(String address, String templateId, String paramsJson) {
+        String writeId = nextWriteId();
+        bleHandler.post(() -> {
+            CommandTemplate template = templateId == null ? null : commandTemplates.get(templateId);
+            if (template == null) {
+                notifyWebView("onBluetoothError", "未注册的命令模板: " + templateId, address);
+                return;
+            }
+            GattConnection connection = getConnection(address);
+            if (connection == null || connection.gatt == null) {
+                notifyWebView("onBluetoothError", "未连接到设备", address);
+                return;
+            }
 
-        // 设置写入超时处理
-        final Runnable writeTimeoutRunnable = new Runnable() {
-            @Override
-            public void run() {
-                Log.e(TAG, "片段" + currentChunk + "写入超时");
-                notifyWebView("onBluetoothError", "数据片段" + currentChunk + "写入超时");
-                chunkedWriteData.remove(characteristicUUID);
+            byte[] command;
+            try {
+                // 在复用的缓冲区中组帧，写入队列持有数据直到外设确认，因此按实际长度复制一份
+                int length = template.encode(CommandTemplate.parseParams(paramsJson), commandBuffer);
+                command = new byte[length];
+                System.arraycopy(commandBuffer, 0, command, 0, length);
+            } catch (JSONException | IllegalArgumentException e) {
+                notifyWebView("onBluetoothError", "无效的命令参数: " + e.getMessage(), connection.address);
+                return;
             }
-        };
 
-        // 设置5秒超时
-        mainHandler.postDelayed(writeTimeoutRunnable, 5000);
+            try {
+                BluetoothGattCharacteristic characteristic = findWritableCharacteristic(connection,
+                        template.serviceUuid, template.characteristicUuid);
+                if (characteristic == null) {
+                    return;
+                }
+                writeBytes(connection, characteristic, command, writeId, "正在发送命令...");
+            } catch (SecurityException e) {
+                notifyWebView("onBluetoothError", "缺少必要的蓝牙权限", connection.address);
+            }
+        });
+        return writeId;
+    }
+
+    /**
+     * 发送已解码的字节数据，超过MTU时自动分片
+     *
+     * @param writeId 写入ID，随onWriteCompleted回调；作为分片传输发送时同时作为传输ID
+     */
+    private void writeBytes(GattConnection connection, BluetoothGattCharacteristic characteristic,
+                            byte[] dataBytes, String writeId, String stateMessage) {
+        if (dataBytes.length <= connection.getMaxWritePayloadSize()) {
+            // 通知开始写入，超过MTU的数据作为分片传输发送，由进度回调通知
+            notifyWebView("onBluetoothStateChange", stateMessage, connection.address);
+        }
+
+        // 按特征值排队，同一特征值的写入按调用顺序发送，不会插到分片之间
+        String uuid = characteristic.getUuid().toString();
+        OutboundWriteQueue queue = connection.writeQueues.get(uuid);
+        if (queue == null) {
+            queue = new OutboundWriteQueue();
+            Long window = writeCoalescingWindows.get(connection.address + "|" + uuid);
+            if (window != null) {
+                queue.setWindow(window);
+            }
+            connection.writeQueues.put(uuid, queue);
+        }
+        queue.offer(writeId, dataBytes, SystemClock.elapsedRealtime());
+        sendQueuedWrites(connection, characteristic);
+    }
 
-        // 设置数据并写入
-        characteristic.setValue(chunk);
-        boolean writeResult = bluetoothGatt.writeCharacteristic(characteristic);
+    /**
+     * 发送特征值队列中的下一个数据包
+     * 同一特征值同时只发送一个数据包；有分片传输（含等待续传）或流式发送进行中时等待其结束。
+     * 流式发送期间特征值的写入类型为无响应写入，此时发出的写入收不到外设确认，还会插到流式数据包之间
+     */
+    private void sendQueuedWrites(GattConnection connection, BluetoothGattCharacteristic characteristic) {
+        String uuid = characteristic.getUuid().toString();
+        OutboundWriteQueue queue = connection.writeQueues.get(uuid);
+        if (queue == null || queue.isBusy() || connection.gatt == null
+                || connections.get(connection.address) != connection
+                || findActiveTransfer(connection.address, uuid) != null
+                || connection.streamWriteData.containsKey(uuid)) {
+            return;
+        }
 
-        if (!writeResult) {
-            mainHandler.removeCallbacks(writeTimeoutRunnable);
-            Log.e(TAG, "片段" + currentChunk + "写入失败");
-            notifyWebView("onBluetoothError", "数据片段" + currentChunk + "写入失败");
-            chunkedWriteData.remove(characteristicUUID);
+        long now = SystemClock.elapsedRealtime();
+        int maxPayload = connection.getMaxWritePayloadSize();
+        OutboundWriteQueue.Packet packet = queue.next(maxPayload, now);
+        if (packet == null) {
+            // 等待合并窗口内的后续写入，到期后发送已有的部分
+            long flushAt = queue.flushAt();
+            if (flushAt >= 0 && queue.markFlushScheduled(flushAt)) {
+                bleHandler.postDelayed(() -> sendQueuedWrites(connection, characteristic),
+                        Math.max(0, flushAt - now));
+            }
             return;
         }
+        if (packet.data.length > maxPayload) {
+            // 超过单包上限的写入单独发送，以写入ID作为传输ID，结果和进度按同一ID回调
+            packet.transferId = packet.writes.get(0).id;
+            writeRawHexDataChunked(connection, characteristic, packet.data, packet.transferId);
+        } else {
+            // 加入GATT操作队列，超时和结果在队列操作中处理
+            enqueueSingleWrite(connection, characteristic, queue, packet);
+        }
+    }
 
-        // 写入成功后会在onCharacteristicWrite回调中处理下一片段
+    /**
+     * 分片传输结束（完成、失败或取消）后继续发送该特征值队列中的写入
+     */
+    private void continueQueuedWrites(ChunkedTransfer transfer) {
+        GattConnection connection = connections.get(transfer.address);
+        if (connection == null || connection.gatt == null) {
+            return;
+        }
+        BluetoothGattCharacteristic characteristic =
+                findCharacteristic(connection, transfer.serviceUuid, transfer.characteristicUuid);
+        if (characteristic == null) {
+            return;
+        }
+        OutboundWriteQueue queue = connection.writeQueues.get(characteristic.getUuid().toString());
+        if (queue == null) {
+            return;
+        }
+        if (transfer.id.equals(queue.inFlightTransferId())) {
+            queue.complete();
+        }
+        sendQueuedWrites(connection, characteristic);
     }
 
     /**
-     * 存储分片写入过程中的数据
+     * 尚未确认的写入回调失败，在重置连接清空写入队列前调用；分片传输的写入由续传处理
      */
-    private class ChunkedWriteData {
-        ArrayList<byte[]> chunks;  // 所有数据片段
-        int currentIndex;          // 当前片段索引
-        int totalChunks;           // 总片段数
+    private void failQueuedWrites(GattConnection connection) {
+        for (Map.Entry<String, OutboundWriteQueue> entry : connection.writeQueues.entrySet()) {
+            notifyQueuedWriteResult(connection, entry.getKey(), entry.getValue().drain(), false);
+        }
     }
 
     /**
-     * 将十六进制字符串转换为字节数组
+     * 为每个写入回调onWriteCompleted，附带写入ID；合并发送的写入附带coalesced（同包写入数）
      */
-    private byte[] hexStringToByteArray(String hexString) {
-        if (hexString == null || hexString.isEmpty()) {
-            return new byte[0];
+    private void notifyQueuedWriteResult(GattConnection connection, String uuid, List<OutboundWriteQueue.Write> writes,
+                                         boolean success) {
+        String coalesced = writes.size() > 1 ? ",\"coalesced\":" + writes.size() : "";
+        for (OutboundWriteQueue.Write write : writes) {
+            notifyWebView("onWriteCompleted",
+                    String.format("{\"writeId\":\"%s\",\"address\":\"%s\",\"uuid\":\"%s\",\"status\":\"%s\"%s}",
+                            write.id, connection.address, uuid, success ? "success" : "failed", coalesced),
+                    connection.address);
         }
+    }
 
-        // 转换为大写并去除空格
-        hexString = hexString.toUpperCase().replace(" ", "");
+    /**
+     * 设置最近连接设备特征值的写入合并窗口
+     */
+    @JavascriptInterface
+    public void setWriteCoalescing(String characteristicUUID, int windowMs) {
+        setWriteCoalescing(lastMacAddress, characteristicUUID, windowMs);
+    }
 
-        // 验证是否为有效的十六进制字符串
-        if (!hexString.matches("[0-9A-F]+")) {
-            return new byte[0];
+    /**
+     * 设置特征值的写入合并窗口
+     * 窗口内连续的小写入拼成不超过MTU-3字节的数据包发送，减少GATT往返；每个写入仍各自回调onWriteCompleted。
+     * 适用于把数据当作字节流处理的外设，按写入边界解析命令的外设不要开启
+     *
+     * @param windowMs 写入最多等待的时长（毫秒），0-1000，0表示不合并
+     */
+    @JavascriptInterface
+    public void setWriteCoalescing(String address, String characteristicUUID, int windowMs) {
+        if (postToBleThread(() -> setWriteCoalescing(address, characteristicUUID, windowMs))) {
+            return;
+        }
+        String key = characteristicKey(address, characteristicUUID);
+        if (key == null || windowMs < 0 || windowMs > OutboundWriteQueue.MAX_WINDOW_MS) {
+            notifyWebView("onBluetoothError", "无效的写入合并参数", address);
+            return;
+        }
+        if (windowMs > 0) {
+            writeCoalescingWindows.put(key, (long) windowMs);
+        } else {
+            writeCoalescingWindows.remove(key);
+        }
+        GattConnection connection = getConnection(address);
+        OutboundWriteQueue queue = connection == null ? null
+                : connection.writeQueues.get(key.substring(key.indexOf('|') + 1));
+        if (queue != null) {
+            queue.setWindow(windowMs);
         }
+    }
+
+    /**
+     * 读取最近连接设备的特征值，结果通过onCharacteristicChanged回调返回
+     *
+     * @param serviceUUID        服务UUID
+     * @param characteristicUUID 特征值UUID
+     */
+    @JavascriptInterface
+    public void readData(String serviceUUID, String characteristicUUID) {
+        readData(lastMacAddress, serviceUUID, characteristicUUID);
+    }
 
-        // 如果长度为奇数，前面补0
-        if (hexString.length() % 2 != 0) {
-            hexString = "0" + hexString;
+    /**
+     * 读取指定设备的特征值，结果通过onCharacteristicChanged回调返回
+     *
+     * @param address            设备MAC地址
+     * @param serviceUUID        服务UUID
+     * @param characteristicUUID 特征值UUID
+     */
+    @JavascriptInterface
+    public void readData(String address, String serviceUUID, String characteristicUUID) {
+        if (postToBleThread(() -> readData(address, serviceUUID, characteristicUUID))) {
+            return;
+        }
+        GattConnection connection = getConnection(address);
+        if (connection == null || connection.gatt == null) {
+            notifyWebView("onBluetoothError", "未连接到设备", address);
+            return;
         }
 
-        int len = hexString.length();
-        byte[] bytes = new byte[len / 2];
+        try {
+            BluetoothGattCharacteristic characteristic =
+                    findCharacteristic(connection, serviceUUID, characteristicUUID);
+            if (characteristic == null) {
+                return;
+            }
+
+            if ((characteristic.getProperties() & BluetoothGattCharacteristic.PROPERTY_READ) == 0) {
+                notifyWebView("onBluetoothError", "该特征值不支持读取操作", connection.address);
+                return;
+            }
 
-        for (int i = 0; i < len; i += 2) {
-            bytes[i / 2] = (byte) ((Character.digit(hexString.charAt(i), 16) << 4)
-                    + Character.digit(hexString.charAt(i + 1), 16));
+            // 读取属于交互命令，以高优先级执行
+            enqueueRead(connection, characteristic, GattOperationQueue.Priority.HIGH, null);
+        } catch (IllegalArgumentException e) {
+            notifyWebView("onBluetoothError", "无效的UUID格式", connection.address);
         }
+    }
 
-        return bytes;
+    /**
+     * 读取最近连接设备的特征值，结果按请求ID回调onCharacteristicRead
+     */
+    @JavascriptInterface
+    public void readCharacteristic(String serviceUUID, String characteristicUUID, String requestId) {
+        readCharacteristic(lastMacAddress, serviceUUID, characteristicUUID, requestId);
     }
 
-    private void cleanupConnection() {
-        // 清理GATT连接
-        if (bluetoothGatt != null) {
-            bluetoothGatt.close();
-            bluetoothGatt = null;
+    /**
+     * 读取指定设备的特征值，结果按请求ID回调onCharacteristicRead
+     * 同一特征值正在读取时不再发起新的GATT读取，结果随进行中的读取一并返回；
+     * 通过setReadCacheTtl设置了缓存有效期时，有效期内的重复读取直接返回缓存值
+     *
+     * @param address            设备MAC地址
+     * @param serviceUUID        服务UUID
+     * @param characteristicUUID 特征值UUID
+     * @param requestId          请求ID，由H5生成，只能包含字母、数字和 _ - . :，最长64个字符
+     */
+    @JavascriptInterface
+    public void readCharacteristic(String address, String serviceUUID, String characteristicUUID,
+                                   String requestId) {
+        if (postToBleThread(() -> readCharacteristic(address, serviceUUID, characteristicUUID, requestId))) {
+            return;
+        }
+        if (requestId == null || !REQUEST_ID_PATTERN.matcher(requestId).matches()) {
+            notifyWebView("onBluetoothError", "无效的请求ID", address);
+            return;
+        }
+        GattConnection connection = getConnection(address);
+        if (connection == null || connection.gatt == null) {
+            notifyReadFailed(address, characteristicUUID, requestId, "未连接到设备");
+            return;
         }
 
-        // 清理设备引用
-        currentDevice = null;
+        try {
+            BluetoothGattCharacteristic characteristic =
+                    findCharacteristic(connection, serviceUUID, characteristicUUID);
+            if (characteristic == null) {
+                notifyReadFailed(connection.address, characteristicUUID, requestId, "未找到指定特征值");
+                return;
+            }
+            if ((characteristic.getProperties() & BluetoothGattCharacteristic.PROPERTY_READ) == 0) {
+                notifyReadFailed(connection.address, characteristicUUID, requestId, "该特征值不支持读取操作");
+                return;
+            }
 
-        // 清理定时器
-        if (timeoutRunnable != null) {
-            mainHandler.removeCallbacks(timeoutRunnable);
-            timeoutRunnable = null;
+            String uuid = characteristic.getUuid().toString();
+            Long ttl = readCacheTtls.get(connection.address + "|" + uuid);
+            byte[] cached = ttl == null ? null
+                    : connection.reads.cached(uuid, ttl, SystemClock.elapsedRealtime());
+            if (cached != null) {
+                notifyReadResult(connection, uuid, requestId, cached, true);
+                return;
+            }
+            enqueueRead(connection, characteristic, GattOperationQueue.Priority.HIGH, requestId);
+        } catch (IllegalArgumentException e) {
+            notifyReadFailed(connection.address, characteristicUUID, requestId, "无效的UUID格式");
         }
+    }
 
-        // 清理特征值状态
-        characteristicNotificationEnabled.clear();
-        characteristicReading.clear();
+    /**
+     * 设置最近连接设备特征值的读取缓存有效期
+     */
+    @JavascriptInterface
+    public void setReadCacheTtl(String characteristicUUID, long ttlMs) {
+        setReadCacheTtl(lastMacAddress, characteristicUUID, ttlMs);
     }
 
-    private void connectToGattServer(BluetoothDevice device) {
-        Log.d(TAG, "Starting GATT connection process");
+    /**
+     * 设置特征值读取结果的缓存有效期，有效期内readCharacteristic直接返回缓存值
+     * 写入该特征值或收到其通知后缓存失效；重连后需要重新读取
+     *
+     * @param ttlMs 有效期（毫秒），0表示不缓存
+     */
+    @JavascriptInterface
+    public void setReadCacheTtl(String address, String characteristicUUID, long ttlMs) {
+        String key = characteristicKey(address, characteristicUUID);
+        if (key == null) {
+            notifyWebView("onBluetoothError", "无效的地址或UUID", address);
+            return;
+        }
+        if (ttlMs > 0) {
+            readCacheTtls.put(key, ttlMs);
+        } else {
+            readCacheTtls.remove(key);
+        }
+    }
+
+    /**
+     * 回调onCharacteristicRead，返回与请求ID对应的读取结果
+     */
+    private void notifyReadResult(GattConnection connection, String uuid, String requestId, byte[] value,
+                                  boolean cached) {
+        notifyWebView("onCharacteristicRead",
+                String.format("{\"requestId\":\"%s\",\"address\":\"%s\",\"uuid\":\"%s\",\"success\":true,"
+                                + "\"cached\":%b,\"hexValue\":\"%s\"}",
+                        requestId, connection.address, uuid, cached, connection.hexCodec.encodeToString(value)),
+                connection.address);
+    }
 
-        // 确保开始新连接前所有状态都是清理的
-        cleanupConnection();
+    /**
+     * 回调onCharacteristicRead，返回与请求ID对应的失败原因
+     */
+    private void notifyReadFailed(String address, String uuid, String requestId, String error) {
+        notifyWebView("onCharacteristicRead",
+                String.format("{\"requestId\":\"%s\",\"address\":\"%s\",\"uuid\":\"%s\",\"success\":false,"
+                                + "\"error\":\"%s\"}",
+                        requestId, address, uuid, error),
+                address);
+    }
 
-        // 检查蓝牙状态
-        if (!isBluetoothEnabled()) {
-            Log.e(TAG, "Bluetooth is not enabled when trying to connect");
-            notifyWebView("onBluetoothError", "蓝牙未启用，请先启用蓝牙");
-            return;
+    /**
+     * 查找指定服务下的特征值，未找到时通知H5
+     *
+     * @return 特征值，未找到时返回null
+     * @throws IllegalArgumentException UUID格式无效
+     */
+    private BluetoothGattCharacteristic findCharacteristic(GattConnection connection,
+                                                           String serviceUUID,
+                                                           String characteristicUUID) {
+        UUID serviceId = GattLayoutCache.uuid(serviceUUID);
+        UUID characteristicId = GattLayoutCache.uuid(characteristicUUID);
+
+        // 优先使用服务发现后建立的索引，未建立时退回GATT查找
+        Map<UUID, Map<UUID, BluetoothGattCharacteristic>> index = connection.characteristicIndex;
+        Map<UUID, BluetoothGattCharacteristic> characteristics = index != null ? index.get(serviceId) : null;
+        BluetoothGattCharacteristic characteristic;
+        if (characteristics != null) {
+            characteristic = characteristics.get(characteristicId);
+        } else {
+            BluetoothGattService service = connection.gatt.getService(serviceId);
+            if (service == null) {
+                notifyWebView("onBluetoothError", "未找到指定服务", connection.address);
+                return null;
+            }
+            characteristic = service.getCharacteristic(characteristicId);
         }
+        if (characteristic == null) {
+            notifyWebView("onBluetoothError", "未找到指定特征值", connection.address);
+            return null;
+        }
+        return characteristic;
+    }
 
-        // 添加权限检查
-        if (!hasBluetoothPermissions()) {
-            Log.e(TAG, "Missing Bluetooth permissions");
-            notifyWebView("onBluetoothError", "缺少必要的蓝牙权限");
-            return;
+    /**
+     * 查找支持写入的特征值，未找到或不支持写入时通知H5
+     *
+     * @return 特征值，不可用时返回null
+     * @throws IllegalArgumentException UUID格式无效
+     */
+    private BluetoothGattCharacteristic findWritableCharacteristic(GattConnection connection,
+                                                                   String serviceUUID,
+                                                                   String characteristicUUID) {
+        BluetoothGattCharacteristic characteristic =
+                findCharacteristic(connection, serviceUUID, characteristicUUID);
+        if (characteristic == null) {
+            return null;
         }
 
-        currentDevice = device;
+        // 检查特征值是否支持写入
+        int properties = characteristic.getProperties();
+        if ((properties & BluetoothGattCharacteristic.PROPERTY_WRITE) == 0 &&
+                (properties & BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE) == 0) {
+            notifyWebView("onBluetoothError", "该特征值不支持写入操作", connection.address);
+            return null;
+        }
+        return characteristic;
+    }
 
-        // 设置连接超时 - 首次连接时使用更长的超时时间
-        long timeoutTime = retryCount == 0 ? CONNECTION_TIMEOUT * 2 : CONNECTION_TIMEOUT;
-        Log.d(TAG, "Setting connection timeout to " + timeoutTime + "ms");
+    /**
+     * 分片发送大数据包，按ID跟踪，失败的片段单独重发，断线重连后从最后确认的位置续传
+     *
+     * @param connection     设备连接
+     * @param characteristic 特征值
+     * @param data           要发送的完整数据
+     */
+    private void writeRawHexDataChunked(GattConnection connection,
+                                        BluetoothGattCharacteristic characteristic,
+                                        byte[] data, String transferId) {
+        startTransfer(connection, characteristic, data, transferId);
+    }
 
-        timeoutRunnable = () -> {
-            Log.e(TAG, "Connection timeout");
-            notifyWebView("onBluetoothError", "连接超时，请确保设备在范围内且未被其他设备连接");
-            disconnect();
-        };
-        mainHandler.postDelayed(timeoutRunnable, timeoutTime);
+    private String nextTransferId() {
+        return "t" + transferSequence.incrementAndGet();
+    }
 
-        Log.i(TAG, "Attempting to connect to device: " + device.getAddress());
-        try {
-            // 使用autoConnect=true对首次连接可能有所帮助
-            boolean useAutoConnect = retryCount == 0;
-            bluetoothGatt = device.connectGatt(context, useAutoConnect, new BluetoothGattCallback() {
-                @Override
-                public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
-                    // 移除重试逻辑，即使状态码不是GATT_SUCCESS也继续处理
-                    // 这样可以避免设备突然断电或关闭蓝牙时导致的崩溃
-                    if (status != BluetoothGatt.GATT_SUCCESS) {
-                        Log.e(TAG, "Connection state change error: " + status);
-                        // 记录状态码但不再尝试重连
-                    }
+    private String nextWriteId() {
+        return WRITE_ID_PREFIX + writeSequence.incrementAndGet();
+    }
+
+    /**
+     * 由写入队列发起的分片传输以写入ID作为传输ID，结果回调中同时带上writeId
+     */
+    private static String writeIdField(ChunkedTransfer transfer) {
+        return transfer.id.startsWith(WRITE_ID_PREFIX) ? ",\"writeId\":\"" + transfer.id + "\"" : "";
+    }
 
-                    // 无论之前的状态如何，都重置重试计数并清除超时
-                    retryCount = 0;
+    /**
+     * 创建分片传输并发送第一片
+     */
+    private void startTransfer(GattConnection connection, BluetoothGattCharacteristic characteristic,
+                               byte[] data, String transferId) {
+        String uuid = characteristic.getUuid().toString();
+        ChunkedTransfer existing = findActiveTransfer(connection.address, uuid);
+        if (existing != null) {
+            if (existing.state() == ChunkedTransfer.State.RUNNING) {
+                notifyWebView("onBluetoothError", "该特征值已有数据正在发送", connection.address);
+                return;
+            }
+            // 新数据取代等待续传的旧数据，避免重连后两份数据交错写入
+            finishTransfer(existing, ChunkedTransfer.State.CANCELLED);
+        }
+        pruneTransfers();
 
-                    // 清除连接超时定时器
-                    if (timeoutRunnable != null) {
-                        mainHandler.removeCallbacks(timeoutRunnable);
-                        timeoutRunnable = null;
-                    }
+        // 每片的最大字节数由当前连接协商的MTU决定
+        int chunkSize = connection.getMaxWritePayloadSize();
+        int totalChunks = (data.length + chunkSize - 1) / chunkSize;
+        Log.d(TAG, "数据大小: " + data.length + "字节，MTU: " + connection.negotiatedMtu
+                + "，将按每片" + chunkSize + "字节分为" + totalChunks + "片发送，传输ID: " + transferId);
+        notifyWebView("onBluetoothStateChange",
+                String.format("数据大小: %d字节，将分为%d片发送", data.length, totalChunks),
+                connection.address);
+
+        ChunkedTransfer transfer = new ChunkedTransfer(transferId, connection.address,
+                characteristic.getService().getUuid().toString(), uuid, data);
+        transfers.put(transferId, transfer);
+        reportTransferProgress(transfer, true);
+        sendTransferChunk(connection, transfer);
+    }
 
-                    if (newState == BluetoothProfile.STATE_CONNECTED) {
-                        Log.i(TAG, "Connected to GATT server: " + gatt.getDevice().getAddress());
-
-                        // 设置更高的连接优先级以提高传输速度和稳定性
-                        boolean priorityResult = gatt.requestConnectionPriority(BluetoothGatt.CONNECTION_PRIORITY_HIGH);
-                        Log.d(TAG, "Set high priority result: " + priorityResult);
-
-                        // 配置MTU大小
-                        if (!mtuConfigured) {
-                            Log.d(TAG, "Requesting MTU size: " + PREFERRED_MTU);
-                            boolean mtuResult = gatt.requestMtu(PREFERRED_MTU);
-                            if (!mtuResult) {
-                                Log.e(TAG, "Failed to request MTU");
-                            }
-                        }
+    /**
+     * 从最后确认的偏移切出下一片并加入GATT操作队列
+     */
+    private void sendTransferChunk(GattConnection connection, ChunkedTransfer transfer) {
+        if (transfer.state() != ChunkedTransfer.State.RUNNING || connection.gatt == null) {
+            return;
+        }
+        BluetoothGattCharacteristic characteristic =
+                findCharacteristic(connection, transfer.serviceUuid, transfer.characteristicUuid);
+        if (characteristic == null) {
+            failTransfer(transfer, "未找到指定特征值");
+            return;
+        }
 
-                        notifyWebView("onBluetoothConnected", device.getAddress());
+        markBulkActivity(connection);
+        int generation = transfer.generation();
+        byte[] chunk = transfer.nextChunk(connection.getMaxWritePayloadSize());
 
-                        // 延迟发现服务，给设备一些时间稳定连接
-                        mainHandler.postDelayed(() -> {
-                            if (bluetoothGatt != null) {
-                                bluetoothGatt.discoverServices();
-                            }
-                        }, 500); // 增加延迟到500ms
-                    } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
-                        Log.i(TAG, "Disconnected from GATT server. Status: " + status);
-                        String deviceAddress = device != null ? device.getAddress() : "未知设备";
-                        Log.d(TAG, "Device " + deviceAddress + " disconnected, retry count: " + retryCount);
-                        cleanupConnection();
-                        notifyWebView("onBluetoothDisconnected", deviceAddress);
-                    } else {
-                        Log.d(TAG, "Connection state changed to: " + newState);
-                    }
+        // 分片写入属于批量传输，交互命令可以插队
+        connection.operationQueue.enqueue(new GattOperationQueue.Operation(
+                GattOperationQueue.Type.WRITE_CHARACTERISTIC, GattOperationQueue.Priority.BULK,
+                transfer.characteristicUuid, connection.tuning.operationTimeoutMs()) {
+            @Override
+            boolean execute() {
+                // 传输已取消或已暂停时不再写入
+                if (connection.gatt == null || transfer.generation() != generation) {
+                    return false;
                 }
+                return issueWrite(connection, characteristic, chunk);
+            }
 
-                @Override
-                public void onMtuChanged(BluetoothGatt gatt, int mtu, int status) {
-                    if (status == BluetoothGatt.GATT_SUCCESS) {
-                        Log.d(TAG, "MTU changed to: " + mtu);
-                        mtuConfigured = true;
-                        // MTU配置成功后，开始发现服务
-                        if (bluetoothGatt != null) {
-                            bluetoothGatt.discoverServices();
-                        }
-                    } else {
-                        Log.e(TAG, "MTU change failed with status: " + status);
-                    }
+            @Override
+            void onComplete(int status) {
+                if (transfer.generation() != generation) {
+                    return;
+                }
+                boolean success = status == BluetoothGatt.GATT_SUCCESS;
+                recordWriteResult(connection, transfer.characteristicUuid, success, elapsedMs());
+                if (success) {
+                    handleTransferChunkWritten(connection, transfer, characteristic);
+                } else {
+                    retryTransferChunk(connection, transfer, "写入失败，错误码: " + status);
                 }
+            }
 
-                @Override
-                public void onServicesDiscovered(BluetoothGatt gatt, int status) {
-                    if (status == BluetoothGatt.GATT_SUCCESS) {
-                        List<String> services = new ArrayList<>();
-                        for (BluetoothGattService service : gatt.getServices()) {
-                            String serviceUuid = service.getUuid().toString();
-                            services.add(serviceUuid);
-                            Log.d(TAG, "发现服务: " + serviceUuid);
+            @Override
+            void onRejected() {
+                if (transfer.generation() == generation) {
+                    metrics.recordWriteResult(connection.address, transfer.characteristicUuid, false, 0);
+                    retryTransferChunk(connection, transfer, "数据片段写入失败");
+                }
+            }
 
-                            // 自动开启所有可通知的特征值
-                            for (BluetoothGattCharacteristic characteristic : service.getCharacteristics()) {
-                                String uuid = characteristic.getUuid().toString();
-                                int properties = characteristic.getProperties();
-                                Log.d(TAG, "发现特征值: " + uuid + ", 属性: " + properties);
-
-                                // 启用通知
-                                if ((properties & BluetoothGattCharacteristic.PROPERTY_NOTIFY) > 0) {
-                                    Log.d(TAG, "特征值支持通知: " + uuid);
-                                    if (!characteristicNotificationEnabled.containsKey(uuid) || !characteristicNotificationEnabled.get(uuid)) {
-                                        // 先设置通知
-                                        boolean success = gatt.setCharacteristicNotification(characteristic, true);
-                                        if (success) {
-                                            Log.d(TAG, "开启通知成功: " + uuid);
-                                            characteristicNotificationEnabled.put(uuid, true);
-
-                                            // 写入客户端特征值配置描述符
-                                            BluetoothGattDescriptor descriptor = characteristic.getDescriptor(
-                                                    UUID.fromString("00002902-0000-1000-8000-00805f9b34fb"));
-                                            if (descriptor != null) {
-                                                Log.d(TAG, "找到CCCD描述符: " + uuid);
-                                                descriptor.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
-                                                boolean writeResult = gatt.writeDescriptor(descriptor);
-                                                if (!writeResult) {
-                                                    Log.e(TAG, "写入CCCD描述符失败: " + uuid);
-                                                } else {
-                                                    Log.d(TAG, "写入CCCD描述符成功: " + uuid);
-                                                }
-                                            } else {
-                                                Log.e(TAG, "未找到CCCD描述符: " + uuid);
-                                            }
-                                        } else {
-                                            Log.e(TAG, "开启通知失败: " + uuid);
-                                            characteristicNotificationEnabled.put(uuid, false);
-                                        }
-                                    } else {
-                                        Log.d(TAG, "通知已启用: " + uuid);
-                                    }
-                                }
-                            }
-                        }
-                        notifyWebView("onServicesDiscovered", String.join(",", services));
-                    } else {
-                        Log.e(TAG, "Service discovery failed with status: " + status);
-                        notifyWebView("onBluetoothError", "服务发现失败");
-                        disconnect();
+            @Override
+            void onTimeout() {
+                if (transfer.generation() != generation) {
+                    return;
+                }
+                recordWriteResult(connection, transfer.characteristicUuid, false, elapsedMs());
+                retryTransferChunk(connection, transfer, "数据片段写入超时");
+            }
+        });
+    }
+
+    /**
+     * 片段已被确认，发送下一片或通知全部完成
+     */
+    private void handleTransferChunkWritten(GattConnection connection, ChunkedTransfer transfer,
+                                            BluetoothGattCharacteristic characteristic) {
+        if (!transfer.acknowledge()) {
+            reportTransferProgress(transfer, false);
+            // 延迟一定时间后发送下一片，避免设备处理不过来；间隔按写入结果自适应调整
+            bleHandler.postDelayed(() -> sendTransferChunk(connection, transfer),
+                    connection.tuning.chunkIntervalMs());
+            return;
+        }
+
+        Log.d(TAG, "所有数据片段发送完成: " + transfer.id + ", UUID=" + transfer.characteristicUuid);
+        reportTransferProgress(transfer, true);
+        notifyWebView("onWriteCompleted",
+                String.format("{\"address\":\"%s\",\"uuid\":\"%s\",\"status\":\"success\",\"chunked\":true,"
+                                + "\"transferId\":\"%s\"%s,\"totalChunks\":%d,\"chunkSize\":%d,\"mtu\":%d}",
+                        connection.address, transfer.characteristicUuid, transfer.id, writeIdField(transfer),
+                        transfer.chunksSent(), connection.getMaxWritePayloadSize(), connection.negotiatedMtu),
+                connection.address);
+
+        // 写入完成后处理通知启用等操作
+        handleWriteCompletion(connection, characteristic);
+        continueQueuedWrites(transfer);
+    }
+
+    /**
+     * 片段写入失败时只重发该片段，重发次数用完后传输失败
+     */
+    private void retryTransferChunk(GattConnection connection, ChunkedTransfer transfer, String reason) {
+        if (connection.gatt == null) {
+            // 连接已断开，由重连后的续传处理
+            return;
+        }
+        if (transfer.retryChunk(MAX_CHUNK_RETRIES)) {
+            Log.w(TAG, reason + "，从偏移" + transfer.acknowledgedOffset() + "重发: " + transfer.id);
+            bleHandler.postDelayed(() -> sendTransferChunk(connection, transfer),
+                    connection.tuning.chunkIntervalMs());
+            return;
+        }
+        Log.e(TAG, reason + "，重发次数已用完: " + transfer.id);
+        failTransfer(transfer, reason);
+    }
+
+    private void failTransfer(ChunkedTransfer transfer, String reason) {
+        finishTransfer(transfer, ChunkedTransfer.State.FAILED);
+        notifyWebView("onWriteCompleted",
+                String.format("{\"address\":\"%s\",\"uuid\":\"%s\",\"status\":\"failed\",\"transferId\":\"%s\"%s,"
+                                + "\"sent\":%d}",
+                        transfer.address, transfer.characteristicUuid, transfer.id, writeIdField(transfer),
+                        transfer.acknowledgedOffset()),
+                transfer.address);
+        notifyWebView("onBluetoothError", reason, transfer.address);
+    }
+
+    private void finishTransfer(ChunkedTransfer transfer, ChunkedTransfer.State state) {
+        transfer.finish(state);
+        reportTransferProgress(transfer, true);
+        continueQueuedWrites(transfer);
+    }
+
+    /**
+     * 上报传输进度，非强制上报时按 transferProgressRate 节流
+     */
+    private void reportTransferProgress(ChunkedTransfer transfer, boolean force) {
+        long minInterval = force ? 0 : 1000 / transferProgressRate;
+        if (transfer.shouldReportProgress(SystemClock.elapsedRealtime(), minInterval)) {
+            notifyWebView("onTransferProgress", transfer.toJson(), transfer.address);
+        }
+    }
+
+    private ChunkedTransfer findActiveTransfer(String address, String uuid) {
+        for (ChunkedTransfer transfer : transfers.values()) {
+            if (transfer.isActive() && transfer.address.equals(address)
+                    && transfer.characteristicUuid.equalsIgnoreCase(uuid)) {
+                return transfer;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 连接断开时暂停该设备的传输，保留已确认的偏移
+     */
+    private void pauseTransfers(String address) {
+        long now = SystemClock.elapsedRealtime();
+        for (ChunkedTransfer transfer : transfers.values()) {
+            if (transfer.address.equals(address) && transfer.state() == ChunkedTransfer.State.RUNNING) {
+                transfer.pause(now);
+                Log.i(TAG, "连接断开，传输已暂停于偏移" + transfer.acknowledgedOffset() + ": " + transfer.id);
+                reportTransferProgress(transfer, true);
+            }
+        }
+    }
+
+    /**
+     * 连接就绪后续传该设备暂停的传输
+     */
+    private void resumeTransfers(GattConnection connection) {
+        long now = SystemClock.elapsedRealtime();
+        for (ChunkedTransfer transfer : transfers.values()) {
+            if (!transfer.address.equals(connection.address) || transfer.state() != ChunkedTransfer.State.PAUSED) {
+                continue;
+            }
+            if (transfer.pauseExpired(now, TRANSFER_RESUME_WINDOW)) {
+                failTransfer(transfer, "断线时间过长，传输已取消");
+                continue;
+            }
+            Log.i(TAG, "从偏移" + transfer.acknowledgedOffset() + "续传: " + transfer.id);
+            transfer.resume();
+            reportTransferProgress(transfer, true);
+            sendTransferChunk(connection, transfer);
+        }
+    }
+
+    /**
+     * 清理超过续传窗口的暂停传输；记录过多时移除已结束的传输
+     */
+    private void pruneTransfers() {
+        long now = SystemClock.elapsedRealtime();
+        for (ChunkedTransfer transfer : transfers.values()) {
+            if (transfer.pauseExpired(now, TRANSFER_RESUME_WINDOW)) {
+                failTransfer(transfer, "断线时间过长，传输已取消");
+            }
+        }
+        if (transfers.size() >= MAX_TRANSFER_RECORDS) {
+            transfers.values().removeIf(transfer -> !transfer.isActive());
+        }
+    }
+
+    /**
+     * 将单次写入加入GATT操作队列
+     * 单次写入通常是交互命令，以高优先级执行
+     */
+    private void enqueueSingleWrite(GattConnection connection, BluetoothGattCharacteristic characteristic,
+                                    OutboundWriteQueue queue, OutboundWriteQueue.Packet packet) {
+        String uuid = characteristic.getUuid().toString();
+        connection.operationQueue.enqueue(new GattOperationQueue.Operation(
+                GattOperationQueue.Type.WRITE_CHARACTERISTIC, GattOperationQueue.Priority.HIGH,
+                uuid, connection.tuning.operationTimeoutMs()) {
+            @Override
+            boolean execute() {
+                if (connection.gatt == null) {
+                    return false;
+                }
+                return issueWrite(connection, characteristic, packet.data);
+            }
+
+            @Override
+            void onComplete(int status) {
+                boolean success = status == BluetoothGatt.GATT_SUCCESS;
+                recordWriteResult(connection, uuid, success, elapsedMs());
+                notifyQueuedWriteResult(connection, uuid, queue.complete(), success);
+
+                if (!success) {
+                    notifyWebView("onBluetoothError", "写入失败，错误码: " + status, connection.address);
+                } else {
+                    // 写入成功后处理通知启用等操作
+                    handleWriteCompletion(connection, characteristic);
+                }
+                sendQueuedWrites(connection, characteristic);
+            }
+
+            @Override
+            void onRejected() {
+                metrics.recordWriteResult(connection.address, uuid, false, 0);
+                notifyQueuedWriteResult(connection, uuid, queue.complete(), false);
+                notifyWebView("onBluetoothError", "写入操作失败", connection.address);
+                sendQueuedWrites(connection, characteristic);
+            }
+
+            @Override
+            void onTimeout() {
+                recordWriteResult(connection, uuid, false, elapsedMs());
+                notifyQueuedWriteResult(connection, uuid, queue.complete(), false);
+                notifyWebView("onBluetoothError", "写入操作超时", connection.address);
+                sendQueuedWrites(connection, characteristic);
+            }
+        });
+    }
+
+    /**
+     * 向最近连接的设备批量写入多个特征值
+     *
+     * @param batchJson 批量写入内容，格式见{@link #writeBatch(String, String)}
+     * @return 批量写入ID
+     */
+    @JavascriptInterface
+    public String writeBatch(String batchJson) {
+        return writeBatch(lastMacAddress, batchJson);
+    }
+
+    /**
+     * 向指定设备按顺序批量写入多个特征值，结束时回调一次onBatchWriteCompleted
+     * [{"service":"..","characteristic":"..","value":"hex"},...]
+     * 或 {"mode":"auto","writes":[...]}，mode为auto时所有特征值的扩展属性描述符都声明支持可靠写入且单条数据
+     * 不超过MTU-5字节时使用可靠写入（整体提交或整体撤销），否则逐条带响应写入，遇到失败即停止。
+     * 可靠写入时逐条核对外设回显的值，不一致则撤销整个事务。
+     * 整个批量写入作为一个GATT队列操作执行，中间不会插入其他读写。
+     *
+     * @param address   设备MAC地址
+     * @param batchJson 批量写入内容，最多32条，每条最多512字节
+     * @return 批量写入ID，与回调中的batchId对应
+     */
+    @JavascriptInterface
+    public String writeBatch(String address, String batchJson) {
+        String batchId = "b" + batchSequence.incrementAndGet();
+        bleHandler.post(() -> {
+            long now = SystemClock.elapsedRealtime();
+            String normalized = normalizeAddress(address);
+            WriteBatch batch;
+            try {
+                batch = WriteBatch.fromJson(batchId, normalized, batchJson, now);
+            } catch (JSONException | IllegalArgumentException e) {
+                notifyWebView("onBluetoothError", "无效的批量写入: " + e.getMessage(), address);
+                return;
+            }
+            GattConnection connection = getConnection(normalized);
+            if (connection == null || connection.gatt == null) {
+                batch.fail(-1, GattOperationQueue.STATUS_REJECTED, "未连接到设备", now);
+                notifyWebView("onBatchWriteCompleted", batch.resultJson(), normalized);
+                return;
+            }
+
+            // 开始前解析全部特征值，任一不可用则整批不写
+            BluetoothGattCharacteristic[] characteristics = new BluetoothGattCharacteristic[batch.entries.size()];
+            boolean reliableCandidate = true;
+            for (int i = 0; i < characteristics.length; i++) {
+                WriteBatch.Entry entry = batch.entries.get(i);
+                BluetoothGattCharacteristic characteristic;
+                try {
+                    characteristic = findCharacteristic(connection, entry.serviceUuid, entry.characteristicUuid);
+                } catch (IllegalArgumentException e) {
+                    characteristic = null;
+                }
+                if (characteristic == null
+                        || (characteristic.getProperties() & BluetoothGattCharacteristic.PROPERTY_WRITE) == 0) {
+                    batch.fail(i, GattOperationQueue.STATUS_REJECTED, "特征值不存在或不支持带响应写入", now);
+                    notifyWebView("onBatchWriteCompleted", batch.resultJson(), connection.address);
+                    return;
+                }
+                if ((characteristic.getProperties() & BluetoothGattCharacteristic.PROPERTY_EXTENDED_PROPS) == 0
+                        || entry.value.length > connection.negotiatedMtu - 5) {
+                    reliableCandidate = false;
+                }
+                characteristics[i] = characteristic;
+            }
+            if (batch.requestedMode != WriteBatch.Mode.AUTO || !reliableCandidate) {
+                startBatchWrite(connection, batch, characteristics);
+                return;
+            }
+
+            // 扩展属性只说明有0x2900描述符，是否支持可靠写入要看描述符的Reliable Write位，未知的先读取
+            List<BluetoothGattCharacteristic> unknown = new ArrayList<>();
+            for (BluetoothGattCharacteristic characteristic : characteristics) {
+                if (!connection.reliableWriteSupport.containsKey(characteristic.getUuid().toString())
+                        && !unknown.contains(characteristic)) {
+                    unknown.add(characteristic);
+                }
+            }
+            readReliableWriteSupport(connection, unknown, () -> {
+                for (BluetoothGattCharacteristic characteristic : characteristics) {
+                    if (!Boolean.TRUE.equals(connection.reliableWriteSupport.get(characteristic.getUuid().toString()))) {
+                        startBatchWrite(connection, batch, characteristics);
+                        return;
                     }
                 }
+                batch.useMode(WriteBatch.Mode.RELIABLE);
+                startBatchWrite(connection, batch, characteristics);
+            });
+        });
+        return batchId;
+    }
 
-                @Override
-                public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
-                    String uuid = descriptor.getUuid().toString();
+    private void startBatchWrite(GattConnection connection, WriteBatch batch,
+                                 BluetoothGattCharacteristic[] characteristics) {
+        Log.i(TAG, "批量写入: " + batch.id + ", " + characteristics.length + "条, 方式=" + batch.mode());
+        enqueueBatchWrite(connection, batch, characteristics);
+    }
+
+    /**
+     * 依次读取特征值的扩展属性描述符，结果记录在reliableWriteSupport中，全部读完后执行done
+     * 没有描述符或读取失败的特征值按不支持可靠写入处理
+     */
+    private void readReliableWriteSupport(GattConnection connection, List<BluetoothGattCharacteristic> pending,
+                                          Runnable done) {
+        if (pending.isEmpty()) {
+            done.run();
+            return;
+        }
+        BluetoothGattCharacteristic characteristic = pending.remove(0);
+        String uuid = characteristic.getUuid().toString();
+        BluetoothGattDescriptor descriptor =
+                characteristic.getDescriptor(GattLayoutCache.uuid(EXTENDED_PROPERTIES_UUID));
+        if (descriptor == null) {
+            connection.reliableWriteSupport.put(uuid, false);
+            readReliableWriteSupport(connection, pending, done);
+            return;
+        }
+        connection.operationQueue.enqueue(new GattOperationQueue.Operation(
+                GattOperationQueue.Type.READ_DESCRIPTOR, GattOperationQueue.Priority.HIGH,
+                uuid, GATT_OPERATION_TIMEOUT) {
+            @Override
+            boolean execute() {
+                return connection.gatt != null && connection.gatt.readDescriptor(descriptor);
+            }
+
+            @Override
+            void onComplete(int status) {
+                // 结果已在onDescriptorRead中记录
+                readReliableWriteSupport(connection, pending, done);
+            }
+
+            @Override
+            void onRejected() {
+                connection.reliableWriteSupport.put(uuid, false);
+                readReliableWriteSupport(connection, pending, done);
+            }
+
+            @Override
+            void onTimeout() {
+                connection.reliableWriteSupport.put(uuid, false);
+                readReliableWriteSupport(connection, pending, done);
+            }
+
+            @Override
+            void onCancelled() {
+                // 连接已断开：批量写入随后被队列拒绝并回调失败
+                readReliableWriteSupport(connection, pending, done);
+            }
+        });
+    }
+
+    /**
+     * 将批量写入作为一个多步队列操作执行：依次写入各条目，可靠写入模式下最后提交事务
+     */
+    private void enqueueBatchWrite(GattConnection connection, WriteBatch batch,
+                                   BluetoothGattCharacteristic[] characteristics) {
+        boolean reliable = batch.mode() == WriteBatch.Mode.RELIABLE;
+        connection.operationQueue.enqueue(new GattOperationQueue.Operation(
+                GattOperationQueue.Type.WRITE_BATCH, GattOperationQueue.Priority.HIGH,
+                null, connection.tuning.operationTimeoutMs()) {
+            private long stepStart;
+
+            @Override
+            boolean accepts(GattOperationQueue.Type callbackType) {
+                return callbackType == GattOperationQueue.Type.WRITE_CHARACTERISTIC
+                        || callbackType == GattOperationQueue.Type.EXECUTE_RELIABLE_WRITE;
+            }
+
+            @Override
+            boolean execute() {
+                if (connection.gatt == null || (reliable && !connection.gatt.beginReliableWrite())) {
+                    return false;
+                }
+                return writeNext();
+            }
+
+            @Override
+            boolean proceed(GattOperationQueue.Type callbackType, int status) {
+                long now = SystemClock.elapsedRealtime();
+                if (callbackType == GattOperationQueue.Type.EXECUTE_RELIABLE_WRITE) {
                     if (status == BluetoothGatt.GATT_SUCCESS) {
-                        Log.d(TAG, "描述符写入成功: " + uuid);
-                        // 描述符写入成功后，尝试读取特征值
-                        BluetoothGattCharacteristic characteristic = descriptor.getCharacteristic();
-                        if (characteristic != null) {
-                            String charUuid = characteristic.getUuid().toString();
-                            Log.d(TAG, "尝试读取特征值: " + charUuid);
-                            boolean readResult = gatt.readCharacteristic(characteristic);
-                            if (!readResult) {
-                                Log.e(TAG, "读取特征值失败: " + charUuid);
-                            }
-                        }
+                        batch.commit(now);
                     } else {
-                        Log.e(TAG, "描述符写入失败，状态码: " + status + ", UUID: " + uuid);
+                        batch.fail(-1, status, "提交可靠写入失败", now);
                     }
+                    return false;
                 }
 
-                @Override
-                public void onCharacteristicChanged(BluetoothGatt gatt,
-                                                    BluetoothGattCharacteristic characteristic) {
-                    String uuid = characteristic.getUuid().toString();
-                    byte[] data = characteristic.getValue();
-
-                    // 将字节数组转换为十六进制字符串以便于显示
-                    StringBuilder hexStringBuilder = new StringBuilder();
-                    for (byte b : data) {
-                        hexStringBuilder.append(String.format("%02X", b));
+                int index = batch.nextIndex();
+                boolean success = status == BluetoothGatt.GATT_SUCCESS;
+                recordWriteResult(connection, characteristics[index].getUuid().toString(), success, now - stepStart);
+                if (!success) {
+                    failBatch(connection, batch, index, status, "写入失败，错误码: " + status);
+                    return false;
+                }
+                if (reliable && !Arrays.equals(connection.lastWriteValue, batch.entries.get(index).value)) {
+                    // 外设回显的值与发送的不一致，撤销整个事务
+                    failBatch(connection, batch, index, WriteBatch.STATUS_ECHO_MISMATCH, "可靠写入回显的值不一致");
+                    return false;
+                }
+                if (batch.acknowledge()) {
+                    if (writeNext()) {
+                        return true;
                     }
-                    String hexValue = hexStringBuilder.toString();
+                    failBatch(connection, batch, batch.nextIndex(), GattOperationQueue.STATUS_REJECTED, "写入操作失败");
+                    return false;
+                }
+                if (!reliable) {
+                    batch.commit(now);
+                    return false;
+                }
+                if (connection.gatt != null && connection.gatt.executeReliableWrite()) {
+                    return true;
+                }
+                failBatch(connection, batch, -1, GattOperationQueue.STATUS_REJECTED, "提交可靠写入失败");
+                return false;
+            }
 
-                    Log.d(TAG, "收到特征值变化: UUID=" + uuid + ", 值=" + hexValue);
+            @Override
+            void onComplete(int status) {
+                finishBatch(connection, batch);
+            }
 
-                    // 只有在通知开启的情况下才传递数据给WebView
-                    if (notificationsEnabled) {
-                        // 直接使用十六进制值，不尝试解析为文本
-                        notifyWebView("onCharacteristicChanged",
-                                String.format("{\"uuid\":\"%s\",\"value\":\"%s\",\"hexValue\":\"%s\"}",
-                                        uuid, hexValue, hexValue));
-                    } else {
-                        Log.d(TAG, "通知已关闭，不处理收到的数据");
-                    }
+            @Override
+            void onRejected() {
+                failBatch(connection, batch, batch.nextIndex(), GattOperationQueue.STATUS_REJECTED, "写入操作失败");
+                finishBatch(connection, batch);
+            }
+
+            @Override
+            void onTimeout() {
+                int index = batch.nextIndex() < characteristics.length ? batch.nextIndex() : -1;
+                failBatch(connection, batch, index, GattOperationQueue.STATUS_TIMEOUT, "写入操作超时");
+                finishBatch(connection, batch);
+            }
+
+            @Override
+            void onCancelled() {
+                batch.fail(batch.nextIndex(), GattOperationQueue.STATUS_REJECTED, "连接已断开",
+                        SystemClock.elapsedRealtime());
+                finishBatch(connection, batch);
+            }
+
+            /**
+             * 带响应写入下一条，恢复特征值原来的写入类型
+             */
+            private boolean writeNext() {
+                BluetoothGattCharacteristic characteristic = characteristics[batch.nextIndex()];
+                int originalWriteType = characteristic.getWriteType();
+                characteristic.setWriteType(BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT);
+                stepStart = SystemClock.elapsedRealtime();
+                boolean started = issueWrite(connection, characteristic, batch.entries.get(batch.nextIndex()).value);
+                characteristic.setWriteType(originalWriteType);
+                return started;
+            }
+        });
+    }
+
+    /**
+     * 记录批量写入失败，可靠写入模式下撤销已准备的写入
+     */
+    private void failBatch(GattConnection connection, WriteBatch batch, int index, int status, String error) {
+        batch.fail(index, status, error, SystemClock.elapsedRealtime());
+        if (batch.mode() == WriteBatch.Mode.RELIABLE && connection.gatt != null) {
+            try {
+                connection.gatt.abortReliableWrite();
+            } catch (SecurityException e) {
+                Log.e(TAG, "撤销可靠写入缺少权限: " + e.getMessage());
+            }
+        }
+    }
+
+    private void finishBatch(GattConnection connection, WriteBatch batch) {
+        Log.i(TAG, "批量写入结束: " + batch.id + ", 成功=" + batch.isCommitted() + ", 生效" + batch.applied()
+                + "/" + batch.entries.size());
+        notifyWebView("onBatchWriteCompleted", batch.resultJson(), connection.address);
+    }
+
+    /**
+     * 发起特征值写入，协议栈接受后计入发送统计
+     */
+    private boolean issueWrite(GattConnection connection, BluetoothGattCharacteristic characteristic, byte[] value) {
+        characteristic.setValue(value);
+        connection.reads.invalidate(characteristic.getUuid().toString());
+        boolean started = connection.gatt.writeCharacteristic(characteristic);
+        if (started) {
+            String uuid = characteristic.getUuid().toString();
+            metrics.recordWriteIssued(connection.address, uuid, value.length);
+            trafficRecorder.record(TrafficRecorder.WRITE, connection.address, uuid, 0,
+                    characteristic.getWriteType(), value);
+        }
+        return started;
+    }
+
+    /**
+     * 记录带响应写入的结果，同时用于性能统计和连接参数自适应
+     */
+    private void recordWriteResult(GattConnection connection, String uuid, boolean success, long latencyMs) {
+        metrics.recordWriteResult(connection.address, uuid, success, latencyMs);
+        connectionTuner.recordWrite(connection.tuning, success, latencyMs);
+    }
+
+    /**
+     * 写入完成后的通用处理逻辑：确保按订阅策略需要的特征值已开启通知
+     */
+    private void handleWriteCompletion(GattConnection connection, BluetoothGattCharacteristic characteristic) {
+        int properties = characteristic.getProperties();
+        String uuid = characteristic.getUuid().toString();
+        boolean notifiable = (properties & BluetoothGattCharacteristic.PROPERTY_NOTIFY) > 0;
+
+        // 写入成功后，确保需要订阅的特征值已启用通知
+        if (notifiable && subscriptionsFor(connection.address).isWanted(uuid, true)) {
+            Boolean enabled = connection.characteristicNotificationEnabled.get(uuid);
+            if (enabled == null || !enabled) {
+                Log.d(TAG, "重新启用通知: " + uuid);
+                enableNotification(connection, characteristic);
+            }
+        }
+    }
+
+    /**
+     * 开启特征值通知，并将CCCD描述符写入加入GATT操作队列
+     *
+     * @param connection     设备连接
+     * @param characteristic 特征值
+     */
+    private void enableNotification(GattConnection connection, BluetoothGattCharacteristic characteristic) {
+        enableNotification(connection, characteristic, false);
+    }
+
+    /**
+     * 开启特征值通知
+     *
+     * @param subscribing 是否属于连接建立的订阅阶段，是则在CCCD写入结束时推进连接状态
+     * @return 是否已将CCCD写入加入队列
+     */
+    private boolean enableNotification(GattConnection connection, BluetoothGattCharacteristic characteristic,
+                                       boolean subscribing) {
+        String uuid = characteristic.getUuid().toString();
+        if (connection.gatt == null) {
+            return false;
+        }
+
+        // 先设置通知（仅修改本地状态，不占用GATT操作）
+        boolean success = connection.gatt.setCharacteristicNotification(characteristic, true);
+        if (!success) {
+            Log.e(TAG, "开启通知失败: " + uuid);
+            subscriptionFailed(connection, characteristic);
+            return false;
+        }
+        Log.d(TAG, "开启通知成功: " + uuid);
+        connection.characteristicNotificationEnabled.put(uuid, true);
+
+        // 写入客户端特征值配置描述符，只支持指示的特征值写入指示值
+        BluetoothGattDescriptor descriptor = characteristic.getDescriptor(GattLayoutCache.uuid(CCCD_UUID));
+        if (descriptor == null) {
+            Log.e(TAG, "未找到CCCD描述符: " + uuid);
+            subscriptionFailed(connection, characteristic);
+            return false;
+        }
+        boolean notifiable = (characteristic.getProperties() & BluetoothGattCharacteristic.PROPERTY_NOTIFY) > 0;
+        byte[] cccdValue = notifiable ? BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE
+                : BluetoothGattDescriptor.ENABLE_INDICATION_VALUE;
+
+        Log.d(TAG, "找到CCCD描述符: " + uuid);
+        connection.operationQueue.enqueue(new GattOperationQueue.Operation(
+                GattOperationQueue.Type.WRITE_DESCRIPTOR, GattOperationQueue.Priority.NORMAL,
+                uuid, GATT_OPERATION_TIMEOUT) {
+            @Override
+            boolean execute() {
+                if (connection.gatt == null) {
+                    return false;
                 }
+                descriptor.setValue(cccdValue);
+                return connection.gatt.writeDescriptor(descriptor);
+            }
 
-                @Override
-                public void onCharacteristicWrite(BluetoothGatt gatt,
-                                                  BluetoothGattCharacteristic characteristic,
-                                                  int status) {
-                    // 移除写入超时
-                    mainHandler.removeCallbacksAndMessages(null);
+            @Override
+            void onComplete(int status) {
+                if (subscribing) {
+                    onSubscriptionSettled(connection);
+                }
+                if (status != BluetoothGatt.GATT_SUCCESS) {
+                    Log.e(TAG, "描述符写入失败，状态码: " + status + ", UUID: " + uuid);
+                    subscriptionFailed(connection, characteristic);
+                    return;
+                }
 
-                    String uuid = characteristic.getUuid().toString();
-                    String result = status == BluetoothGatt.GATT_SUCCESS ? "success" : "failed";
-                    Log.d(TAG, "写入特征值完成: UUID=" + uuid + ", 状态=" + result);
+                Log.d(TAG, "写入CCCD描述符成功: " + uuid);
+                connection.activeSubscriptions.add(uuid);
+                notifySubscription(connection.address, uuid, "ready", characteristic);
+                // 描述符写入成功后，尝试读取特征值
+                if ((characteristic.getProperties() & BluetoothGattCharacteristic.PROPERTY_READ) > 0) {
+                    Log.d(TAG, "尝试读取特征值: " + uuid);
+                    enqueueRead(connection, characteristic, GattOperationQueue.Priority.NORMAL, null);
+                }
+            }
+
+            @Override
+            void onRejected() {
+                Log.e(TAG, "写入CCCD描述符失败: " + uuid);
+                if (subscribing) {
+                    onSubscriptionSettled(connection);
+                }
+                subscriptionFailed(connection, characteristic);
+            }
+
+            @Override
+            void onTimeout() {
+                Log.e(TAG, "写入CCCD描述符超时: " + uuid);
+                if (subscribing) {
+                    onSubscriptionSettled(connection);
+                }
+                subscriptionFailed(connection, characteristic);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * CCCD写入失败，允许之后再次订阅
+     */
+    private void subscriptionFailed(GattConnection connection, BluetoothGattCharacteristic characteristic) {
+        String uuid = characteristic.getUuid().toString();
+        connection.characteristicNotificationEnabled.put(uuid, false);
+        notifySubscription(connection.address, uuid, "failed", characteristic);
+    }
 
-                    // 处理分片发送回调，检查是否有待发送的数据片段
-                    if (status == BluetoothGatt.GATT_SUCCESS && chunkedWriteData.containsKey(uuid)) {
-                        ChunkedWriteData writeData = chunkedWriteData.get(uuid);
-                        int nextIndex = writeData.currentIndex + 1;
+    /**
+     * 关闭特征值通知并写入CCCD，结束后回调unsubscribed
+     */
+    private void disableNotification(GattConnection connection, BluetoothGattCharacteristic characteristic) {
+        String uuid = characteristic.getUuid().toString();
+        connection.characteristicNotificationEnabled.remove(uuid);
+        if (connection.gatt == null) {
+            return;
+        }
+        connection.gatt.setCharacteristicNotification(characteristic, false);
+        BluetoothGattDescriptor descriptor = characteristic.getDescriptor(GattLayoutCache.uuid(CCCD_UUID));
+        if (descriptor == null) {
+            connection.activeSubscriptions.remove(uuid);
+            notifySubscription(connection.address, uuid, "unsubscribed", characteristic);
+            return;
+        }
+        connection.operationQueue.enqueue(new GattOperationQueue.Operation(
+                GattOperationQueue.Type.WRITE_DESCRIPTOR, GattOperationQueue.Priority.NORMAL,
+                uuid, GATT_OPERATION_TIMEOUT) {
+            @Override
+            boolean execute() {
+                if (connection.gatt == null) {
+                    return false;
+                }
+                descriptor.setValue(BluetoothGattDescriptor.DISABLE_NOTIFICATION_VALUE);
+                return connection.gatt.writeDescriptor(descriptor);
+            }
 
-                        // 如果还有下一片段，延迟一小段时间后发送
-                        if (nextIndex < writeData.chunks.size()) {
-                            writeData.currentIndex = nextIndex;
+            @Override
+            void onComplete(int status) {
+                // 本地已不再接收通知，外设侧写入失败只记录日志
+                if (status != BluetoothGatt.GATT_SUCCESS) {
+                    Log.w(TAG, "关闭通知的描述符写入失败，状态码: " + status + ", UUID: " + uuid);
+                }
+                connection.activeSubscriptions.remove(uuid);
+                notifySubscription(connection.address, uuid, "unsubscribed", characteristic);
+            }
 
-                            // 延迟一定时间后发送下一片，避免设备处理不过来
-                            mainHandler.postDelayed(() -> {
-                                sendNextChunk(characteristic, writeData.chunks,
-                                        nextIndex, writeData.totalChunks, uuid);
-                            }, 50); // 50ms延迟
+            @Override
+            void onTimeout() {
+                onComplete(GattOperationQueue.STATUS_TIMEOUT);
+            }
+        });
+    }
+
+    /**
+     * 回调onSubscriptionChanged
+     *
+     * @param state pending（已登记，连接就绪后订阅）、ready、failed、unsubscribed
+     */
+    private void notifySubscription(String address, String uuid, String state,
+                                    BluetoothGattCharacteristic characteristic) {
+        boolean notifiable = characteristic != null
+                && (characteristic.getProperties() & BluetoothGattCharacteristic.PROPERTY_NOTIFY) > 0;
+        notifyWebView("onSubscriptionChanged",
+                String.format("{\"address\":\"%s\",\"uuid\":\"%s\",\"state\":\"%s\",\"refCount\":%d}",
+                        address, uuid, state, subscriptionsFor(address).referenceCount(uuid, notifiable)),
+                address);
+    }
+
+    private SubscriptionRegistry subscriptionsFor(String address) {
+        SubscriptionRegistry registry = subscriptions.get(address);
+        if (registry == null) {
+            registry = new SubscriptionRegistry();
+            subscriptions.put(address, registry);
+        }
+        return registry;
+    }
+
+    /**
+     * 订阅最近连接设备特征值的通知
+     */
+    @JavascriptInterface
+    public void subscribe(String serviceUUID, String characteristicUUID) {
+        subscribe(lastMacAddress, serviceUUID, characteristicUUID);
+    }
+
+    /**
+     * 订阅特征值的通知（不支持通知时使用指示），增加一个引用
+     * CCCD写入完成后回调onSubscriptionChanged，state为ready；已订阅时立即回调。
+     * 设备尚未连接或服务尚未发现时只登记引用（state为pending），服务发现后自动订阅
+     */
+    @JavascriptInterface
+    public void subscribe(String address, String serviceUUID, String characteristicUUID) {
+        if (postToBleThread(() -> subscribe(address, serviceUUID, characteristicUUID))) {
+            return;
+        }
+        String normalized = normalizeAddress(address);
+        if (normalized == null) {
+            notifyWebView("onBluetoothError", "无效的MAC地址", address);
+            return;
+        }
+        SubscriptionRegistry registry = subscriptionsFor(normalized);
+        GattConnection connection = connections.get(normalized);
+        try {
+            if (connection == null || connection.gatt == null || connection.characteristicIndex == null) {
+                String uuid = UUID.fromString(characteristicUUID).toString();
+                registry.acquire(uuid);
+                notifySubscription(normalized, uuid, "pending", null);
+                return;
+            }
+
+            BluetoothGattCharacteristic characteristic =
+                    findCharacteristic(connection, serviceUUID, characteristicUUID);
+            if (characteristic == null) {
+                return;
+            }
+            if ((characteristic.getProperties() & (BluetoothGattCharacteristic.PROPERTY_NOTIFY
+                    | BluetoothGattCharacteristic.PROPERTY_INDICATE)) == 0) {
+                notifyWebView("onBluetoothError", "该特征值不支持通知", normalized);
+                return;
+            }
+            String uuid = characteristic.getUuid().toString();
+            registry.acquire(uuid);
+            if (connection.activeSubscriptions.contains(uuid)) {
+                notifySubscription(normalized, uuid, "ready", characteristic);
+            } else if (!Boolean.TRUE.equals(connection.characteristicNotificationEnabled.get(uuid))) {
+                enableNotification(connection, characteristic);
+            }
+            // 否则CCCD写入进行中，完成时回调
+        } catch (IllegalArgumentException | NullPointerException e) {
+            notifyWebView("onBluetoothError", "无效的UUID格式", normalized);
+        }
+    }
+
+    /**
+     * 取消最近连接设备特征值的订阅
+     */
+    @JavascriptInterface
+    public void unsubscribe(String serviceUUID, String characteristicUUID) {
+        unsubscribe(lastMacAddress, serviceUUID, characteristicUUID);
+    }
+
+    /**
+     * 释放一个订阅引用，引用归零且订阅策略不要求时关闭通知
+     */
+    @JavascriptInterface
+    public void unsubscribe(String address, String serviceUUID, String characteristicUUID) {
+        if (postToBleThread(() -> unsubscribe(address, serviceUUID, characteristicUUID))) {
+            return;
+        }
+        String normalized = normalizeAddress(address);
+        SubscriptionRegistry registry = normalized == null ? null : subscriptions.get(normalized);
+        if (registry == null) {
+            return;
+        }
+        String uuid;
+        try {
+            uuid = UUID.fromString(characteristicUUID).toString();
+        } catch (IllegalArgumentException | NullPointerException e) {
+            notifyWebView("onBluetoothError", "无效的UUID格式", normalized);
+            return;
+        }
+        registry.release(uuid);
+
+        GattConnection connection = connections.get(normalized);
+        if (connection == null || connection.gatt == null || connection.characteristicIndex == null) {
+            return;
+        }
+        BluetoothGattCharacteristic characteristic =
+                findCharacteristic(connection, serviceUUID, characteristicUUID);
+        if (characteristic == null) {
+            return;
+        }
+        boolean notifiable = (characteristic.getProperties() & BluetoothGattCharacteristic.PROPERTY_NOTIFY) > 0;
+        if (registry.isWanted(uuid, notifiable)) {
+            // 仍有其他引用
+            notifySubscription(normalized, uuid, "ready", characteristic);
+        } else if (connection.characteristicNotificationEnabled.containsKey(uuid)) {
+            disableNotification(connection, characteristic);
+        }
+    }
+
+    /**
+     * 将特征值读取加入GATT操作队列，结果在onCharacteristicRead中处理
+     * 同一特征值已有读取进行中时只登记请求ID，不重复发起
+     *
+     * @param requestId 需要单独应答的请求ID，内部读取为null
+     */
+    private void enqueueRead(GattConnection connection, BluetoothGattCharacteristic characteristic,
+                             GattOperationQueue.Priority priority, String requestId) {
+        String uuid = characteristic.getUuid().toString();
+        if (!connection.reads.join(uuid, requestId)) {
+            Log.d(TAG, "合并到进行中的读取: " + uuid);
+            return;
+        }
+        connection.operationQueue.enqueue(new GattOperationQueue.Operation(
+                GattOperationQueue.Type.READ_CHARACTERISTIC, priority, uuid, GATT_OPERATION_TIMEOUT) {
+            @Override
+            boolean execute() {
+                return connection.gatt != null && connection.gatt.readCharacteristic(characteristic);
+            }
+
+            @Override
+            void onRejected() {
+                Log.e(TAG, "读取特征值失败: " + uuid);
+                failRead(connection, uuid, "读取特征值失败");
+            }
+
+            @Override
+            void onTimeout() {
+                Log.e(TAG, "读取特征值超时: " + uuid);
+                failRead(connection, uuid, "读取特征值超时");
+            }
+
+            @Override
+            void onCancelled() {
+                failRead(connection, uuid, "连接已断开");
+            }
+        });
+    }
+
+    /**
+     * 读取未完成，通知所有等待该特征值的请求
+     */
+    private void failRead(GattConnection connection, String uuid, String error) {
+        for (String requestId : connection.reads.complete(uuid, null, SystemClock.elapsedRealtime())) {
+            notifyReadFailed(connection.address, uuid, requestId, error);
+        }
+    }
+
+    /**
+     * 向最近连接的设备分片发送大数据，返回传输ID
+     *
+     * @param serviceUUID        服务UUID
+     * @param characteristicUUID 特征值UUID
+     * @param hexString          十六进制字符串
+     * @return 传输ID
+     */
+    @JavascriptInterface
+    public String startTransfer(String serviceUUID, String characteristicUUID, String hexString) {
+        return startTransfer(lastMacAddress, serviceUUID, characteristicUUID, hexString);
+    }
+
+    /**
+     * 向指定设备分片发送大数据，返回传输ID
+     * 进度通过onTransferProgress节流回调，结束时回调onWriteCompleted；
+     * 失败的片段单独重发，连接意外断开后保留已确认的偏移，重连就绪后自动续传
+     *
+     * @param address            设备MAC地址
+     * @param serviceUUID        服务UUID
+     * @param characteristicUUID 特征值UUID
+     * @param hexString          十六进制字符串
+     * @return 传输ID，可用于getTransfer和cancelTransfer
+     */
+    @JavascriptInterface
+    public String startTransfer(String address, String serviceUUID, String characteristicUUID, String hexString) {
+        String transferId = nextTransferId();
+        bleHandler.post(() -> {
+            GattConnection connection = getConnection(address);
+            if (connection == null || connection.gatt == null) {
+                notifyWebView("onBluetoothError", "未连接到设备", address);
+                return;
+            }
+
+            try {
+                BluetoothGattCharacteristic characteristic =
+                        findWritableCharacteristic(connection, serviceUUID, characteristicUUID);
+                if (characteristic == null) {
+                    return;
+                }
+
+                byte[] dataBytes = HexCodec.decode(hexString);
+                if (dataBytes.length == 0) {
+                    notifyWebView("onBluetoothError", "无效的十六进制字符串", connection.address);
+                    return;
+                }
+
+                startTransfer(connection, characteristic, dataBytes, transferId);
+            } catch (IllegalArgumentException e) {
+                notifyWebView("onBluetoothError", "无效的参数: " + e.getMessage(), connection.address);
+            } catch (SecurityException e) {
+                notifyWebView("onBluetoothError", "缺少必要的蓝牙权限", connection.address);
+            }
+        });
+        return transferId;
+    }
+
+    /**
+     * 查询分片传输的状态
+     *
+     * @return JSON对象，包含transferId、state、sent、total、percent等；传输不存在时返回null
+     */
+    @JavascriptInterface
+    public String getTransfer(String transferId) {
+        ChunkedTransfer transfer = transferId == null ? null : transfers.get(transferId);
+        return transfer == null ? null : transfer.toJson();
+    }
+
+    /**
+     * 取消分片传输，已发送的片段不会撤回
+     */
+    @JavascriptInterface
+    public void cancelTransfer(String transferId) {
+        if (postToBleThread(() -> cancelTransfer(transferId))) {
+            return;
+        }
+        ChunkedTransfer transfer = transferId == null ? null : transfers.get(transferId);
+        if (transfer == null || !transfer.isActive()) {
+            return;
+        }
+        Log.i(TAG, "传输已取消: " + transferId);
+        finishTransfer(transfer, ChunkedTransfer.State.CANCELLED);
+        notifyWebView("onWriteCompleted",
+                String.format("{\"address\":\"%s\",\"uuid\":\"%s\",\"status\":\"cancelled\",\"transferId\":\"%s\"%s,"
+                                + "\"sent\":%d}",
+                        transfer.address, transfer.characteristicUuid, transfer.id, writeIdField(transfer),
+                        transfer.acknowledgedOffset()),
+                transfer.address);
+    }
+
+    /**
+     * 设置分片传输的进度上报频率，开始、暂停、续传和结束时总会上报
+     *
+     * @param perSecond 每秒最多上报次数，范围1-60
+     */
+    @JavascriptInterface
+    public void setTransferProgressRate(int perSecond) {
+        transferProgressRate = Math.max(1, Math.min(perSecond, 60));
+    }
+
+    /**
+     * 以流式方式（无响应写入）发送十六进制数据，适用于大批量传输
+     * 特征值不支持无响应写入时自动退回普通分片发送
+     *
+     * @param serviceUUID        服务UUID
+     * @param characteristicUUID 特征值UUID
+     * @param hexString          十六进制字符串
+     */
+    @JavascriptInterface
+    public void writeRawHexDataStream(String serviceUUID, String characteristicUUID, String hexString) {
+        writeRawHexDataStream(lastMacAddress, serviceUUID, characteristicUUID, hexString);
+    }
+
+    /**
+     * 以流式方式（无响应写入）向指定设备发送十六进制数据
+     *
+     * @param address            设备MAC地址
+     * @param serviceUUID        服务UUID
+     * @param characteristicUUID 特征值UUID
+     * @param hexString          十六进制字符串
+     */
+    @JavascriptInterface
+    public void writeRawHexDataStream(String address, String serviceUUID, String characteristicUUID,
+                                      String hexString) {
+        if (postToBleThread(() -> writeRawHexDataStream(address, serviceUUID, characteristicUUID, hexString))) {
+            return;
+        }
+        GattConnection connection = getConnection(address);
+        if (connection == null || connection.gatt == null) {
+            notifyWebView("onBluetoothError", "未连接到设备", address);
+            return;
+        }
+
+        try {
+            BluetoothGattCharacteristic characteristic =
+                    findWritableCharacteristic(connection, serviceUUID, characteristicUUID);
+            if (characteristic == null) {
+                return;
+            }
+
+            byte[] dataBytes = HexCodec.decode(hexString);
+            if (dataBytes.length == 0) {
+                notifyWebView("onBluetoothError", "无效的十六进制字符串", connection.address);
+                return;
+            }
+
+            int properties = characteristic.getProperties();
+            if ((properties & BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE) == 0) {
+                Log.w(TAG, "特征值不支持无响应写入，退回分片发送: " + characteristicUUID);
+                writeBytes(connection, characteristic, dataBytes, nextWriteId(), "正在发送十六进制数据...");
+                return;
+            }
+
+            startStreamWrite(connection, characteristic, dataBytes, false);
+        } catch (IllegalArgumentException e) {
+            notifyWebView("onBluetoothError", "无效的参数: " + e.getMessage(), connection.address);
+        } catch (SecurityException e) {
+            notifyWebView("onBluetoothError", "缺少必要的蓝牙权限", connection.address);
+        } catch (Exception e) {
+            notifyWebView("onBluetoothError", "发送数据出错: " + e.getMessage(), connection.address);
+        }
+    }
+
+    /**
+     * 开始流式发送，特征值必须支持无响应写入
+     *
+     * @param probe 是否为吞吐量探测，结束时额外回调onThroughputProbe
+     */
+    private void startStreamWrite(GattConnection connection, BluetoothGattCharacteristic characteristic,
+                                  byte[] dataBytes, boolean probe) {
+        String uuid = characteristic.getUuid().toString();
+        OutboundWriteQueue queue = connection.writeQueues.get(uuid);
+        if (connection.streamWriteData.containsKey(uuid)
+                || findActiveTransfer(connection.address, uuid) != null
+                || (queue != null && queue.isBusy())) {
+            notifyWebView("onBluetoothError", "该特征值已有数据正在发送", connection.address);
+            return;
+        }
+
+        GattConnection.StreamWriteData stream = new GattConnection.StreamWriteData();
+        stream.characteristic = characteristic;
+        stream.data = dataBytes;
+        stream.chunkSize = connection.getMaxWritePayloadSize();
+        stream.originalWriteType = characteristic.getWriteType();
+        stream.startTime = SystemClock.elapsedRealtime();
+        stream.probe = probe;
+        connection.streamWriteData.put(uuid, stream);
+
+        Log.d(TAG, "开始流式发送: " + dataBytes.length + "字节，每包" + stream.chunkSize + "字节");
+        notifyWebView("onBluetoothStateChange",
+                String.format(probe ? "开始吞吐量探测: %d字节" : "开始流式发送: %d字节", dataBytes.length),
+                connection.address);
+
+        characteristic.setWriteType(BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE);
+        sendNextStreamPacket(connection, uuid, stream);
+    }
+
+    /**
+     * 发送流式传输的下一个数据包
+     * 不使用固定延时：协议栈接收数据包后立即回调onCharacteristicWrite，随即发送下一包；
+     * 协议栈缓冲区已满时writeCharacteristic返回false，短暂等待后重试
+     */
+    private void sendNextStreamPacket(GattConnection connection, String uuid,
+                                      GattConnection.StreamWriteData stream) {
+        if (connection.gatt == null || connection.streamWriteData.get(uuid) != stream) {
+            Log.d(TAG, "流式发送已结束或连接已断开");
+            return;
+        }
+
+        markBulkActivity(connection);
+        int length = Math.min(stream.chunkSize, stream.data.length - stream.offset);
+        byte[] packet = new byte[length];
+        System.arraycopy(stream.data, stream.offset, packet, 0, length);
+
+        connection.operationQueue.enqueue(new GattOperationQueue.Operation(
+                GattOperationQueue.Type.WRITE_CHARACTERISTIC, GattOperationQueue.Priority.BULK,
+                uuid, STREAM_STALL_TIMEOUT) {
+            @Override
+            boolean execute() {
+                if (connection.gatt == null) {
+                    return false;
+                }
+                return issueWrite(connection, stream.characteristic, packet);
+            }
+
+            @Override
+            void onComplete(int status) {
+                metrics.recordWriteResult(connection.address, uuid, status == BluetoothGatt.GATT_SUCCESS, elapsedMs());
+                stream.busyRetries = 0;
+                stream.pendingLength = length;
+                handleStreamPacketWritten(connection, uuid, stream, status);
+            }
+
+            @Override
+            void onRejected() {
+                // 协议栈缓冲区已满或上一包尚未交给控制器，等待空间后重试
+                if (connection.streamWriteData.get(uuid) != stream) {
+                    return;
+                }
+                if (++stream.busyRetries > STREAM_MAX_BUSY_RETRIES) {
+                    Log.e(TAG, "流式发送失败，协议栈持续繁忙: " + uuid);
+                    metrics.recordWriteResult(connection.address, uuid, false, 0);
+                    finishStreamWrite(connection, uuid, stream, false);
+                    notifyWebView("onBluetoothError", "流式发送失败", connection.address);
+                    return;
+                }
+                bleHandler.postDelayed(() -> sendNextStreamPacket(connection, uuid, stream),
+                        STREAM_BUSY_RETRY_DELAY);
+            }
+
+            @Override
+            void onTimeout() {
+                Log.e(TAG, "流式发送超时: " + uuid + ", 已发送" + stream.offset + "字节");
+                metrics.recordWriteResult(connection.address, uuid, false, elapsedMs());
+                finishStreamWrite(connection, uuid, stream, false);
+                notifyWebView("onBluetoothError", "流式发送超时", connection.address);
+            }
+        });
+    }
+
+    /**
+     * 处理流式发送中数据包被协议栈接收的回调
+     */
+    private void handleStreamPacketWritten(GattConnection connection, String uuid,
+                                           GattConnection.StreamWriteData stream, int status) {
+        if (status != BluetoothGatt.GATT_SUCCESS) {
+            Log.e(TAG, "流式发送数据包失败，状态码: " + status);
+            finishStreamWrite(connection, uuid, stream, false);
+            notifyWebView("onBluetoothError", "流式发送失败，错误码: " + status, connection.address);
+            return;
+        }
+
+        stream.offset += stream.pendingLength;
+        stream.pendingLength = 0;
+        stream.packetsSent++;
+
+        if (stream.offset < stream.data.length) {
+            sendNextStreamPacket(connection, uuid, stream);
+        } else {
+            finishStreamWrite(connection, uuid, stream, true);
+        }
+    }
+
+    /**
+     * 结束流式发送，恢复写入类型并上报吞吐量
+     */
+    private void finishStreamWrite(GattConnection connection, String uuid,
+                                   GattConnection.StreamWriteData stream, boolean success) {
+        connection.streamWriteData.remove(uuid);
+        stream.characteristic.setWriteType(stream.originalWriteType);
+
+        long elapsed = Math.max(1, SystemClock.elapsedRealtime() - stream.startTime);
+        long throughput = stream.offset * 1000L / elapsed;
+        Log.d(TAG, "流式发送结束: UUID=" + uuid + ", " + stream.offset + "/" + stream.data.length
+                + "字节, 耗时" + elapsed + "ms, 吞吐量" + throughput + "B/s");
+
+        notifyWebView("onWriteCompleted",
+                String.format("{\"address\":\"%s\",\"uuid\":\"%s\",\"status\":\"%s\",\"mode\":\"stream\",\"bytes\":%d,\"totalBytes\":%d,"
+                                + "\"packets\":%d,\"chunkSize\":%d,\"mtu\":%d,\"elapsedMs\":%d,\"throughput\":%d}",
+                        connection.address, uuid, success ? "success" : "failed", stream.offset,
+                        stream.data.length, stream.packetsSent, stream.chunkSize,
+                        connection.negotiatedMtu, elapsed, throughput),
+                connection.address);
+
+        if (stream.probe) {
+            if (success) {
+                connection.probeThroughput = throughput;
+            }
+            notifyWebView("onThroughputProbe",
+                    String.format("{\"address\":\"%s\",\"uuid\":\"%s\",\"status\":\"%s\",\"bytes\":%d,"
+                                    + "\"elapsedMs\":%d,\"throughput\":%d,\"link\":%s}",
+                            connection.address, uuid, success ? "success" : "failed", stream.offset, elapsed,
+                            throughput, connection.linkReport()),
+                    connection.address);
+        }
+
+        // 恢复写入类型后继续发送流式发送期间排队的写入
+        sendQueuedWrites(connection, stream.characteristic);
+    }
+
+    /**
+     * 统一MAC地址格式，连接池以大写地址为键
+     */
+    private String normalizeAddress(String address) {
+        return address == null ? null : address.trim().toUpperCase();
+    }
+
+    /**
+     * 获取连接池中的设备连接
+     *
+     * @param address 设备MAC地址，为null时返回null
+     */
+    private GattConnection getConnection(String address) {
+        String normalized = normalizeAddress(address);
+        return normalized == null ? null : connections.get(normalized);
+    }
+
+    /**
+     * 清理单个设备的连接并从连接池移除，不影响其他设备
+     */
+    private void cleanupConnection(GattConnection connection) {
+        // 清理GATT连接
+        if (connection.gatt != null) {
+            connection.gatt.close();
+            connection.gatt = null;
+        }
+
+        // 清理定时器
+        if (connection.connectTimeout != null) {
+            connection.connectTimeout.cancel();
+            connection.connectTimeout = null;
+        }
+        if (connection.retryRunnable != null) {
+            bleHandler.removeCallbacks(connection.retryRunnable);
+            connection.retryRunnable = null;
+        }
+        if (connection.idlePriorityRunnable != null) {
+            bleHandler.removeCallbacks(connection.idlePriorityRunnable);
+            connection.idlePriorityRunnable = null;
+        }
+        connection.phase = GattConnection.Phase.IDLE;
+
+        // 未完成的分片传输保留已确认的偏移，重连就绪后续传
+        pauseTransfers(connection.address);
+
+        // 分帧配置保留，丢弃未拼完的半帧
+        for (Map.Entry<String, FrameAssembler> entry : framers.entrySet()) {
+            if (entry.getKey().startsWith(connection.address + "|")) {
+                entry.getValue().reset();
+            }
+        }
+
+        failQueuedWrites(connection);
+
+        // 清理特征值和流式发送状态，取消队列中的GATT操作
+        connection.reset();
+
+        connections.remove(connection.address, connection);
+    }
+
+    /**
+     * 外设型号，用于区分自适应连接参数；取设备名称，无法获取时使用MAC地址
+     */
+    private String getDeviceModel(BluetoothDevice device) {
+        String name = null;
+        try {
+            name = device.getName();
+        } catch (SecurityException e) {
+            Log.e(TAG, "Security exception getting device name: " + e.getMessage());
+        }
+        return name != null && !name.isEmpty() ? name : normalizeAddress(device.getAddress());
+    }
+
+    private void connectToGattServer(BluetoothDevice device) {
+        Log.d(TAG, "Starting GATT connection process");
+
+        // 检查蓝牙状态
+        if (!isBluetoothEnabled()) {
+            Log.e(TAG, "Bluetooth is not enabled when trying to connect");
+            notifyWebView("onBluetoothError", "蓝牙未启用，请先启用蓝牙", device.getAddress());
+            return;
+        }
+
+        // 添加权限检查
+        if (!hasBluetoothPermissions()) {
+            Log.e(TAG, "Missing Bluetooth permissions");
+            notifyWebView("onBluetoothError", "缺少必要的蓝牙权限", device.getAddress());
+            return;
+        }
+
+        GattConnection connection = new GattConnection(normalizeAddress(device.getAddress()), bleHandler,
+                timeoutWheel);
+        connection.device = device;
+        connection.tuning = connectionTuner.profileFor(getDeviceModel(device));
+        connections.put(connection.address, connection);
+        connection.moveTo(GattConnection.Phase.CONNECTING);
+        openGatt(connection);
+    }
+
+    /**
+     * 发起一次GATT连接，连接建立的后续阶段由回调推进：
+     * CONNECTING → MTU → DISCOVERING → SUBSCRIBING → READY
+     */
+    private void openGatt(GattConnection connection) {
+        BluetoothDevice device = connection.device;
+        connection.connectionState = BluetoothProfile.STATE_CONNECTING;
+
+        // 设置连接超时 - 超时时间按该型号的历史连接耗时调整
+        long timeoutTime = connection.tuning.connectTimeoutMs(connection.retryCount == 0);
+        connection.attemptStartTime = SystemClock.elapsedRealtime();
+        Log.d(TAG, "Setting connection timeout to " + timeoutTime + "ms");
+
+        int attempt = connection.retryCount;
+        connection.connectTimeout = timeoutWheel.schedule(() -> bleHandler.post(() -> {
+            // 已连接、已取消或已进入下一次尝试时忽略
+            if (connection.phase != GattConnection.Phase.CONNECTING || connection.connectTimeout == null
+                    || connection.retryCount != attempt) {
+                return;
+            }
+            Log.e(TAG, "Connection timeout: " + connection.address);
+            connection.connectTimeout = null;
+            if (!retryConnection(connection)) {
+                notifyWebView("onBluetoothError", "连接超时，请确保设备在范围内且未被其他设备连接",
+                        connection.address);
+                disconnect(connection.address);
+            }
+        }), timeoutTime);
+
+        Log.i(TAG, "Attempting to connect to device: " + device.getAddress());
+        try {
+            connection.gatt = transport.connect(device, new GattTransport.Callback() {
+                @Override
+                public void onConnectionStateChange(GattTransport.Link link, int status, int newState) {
+                    if (link != connection.gatt) {
+                        // 已关闭或被重试替换的旧连接
+                        Log.d(TAG, "忽略旧连接的状态回调: " + connection.address);
+                        return;
+                    }
+                    trafficRecorder.record(TrafficRecorder.CONNECTION_STATE, connection.address, null, status,
+                            newState);
+                    if (status != BluetoothGatt.GATT_SUCCESS) {
+                        Log.e(TAG, "Connection state change error: " + status);
+                    }
+
+                    // 清除连接超时定时器
+                    if (connection.connectTimeout != null) {
+                        connection.connectTimeout.cancel();
+                        connection.connectTimeout = null;
+                    }
+
+                    if (newState == BluetoothProfile.STATE_CONNECTED) {
+                        Log.i(TAG, "Connected to GATT server: " + connection.address);
+                        connection.connectionState = BluetoothProfile.STATE_CONNECTED;
+                        connectionTuner.recordConnect(connection.tuning, true,
+                                SystemClock.elapsedRealtime() - connection.attemptStartTime);
+
+                        // 连接建立阶段使用高优先级加快MTU协商和服务发现，就绪后空闲时恢复均衡优先级
+                        setConnectionPriority(connection, BluetoothGatt.CONNECTION_PRIORITY_HIGH);
+                        requestPreferredPhy(connection);
+
+                        notifyWebView("onBluetoothConnected", connection.address, connection.address);
+
+                        // 连接建立后立即协商MTU，协商完成后在队列回调中发现服务
+                        connection.moveTo(GattConnection.Phase.MTU);
+                        enqueueMtuRequest(connection);
+                    } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
+                        Log.i(TAG, "Disconnected from GATT server. Status: " + status);
+                        Log.d(TAG, "Device " + connection.address + " disconnected, phase: " + connection.phase
+                                + ", retry count: " + connection.retryCount);
+                        GattConnection.Phase phase = connection.phase;
+                        boolean establishing = phase != GattConnection.Phase.READY
+                                && phase != GattConnection.Phase.CLOSING
+                                && phase != GattConnection.Phase.IDLE;
+                        // 连接建立过程中断开时按指数退避重试，已就绪后断开或主动断开不重试
+                        if (establishing && retryConnection(connection)) {
+                            return;
+                        }
+                        cleanupConnection(connection);
+                        if (establishing) {
+                            notifyWebView("onBluetoothError", "连接失败，状态码: " + status, connection.address);
+                        }
+                        notifyWebView("onBluetoothDisconnected", connection.address, connection.address);
+                    } else {
+                        Log.d(TAG, "Connection state changed to: " + newState);
+                    }
+                }
+
+                @Override
+                public void onMtuChanged(GattTransport.Link link, int mtu, int status) {
+                    trafficRecorder.record(TrafficRecorder.MTU_CHANGED, connection.address, null, status, mtu);
+                    if (status == BluetoothGatt.GATT_SUCCESS) {
+                        Log.d(TAG, "MTU changed to: " + mtu + ", device: " + connection.address);
+                        connection.mtuConfigured = true;
+                        // 防止设备返回异常值，限制在协议允许的范围内
+                        connection.negotiatedMtu = Math.max(DEFAULT_MTU, Math.min(mtu, MAX_MTU));
+                    } else {
+                        Log.e(TAG, "MTU change failed with status: " + status
+                                + ", fallback to default: " + DEFAULT_MTU);
+                        connection.negotiatedMtu = DEFAULT_MTU;
+                    }
+                    connection.operationQueue.complete(GattOperationQueue.Type.REQUEST_MTU, null, status);
+                }
+
+                @Override
+                public void onServicesDiscovered(GattTransport.Link link, int status) {
+                    trafficRecorder.record(TrafficRecorder.SERVICES_DISCOVERED, connection.address, null, status, 0);
+                    connection.operationQueue.complete(GattOperationQueue.Type.DISCOVER_SERVICES, null, status);
+                    if (status == BluetoothGatt.GATT_SUCCESS) {
+                        List<BluetoothGattService> gattServices = link.getServices();
+                        connection.characteristicIndex = GattLayoutCache.buildIndex(gattServices);
+
+                        List<String> services = new ArrayList<>();
+                        List<BluetoothGattCharacteristic> notifyCharacteristics = new ArrayList<>();
+                        for (BluetoothGattService service : gattServices) {
+                            String serviceUuid = service.getUuid().toString();
+                            services.add(serviceUuid);
+                            Log.d(TAG, "发现服务: " + serviceUuid);
+
+                            for (BluetoothGattCharacteristic characteristic : service.getCharacteristics()) {
+                                int properties = characteristic.getProperties();
+                                Log.d(TAG, "发现特征值: " + characteristic.getUuid() + ", 属性: " + properties);
+                                if ((properties & (BluetoothGattCharacteristic.PROPERTY_NOTIFY
+                                        | BluetoothGattCharacteristic.PROPERTY_INDICATE)) > 0) {
+                                    notifyCharacteristics.add(characteristic);
+                                }
+                            }
+                        }
+                        notifyWebView("onServicesDiscovered", String.join(",", services), connection.address);
+
+                        // CCCD回调同样经BLE线程投递，订阅计数会先于回调设置
+                        startSubscriptions(connection, notifyCharacteristics);
+                    } else {
+                        Log.e(TAG, "Service discovery failed with status: " + status);
+                        notifyWebView("onBluetoothError", "服务发现失败", connection.address);
+                        disconnect(connection.address);
+                    }
+                }
+
+                @Override
+                public void onDescriptorWrite(GattTransport.Link link, BluetoothGattDescriptor descriptor, int status) {
+                    BluetoothGattCharacteristic characteristic = descriptor.getCharacteristic();
+                    String charUuid = characteristic != null ? characteristic.getUuid().toString() : null;
+                    Log.d(TAG, "描述符写入回调: " + descriptor.getUuid() + ", 特征值: " + charUuid + ", 状态码: " + status);
+                    trafficRecorder.record(TrafficRecorder.DESCRIPTOR_WRITE, connection.address, charUuid, status, 0);
+                    // 后续读取由队列中的描述符操作发起
+                    connection.operationQueue.complete(GattOperationQueue.Type.WRITE_DESCRIPTOR, charUuid, status);
+                }
+
+                @Override
+                public void onCharacteristicChanged(GattTransport.Link link,
+                                                    BluetoothGattCharacteristic characteristic, byte[] data) {
+                    String uuid = characteristic.getUuid().toString();
+                    if (GattLayoutCache.SERVICE_CHANGED_UUID.equals(uuid)) {
+                        handleServiceChanged(connection);
+                        return;
+                    }
+                    long receivedAt = System.nanoTime();
+                    trafficRecorder.record(TrafficRecorder.NOTIFICATION, connection.address, uuid, 0, 0,
+                            data, 0, data == null ? 0 : data.length, receivedAt);
+                    metrics.recordNotification(connection.address, uuid, data == null ? 0 : data.length);
+                    connection.reads.invalidate(uuid);
+
+                    FrameAssembler framer = framers.isEmpty() ? null : framers.get(connection.address + "|" + uuid);
+                    if (framer != null) {
+                        // 配置了分帧：在原生层拼接，只投递完整的帧
+                        framer.feed(data, frame -> deliverNotification(connection, uuid, frame, true, receivedAt));
+                        return;
+                    }
+
+                    deliverNotification(connection, uuid, data == null ? new byte[0] : data, false, receivedAt);
+                }
+
+                @Override
+                public void onDescriptorRead(GattTransport.Link link, BluetoothGattDescriptor descriptor, byte[] value,
+                                             int status) {
+                    BluetoothGattCharacteristic characteristic = descriptor.getCharacteristic();
+                    String charUuid = characteristic != null ? characteristic.getUuid().toString() : null;
+                    if (charUuid != null && GattLayoutCache.uuid(EXTENDED_PROPERTIES_UUID).equals(descriptor.getUuid())) {
+                        // 扩展属性的bit0为Reliable Write
+                        connection.reliableWriteSupport.put(charUuid, status == BluetoothGatt.GATT_SUCCESS
+                                && value != null && value.length > 0 && (value[0] & 0x01) != 0);
+                    }
+                    connection.operationQueue.complete(GattOperationQueue.Type.READ_DESCRIPTOR, charUuid, status);
+                }
+
+                @Override
+                public void onServiceChanged(GattTransport.Link link) {
+                    handleServiceChanged(connection);
+                }
+
+                @Override
+                public void onPhyUpdate(GattTransport.Link link, int txPhy, int rxPhy, int status) {
+                    recordPhy(connection, txPhy, rxPhy, status);
+                }
+
+                @Override
+                public void onPhyRead(GattTransport.Link link, int txPhy, int rxPhy, int status) {
+                    recordPhy(connection, txPhy, rxPhy, status);
+                }
+
+                @Override
+                public void onConnectionUpdated(GattTransport.Link link, int interval, int latency, int timeout,
+                                                int status) {
+                    if (link != connection.gatt || status != BluetoothGatt.GATT_SUCCESS) {
+                        return;
+                    }
+                    connection.connectionInterval = interval;
+                    connection.peripheralLatency = latency;
+                    connection.supervisionTimeout = timeout;
+                    Log.d(TAG, "连接参数更新: " + connection.address + ", 间隔" + (interval * 1.25) + "ms, 延迟"
+                            + latency + ", 超时" + (timeout * 10) + "ms");
+                }
+
+                @Override
+                public void onCharacteristicWrite(GattTransport.Link link,
+                                                  BluetoothGattCharacteristic characteristic,
+                                                  byte[] value, int status) {
+                    String uuid = characteristic.getUuid().toString();
+                    String result = status == BluetoothGatt.GATT_SUCCESS ? "success" : "failed";
+                    Log.d(TAG, "写入特征值完成: UUID=" + uuid + ", 状态=" + result);
+                    trafficRecorder.record(TrafficRecorder.WRITE_ACK, connection.address, uuid, status, 0);
+                    connection.lastWriteValue = value;
+
+                    // 由当前队列操作处理结果（单次写入、分片或流式发送），并释放队列执行下一个操作
+                    connection.operationQueue.complete(GattOperationQueue.Type.WRITE_CHARACTERISTIC, uuid, status);
+                }
+
+                @Override
+                public void onReliableWriteCompleted(GattTransport.Link link, int status) {
+                    Log.d(TAG, "可靠写入提交完成, 状态码: " + status);
+                    connection.operationQueue.complete(GattOperationQueue.Type.EXECUTE_RELIABLE_WRITE, null, status);
+                }
+
+                @Override
+                public void onCharacteristicRead(GattTransport.Link link,
+                                                 BluetoothGattCharacteristic characteristic,
+                                                 byte[] data, int status) {
+                    String uuid = characteristic.getUuid().toString();
+                    trafficRecorder.record(TrafficRecorder.READ, connection.address, uuid, status, 0,
+                            status == BluetoothGatt.GATT_SUCCESS ? data : null);
+                    connection.operationQueue.complete(GattOperationQueue.Type.READ_CHARACTERISTIC, uuid, status);
+
+                    if (status == BluetoothGatt.GATT_SUCCESS) {
+                        metrics.recordRead(connection.address, uuid, data == null ? 0 : data.length);
+
+                        // 应答合并到本次读取的请求，并更新缓存
+                        byte[] value = data == null ? new byte[0] : data;
+                        for (String requestId : connection.reads.complete(uuid, value, SystemClock.elapsedRealtime())) {
+                            notifyReadResult(connection, uuid, requestId, value, false);
+                        }
+
+                        // 将字节数组转换为十六进制字符串以便于显示
+                        String hexValue = connection.hexCodec.encodeToString(data);
+
+                        // 尝试解析为UTF-8文本，如果失败则使用十六进制表示
+                        String textValue;
+                        try {
+                            textValue = new String(data, "UTF-8");
+                            // 检查是否为可打印字符，否则使用十六进制
+                            if (!isPrintableText(textValue)) {
+                                textValue = hexValue;
+                            }
+                        } catch (Exception e) {
+                            textValue = hexValue;
+                        }
+
+                        Log.d(TAG, "读取特征值成功: UUID=" + uuid + ", 值=" + hexValue);
+
+                        // 只有在通知开启的情况下才传递数据给WebView
+                        if (notificationsEnabled) {
+                            notifyWebView("onCharacteristicChanged",
+                                    String.format("{\"address\":\"%s\",\"uuid\":\"%s\",\"value\":\"%s\",\"hexValue\":\"%s\"}",
+                                            connection.address, uuid, textValue, hexValue),
+                                    connection.address);
+                        } else {
+                            Log.d(TAG, "通知已关闭，不处理读取的数据");
+                        }
+                    } else {
+                        Log.e(TAG, "读取特征值失败，状态码: " + status);
+                        failRead(connection, uuid, "读取特征值失败，状态码: " + status);
+                    }
+                }
+            }, bleHandler);
+        } catch (SecurityException e) {
+            Log.e(TAG, "Security exception when connecting: " + e.getMessage());
+            notifyWebView("onBluetoothError", "缺少必要的蓝牙权限", connection.address);
+            cleanupConnection(connection);
+        }
+    }
+
+    /**
+     * 连接建立失败时按指数退避重试，重试间隔为 重试延迟 × 2^(n-1)，不超过 MAX_RETRY_DELAY
+     * 重试次数和延迟来自该型号的自适应连接参数
+     *
+     * @return 是否已安排重试；重试次数用完或已主动断开时返回false
+     */
+    private boolean retryConnection(GattConnection connection) {
+        if (connection.phase == GattConnection.Phase.CLOSING
+                || connections.get(connection.address) != connection) {
+            return false;
+        }
+        connectionTuner.recordConnect(connection.tuning, false, 0);
+        int maxRetries = connection.tuning.maxRetries();
+        if (connection.retryCount >= maxRetries) {
+            return false;
+        }
+        connection.retryCount++;
+        long delay = Math.min(connection.tuning.retryDelayMs() << (connection.retryCount - 1), MAX_RETRY_DELAY);
+        Log.w(TAG, "连接失败，" + delay + "ms后第" + connection.retryCount + "次重试: " + connection.address);
+
+        // 关闭本次GATT，保留连接池中的条目和计时
+        if (connection.gatt != null) {
+            try {
+                connection.gatt.close();
+            } catch (SecurityException e) {
+                Log.e(TAG, "Error closing GATT connection: " + e.getMessage());
+            }
+            connection.gatt = null;
+        }
+        if (connection.connectTimeout != null) {
+            connection.connectTimeout.cancel();
+            connection.connectTimeout = null;
+        }
+        failQueuedWrites(connection);
+        connection.reset();
+        connection.moveTo(GattConnection.Phase.CONNECTING);
+        notifyWebView("onBluetoothStateChange", "连接失败，正在重试(" + connection.retryCount + "/" + maxRetries + ")",
+                connection.address);
+
+        connection.retryRunnable = () -> {
+            connection.retryRunnable = null;
+            if (connections.get(connection.address) == connection
+                    && connection.phase == GattConnection.Phase.CONNECTING) {
+                openGatt(connection);
+            }
+        };
+        bleHandler.postDelayed(connection.retryRunnable, delay);
+        return true;
+    }
+
+    /**
+     * MTU协商结束（成功、失败或超时）后进入服务发现阶段
+     */
+    private void onMtuPhaseFinished(GattConnection connection) {
+        if (connection.phase != GattConnection.Phase.MTU || connection.gatt == null) {
+            return;
+        }
+        connection.moveTo(GattConnection.Phase.DISCOVERING);
+        enqueueServiceDiscovery(connection);
+    }
+
+    /**
+     * 一个订阅（CCCD写入）结束，全部结束后连接就绪
+     */
+    private void onSubscriptionSettled(GattConnection connection) {
+        if (connection.phase != GattConnection.Phase.SUBSCRIBING) {
+            return;
+        }
+        connection.pendingSubscriptions--;
+        if (connection.pendingSubscriptions <= 0) {
+            markConnectionReady(connection);
+        }
+    }
+
+    /**
+     * 服务发现完成后按订阅策略和已登记的引用开启通知，全部CCCD写入结束后连接就绪
+     * 在BLE线程执行
+     */
+    private void startSubscriptions(GattConnection connection,
+                                    List<BluetoothGattCharacteristic> notifyCharacteristics) {
+        if (connection.gatt == null) {
+            return;
+        }
+        // 服务结构变化后的重新发现不再经过连接建立阶段
+        boolean establishing = connection.phase == GattConnection.Phase.DISCOVERING;
+        if (establishing) {
+            connection.moveTo(GattConnection.Phase.SUBSCRIBING);
+        }
+
+        SubscriptionRegistry registry = subscriptionsFor(connection.address);
+        int pending = 0;
+        for (BluetoothGattCharacteristic characteristic : notifyCharacteristics) {
+            String uuid = characteristic.getUuid().toString();
+            boolean notifiable = (characteristic.getProperties() & BluetoothGattCharacteristic.PROPERTY_NOTIFY) > 0;
+            if (!registry.isWanted(uuid, notifiable)) {
+                continue;
+            }
+            Boolean enabled = connection.characteristicNotificationEnabled.get(uuid);
+            if (enabled != null && enabled) {
+                Log.d(TAG, "通知已启用: " + uuid);
+                continue;
+            }
+            // CCCD写入依次进入GATT操作队列，不再在循环中并发发起
+            if (enableNotification(connection, characteristic, establishing)) {
+                pending++;
+            }
+        }
+
+        if (establishing) {
+            connection.pendingSubscriptions = pending;
+            if (pending == 0) {
+                markConnectionReady(connection);
+            }
+        }
+    }
+
+    /**
+     * 连接建立完成，通过onConnectionReady上报分阶段耗时
+     */
+    private void markConnectionReady(GattConnection connection) {
+        connection.moveTo(GattConnection.Phase.READY);
+        String report = connection.timingReport();
+        connection.retryCount = 0;
+        Log.i(TAG, "连接就绪: " + report);
+        notifyWebView("onConnectionReady", report, connection.address);
+        scheduleIdlePriority(connection);
+        resumeTransfers(connection);
+    }
+
+    /**
+     * 请求2M PHY，结果在onPhyUpdate中记录；控制器或对端不支持时保持1M
+     */
+    private void requestPreferredPhy(GattConnection connection) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O || connection.gatt == null) {
+            return;
+        }
+        if (!bluetoothAdapter.isLe2MPhySupported()) {
+            Log.d(TAG, "本机不支持LE 2M PHY: " + connection.address);
+            return;
+        }
+        connection.gatt.setPreferredPhy(BluetoothDevice.PHY_LE_2M_MASK, BluetoothDevice.PHY_LE_2M_MASK,
+                BluetoothDevice.PHY_OPTION_NO_PREFERRED);
+    }
+
+    private void recordPhy(GattConnection connection, int txPhy, int rxPhy, int status) {
+        if (status != BluetoothGatt.GATT_SUCCESS) {
+            Log.w(TAG, "PHY协商失败，状态码: " + status + ", 设备: " + connection.address);
+            return;
+        }
+        connection.txPhy = txPhy;
+        connection.rxPhy = rxPhy;
+        Log.d(TAG, "PHY: " + connection.address + ", TX=" + GattConnection.phyName(txPhy)
+                + ", RX=" + GattConnection.phyName(rxPhy));
+    }
+
+    private void setConnectionPriority(GattConnection connection, int priority) {
+        if (connection.gatt == null || connection.connectionPriority == priority) {
+            return;
+        }
+        if (connection.gatt.requestConnectionPriority(priority)) {
+            connection.connectionPriority = priority;
+            Log.d(TAG, "连接优先级: " + connection.address + " -> " + priority);
+        }
+    }
+
+    /**
+     * 批量发送前调用：切换到高优先级（缩短连接间隔），空闲IDLE_PRIORITY_DELAY后自动恢复
+     */
+    private void markBulkActivity(GattConnection connection) {
+        connection.lastBulkActivity = SystemClock.elapsedRealtime();
+        setConnectionPriority(connection, BluetoothGatt.CONNECTION_PRIORITY_HIGH);
+        if (connection.idlePriorityRunnable == null) {
+            scheduleIdlePriority(connection);
+        }
+    }
+
+    /**
+     * 空闲一段时间后恢复均衡优先级；期间有新的批量发送时顺延
+     */
+    private void scheduleIdlePriority(GattConnection connection) {
+        if (connection.idlePriorityRunnable != null) {
+            bleHandler.removeCallbacks(connection.idlePriorityRunnable);
+        }
+        connection.idlePriorityRunnable = new Runnable() {
+            @Override
+            public void run() {
+                if (connection.idlePriorityRunnable != this) {
+                    return;
+                }
+                long idle = SystemClock.elapsedRealtime() - connection.lastBulkActivity;
+                if (idle < IDLE_PRIORITY_DELAY) {
+                    bleHandler.postDelayed(this, IDLE_PRIORITY_DELAY - idle);
+                    return;
+                }
+                connection.idlePriorityRunnable = null;
+                setConnectionPriority(connection, BluetoothGatt.CONNECTION_PRIORITY_BALANCED);
+            }
+        };
+        bleHandler.postDelayed(connection.idlePriorityRunnable, IDLE_PRIORITY_DELAY);
+    }
+
+    /**
+     * 将MTU协商加入GATT操作队列，协商结果在onMtuChanged中处理
+     */
+    private void enqueueMtuRequest(GattConnection connection) {
+        connection.operationQueue.enqueue(new GattOperationQueue.Operation(
+                GattOperationQueue.Type.REQUEST_MTU, GattOperationQueue.Priority.NORMAL,
+                null, MTU_REQUEST_TIMEOUT) {
+            @Override
+            boolean execute() {
+                if (connection.gatt == null) {
+                    return false;
+                }
+                int preferredMtu = connection.tuning.preferredMtu();
+                Log.d(TAG, "Requesting MTU size: " + preferredMtu);
+                return connection.gatt.requestMtu(preferredMtu);
+            }
+
+            @Override
+            void onComplete(int status) {
+                onMtuPhaseFinished(connection);
+            }
+
+            @Override
+            void onRejected() {
+                Log.e(TAG, "Failed to request MTU, fallback to default: " + DEFAULT_MTU);
+                connection.negotiatedMtu = DEFAULT_MTU;
+                onMtuPhaseFinished(connection);
+            }
+
+            @Override
+            void onTimeout() {
+                Log.e(TAG, "MTU request timeout, fallback to default: " + DEFAULT_MTU);
+                connection.negotiatedMtu = DEFAULT_MTU;
+                onMtuPhaseFinished(connection);
+            }
+        });
+    }
+
+    /**
+     * 设备的服务结构已变化：丢弃特征值索引，重新发现服务并开启通知
+     */
+    private void handleServiceChanged(GattConnection connection) {
+        Log.i(TAG, "设备服务结构已变化: " + connection.address);
+        connection.characteristicIndex = null;
+        connection.characteristicNotificationEnabled.clear();
+        connection.activeSubscriptions.clear();
+        if (connection.gatt != null) {
+            enqueueServiceDiscovery(connection);
+        }
+    }
+
+    /**
+     * 将服务发现加入GATT操作队列，结果在onServicesDiscovered中处理
+     */
+    private void enqueueServiceDiscovery(GattConnection connection) {
+        connection.operationQueue.enqueue(new GattOperationQueue.Operation(
+                GattOperationQueue.Type.DISCOVER_SERVICES, GattOperationQueue.Priority.NORMAL,
+                null, SERVICE_DISCOVERY_TIMEOUT) {
+            @Override
+            boolean execute() {
+                return connection.gatt != null && connection.gatt.discoverServices();
+            }
+
+            @Override
+            void onRejected() {
+                Log.e(TAG, "Failed to start service discovery");
+                notifyWebView("onBluetoothError", "服务发现失败", connection.address);
+            }
+
+            @Override
+            void onTimeout() {
+                notifyWebView("onBluetoothError", "服务发现超时", connection.address);
+                if (connection.phase == GattConnection.Phase.DISCOVERING) {
+                    disconnect(connection.address);
+                }
+            }
+        });
+    }
+
+    /**
+     * 检查应用是否拥有必要的蓝牙权限
+     *
+     * @return 是否拥有权限
+     */
+    private boolean hasBluetoothPermissions() {
+        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.S) {
+            // Android 12及以上需要BLUETOOTH_CONNECT权限
+            boolean hasConnect = context.checkSelfPermission(android.Manifest.permission.BLUETOOTH_CONNECT)
+                    == android.content.pm.PackageManager.PERMISSION_GRANTED;
+            boolean hasScan = context.checkSelfPermission(android.Manifest.permission.BLUETOOTH_SCAN)
+                    == android.content.pm.PackageManager.PERMISSION_GRANTED;
+            
+            // 对于连接操作，主要需要CONNECT权限
+            return hasConnect;
+        } else if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.M) {
+            // Android 6.0-11版本检查传统蓝牙权限
+            boolean hasBluetooth = context.checkSelfPermission(android.Manifest.permission.BLUETOOTH)
+                    == android.content.pm.PackageManager.PERMISSION_GRANTED;
+            boolean hasBluetoothAdmin = context.checkSelfPermission(android.Manifest.permission.BLUETOOTH_ADMIN)
+                    == android.content.pm.PackageManager.PERMISSION_GRANTED;
+            boolean hasLocation = context.checkSelfPermission(android.Manifest.permission.ACCESS_FINE_LOCATION)
+                    == android.content.pm.PackageManager.PERMISSION_GRANTED;
+            
+            return hasBluetooth && hasBluetoothAdmin && hasLocation;
+        } else {
+            // Android 6.0以下版本，权限在安装时授予
+            return true;
+        }
+    }
+
+    /**
+     * 获取缺失的权限列表
+     * @return 缺失的权限数组
+     */
+    @JavascriptInterface
+    public String getMissingPermissions() {
+        List<String> missingPermissions = new ArrayList<>();
+        
+        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.S) {
+            if (context.checkSelfPermission(android.Manifest.permission.BLUETOOTH_CONNECT)
+                    != android.content.pm.PackageManager.PERMISSION_GRANTED) {
+                missingPermissions.add("BLUETOOTH_CONNECT");
+            }
+            if (context.checkSelfPermission(android.Manifest.permission.BLUETOOTH_SCAN)
+                    != android.content.pm.PackageManager.PERMISSION_GRANTED) {
+                missingPermissions.add("BLUETOOTH_SCAN");
+            }
+        } else if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.M) {
+            if (context.checkSelfPermission(android.Manifest.permission.BLUETOOTH)
+                    != android.content.pm.PackageManager.PERMISSION_GRANTED) {
+                missingPermissions.add("BLUETOOTH");
+            }
+            if (context.checkSelfPermission(android.Manifest.permission.BLUETOOTH_ADMIN)
+                    != android.content.pm.PackageManager.PERMISSION_GRANTED) {
+                missingPermissions.add("BLUETOOTH_ADMIN");
+            }
+            if (context.checkSelfPermission(android.Manifest.permission.ACCESS_FINE_LOCATION)
+                    != android.content.pm.PackageManager.PERMISSION_GRANTED) {
+                missingPermissions.add("ACCESS_FINE_LOCATION");
+            }
+        }
+        
+        return "[" + String.join(",", missingPermissions.stream()
+                .map(p -> "\"" + p + "\"")
+                .toArray(String[]::new)) + "]";
+    }
+
+    private boolean isPrintableText(String text) {
+        if (text == null || text.isEmpty()) {
+            return false;
+        }
+
+        // 检查字符串是否只包含可打印字符
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 32 || c > 126) {
+                // 非ASCII可打印字符
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void notifyWebView(String method, String data) {
+        // 在BLE线程上拼好脚本，只有最终执行切换到主线程（evaluateJavascript内部处理）
+        evaluateOnWebView(String.format("javascript:window.%s('%s')", method, data));
+    }
+
+    /**
+     * 通知WebView并附带来源设备地址，H5回调的第二个参数为设备MAC地址
+     */
+    private void notifyWebView(String method, String data, String address) {
+        if (address == null) {
+            notifyWebView(method, data);
+            return;
+        }
+        evaluateOnWebView(String.format("javascript:window.%s('%s','%s')", method, data, address));
+    }
+
+    private void evaluateOnWebView(String js) {
+        ScriptTarget target = scriptTarget;
+        if (target != null) {
+            target.evaluateJavascript(js);
+        }
+    }
+
+    /**
+     * 获取BLE性能计数快照，不清零
+     *
+     * @return JSON对象：windowMs为统计窗口长度；connections和characteristics分别为按连接、按特征值的
+     * bytesIn、bytesOut、writes、writeFailures、notifications、notificationRate（次/秒）、
+     * writeLatency（写入到确认）和dispatchLatency（GATT回调到交给WebView）延迟分布
+     */
+    @JavascriptInterface
+    public String getBluetoothMetrics() {
+        return metrics.snapshot(false);
+    }
+
+    /**
+     * 清零BLE性能计数，开始新的统计窗口
+     */
+    @JavascriptInterface
+    public void resetBluetoothMetrics() {
+        metrics.snapshot(true);
+    }
+
+    /**
+     * 供宿主应用上报遥测：获取性能计数快照，可选择同时清零
+     * 格式同getBluetoothMetrics
+     *
+     * @param reset 是否在快照后清零
+     */
+    public String snapshotMetrics(boolean reset) {
+        return metrics.snapshot(reset);
+    }
+
+    /**
+     * 开启或关闭GATT事件记录，关闭时保留已记录的内容
+     */
+    @JavascriptInterface
+    public void setTrafficRecording(boolean enabled) {
+        trafficRecorder.setEnabled(enabled);
+    }
+
+    /**
+     * 设置事件记录缓冲区大小，已记录的内容被清除
+     *
+     * @param kilobytes 缓冲区大小（KB），范围1-16384，默认1024
+     */
+    @JavascriptInterface
+    public void setTrafficRecorderCapacity(int kilobytes) {
+        try {
+            trafficRecorder.resize(kilobytes * 1024);
+        } catch (IllegalArgumentException e) {
+            notifyWebView("onBluetoothError", "记录缓冲区大小无效: " + kilobytes + "KB");
+        }
+    }
+
+    /**
+     * 获取事件记录状态
+     *
+     * @return JSON对象，包含enabled、capacity、usedBytes、records（缓冲区中的记录数）、
+     * recorded（累计记录数）、overwritten（被覆盖的记录数）
+     */
+    @JavascriptInterface
+    public String getTrafficRecorderStats() {
+        return trafficRecorder.statsJson();
+    }
+
+    /**
+     * 把缓冲区中的GATT事件导出到应用缓存目录，不清除缓冲区
+     *
+     * @return 导出文件的路径，失败时返回null
+     */
+    @JavascriptInterface
+    public String dumpTrafficLog() {
+        File file = new File(context.getCacheDir(), "ble-traffic-" + System.currentTimeMillis() + ".wbkrec");
+        try (OutputStream output = new FileOutputStream(file)) {
+            dumpTrafficLog(output);
+            Log.i(TAG, "GATT事件已导出: " + file.getAbsolutePath());
+            return file.getAbsolutePath();
+        } catch (IOException e) {
+            Log.e(TAG, "导出GATT事件失败: " + e.getMessage());
+            notifyWebView("onBluetoothError", "导出蓝牙通信记录失败");
+            return null;
+        }
+    }
+
+    /**
+     * 供宿主应用上传诊断信息：把缓冲区中的GATT事件写入指定输出流，可由TrafficReplayer回放
+     */
+    public void dumpTrafficLog(OutputStream output) throws IOException {
+        trafficRecorder.dump(output);
+    }
+
+    /**
+     * 获取所有连接的链路参数
+     *
+     * @return JSON数组，每项包含txPhy、rxPhy、mtu、priority、intervalMs（系统未上报时为null）和最近的探测吞吐量
+     */
+    @JavascriptInterface
+    public String getLinkReport() {
+        List<String> reports = new ArrayList<>();
+        for (GattConnection connection : connections.values()) {
+            reports.add(connection.linkReport());
+        }
+        return "[" + String.join(",", reports) + "]";
+    }
+
+    /**
+     * 获取指定设备的链路参数，设备未连接时返回null
+     */
+    @JavascriptInterface
+    public String getLinkReport(String address) {
+        GattConnection connection = getConnection(address);
+        return connection == null ? null : connection.linkReport();
+    }
+
+    /**
+     * 吞吐量探测：以无响应写入向特征值流式发送测试数据并测量吞吐量，结果回调onThroughputProbe
+     * 外设会收到测试数据，应选择外设会丢弃数据的特征值；可在大批量上传前用于评估链路
+     *
+     * @param bytes 发送的字节数，小于等于0时使用默认值8192，最大65536
+     */
+    @JavascriptInterface
+    public void runThroughputProbe(String address, String serviceUUID, String characteristicUUID, int bytes) {
+        if (postToBleThread(() -> runThroughputProbe(address, serviceUUID, characteristicUUID, bytes))) {
+            return;
+        }
+        GattConnection connection = getConnection(address);
+        if (connection == null || connection.gatt == null) {
+            notifyWebView("onBluetoothError", "未连接到设备", address);
+            return;
+        }
+
+        try {
+            BluetoothGattCharacteristic characteristic =
+                    findWritableCharacteristic(connection, serviceUUID, characteristicUUID);
+            if (characteristic == null) {
+                return;
+            }
+            if ((characteristic.getProperties() & BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE) == 0) {
+                notifyWebView("onBluetoothError", "特征值不支持无响应写入，无法探测吞吐量", connection.address);
+                return;
+            }
+
+            byte[] payload = new byte[bytes <= 0 ? DEFAULT_PROBE_BYTES : Math.min(bytes, MAX_PROBE_BYTES)];
+            for (int i = 0; i < payload.length; i++) {
+                payload[i] = (byte) i;
+            }
+            startStreamWrite(connection, characteristic, payload, true);
+        } catch (IllegalArgumentException e) {
+            notifyWebView("onBluetoothError", "无效的参数: " + e.getMessage(), connection.address);
+        } catch (SecurityException e) {
+            notifyWebView("onBluetoothError", "缺少必要的蓝牙权限", connection.address);
+        }
+    }
+
+    @JavascriptInterface
+    public String getBluetoothStatus() {
+        if (!isBluetoothSupported()) {
+            return "{\"supported\":false,\"enabled\":false,\"connected\":false}";
+        }
+        List<String> connectedDevices = new ArrayList<>();
+        for (GattConnection connection : connections.values()) {
+            if (connection.isConnected()) {
+                connectedDevices.add("\"" + connection.address + "\"");
+            }
+        }
+        return String.format(
+                "{\"supported\":true,\"enabled\":%b,\"connected\":%b,\"connectedDevices\":[%s]}",
+                isBluetoothEnabled(),
+                !connectedDevices.isEmpty(),
+                String.join(",", connectedDevices)
+        );
+    }
+
+    @JavascriptInterface
+    public void setNotificationsEnabled(boolean enabled) {
+        this.notificationsEnabled = enabled;
+        Log.d(TAG, "蓝牙通知状态已设置为: " + (enabled ? "开启" : "关闭"));
+    }
+
+    @JavascriptInterface
+    public boolean isNotificationsEnabled() {
+        return notificationsEnabled;
+    }
+
+    /**
+     * 设置通知批量投递
+     * 开启后特征值通知按特征值累积，每个显示帧（或每个间隔）合并为一个JSON数组，
+     * 通过 window.onCharacteristicBatch 一次投递；关闭时恢复逐条的 onCharacteristicChanged
+     *
+     * @param enabled      是否开启批量投递
+     * @param intervalMs   刷新间隔（毫秒），0表示按显示帧刷新
+     * @param maxBatchSize 单个特征值累积的最大条数，达到后立即刷新，0表示使用默认值
+     */
+    @JavascriptInterface
+    public void setNotificationBatching(boolean enabled, int intervalMs, int maxBatchSize) {
+        notificationBatcher.configure(enabled, intervalMs, maxBatchSize);
+        Log.d(TAG, "通知批量投递已" + (enabled ? "开启" : "关闭") + ", 间隔: " + intervalMs + "ms, 最大批量: " + maxBatchSize);
+    }
+
+    /**
+     * 使用默认参数（按显示帧刷新）开启或关闭通知批量投递
+     */
+    @JavascriptInterface
+    public void setNotificationBatching(boolean enabled) {
+        setNotificationBatching(enabled, 0, 0);
+    }
+
+    @JavascriptInterface
+    public boolean isNotificationBatchingEnabled() {
+        return notificationBatcher.isEnabled();
+    }
+
+    /**
+     * 投递合并后的通知，在主线程执行
+     */
+    private void deliverNotificationBatch(String json) {
+        if (isReleased() || !notificationsEnabled) {
+            return;
+        }
+        evaluateOnWebView(String.format("javascript:window.onCharacteristicBatch('%s')", json));
+    }
+
+    /**
+     * 按投递策略决定一条通知（或拼好的一帧）是否交给WebView，被抑制的通知不做编码
+     */
+    private void deliverNotification(GattConnection connection, String uuid, byte[] value, boolean framed,
+                                     long receivedAt) {
+        // 只有在通知开启的情况下才传递数据给WebView
+        if (!notificationsEnabled) {
+            Log.d(TAG, "通知已关闭，不处理收到的数据");
+            return;
+        }
+        DeliveryPolicy policy = deliveryPolicies.isEmpty() ? null
+                : deliveryPolicies.get(connection.address + "|" + uuid);
+        if (policy != null) {
+            long now = SystemClock.elapsedRealtime();
+            switch (policy.offer(value, now)) {
+                case DROP:
+                    return;
+                case DEFER:
+                    // 间隔结束时补投最新值，期间到达的值只替换暂存值
+                    bleHandler.postDelayed(() -> flushDeferredNotification(connection, uuid, policy, framed),
+                            Math.max(0, policy.dueAt() - now));
+                    return;
+                default:
+                    break;
+            }
+        }
+        // 将字节数组转换为十六进制字符串（查表编码，复用连接的字符缓冲区）
+        String hexValue = connection.hexCodec.encodeToString(value);
+        Log.d(TAG, "收到特征值变化: UUID=" + uuid + ", 值=" + hexValue);
+        dispatchNotification(connection, uuid, hexValue, framed, receivedAt);
+    }
+
+    /**
+     * 补投latestOnly策略暂存的最新值；策略已被替换或连接已断开时丢弃
+     */
+    private void flushDeferredNotification(GattConnection connection, String uuid, DeliveryPolicy policy,
+                                           boolean framed) {
+        byte[] value = policy.takePending(SystemClock.elapsedRealtime());
+        if (value == null || !notificationsEnabled || connections.get(connection.address) != connection
+                || deliveryPolicies.get(connection.address + "|" + uuid) != policy) {
+            return;
+        }
+        dispatchNotification(connection, uuid, connection.hexCodec.encodeToString(value), framed, System.nanoTime());
+    }
 
-                            return; // 不通知完成，因为还有更多片段
-                        } else {
-                            // 所有片段已发送完成
-                            Log.d(TAG, "所有数据片段发送完成: UUID=" + uuid);
-                            notifyWebView("onWriteCompleted",
-                                    String.format("{\"uuid\":\"%s\",\"status\":\"success\",\"chunked\":true,\"totalChunks\":%d}",
-                                            uuid, writeData.totalChunks));
+    /**
+     * 把一条通知交给WebView
+     * 批量模式下并入onCharacteristicBatch，否则逐条回调onCharacteristicChanged；
+     * 分帧后的数据带"framed":true
+     */
+    private void dispatchNotification(GattConnection connection, String uuid, String hexValue, boolean framed,
+                                      long receivedAt) {
+        if (notificationBatcher.isEnabled()) {
+            // 批量模式：按帧合并后通过onCharacteristicBatch一次投递，投递延迟在刷新时统计
+            notificationBatcher.add(connection.address, uuid, hexValue, receivedAt);
+            return;
+        }
+        // 直接使用十六进制值，不尝试解析为文本
+        String js = String.format("javascript:window.onCharacteristicChanged('%s','%s')",
+                String.format("{\"address\":\"%s\",\"uuid\":\"%s\",\"value\":\"%s\",\"hexValue\":\"%s\"%s}",
+                        connection.address, uuid, hexValue, hexValue, framed ? ",\"framed\":true" : ""),
+                connection.address);
+        // 在主线程上统计从GATT回调到执行脚本的延迟
+        mainHandler.post(() -> {
+            metrics.recordDispatch(connection.address, uuid, (System.nanoTime() - receivedAt) / 1000);
+            evaluateOnWebView(js);
+        });
+    }
 
-                            // 清理分片数据
-                            chunkedWriteData.remove(uuid);
+    /**
+     * 为最近连接设备的特征值设置通知投递策略
+     */
+    @JavascriptInterface
+    public void setDeliveryPolicy(String characteristicUUID, String policyJson) {
+        setDeliveryPolicy(lastMacAddress, characteristicUUID, policyJson);
+    }
 
-                            // 写入完成后处理通知启用等操作
-                            handleWriteCompletion(gatt, characteristic);
-                            return;
-                        }
-                    }
+    /**
+     * 为指定设备的特征值设置通知投递策略，在编码之前按策略抑制通知
+     * {"minIntervalMs":100,"latestOnly":true} 每100毫秒最多投递一次，间隔内只保留最新值并在间隔结束时补投
+     * {"dropUnchanged":true} 值未变化时不投递
+     * {"sampleEvery":10} 每10条投递1条
+     * 配置了分帧的特征值按完整的帧计算。重新设置时计数清零，断线后保留
+     *
+     * @param policyJson 策略，为null或空字符串时取消
+     */
+    @JavascriptInterface
+    public void setDeliveryPolicy(String address, String characteristicUUID, String policyJson) {
+        if (postToBleThread(() -> setDeliveryPolicy(address, characteristicUUID, policyJson))) {
+            return;
+        }
+        String key = characteristicKey(address, characteristicUUID);
+        if (key == null) {
+            notifyWebView("onBluetoothError", "无效的地址或UUID", address);
+            return;
+        }
+        if (policyJson == null || policyJson.trim().isEmpty()) {
+            deliveryPolicies.remove(key);
+            return;
+        }
+        try {
+            deliveryPolicies.put(key, DeliveryPolicy.fromJson(policyJson));
+        } catch (JSONException e) {
+            notifyWebView("onBluetoothError", "无效的投递策略: " + e.getMessage(), address);
+        }
+    }
 
-                    // 非分片写入的常规处理
-                    notifyWebView("onWriteCompleted",
-                            String.format("{\"uuid\":\"%s\",\"status\":\"%s\"}",
-                                    uuid, result));
+    /**
+     * 获取投递策略的统计
+     *
+     * @return JSON对象，包含策略配置、received、delivered和按原因分类的suppressed计数；
+     * 未设置策略时返回null。计数在BLE线程更新，读取的是近似值
+     */
+    @JavascriptInterface
+    public String getDeliveryStats(String address, String characteristicUUID) {
+        String key = characteristicKey(address, characteristicUUID);
+        DeliveryPolicy policy = key == null ? null : deliveryPolicies.get(key);
+        return policy == null ? null : policy.statsJson();
+    }
 
-                    if (status != BluetoothGatt.GATT_SUCCESS) {
-                        notifyWebView("onBluetoothError", "写入失败，错误码: " + status);
-                        return;
-                    }
+    /**
+     * 为最近连接设备的特征值配置通知分帧
+     */
+    @JavascriptInterface
+    public void setFraming(String characteristicUUID, String configJson) {
+        setFraming(lastMacAddress, characteristicUUID, configJson);
+    }
 
-                    // 写入成功后处理通知启用等操作
-                    handleWriteCompletion(gatt, characteristic);
-                }
+    /**
+     * 为指定设备的特征值配置通知分帧，之后该特征值只投递拼接完整并通过校验的帧
+     * 配置示例：
+     * {"type":"markers","start":"7B","end":"7D","checksum":"crc16modbus"}
+     * {"type":"length","lengthOffset":1,"lengthSize":2,"bigEndian":true,"checksum":"crc8"}
+     * {"type":"delimiter","delimiter":"0D0A"}
+     * checksum可选none、xor8、sum8、crc8、crc16modbus、crc16ccitt、crc32；maxFrameSize默认4096字节。
+     * 配置在断线后保留，重连时丢弃未拼完的数据。
+     */
+    @JavascriptInterface
+    public void setFraming(String address, String characteristicUUID, String configJson) {
+        if (postToBleThread(() -> setFraming(address, characteristicUUID, configJson))) {
+            return;
+        }
+        String normalized = normalizeAddress(address);
+        if (normalized == null) {
+            notifyWebView("onBluetoothError", "无效的MAC地址", address);
+            return;
+        }
+        FrameAssembler framer;
+        String uuid;
+        try {
+            uuid = UUID.fromString(characteristicUUID).toString();
+            framer = FrameAssembler.fromJson(configJson);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            notifyWebView("onBluetoothError", "无效的UUID格式", normalized);
+            return;
+        } catch (JSONException e) {
+            notifyWebView("onBluetoothError", "无效的分帧配置: " + e.getMessage(), normalized);
+            return;
+        }
+        framers.put(characteristicKey(normalized, uuid), framer);
+        Log.i(TAG, "设置通知分帧: " + normalized + ", UUID=" + uuid + ", 类型=" + framer.type);
+    }
 
-                // 抽取写入完成后的通用处理逻辑
-                private void handleWriteCompletion(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
-                    int properties = characteristic.getProperties();
-                    String uuid = characteristic.getUuid().toString();
+    /**
+     * 取消最近连接设备特征值的分帧
+     */
+    @JavascriptInterface
+    public void clearFraming(String characteristicUUID) {
+        clearFraming(lastMacAddress, characteristicUUID);
+    }
 
-                    // 写入成功后，确保通知已启用
-                    if ((properties & BluetoothGattCharacteristic.PROPERTY_NOTIFY) > 0) {
-                        if (!characteristicNotificationEnabled.containsKey(uuid) || !characteristicNotificationEnabled.get(uuid)) {
-                            Log.d(TAG, "重新启用通知: " + uuid);
-                            boolean success = gatt.setCharacteristicNotification(characteristic, true);
-                            if (success) {
-                                Log.d(TAG, "重新启用通知成功: " + uuid);
-                                characteristicNotificationEnabled.put(uuid, true);
-
-                                // 写入CCCD描述符
-                                BluetoothGattDescriptor descriptor = characteristic.getDescriptor(
-                                        UUID.fromString("00002902-0000-1000-8000-00805f9b34fb"));
-                                if (descriptor != null) {
-                                    descriptor.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
-                                    boolean writeResult = gatt.writeDescriptor(descriptor);
-                                    if (!writeResult) {
-                                        Log.e(TAG, "写入CCCD描述符失败: " + uuid);
-                                    }
-                                }
-                            } else {
-                                Log.e(TAG, "重新启用通知失败: " + uuid);
-                                characteristicNotificationEnabled.put(uuid, false);
-                            }
-                        }
-                    }
-                }
+    /**
+     * 取消分帧，恢复逐条投递通知，未拼完的数据被丢弃
+     */
+    @JavascriptInterface
+    public void clearFraming(String address, String characteristicUUID) {
+        if (postToBleThread(() -> clearFraming(address, characteristicUUID))) {
+            return;
+        }
+        String key = characteristicKey(address, characteristicUUID);
+        if (key != null) {
+            framers.remove(key);
+        }
+    }
 
-                @Override
-                public void onCharacteristicRead(BluetoothGatt gatt,
-                                                 BluetoothGattCharacteristic characteristic,
-                                                 int status) {
-                    String uuid = characteristic.getUuid().toString();
-                    characteristicReading.put(uuid, false);  // 重置读取状态
+    /**
+     * 获取分帧统计
+     *
+     * @return JSON对象，包含frames、checksumErrors、lengthErrors、discardedBytes、bufferedBytes；
+     * 未配置分帧时返回null。计数在BLE线程更新，读取的是近似值
+     */
+    @JavascriptInterface
+    public String getFramingStats(String address, String characteristicUUID) {
+        String key = characteristicKey(address, characteristicUUID);
+        FrameAssembler framer = key == null ? null : framers.get(key);
+        return framer == null ? null : framer.statsJson();
+    }
 
-                    if (status == BluetoothGatt.GATT_SUCCESS) {
-                        byte[] data = characteristic.getValue();
+    /**
+     * 按特征值配置的索引（"地址|特征值UUID"），地址或UUID无效时返回null
+     */
+    private String characteristicKey(String address, String characteristicUUID) {
+        String normalized = normalizeAddress(address);
+        if (normalized == null || characteristicUUID == null) {
+            return null;
+        }
+        try {
+            return normalized + "|" + UUID.fromString(characteristicUUID);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
 
-                        // 将字节数组转换为十六进制字符串以便于显示
-                        StringBuilder hexStringBuilder = new StringBuilder();
-                        for (byte b : data) {
-                            hexStringBuilder.append(String.format("%02X", b));
-                        }
-                        String hexValue = hexStringBuilder.toString();
+    /**
+     * 打开到指定设备的L2CAP面向连接通道，与GATT连接并存
+     * 打开后回调onL2capOpened；收到的数据在开启通知批量投递时并入onCharacteristicBatch
+     * （uuid为"l2cap:PSM"），否则逐条回调onL2capData；关闭时回调onL2capClosed
+     * 需要Android 10及以上
+     *
+     * @param address 设备MAC地址
+     * @param psm     外设公布的PSM，通常从GATT特征值中读取
+     * @param secure  是否使用加密通道（需要配对）
+     */
+    @JavascriptInterface
+    public void openL2capChannel(String address, int psm, boolean secure) {
+        if (postToBleThread(() -> openL2capChannel(address, psm, secure))) {
+            return;
+        }
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+            notifyWebView("onBluetoothError", "L2CAP通道需要Android 10及以上版本", address);
+            return;
+        }
+        String normalized = normalizeAddress(address);
+        if (normalized == null || !isBluetoothEnabled()) {
+            notifyWebView("onBluetoothError", "蓝牙未开启或地址无效", address);
+            return;
+        }
+        L2capChannel existing = l2capChannels.get(normalized);
+        if (existing != null && existing.state() != L2capChannel.State.CLOSED) {
+            notifyWebView("onBluetoothError", "该设备已有L2CAP通道", normalized);
+            return;
+        }
 
-                        // 尝试解析为UTF-8文本，如果失败则使用十六进制表示
-                        String textValue;
-                        try {
-                            textValue = new String(data, "UTF-8");
-                            // 检查是否为可打印字符，否则使用十六进制
-                            if (!isPrintableText(textValue)) {
-                                textValue = hexValue;
-                            }
-                        } catch (Exception e) {
-                            textValue = hexValue;
-                        }
+        BluetoothDevice device;
+        GattConnection connection = connections.get(normalized);
+        try {
+            device = connection != null && connection.device != null
+                    ? connection.device : bluetoothAdapter.getRemoteDevice(normalized);
+        } catch (IllegalArgumentException e) {
+            notifyWebView("onBluetoothError", "无效的设备地址", address);
+            return;
+        }
 
-                        Log.d(TAG, "读取特征值成功: UUID=" + uuid + ", 值=" + hexValue);
+        L2capChannel channel = new L2capChannel(device, normalized, psm, secure, bleHandler,
+                new L2capChannel.Listener() {
+                    @Override
+                    public void onOpened(L2capChannel channel) {
+                        notifyWebView("onL2capOpened", channel.statsJson(), channel.address);
+                    }
 
-                        // 只有在通知开启的情况下才传递数据给WebView
-                        if (notificationsEnabled) {
-                            notifyWebView("onCharacteristicChanged",
-                                    String.format("{\"uuid\":\"%s\",\"value\":\"%s\",\"hexValue\":\"%s\"}",
-                                            uuid, textValue, hexValue));
+                    @Override
+                    public void onData(L2capChannel channel, String hexValue) {
+                        if (notificationBatcher.isEnabled()) {
+                            notificationBatcher.add(channel.address, "l2cap:" + channel.psm, hexValue,
+                                    System.nanoTime());
                         } else {
-                            Log.d(TAG, "通知已关闭，不处理读取的数据");
+                            notifyWebView("onL2capData",
+                                    String.format("{\"address\":\"%s\",\"psm\":%d,\"hexValue\":\"%s\"}",
+                                            channel.address, channel.psm, hexValue),
+                                    channel.address);
                         }
-                    } else {
-                        Log.e(TAG, "读取特征值失败，状态码: " + status);
                     }
-                }
-            });
-        } catch (SecurityException e) {
-            Log.e(TAG, "Security exception when connecting: " + e.getMessage());
-            notifyWebView("onBluetoothError", "缺少必要的蓝牙权限");
-            mainHandler.removeCallbacks(timeoutRunnable);
-            timeoutRunnable = null;
-        }
+
+                    @Override
+                    public void onClosed(L2capChannel channel, String reason) {
+                        l2capChannels.remove(channel.address, channel);
+                        notifyWebView("onL2capClosed", reason, channel.address);
+                    }
+                });
+        l2capChannels.put(normalized, channel);
+        Log.i(TAG, "打开L2CAP通道: " + normalized + ", PSM=" + psm);
+        channel.open();
     }
 
     /**
-     * 检查应用是否拥有必要的蓝牙权限
-     *
-     * @return 是否拥有权限
+     * 通过L2CAP通道发送十六进制数据
      */
-    private boolean hasBluetoothPermissions() {
-        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.S) {
-            // Android 12及以上需要BLUETOOTH_CONNECT权限
-            boolean hasConnect = context.checkSelfPermission(android.Manifest.permission.BLUETOOTH_CONNECT)
-                    == android.content.pm.PackageManager.PERMISSION_GRANTED;
-            boolean hasScan = context.checkSelfPermission(android.Manifest.permission.BLUETOOTH_SCAN)
-                    == android.content.pm.PackageManager.PERMISSION_GRANTED;
-            
-            // 对于连接操作，主要需要CONNECT权限
-            return hasConnect;
-        } else if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.M) {
-            // Android 6.0-11版本检查传统蓝牙权限
-            boolean hasBluetooth = context.checkSelfPermission(android.Manifest.permission.BLUETOOTH)
-                    == android.content.pm.PackageManager.PERMISSION_GRANTED;
-            boolean hasBluetoothAdmin = context.checkSelfPermission(android.Manifest.permission.BLUETOOTH_ADMIN)
-                    == android.content.pm.PackageManager.PERMISSION_GRANTED;
-            boolean hasLocation = context.checkSelfPermission(android.Manifest.permission.ACCESS_FINE_LOCATION)
-                    == android.content.pm.PackageManager.PERMISSION_GRANTED;
-            
-            return hasBluetooth && hasBluetoothAdmin && hasLocation;
-        } else {
-            // Android 6.0以下版本，权限在安装时授予
-            return true;
+    @JavascriptInterface
+    public void writeL2capData(String address, String hexString) {
+        byte[] data = HexCodec.decode(hexString);
+        if (data.length == 0) {
+            notifyWebView("onBluetoothError", "无效的十六进制字符串", address);
+            return;
         }
+        writeL2cap(address, data);
     }
 
     /**
-     * 获取缺失的权限列表
-     * @return 缺失的权限数组
+     * 通过L2CAP通道发送Base64编码的数据
      */
     @JavascriptInterface
-    public String getMissingPermissions() {
-        List<String> missingPermissions = new ArrayList<>();
-        
-        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.S) {
-            if (context.checkSelfPermission(android.Manifest.permission.BLUETOOTH_CONNECT)
-                    != android.content.pm.PackageManager.PERMISSION_GRANTED) {
-                missingPermissions.add("BLUETOOTH_CONNECT");
-            }
-            if (context.checkSelfPermission(android.Manifest.permission.BLUETOOTH_SCAN)
-                    != android.content.pm.PackageManager.PERMISSION_GRANTED) {
-                missingPermissions.add("BLUETOOTH_SCAN");
-            }
-        } else if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.M) {
-            if (context.checkSelfPermission(android.Manifest.permission.BLUETOOTH)
-                    != android.content.pm.PackageManager.PERMISSION_GRANTED) {
-                missingPermissions.add("BLUETOOTH");
-            }
-            if (context.checkSelfPermission(android.Manifest.permission.BLUETOOTH_ADMIN)
-                    != android.content.pm.PackageManager.PERMISSION_GRANTED) {
-                missingPermissions.add("BLUETOOTH_ADMIN");
-            }
-            if (context.checkSelfPermission(android.Manifest.permission.ACCESS_FINE_LOCATION)
-                    != android.content.pm.PackageManager.PERMISSION_GRANTED) {
-                missingPermissions.add("ACCESS_FINE_LOCATION");
-            }
+    public void writeL2capBase64(String address, String base64) {
+        byte[] data;
+        try {
+            data = HexCodec.decodeBase64(base64);
+        } catch (IllegalArgumentException e) {
+            data = new byte[0];
         }
-        
-        return "[" + String.join(",", missingPermissions.stream()
-                .map(p -> "\"" + p + "\"")
-                .toArray(String[]::new)) + "]";
+        if (data.length == 0) {
+            notifyWebView("onBluetoothError", "无效的Base64字符串", address);
+            return;
+        }
+        writeL2cap(address, data);
     }
 
-    private boolean isPrintableText(String text) {
-        if (text == null || text.isEmpty()) {
-            return false;
+    /**
+     * 加入通道的写队列，写入在通道自己的写线程上执行，不经过GATT操作队列
+     */
+    private void writeL2cap(String address, byte[] data) {
+        String normalized = normalizeAddress(address);
+        L2capChannel channel = normalized == null ? null : l2capChannels.get(normalized);
+        if (channel == null || channel.state() != L2capChannel.State.OPEN) {
+            notifyWebView("onBluetoothError", "L2CAP通道未打开", address);
+            return;
         }
-
-        // 检查字符串是否只包含可打印字符
-        for (int i = 0; i < text.length(); i++) {
-            char c = text.charAt(i);
-            if (c < 32 || c > 126) {
-                // 非ASCII可打印字符
-                return false;
-            }
+        if (!channel.write(data)) {
+            notifyWebView("onBluetoothError", "L2CAP发送队列已满", channel.address);
         }
-        return true;
-    }
-
-    private void notifyWebView(String method, String data) {
-        mainHandler.post(() -> {
-            String js = String.format("javascript:window.%s('%s')", method, data);
-            webViewBridge.evaluateJavascript(js);
-        });
     }
 
+    /**
+     * 关闭指定设备的L2CAP通道，GATT连接不受影响
+     */
     @JavascriptInterface
-    public String getBluetoothStatus() {
-        if (!isBluetoothSupported()) {
-            return "{\"supported\":false,\"enabled\":false,\"connected\":false}";
+    public void closeL2capChannel(String address) {
+        String normalized = normalizeAddress(address);
+        L2capChannel channel = normalized == null ? null : l2capChannels.get(normalized);
+        if (channel != null) {
+            channel.close("manual");
         }
-        boolean connected = bluetoothGatt != null;
-        return String.format(
-                "{\"supported\":true,\"enabled\":%b,\"connected\":%b}",
-                isBluetoothEnabled(),
-                connected
-        );
-    }
-
-    @JavascriptInterface
-    public void setNotificationsEnabled(boolean enabled) {
-        this.notificationsEnabled = enabled;
-        Log.d(TAG, "蓝牙通知状态已设置为: " + (enabled ? "开启" : "关闭"));
     }
 
+    /**
+     * 获取L2CAP通道的吞吐量统计
+     *
+     * @return JSON对象，包含state、bytesRead、bytesWritten、readThroughput、writeThroughput（字节/秒）等；
+     * 没有通道时返回null
+     */
     @JavascriptInterface
-    public boolean isNotificationsEnabled() {
-        return notificationsEnabled;
+    public String getL2capStats(String address) {
+        String normalized = normalizeAddress(address);
+        L2capChannel channel = normalized == null ? null : l2capChannels.get(normalized);
+        return channel == null ? null : channel.statsJson();
     }
 
     /**
@@ -1007,31 +3835,83 @@ public class BluetoothManager {
     public void release() {
         Log.d(TAG, "Releasing BluetoothManager resources");
         
-        // 断开连接
-        if (bluetoothGatt != null) {
+        // 断开所有连接 - 连接状态只在BLE线程访问，等清理完成（H5已收到取消回调）后再退出该线程
+        bleHandler.removeCallbacksAndMessages(null);
+        Runnable cleanup = () -> {
+            for (GattConnection connection : new ArrayList<>(connections.values())) {
+                if (connection.gatt != null) {
+                    try {
+                        connection.gatt.disconnect();
+                    } catch (Exception e) {
+                        Log.e(TAG, "Error closing GATT connection: " + e.getMessage());
+                    }
+                }
+                try {
+                    cleanupConnection(connection);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error closing GATT connection: " + e.getMessage());
+                }
+            }
+            connections.clear();
+            transfers.clear();
+            framers.clear();
+            readCacheTtls.clear();
+            writeCoalescingWindows.clear();
+            commandTemplates.clear();
+            deliveryPolicies.clear();
+            subscriptions.clear();
+            if (bleScanner != null) {
+                bleScanner.stopScan("release");
+                bleScanner = null;
+            }
+        };
+        if (Looper.myLooper() == bleThread.getLooper()) {
+            cleanup.run();
+        } else {
+            CountDownLatch done = new CountDownLatch(1);
+            bleHandler.post(() -> {
+                try {
+                    cleanup.run();
+                } finally {
+                    done.countDown();
+                }
+            });
             try {
-                bluetoothGatt.disconnect();
-                bluetoothGatt.close();
-            } catch (Exception e) {
-                Log.e(TAG, "Error closing GATT connection: " + e.getMessage());
+                if (!done.await(RELEASE_CLEANUP_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    Log.w(TAG, "Timed out waiting for BLE thread cleanup");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-            bluetoothGatt = null;
         }
+        bleThread.quitSafely();
+        for (L2capChannel channel : l2capChannels.values()) {
+            channel.close("release");
+        }
+        l2capChannels.clear();
+        notificationBatcher.clear();
         
+        pendingConnects.clear();
+        adapterReadyCallbacks.clear();
+        try {
+            context.unregisterReceiver(adapterStateReceiver);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Adapter state receiver not registered: " + e.getMessage());
+        }
+
+        timeoutWheel.stop();
+
         // 清理所有回调
         if (mainHandler != null) {
             mainHandler.removeCallbacksAndMessages(null);
         }
         
         // 清理状态
-        currentDevice = null;
-        characteristicNotificationEnabled.clear();
-        characteristicReading.clear();
-        chunkedWriteData.clear();
+        lastMacAddress = null;
         
         // 清理引用
         context = null;
-        webViewBridge = null;
+        scriptTarget = null;
         bluetoothAdapter = null;
     }
 
@@ -1039,6 +3919,6 @@ public class BluetoothManager {
      * 检查资源是否已释放
      */
     public boolean isReleased() {
-        return context == null || webViewBridge == null;
+        return context == null || scriptTarget == null;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,174 @@
+package com.webbridgesdk.webbridgekit;
+
+import java.util.Locale;
+
+/**
+ * 设备协议常用的校验算法
+ * CRC使用预先生成的查找表，每字节一次查表；多字节校验值的字节序按各算法的惯例写入。
+ */
+enum Checksum {
+    NONE(0),
+    XOR8(1),         // 逐字节异或
+    SUM8(1),         // 逐字节求和取低8位
+    CRC8(1),         // 多项式0x07，初值0x00
+    CRC16_MODBUS(2), // 多项式0xA001（反射），初值0xFFFF，低字节在前
+    CRC16_CCITT(2),  // 多项式0x1021，初值0xFFFF（CCITT-FALSE），高字节在前
+    CRC32(4);        // 多项式0xEDB88320（反射），初值和结果异或0xFFFFFFFF（与zlib相同），低字节在前
+
+    private static final int[] CRC8_TABLE = new int[256];
+    private static final int[] CRC16_MODBUS_TABLE = new int[256];
+    private static final int[] CRC16_CCITT_TABLE = new int[256];
+    private static final int[] CRC32_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc8 = i;
+            for (int bit = 0; bit < 8; bit++) {
+                crc8 = (crc8 & 0x80) != 0 ? ((crc8 << 1) ^ 0x07) & 0xFF : (crc8 << 1) & 0xFF;
+            }
+            CRC8_TABLE[i] = crc8;
+
+            int modbus = i;
+            for (int bit = 0; bit < 8; bit++) {
+                modbus = (modbus & 1) != 0 ? (modbus >>> 1) ^ 0xA001 : modbus >>> 1;
+            }
+            CRC16_MODBUS_TABLE[i] = modbus;
+
+            int ccitt = i << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                ccitt = (ccitt & 0x8000) != 0 ? ((ccitt << 1) ^ 0x1021) & 0xFFFF : (ccitt << 1) & 0xFFFF;
+            }
+            CRC16_CCITT_TABLE[i] = ccitt;
+
+            int crc32 = i;
+            for (int bit = 0; bit < 8; bit++) {
+                crc32 = (crc32 & 1) != 0 ? (crc32 >>> 1) ^ 0xEDB88320 : crc32 >>> 1;
+            }
+            CRC32_TABLE[i] = crc32;
+        }
+    }
+
+    private final int size;
+
+    Checksum(int size) {
+        this.size = size;
+    }
+
+    /**
+     * 校验值占用的字节数
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * 按名称解析，忽略大小写和分隔符，如"crc16modbus"、"CRC16_MODBUS"
+     *
+     * @throws IllegalArgumentException 未知算法
+     */
+    static Checksum parse(String name) {
+        if (name == null || name.isEmpty()) {
+            return NONE;
+        }
+        String normalized = name.replace("_", "").replace("-", "").toUpperCase(Locale.ROOT);
+        for (Checksum checksum : values()) {
+            if (checksum.name().replace("_", "").equals(normalized)) {
+                return checksum;
+            }
+        }
+        throw new IllegalArgumentException("unknown checksum: " + name);
+    }
+
+    int compute(byte[] data, int offset, int length) {
+        int end = offset + length;
+        switch (this) {
+            case XOR8: {
+                int value = 0;
+                for (int i = offset; i < end; i++) {
+                    value ^= data[i];
+                }
+                return value & 0xFF;
+            }
+            case SUM8: {
+                int value = 0;
+                for (int i = offset; i < end; i++) {
+                    value += data[i];
+                }
+                return value & 0xFF;
+            }
+            case CRC8: {
+                int crc = 0;
+                for (int i = offset; i < end; i++) {
+                    crc = CRC8_TABLE[(crc ^ data[i]) & 0xFF];
+                }
+                return crc;
+            }
+            case CRC16_MODBUS: {
+                int crc = 0xFFFF;
+                for (int i = offset; i < end; i++) {
+                    crc = (crc >>> 8) ^ CRC16_MODBUS_TABLE[(crc ^ data[i]) & 0xFF];
+                }
+                return crc;
+            }
+            case CRC16_CCITT: {
+                int crc = 0xFFFF;
+                for (int i = offset; i < end; i++) {
+                    crc = ((crc << 8) & 0xFFFF) ^ CRC16_CCITT_TABLE[((crc >>> 8) ^ data[i]) & 0xFF];
+                }
+                return crc;
+            }
+            case CRC32: {
+                int crc = 0xFFFFFFFF;
+                for (int i = offset; i < end; i++) {
+                    crc = (crc >>> 8) ^ CRC32_TABLE[(crc ^ data[i]) & 0xFF];
+                }
+                return ~crc;
+            }
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * 将校验值按算法约定的字节序写入dst
+     */
+    void write(int value, byte[] dst, int offset) {
+        if (size == 1) {
+            dst[offset] = (byte) value;
+        } else if (this == CRC16_MODBUS) {
+            dst[offset] = (byte) value;
+            dst[offset + 1] = (byte) (value >>> 8);
+        } else if (this == CRC32) {
+            for (int i = 0; i < 4; i++) {
+                dst[offset + i] = (byte) (value >>> (i * 8));
+            }
+        } else if (size == 2) {
+            dst[offset] = (byte) (value >>> 8);
+            dst[offset + 1] = (byte) value;
+        }
+    }
+
+    /**
+     * 读取按算法约定字节序存放的校验值
+     */
+    int read(byte[] src, int offset) {
+        if (size == 1) {
+            return src[offset] & 0xFF;
+        } else if (this == CRC16_MODBUS) {
+            return (src[offset] & 0xFF) | ((src[offset + 1] & 0xFF) << 8);
+        } else if (this == CRC32) {
+            return (src[offset] & 0xFF) | ((src[offset + 1] & 0xFF) << 8)
+                    | ((src[offset + 2] & 0xFF) << 16) | ((src[offset + 3] & 0xFF) << 24);
+        } else if (size == 2) {
+            return ((src[offset] & 0xFF) << 8) | (src[offset + 1] & 0xFF);
+        }
+        return 0;
+    }
+
+    /**
+     * 校验data[offset, offset + length)，其后紧跟校验值
+     */
+    boolean verify(byte[] data, int offset, int length) {
+        return size == 0 || compute(data, offset, length) == read(data, offset + length);
+    }
+}
@@ -0,0 +1,168 @@
+package com.webbridgesdk.webbridgekit;
+
+import java.util.Locale;
+
+/**
+ * 一次分片传输的状态
+ * 直接在原始数据上按偏移切片，不预先拆分成片段列表；只有被确认的片段才推进偏移，
+ * 失败的片段可以单独重发，断线后从最后确认的位置继续。
+ * 状态和偏移在BLE线程上修改，JS线程只读取快照。
+ */
+final class ChunkedTransfer {
+    enum State {
+        RUNNING,    // 正在发送
+        PAUSED,     // 连接断开，等待重连后续传
+        COMPLETED,
+        FAILED,
+        CANCELLED
+    }
+
+    final String id;
+    final String address;
+    final String serviceUuid;
+    final String characteristicUuid;
+    private final byte[] data;
+    private byte[] chunkBuffer; // 复用的片段缓冲区，长度等于当前片段长度
+
+    private volatile State state = State.RUNNING;
+    private volatile int acknowledgedOffset; // 已被设备确认的字节数
+    private volatile int chunksSent;
+    private volatile int retries;             // 累计重发次数
+    private int inFlightLength;               // 正在发送的片段长度，0表示没有
+    private int chunkAttempts;                // 当前片段已重发的次数
+    private int generation;                   // 暂停或取消时递增，使在途操作的回调失效
+    private long lastProgressTime;
+    private long pausedAt;
+
+    ChunkedTransfer(String id, String address, String serviceUuid, String characteristicUuid, byte[] data) {
+        this.id = id;
+        this.address = address;
+        this.serviceUuid = serviceUuid;
+        this.characteristicUuid = characteristicUuid;
+        this.data = data;
+    }
+
+    State state() {
+        return state;
+    }
+
+    int totalBytes() {
+        return data.length;
+    }
+
+    int acknowledgedOffset() {
+        return acknowledgedOffset;
+    }
+
+    int chunksSent() {
+        return chunksSent;
+    }
+
+    int generation() {
+        return generation;
+    }
+
+    boolean isActive() {
+        return state == State.RUNNING || state == State.PAUSED;
+    }
+
+    /**
+     * 从最后确认的位置切出下一片，重发时内容相同
+     * 返回的数组在下一次调用前有效，写入特征值后即可复用
+     *
+     * @param maxPayload 单片最大字节数（MTU - 3）
+     */
+    byte[] nextChunk(int maxPayload) {
+        int length = Math.min(Math.max(1, maxPayload), data.length - acknowledgedOffset);
+        if (chunkBuffer == null || chunkBuffer.length != length) {
+            chunkBuffer = new byte[length];
+        }
+        System.arraycopy(data, acknowledgedOffset, chunkBuffer, 0, length);
+        inFlightLength = length;
+        return chunkBuffer;
+    }
+
+    /**
+     * 当前片段已被确认，推进偏移
+     *
+     * @return 是否全部发送完成
+     */
+    boolean acknowledge() {
+        acknowledgedOffset += inFlightLength;
+        inFlightLength = 0;
+        chunkAttempts = 0;
+        chunksSent++;
+        if (acknowledgedOffset >= data.length) {
+            state = State.COMPLETED;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 当前片段发送失败，偏移不变
+     *
+     * @return 是否还可以重发该片段
+     */
+    boolean retryChunk(int maxAttempts) {
+        inFlightLength = 0;
+        if (chunkAttempts >= maxAttempts) {
+            return false;
+        }
+        chunkAttempts++;
+        retries++;
+        return true;
+    }
+
+    /**
+     * 连接断开，丢弃在途片段，保留已确认的偏移
+     */
+    void pause(long now) {
+        if (state == State.RUNNING) {
+            state = State.PAUSED;
+            pausedAt = now;
+            inFlightLength = 0;
+            chunkAttempts = 0;
+            generation++;
+        }
+    }
+
+    void resume() {
+        if (state == State.PAUSED) {
+            state = State.RUNNING;
+        }
+    }
+
+    /**
+     * 暂停时间是否超过续传窗口
+     */
+    boolean pauseExpired(long now, long windowMs) {
+        return state == State.PAUSED && now - pausedAt > windowMs;
+    }
+
+    void finish(State finalState) {
+        state = finalState;
+        inFlightLength = 0;
+        generation++;
+    }
+
+    /**
+     * 进度节流，距上次上报不足最小间隔时返回false
+     */
+    boolean shouldReportProgress(long now, long minIntervalMs) {
+        if (lastProgressTime != 0 && now - lastProgressTime < minIntervalMs) {
+            return false;
+        }
+        lastProgressTime = now;
+        return true;
+    }
+
+    String toJson() {
+        int offset = acknowledgedOffset;
+        int percent = data.length == 0 ? 100 : (int) (offset * 100L / data.length);
+        return String.format(Locale.ROOT,
+                "{\"transferId\":\"%s\",\"address\":\"%s\",\"uuid\":\"%s\",\"state\":\"%s\","
+                        + "\"sent\":%d,\"total\":%d,\"percent\":%d,\"chunks\":%d,\"retries\":%d}",
+                id, address, characteristicUuid, state, offset, data.length, percent, chunksSent, retries);
+    }
+}
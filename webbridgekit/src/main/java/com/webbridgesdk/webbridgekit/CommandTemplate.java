@@ -0,0 +1,328 @@
+package com.webbridgesdk.webbridgekit;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * 设备命令模板
+ * H5注册一次帧格式（固定帧头帧尾、字段布局和校验算法），之后只传字段值，由原生层组帧，
+ * 不再在JS中拼接十六进制和计算校验。帧结构为：帧头 | 字段... | 校验值 | 帧尾。
+ * 字段类型：
+ * <ul>
+ * <li>u8/u16/u32、i8/i16/i32：整数，超出范围时报错</li>
+ * <li>hex：十六进制字节串，length大于0时长度必须一致，0为变长</li>
+ * <li>const：固定字节，不需要传参</li>
+ * <li>length：1或2字节，自动填入其后字段的总字节数（不含校验值和帧尾）加上adjust</li>
+ * </ul>
+ * 模板创建后不可变，可在多个线程间共享。
+ */
+class CommandTemplate {
+    static final int MAX_FRAME_SIZE = 4096;
+    static final int MAX_FIELDS = 32;
+
+    enum Kind {
+        INT,
+        HEX,
+        CONST,
+        LENGTH
+    }
+
+    /**
+     * 模板中的一个字段
+     */
+    static final class Field {
+        final String name;
+        final Kind kind;
+        final int size;        // 字节数，变长hex为0
+        final boolean signed;
+        final boolean bigEndian;
+        final byte[] constant; // const字段的值
+        final Long defaultValue; // 整数字段未传参时使用，为null时必须传参
+        final int adjust;      // length字段的修正值
+
+        private Field(String name, Kind kind, int size, boolean signed, boolean bigEndian, byte[] constant,
+                      Long defaultValue, int adjust) {
+            this.name = name;
+            this.kind = kind;
+            this.size = size;
+            this.signed = signed;
+            this.bigEndian = bigEndian;
+            this.constant = constant;
+            this.defaultValue = defaultValue;
+            this.adjust = adjust;
+        }
+
+        static Field integer(String name, int size, boolean signed, boolean bigEndian, Long defaultValue) {
+            if (size != 1 && size != 2 && size != 4) {
+                throw new IllegalArgumentException("integer size must be 1, 2 or 4: " + name);
+            }
+            return new Field(name, Kind.INT, size, signed, bigEndian, null, defaultValue, 0);
+        }
+
+        /**
+         * @param size 固定字节数，0为变长
+         */
+        static Field hex(String name, int size) {
+            if (size < 0) {
+                throw new IllegalArgumentException("hex length must be >= 0: " + name);
+            }
+            return new Field(name, Kind.HEX, size, false, true, null, null, 0);
+        }
+
+        static Field constant(byte[] value) {
+            if (value == null || value.length == 0) {
+                throw new IllegalArgumentException("const value must not be empty");
+            }
+            return new Field(null, Kind.CONST, value.length, false, true, value.clone(), null, 0);
+        }
+
+        static Field length(String name, int size, boolean bigEndian, int adjust) {
+            if (size != 1 && size != 2) {
+                throw new IllegalArgumentException("length size must be 1 or 2: " + name);
+            }
+            return new Field(name, Kind.LENGTH, size, false, bigEndian, null, null, adjust);
+        }
+    }
+
+    final String serviceUuid;
+    final String characteristicUuid;
+    private final byte[] header;
+    private final byte[] footer;
+    private final List<Field> fields;
+    private final Checksum checksum;
+    private final int checksumStart; // 校验范围在帧中的起始偏移，结束于最后一个字段
+
+    CommandTemplate(String serviceUuid, String characteristicUuid, byte[] header, byte[] footer,
+                    List<Field> fields, Checksum checksum, int checksumStart) {
+        if (fields.size() > MAX_FIELDS) {
+            throw new IllegalArgumentException("at most " + MAX_FIELDS + " fields");
+        }
+        if (checksumStart < 0 || checksumStart > header.length) {
+            throw new IllegalArgumentException("checksumStart must be within the header");
+        }
+        Set<String> names = new HashSet<>();
+        int lengthFields = 0;
+        for (Field field : fields) {
+            if (field.name != null && !names.add(field.name)) {
+                throw new IllegalArgumentException("duplicate field: " + field.name);
+            }
+            if (field.kind == Kind.LENGTH && ++lengthFields > 1) {
+                throw new IllegalArgumentException("only one length field is allowed");
+            }
+        }
+        this.serviceUuid = serviceUuid;
+        this.characteristicUuid = characteristicUuid;
+        this.header = header.clone();
+        this.footer = footer.clone();
+        this.fields = Collections.unmodifiableList(new ArrayList<>(fields));
+        this.checksum = checksum;
+        this.checksumStart = checksumStart;
+    }
+
+    /**
+     * 从H5传入的模板创建
+     * {"service":"..","characteristic":"..","header":"7B","footer":"7D","checksum":"crc16modbus",
+     * "checksumStart":1,"bigEndian":true,"fields":[{"name":"cmd","type":"u8"},{"name":"len","type":"length"},
+     * {"name":"data","type":"hex"},{"type":"const","value":"00"}]}
+     * checksumStart为校验范围在帧中的起始偏移，默认为帧头之后；整数字段可带default。
+     *
+     * @throws JSONException 格式错误、字段类型未知或超过上限
+     */
+    static CommandTemplate fromJson(String json) throws JSONException {
+        JSONObject config = new JSONObject(json);
+        try {
+            String serviceUuid = UUID.fromString(config.getString("service")).toString();
+            String characteristicUuid = UUID.fromString(config.getString("characteristic")).toString();
+            byte[] header = decodeHex(config.optString("header", ""), "header");
+            byte[] footer = decodeHex(config.optString("footer", ""), "footer");
+            Checksum checksum = Checksum.parse(config.optString("checksum", "none"));
+            boolean bigEndian = config.optBoolean("bigEndian", true);
+
+            JSONArray array = config.getJSONArray("fields");
+            List<Field> fields = new ArrayList<>(array.length());
+            for (int i = 0; i < array.length(); i++) {
+                fields.add(parseField(array.getJSONObject(i), bigEndian));
+            }
+            return new CommandTemplate(serviceUuid, characteristicUuid, header, footer, fields, checksum,
+                    config.optInt("checksumStart", header.length));
+        } catch (IllegalArgumentException e) {
+            throw new JSONException(e.getMessage());
+        }
+    }
+
+    private static Field parseField(JSONObject field, boolean bigEndian) throws JSONException {
+        String type = field.getString("type").toLowerCase(Locale.ROOT);
+        boolean fieldBigEndian = field.optBoolean("bigEndian", bigEndian);
+        switch (type) {
+            case "u8":
+            case "u16":
+            case "u32":
+            case "i8":
+            case "i16":
+            case "i32":
+                Long defaultValue = field.has("default") ? field.getLong("default") : null;
+                return Field.integer(field.getString("name"), Integer.parseInt(type.substring(1)) / 8,
+                        type.charAt(0) == 'i', fieldBigEndian, defaultValue);
+            case "hex":
+                return Field.hex(field.getString("name"), field.optInt("length", 0));
+            case "const":
+                return Field.constant(decodeHex(field.getString("value"), "const value"));
+            case "length":
+                return Field.length(field.optString("name", "length"), field.optInt("size", 1),
+                        fieldBigEndian, field.optInt("adjust", 0));
+            default:
+                throw new JSONException("unknown field type: " + type);
+        }
+    }
+
+    /**
+     * 解析sendCommand的参数，{"cmd":1,"data":"0102"}；值为数字或十六进制字符串
+     *
+     * @throws JSONException 格式错误
+     */
+    static Map<String, Object> parseParams(String json) throws JSONException {
+        Map<String, Object> params = new HashMap<>();
+        if (json == null || json.trim().isEmpty()) {
+            return params;
+        }
+        JSONObject object = new JSONObject(json);
+        Iterator<String> keys = object.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            params.put(key, object.opt(key));
+        }
+        return params;
+    }
+
+    private static byte[] decodeHex(String hex, String what) {
+        byte[] bytes = HexCodec.decode(hex);
+        if (bytes.length == 0 && !hex.trim().isEmpty()) {
+            throw new IllegalArgumentException("invalid hex " + what + ": " + hex);
+        }
+        return bytes;
+    }
+
+    /**
+     * 按模板组帧，写入调用方提供的缓冲区
+     *
+     * @param params 字段名到值的映射，整数字段为Number，hex字段为十六进制字符串
+     * @param dst    输出缓冲区，从0开始写入
+     * @return 帧长度
+     * @throws IllegalArgumentException 缺少参数、值超出范围、hex长度不符或帧超过缓冲区
+     */
+    int encode(Map<String, ?> params, byte[] dst) {
+        int position = put(header, dst, 0);
+        int lengthAt = -1;
+        Field lengthField = null;
+        for (Field field : fields) {
+            switch (field.kind) {
+                case INT:
+                    ensureCapacity(dst, position, field.size);
+                    writeInt(checkRange(field, integerParam(field, params.get(field.name))), field, dst, position);
+                    position += field.size;
+                    break;
+                case HEX:
+                    position += writeHex(field, params.get(field.name), dst, position);
+                    break;
+                case CONST:
+                    position = put(field.constant, dst, position);
+                    break;
+                default:
+                    ensureCapacity(dst, position, field.size);
+                    lengthField = field;
+                    lengthAt = position;
+                    position += field.size;
+                    break;
+            }
+        }
+
+        if (lengthField != null) {
+            long length = position - lengthAt - lengthField.size + lengthField.adjust;
+            writeInt(checkRange(lengthField, length), lengthField, dst, lengthAt);
+        }
+        if (checksum != Checksum.NONE) {
+            ensureCapacity(dst, position, checksum.size());
+            checksum.write(checksum.compute(dst, checksumStart, position - checksumStart), dst, position);
+            position += checksum.size();
+        }
+        return put(footer, dst, position);
+    }
+
+    private static long integerParam(Field field, Object value) {
+        if (value == null) {
+            if (field.defaultValue == null) {
+                throw new IllegalArgumentException("missing field: " + field.name);
+            }
+            return field.defaultValue;
+        }
+        if (!(value instanceof Number)) {
+            throw new IllegalArgumentException("field " + field.name + " must be a number");
+        }
+        double number = ((Number) value).doubleValue();
+        if (number != Math.rint(number)) {
+            throw new IllegalArgumentException("field " + field.name + " must be an integer");
+        }
+        return ((Number) value).longValue();
+    }
+
+    private static long checkRange(Field field, long value) {
+        int bits = field.size * 8;
+        long min = field.signed ? -(1L << (bits - 1)) : 0;
+        long max = field.signed ? (1L << (bits - 1)) - 1 : (1L << bits) - 1;
+        if (value < min || value > max) {
+            throw new IllegalArgumentException("field " + field.name + " out of range: " + value);
+        }
+        return value;
+    }
+
+    private static void writeInt(long value, Field field, byte[] dst, int offset) {
+        for (int i = 0; i < field.size; i++) {
+            int shift = field.bigEndian ? (field.size - 1 - i) * 8 : i * 8;
+            dst[offset + i] = (byte) (value >>> shift);
+        }
+    }
+
+    private static int writeHex(Field field, Object value, byte[] dst, int offset) {
+        if (!(value instanceof String)) {
+            throw new IllegalArgumentException("field " + field.name + " must be a hex string");
+        }
+        String hex = (String) value;
+        if (hex.trim().isEmpty() && field.size == 0) {
+            return 0;
+        }
+        // 直接解码到输出缓冲区
+        int length = HexCodec.decode(hex, dst, offset);
+        if (length < 0) {
+            throw new IllegalArgumentException("field " + field.name + " is not valid hex or exceeds "
+                    + dst.length + " bytes");
+        }
+        if (field.size > 0 && length != field.size) {
+            throw new IllegalArgumentException("field " + field.name + " must be " + field.size + " bytes");
+        }
+        return length;
+    }
+
+    private static int put(byte[] bytes, byte[] dst, int offset) {
+        ensureCapacity(dst, offset, bytes.length);
+        System.arraycopy(bytes, 0, dst, offset, bytes.length);
+        return offset + bytes.length;
+    }
+
+    private static void ensureCapacity(byte[] dst, int offset, int length) {
+        if (offset + length > dst.length) {
+            throw new IllegalArgumentException("command exceeds " + dst.length + " bytes");
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.webbridgesdk.webbridgekit;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 连接参数自适应调整
+ * 以DeviceCompatibilityChecker推荐的连接参数为初始值，按外设型号（设备名称）统计连接耗时、
+ * 写入延迟和失败率，调整连接超时、重试次数与间隔、分片发送间隔和操作超时。
+ * 学习结果持久化，下次启动直接使用。
+ */
+class ConnectionTuner {
+    private static final String TAG = "ConnectionTuner";
+    private static final String PREFS_NAME = "webbridgekit_connection_tuning";
+    private static final double EWMA_WEIGHT = 0.2; // 新样本的权重
+    private static final long MAX_CONNECT_TIMEOUT = 15000;
+    private static final int MAX_RETRIES_LIMIT = 4;
+    private static final long DEFAULT_CHUNK_INTERVAL = 50; // 分片之间的初始间隔
+    private static final long MAX_CHUNK_INTERVAL = 200;
+    private static final long CHUNK_INTERVAL_STEP = 5; // 连续成功后每次减少的间隔
+    private static final int CHUNK_SUCCESS_STREAK = 32; // 连续成功多少次后减少间隔
+    private static final long MIN_OPERATION_TIMEOUT = 1000;
+    private static final long MAX_OPERATION_TIMEOUT = 5000;
+    private static final int PERSIST_EVERY_WRITES = 64;
+
+    private final SharedPreferences preferences;
+    private final DeviceCompatibilityChecker.ConnectionParameters seed;
+    private final Map<String, Profile> profiles = new HashMap<>();
+
+    ConnectionTuner(Context context, DeviceCompatibilityChecker.ConnectionParameters seed) {
+        this.preferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.seed = seed;
+    }
+
+    /**
+     * 获取外设型号对应的连接参数，首次使用时从磁盘加载或以推荐参数初始化
+     *
+     * @param model 外设型号，通常为设备名称
+     */
+    synchronized Profile profileFor(String model) {
+        String key = Build.MODEL + "|" + model;
+        Profile profile = profiles.get(key);
+        if (profile == null) {
+            profile = new Profile(key, seed);
+            String stored = preferences.getString(key, null);
+            if (stored != null) {
+                try {
+                    profile.restore(new JSONObject(stored));
+                } catch (JSONException e) {
+                    Log.e(TAG, "连接参数记录无效，重新学习: " + key);
+                }
+            }
+            profiles.put(key, profile);
+        }
+        return profile;
+    }
+
+    /**
+     * 记录一次连接尝试
+     *
+     * @param elapsedMs 从发起连接到就绪的耗时，失败时忽略
+     */
+    void recordConnect(Profile profile, boolean success, long elapsedMs) {
+        synchronized (profile) {
+            profile.connectFailureRate = ewma(profile.connectFailureRate, success ? 0 : 1);
+            if (success) {
+                profile.avgConnectMs = profile.avgConnectMs == 0 ? elapsedMs : ewma(profile.avgConnectMs, elapsedMs);
+                // 超时取平均连接耗时的3倍，不低于推荐值
+                profile.connectTimeoutMs = clamp((long) (profile.avgConnectMs * 3),
+                        seed.connectionTimeout, MAX_CONNECT_TIMEOUT);
+            } else if (profile.connectFailureRate > 0.3) {
+                profile.connectTimeoutMs = Math.min(profile.connectTimeoutMs * 3 / 2, MAX_CONNECT_TIMEOUT);
+            }
+
+            // 失败率越高，重试次数越多、间隔越长
+            int extraRetries = profile.connectFailureRate > 0.5 ? 2 : profile.connectFailureRate > 0.2 ? 1 : 0;
+            profile.maxRetries = Math.min(seed.maxRetries + extraRetries, MAX_RETRIES_LIMIT);
+            profile.retryDelayMs = (long) (seed.retryDelay * (1 + profile.connectFailureRate * 3));
+        }
+        persist(profile);
+    }
+
+    /**
+     * 记录一次带响应的写入
+     * 失败时加倍分片间隔，连续成功后逐步减小（加性减小、乘性增大）
+     */
+    void recordWrite(Profile profile, boolean success, long latencyMs) {
+        boolean persist;
+        synchronized (profile) {
+            profile.writeFailureRate = ewma(profile.writeFailureRate, success ? 0 : 1);
+            if (success) {
+                profile.avgWriteLatencyMs = profile.avgWriteLatencyMs == 0
+                        ? latencyMs : ewma(profile.avgWriteLatencyMs, latencyMs);
+                profile.operationTimeoutMs = clamp((long) (profile.avgWriteLatencyMs * 10),
+                        MIN_OPERATION_TIMEOUT, MAX_OPERATION_TIMEOUT);
+                if (++profile.successStreak >= CHUNK_SUCCESS_STREAK) {
+                    profile.chunkIntervalMs = Math.max(0, profile.chunkIntervalMs - CHUNK_INTERVAL_STEP);
+                    profile.successStreak = 0;
+                }
+            } else {
+                profile.chunkIntervalMs = Math.min(Math.max(profile.chunkIntervalMs * 2, CHUNK_INTERVAL_STEP * 2),
+                        MAX_CHUNK_INTERVAL);
+                // 超时后恢复到最大操作超时，避免过早判定失败
+                profile.operationTimeoutMs = MAX_OPERATION_TIMEOUT;
+                profile.successStreak = 0;
+            }
+            persist = ++profile.writesSincePersist >= PERSIST_EVERY_WRITES || !success;
+            if (persist) {
+                profile.writesSincePersist = 0;
+            }
+        }
+        if (persist) {
+            persist(profile);
+        }
+    }
+
+    private void persist(Profile profile) {
+        String json;
+        synchronized (profile) {
+            json = profile.toJson();
+        }
+        preferences.edit().putString(profile.key, json).apply();
+    }
+
+    private static double ewma(double average, double sample) {
+        return average + EWMA_WEIGHT * (sample - average);
+    }
+
+    private static long clamp(long value, long min, long max) {
+        return Math.max(min, Math.min(value, max));
+    }
+
+    /**
+     * 单个外设型号的连接参数和统计数据，读写时需同步在该对象上
+     */
+    static class Profile {
+        final String key;
+        long connectTimeoutMs;
+        long retryDelayMs;
+        int maxRetries;
+        int preferredMtu;
+        long chunkIntervalMs = DEFAULT_CHUNK_INTERVAL;
+        long operationTimeoutMs = MAX_OPERATION_TIMEOUT;
+
+        double avgConnectMs;        // 连接耗时均值，0表示尚无样本
+        double connectFailureRate;
+        double avgWriteLatencyMs;   // 写入延迟均值，0表示尚无样本
+        double writeFailureRate;
+        int successStreak;
+        int writesSincePersist;
+
+        Profile(String key, DeviceCompatibilityChecker.ConnectionParameters seed) {
+            this.key = key;
+            this.connectTimeoutMs = seed.connectionTimeout;
+            this.retryDelayMs = seed.retryDelay;
+            this.maxRetries = seed.maxRetries;
+            this.preferredMtu = seed.preferredMtu;
+        }
+
+        synchronized long connectTimeoutMs(boolean firstAttempt) {
+            // 尚无样本时首次连接使用双倍超时
+            return firstAttempt && avgConnectMs == 0 ? connectTimeoutMs * 2 : connectTimeoutMs;
+        }
+
+        synchronized long retryDelayMs() {
+            return retryDelayMs;
+        }
+
+        synchronized int maxRetries() {
+            return maxRetries;
+        }
+
+        synchronized int preferredMtu() {
+            return preferredMtu;
+        }
+
+        synchronized long chunkIntervalMs() {
+            return chunkIntervalMs;
+        }
+
+        synchronized long operationTimeoutMs() {
+            return operationTimeoutMs;
+        }
+
+        void restore(JSONObject json) {
+            connectTimeoutMs = json.optLong("connectTimeoutMs", connectTimeoutMs);
+            retryDelayMs = json.optLong("retryDelayMs", retryDelayMs);
+            maxRetries = json.optInt("maxRetries", maxRetries);
+            preferredMtu = json.optInt("preferredMtu", preferredMtu);
+            chunkIntervalMs = json.optLong("chunkIntervalMs", chunkIntervalMs);
+            operationTimeoutMs = json.optLong("operationTimeoutMs", operationTimeoutMs);
+            avgConnectMs = json.optDouble("avgConnectMs", 0);
+            connectFailureRate = json.optDouble("connectFailureRate", 0);
+            avgWriteLatencyMs = json.optDouble("avgWriteLatencyMs", 0);
+            writeFailureRate = json.optDouble("writeFailureRate", 0);
+        }
+
+        String toJson() {
+            return String.format(Locale.ROOT,
+                    "{\"connectTimeoutMs\":%d,\"retryDelayMs\":%d,\"maxRetries\":%d,\"preferredMtu\":%d,"
+                            + "\"chunkIntervalMs\":%d,\"operationTimeoutMs\":%d,\"avgConnectMs\":%.1f,"
+                            + "\"connectFailureRate\":%.3f,\"avgWriteLatencyMs\":%.1f,\"writeFailureRate\":%.3f}",
+                    connectTimeoutMs, retryDelayMs, maxRetries, preferredMtu, chunkIntervalMs, operationTimeoutMs,
+                    avgConnectMs, connectFailureRate, avgWriteLatencyMs, writeFailureRate);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.webbridgesdk.webbridgekit;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * 单个特征值的通知投递策略
+ * 在编码和拼接脚本之前决定一条通知是否交给H5：
+ * <ul>
+ * <li>sampleEvery：每N条只投递1条</li>
+ * <li>dropUnchanged：与上次投递的值相同则丢弃</li>
+ * <li>minIntervalMs：两次投递的最小间隔，间隔内的通知丢弃</li>
+ * <li>latestOnly：与minIntervalMs配合，间隔内只保留最新值，间隔结束时补投</li>
+ * </ul>
+ * 按上述顺序判断，每种原因分别计数。只在BLE线程上使用，计数供其他线程读取近似值。
+ */
+class DeliveryPolicy {
+    enum Decision {
+        DELIVER, // 立即投递
+        DROP,    // 丢弃
+        DEFER    // 暂存为最新值，调用方在dueAt()时调用takePending()补投
+    }
+
+    final long minIntervalMs;
+    final boolean dropUnchanged;
+    final boolean latestOnly;
+    final int sampleEvery;
+
+    private long lastDeliveredAt = Long.MIN_VALUE;
+    private byte[] lastValue;
+    private byte[] pending;
+    private int sampleCounter;
+
+    private volatile long received;
+    private volatile long delivered;
+    private volatile long suppressedBySampling;
+    private volatile long suppressedUnchanged;
+    private volatile long suppressedByInterval;
+    private volatile long replacedByLatest;
+
+    DeliveryPolicy(long minIntervalMs, boolean dropUnchanged, boolean latestOnly, int sampleEvery) {
+        if (minIntervalMs < 0 || sampleEvery < 1) {
+            throw new IllegalArgumentException("minIntervalMs must be >= 0 and sampleEvery >= 1");
+        }
+        this.minIntervalMs = minIntervalMs;
+        this.dropUnchanged = dropUnchanged;
+        this.latestOnly = latestOnly;
+        this.sampleEvery = sampleEvery;
+    }
+
+    /**
+     * 从H5传入的配置创建
+     * {"minIntervalMs":100,"dropUnchanged":true,"latestOnly":true,"sampleEvery":1}
+     *
+     * @throws JSONException 配置格式错误或取值无效
+     */
+    static DeliveryPolicy fromJson(String json) throws JSONException {
+        JSONObject config = new JSONObject(json);
+        try {
+            return new DeliveryPolicy(config.optLong("minIntervalMs", 0), config.optBoolean("dropUnchanged", false),
+                    config.optBoolean("latestOnly", false), config.optInt("sampleEvery", 1));
+        } catch (IllegalArgumentException e) {
+            throw new JSONException(e.getMessage());
+        }
+    }
+
+    /**
+     * 判断一条通知是否投递
+     *
+     * @param value 通知的值
+     * @param now   当前时间（毫秒，单调时钟）
+     */
+    Decision offer(byte[] value, long now) {
+        received++;
+        if (sampleEvery > 1 && ++sampleCounter % sampleEvery != 0) {
+            suppressedBySampling++;
+            return Decision.DROP;
+        }
+        if (dropUnchanged && Arrays.equals(value, pending != null ? pending : lastValue)) {
+            suppressedUnchanged++;
+            return Decision.DROP;
+        }
+        if (minIntervalMs > 0 && lastDeliveredAt != Long.MIN_VALUE && now - lastDeliveredAt < minIntervalMs) {
+            if (!latestOnly) {
+                suppressedByInterval++;
+                return Decision.DROP;
+            }
+            boolean first = pending == null;
+            if (!first) {
+                replacedByLatest++;
+            }
+            pending = value.clone();
+            return first ? Decision.DEFER : Decision.DROP;
+        }
+        if (pending != null) {
+            // 间隔已过但补投尚未执行，暂存的旧值被这条取代
+            pending = null;
+            replacedByLatest++;
+        }
+        markDelivered(dropUnchanged ? value.clone() : null, now);
+        return Decision.DELIVER;
+    }
+
+    /**
+     * 暂存值应补投的时间
+     */
+    long dueAt() {
+        return lastDeliveredAt + minIntervalMs;
+    }
+
+    /**
+     * 取出暂存的最新值并记为已投递
+     *
+     * @return 暂存值，没有时返回null
+     */
+    byte[] takePending(long now) {
+        byte[] value = pending;
+        if (value == null) {
+            return null;
+        }
+        pending = null;
+        markDelivered(value, now);
+        return value;
+    }
+
+    String statsJson() {
+        return String.format(Locale.ROOT,
+                "{\"minIntervalMs\":%d,\"dropUnchanged\":%b,\"latestOnly\":%b,\"sampleEvery\":%d,\"received\":%d,"
+                        + "\"delivered\":%d,\"suppressed\":{\"sampling\":%d,\"unchanged\":%d,\"interval\":%d,"
+                        + "\"replaced\":%d}}",
+                minIntervalMs, dropUnchanged, latestOnly, sampleEvery, received, delivered,
+                suppressedBySampling, suppressedUnchanged, suppressedByInterval, replacedByLatest);
+    }
+
+    /**
+     * @param value 投递的值（本类持有的副本），只在dropUnchanged时保留用于比较
+     */
+    private void markDelivered(byte[] value, long now) {
+        lastDeliveredAt = now;
+        if (dropUnchanged) {
+            lastValue = value;
+        }
+        delivered++;
+    }
+}
@@ -0,0 +1,347 @@
+package com.webbridgesdk.webbridgekit;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Locale;
+
+/**
+ * 通知数据的帧重组
+ * 设备的一帧应用数据可能拆分在多个通知中，按特征值配置分帧方式后在原生层拼接，
+ * 只把完整的帧交给H5。支持三种格式：
+ * <ul>
+ * <li>length：长度前缀，lengthOffset处为长度字段（1或2字节），可包含前导同步头</li>
+ * <li>delimiter：以分隔符结束，如0D0A，交付的帧不含分隔符</li>
+ * <li>markers：起始/结束标记，如7B...7D，交付的帧包含标记</li>
+ * </ul>
+ * 配置了校验时，校验值位于帧末尾（markers在结束标记之前），覆盖校验值之前、起始标记之后的内容。
+ * 只在BLE线程上使用，不是线程安全的。
+ */
+class FrameAssembler {
+    static final int DEFAULT_MAX_FRAME_SIZE = 4096;
+
+    enum Type {
+        LENGTH,
+        DELIMITER,
+        MARKERS
+    }
+
+    /**
+     * 完整帧的接收者
+     */
+    interface Sink {
+        void onFrame(byte[] frame);
+    }
+
+    final Type type;
+    private final Checksum checksum;
+    private final int maxFrameSize;
+    // length
+    private final int lengthOffset;
+    private final int lengthSize;
+    private final boolean bigEndian;
+    private final boolean lengthIncludesHeader;
+    // delimiter
+    private final byte[] delimiter;
+    // markers
+    private final byte startMarker;
+    private final byte endMarker;
+
+    private byte[] buffer = new byte[256];
+    private int start; // 未处理数据的起始位置
+    private int end;   // 未处理数据的结束位置
+    private long frames;
+    private long checksumErrors;
+    private long lengthErrors;
+    private long discardedBytes;
+
+    private FrameAssembler(Type type, Checksum checksum, int maxFrameSize, int lengthOffset, int lengthSize,
+                           boolean bigEndian, boolean lengthIncludesHeader, byte[] delimiter,
+                           byte startMarker, byte endMarker) {
+        this.type = type;
+        this.checksum = checksum;
+        this.maxFrameSize = maxFrameSize;
+        this.lengthOffset = lengthOffset;
+        this.lengthSize = lengthSize;
+        this.bigEndian = bigEndian;
+        this.lengthIncludesHeader = lengthIncludesHeader;
+        this.delimiter = delimiter;
+        this.startMarker = startMarker;
+        this.endMarker = endMarker;
+    }
+
+    /**
+     * 长度前缀格式
+     *
+     * @param lengthOffset         长度字段前的字节数（同步头等）
+     * @param lengthSize           长度字段字节数，1或2
+     * @param lengthIncludesHeader 长度值是否为整帧长度；否则只表示长度字段之后的数据长度（不含校验值）
+     */
+    static FrameAssembler lengthPrefixed(int lengthOffset, int lengthSize, boolean bigEndian,
+                                         boolean lengthIncludesHeader, Checksum checksum, int maxFrameSize) {
+        if (lengthOffset < 0 || (lengthSize != 1 && lengthSize != 2)) {
+            throw new IllegalArgumentException("lengthOffset must be >= 0 and lengthSize 1 or 2");
+        }
+        return new FrameAssembler(Type.LENGTH, checksum, maxFrameSize, lengthOffset, lengthSize, bigEndian,
+                lengthIncludesHeader, null, (byte) 0, (byte) 0);
+    }
+
+    /**
+     * 分隔符格式
+     */
+    static FrameAssembler delimited(byte[] delimiter, Checksum checksum, int maxFrameSize) {
+        if (delimiter == null || delimiter.length == 0) {
+            throw new IllegalArgumentException("delimiter must not be empty");
+        }
+        return new FrameAssembler(Type.DELIMITER, checksum, maxFrameSize, 0, 0, false, false,
+                delimiter.clone(), (byte) 0, (byte) 0);
+    }
+
+    /**
+     * 起始/结束标记格式
+     */
+    static FrameAssembler markers(byte startMarker, byte endMarker, Checksum checksum, int maxFrameSize) {
+        return new FrameAssembler(Type.MARKERS, checksum, maxFrameSize, 0, 0, false, false, null,
+                startMarker, endMarker);
+    }
+
+    /**
+     * 从H5传入的配置创建
+     * {"type":"markers","start":"7B","end":"7D","checksum":"crc16modbus","maxFrameSize":4096}
+     * {"type":"length","lengthOffset":1,"lengthSize":2,"bigEndian":true,"lengthIncludesHeader":false}
+     * {"type":"delimiter","delimiter":"0D0A"}
+     *
+     * @throws JSONException 配置格式错误
+     */
+    static FrameAssembler fromJson(String json) throws JSONException {
+        JSONObject config = new JSONObject(json);
+        int maxFrameSize = config.optInt("maxFrameSize", DEFAULT_MAX_FRAME_SIZE);
+        if (maxFrameSize <= 0) {
+            throw new JSONException("maxFrameSize must be positive");
+        }
+        Checksum checksum;
+        try {
+            checksum = Checksum.parse(config.optString("checksum", "none"));
+        } catch (IllegalArgumentException e) {
+            throw new JSONException(e.getMessage());
+        }
+
+        String type = config.getString("type").toLowerCase(Locale.ROOT);
+        try {
+            switch (type) {
+                case "length":
+                    return lengthPrefixed(config.optInt("lengthOffset", 0), config.optInt("lengthSize", 1),
+                            config.optBoolean("bigEndian", true), config.optBoolean("lengthIncludesHeader", false),
+                            checksum, maxFrameSize);
+                case "delimiter":
+                    return delimited(HexCodec.decode(config.getString("delimiter")), checksum, maxFrameSize);
+                case "markers":
+                    byte[] startMarker = HexCodec.decode(config.optString("start", "7B"));
+                    byte[] endMarker = HexCodec.decode(config.optString("end", "7D"));
+                    if (startMarker.length != 1 || endMarker.length != 1) {
+                        throw new JSONException("start and end must be single bytes");
+                    }
+                    return markers(startMarker[0], endMarker[0], checksum, maxFrameSize);
+                default:
+                    throw new JSONException("unknown framing type: " + type);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new JSONException(e.getMessage());
+        }
+    }
+
+    /**
+     * 追加一个通知的数据，每拼出一个完整帧回调一次
+     */
+    void feed(byte[] data, Sink sink) {
+        if (data == null || data.length == 0) {
+            return;
+        }
+        append(data);
+        boolean progress = true;
+        while (progress && end > start) {
+            switch (type) {
+                case LENGTH:
+                    progress = extractLengthPrefixed(sink);
+                    break;
+                case DELIMITER:
+                    progress = extractDelimited(sink);
+                    break;
+                default:
+                    progress = extractMarked(sink);
+                    break;
+            }
+        }
+        if (start == end) {
+            start = 0;
+            end = 0;
+        }
+    }
+
+    /**
+     * 丢弃未完成的帧，连接断开时调用
+     */
+    void reset() {
+        start = 0;
+        end = 0;
+    }
+
+    String statsJson() {
+        return String.format(Locale.ROOT,
+                "{\"type\":\"%s\",\"frames\":%d,\"checksumErrors\":%d,\"lengthErrors\":%d,\"discardedBytes\":%d,"
+                        + "\"bufferedBytes\":%d}",
+                type.name().toLowerCase(Locale.ROOT), frames, checksumErrors, lengthErrors, discardedBytes,
+                end - start);
+    }
+
+    long frames() {
+        return frames;
+    }
+
+    long checksumErrors() {
+        return checksumErrors;
+    }
+
+    long lengthErrors() {
+        return lengthErrors;
+    }
+
+    private boolean extractLengthPrefixed(Sink sink) {
+        int header = lengthOffset + lengthSize;
+        if (end - start < header) {
+            return false;
+        }
+        int lengthPos = start + lengthOffset;
+        int value = lengthSize == 1 ? buffer[lengthPos] & 0xFF
+                : bigEndian ? ((buffer[lengthPos] & 0xFF) << 8) | (buffer[lengthPos + 1] & 0xFF)
+                : (buffer[lengthPos] & 0xFF) | ((buffer[lengthPos + 1] & 0xFF) << 8);
+        int frameLength = lengthIncludesHeader ? value : header + value + checksum.size();
+        if (frameLength < header + checksum.size() || frameLength > maxFrameSize) {
+            // 长度无效，丢弃一个字节重新同步
+            lengthErrors++;
+            discard(1);
+            return true;
+        }
+        if (end - start < frameLength) {
+            return false;
+        }
+        int payloadLength = frameLength - checksum.size();
+        if (!checksum.verify(buffer, start, payloadLength)) {
+            checksumErrors++;
+            discard(1);
+            return true;
+        }
+        emit(start, frameLength, sink);
+        start += frameLength;
+        return true;
+    }
+
+    private boolean extractDelimited(Sink sink) {
+        int index = indexOf(delimiter, start);
+        if (index < 0) {
+            if (end - start > maxFrameSize + delimiter.length) {
+                // 超过最大帧长仍未找到分隔符，保留可能是分隔符前缀的尾部
+                lengthErrors++;
+                discard(end - start - (delimiter.length - 1));
+            }
+            return false;
+        }
+        int frameLength = index - start;
+        if (frameLength > maxFrameSize) {
+            lengthErrors++;
+        } else if (frameLength > 0) {
+            if (frameLength <= checksum.size()) {
+                lengthErrors++;
+            } else if (!checksum.verify(buffer, start, frameLength - checksum.size())) {
+                checksumErrors++;
+            } else {
+                emit(start, frameLength, sink);
+            }
+        }
+        start = index + delimiter.length;
+        return true;
+    }
+
+    private boolean extractMarked(Sink sink) {
+        // 丢弃起始标记之前的数据
+        int first = start;
+        while (first < end && buffer[first] != startMarker) {
+            first++;
+        }
+        if (first > start) {
+            discard(first - start);
+        }
+        if (start == end) {
+            return false;
+        }
+
+        int last = start + 1;
+        while (last < end && buffer[last] != endMarker) {
+            last++;
+        }
+        if (last >= end) {
+            if (end - start > maxFrameSize) {
+                // 帧过长，跳过这个起始标记寻找下一帧
+                lengthErrors++;
+                discard(1);
+                return true;
+            }
+            return false;
+        }
+
+        int frameLength = last - start + 1;
+        int contentLength = frameLength - 2 - checksum.size();
+        if (frameLength > maxFrameSize || contentLength < 0) {
+            lengthErrors++;
+        } else if (!checksum.verify(buffer, start + 1, contentLength)) {
+            checksumErrors++;
+        } else {
+            emit(start, frameLength, sink);
+        }
+        start = last + 1;
+        return true;
+    }
+
+    private int indexOf(byte[] pattern, int from) {
+        outer:
+        for (int i = from; i <= end - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (buffer[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private void emit(int offset, int length, Sink sink) {
+        byte[] frame = new byte[length];
+        System.arraycopy(buffer, offset, frame, 0, length);
+        frames++;
+        sink.onFrame(frame);
+    }
+
+    private void discard(int count) {
+        start += count;
+        discardedBytes += count;
+    }
+
+    private void append(byte[] data) {
+        if (end + data.length > buffer.length) {
+            int pending = end - start;
+            if (pending + data.length <= buffer.length) {
+                // 空间足够，把未处理的数据移到开头
+                System.arraycopy(buffer, start, buffer, 0, pending);
+            } else {
+                byte[] grown = new byte[Math.max(buffer.length * 2, pending + data.length)];
+                System.arraycopy(buffer, start, grown, 0, pending);
+                buffer = grown;
+            }
+            start = 0;
+            end = pending;
+        }
+        System.arraycopy(data, 0, buffer, end, data.length);
+        end += data.length;
+    }
+}
@@ -0,0 +1,216 @@
+package com.webbridgesdk.webbridgekit;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothProfile;
+import android.os.Handler;
+import android.os.SystemClock;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * 单个设备的GATT连接状态
+ * 连接池中的每个设备拥有独立的GATT对象、MTU、通知状态和操作队列
+ */
+class GattConnection {
+    static final int DEFAULT_MTU = 23; // BLE默认ATT_MTU
+    static final int ATT_WRITE_HEADER_SIZE = 3; // 写请求的ATT头（opcode + handle）
+    static final int MAX_ATTRIBUTE_VALUE = 512; // ATT属性值长度上限
+
+    /**
+     * 连接建立的各个阶段，由GATT回调推进
+     */
+    enum Phase {
+        IDLE,         // 未连接
+        CONNECTING,   // 等待onConnectionStateChange（含重试退避）
+        MTU,          // 等待onMtuChanged
+        DISCOVERING,  // 等待onServicesDiscovered
+        SUBSCRIBING,  // 等待所有CCCD写入完成
+        READY,        // 可以收发数据
+        CLOSING       // 主动断开中
+    }
+
+    final String address;
+    final GattOperationQueue operationQueue;
+    BluetoothDevice device;
+    GattTransport.Link gatt;
+    int connectionState = BluetoothProfile.STATE_DISCONNECTED;
+    int retryCount = 0;
+    TimeoutWheel.Timeout connectTimeout; // 连接超时
+    Runnable retryRunnable; // 退避重连
+    ConnectionTuner.Profile tuning; // 该外设型号的自适应连接参数
+    long attemptStartTime; // 本次连接尝试的开始时间
+    volatile Phase phase = Phase.IDLE;
+    int pendingSubscriptions; // SUBSCRIBING阶段尚未完成的CCCD写入数
+    private final long[] phaseDurations = new long[Phase.values().length];
+    private long phaseStartTime;
+    private long connectStartTime;
+    boolean mtuConfigured = false;
+    int negotiatedMtu = DEFAULT_MTU; // 当前连接协商得到的MTU，协商失败时保持默认值
+    final Map<String, Boolean> characteristicNotificationEnabled = new HashMap<>();
+    final Set<String> activeSubscriptions = new HashSet<>(); // CCCD已确认写入的特征值
+    final ReadCoalescer reads = new ReadCoalescer(); // 读取合并和缓存，只在BLE线程中使用
+    final Map<String, StreamWriteData> streamWriteData = new HashMap<>();
+    final Map<String, OutboundWriteQueue> writeQueues = new HashMap<>(); // 按特征值UUID的发送队列
+    // 特征值是否支持可靠写入（扩展属性描述符的Reliable Write位），按特征值UUID索引，读取后缓存到断线
+    final Map<String, Boolean> reliableWriteSupport = new HashMap<>();
+    byte[] lastWriteValue; // 最近一次写入回调中的值，可靠写入时为外设回显；只在BLE线程访问
+    final HexCodec hexCodec = new HexCodec(); // 只在BLE线程中使用
+    // 链路层参数，由PHY和连接参数回调更新
+    volatile int txPhy = BluetoothDevice.PHY_LE_1M;
+    volatile int rxPhy = BluetoothDevice.PHY_LE_1M;
+    volatile int connectionPriority = BluetoothGatt.CONNECTION_PRIORITY_BALANCED;
+    volatile int connectionInterval;  // 单位1.25ms，0表示系统未上报
+    volatile int peripheralLatency;
+    volatile int supervisionTimeout;  // 单位10ms
+    volatile long probeThroughput = -1; // 最近一次吞吐量探测结果（字节/秒），-1表示未探测
+    long lastBulkActivity;            // 最近一次批量发送的时间
+    Runnable idlePriorityRunnable;    // 批量发送结束后恢复均衡优先级
+    // 服务发现后建立的 服务UUID → 特征值UUID → 特征值 索引，整体替换，供JS线程无锁读取
+    volatile Map<UUID, Map<UUID, BluetoothGattCharacteristic>> characteristicIndex;
+
+    GattConnection(String address, Handler handler, TimeoutWheel timeoutWheel) {
+        this.address = address;
+        this.operationQueue = new GattOperationQueue(handler, timeoutWheel);
+    }
+
+    /**
+     * 获取单次写入可承载的最大数据长度
+     * 协商成功时为 MTU - 3，但不超过属性值上限512字节（MTU为517时 MTU - 3 = 514）；
+     * 协商失败或尚未完成时退回默认的20字节
+     */
+    int getMaxWritePayloadSize() {
+        return Math.min(negotiatedMtu - ATT_WRITE_HEADER_SIZE, MAX_ATTRIBUTE_VALUE);
+    }
+
+    /**
+     * 链路参数报告：PHY、MTU、连接优先级和连接间隔
+     */
+    String linkReport() {
+        return String.format(Locale.ROOT,
+                "{\"address\":\"%s\",\"phase\":\"%s\",\"txPhy\":\"%s\",\"rxPhy\":\"%s\",\"mtu\":%d,"
+                        + "\"maxPayload\":%d,\"priority\":\"%s\",\"intervalMs\":%s,\"latency\":%d,"
+                        + "\"supervisionTimeoutMs\":%d,\"probeThroughput\":%d}",
+                address, phase, phyName(txPhy), phyName(rxPhy), negotiatedMtu, getMaxWritePayloadSize(),
+                priorityName(connectionPriority),
+                connectionInterval > 0 ? String.format(Locale.ROOT, "%.2f", connectionInterval * 1.25) : "null",
+                peripheralLatency, supervisionTimeout * 10, probeThroughput);
+    }
+
+    static String phyName(int phy) {
+        switch (phy) {
+            case BluetoothDevice.PHY_LE_2M:
+                return "2M";
+            case BluetoothDevice.PHY_LE_CODED:
+                return "CODED";
+            default:
+                return "1M";
+        }
+    }
+
+    private static String priorityName(int priority) {
+        switch (priority) {
+            case BluetoothGatt.CONNECTION_PRIORITY_HIGH:
+                return "high";
+            case BluetoothGatt.CONNECTION_PRIORITY_LOW_POWER:
+                return "lowPower";
+            default:
+                return "balanced";
+        }
+    }
+
+    boolean isConnected() {
+        return gatt != null && connectionState == BluetoothProfile.STATE_CONNECTED;
+    }
+
+    /**
+     * 进入下一阶段，记录上一阶段的耗时
+     * 从IDLE进入时开始新的计时
+     */
+    void moveTo(Phase next) {
+        long now = SystemClock.elapsedRealtime();
+        if (phase == Phase.IDLE) {
+            Arrays.fill(phaseDurations, 0);
+            connectStartTime = now;
+        } else {
+            phaseDurations[phase.ordinal()] += now - phaseStartTime;
+        }
+        phase = next;
+        phaseStartTime = now;
+    }
+
+    /**
+     * 连接建立的分阶段耗时
+     * 格式：{"address":"..","phase":"READY","attempts":1,"totalMs":..,"connectingMs":..,"mtuMs":..,
+     * "discoveringMs":..,"subscribingMs":..}
+     */
+    String timingReport() {
+        long total;
+        if (phase == Phase.READY) {
+            // 就绪后只统计建立连接的耗时
+            total = phaseDurations[Phase.CONNECTING.ordinal()] + phaseDurations[Phase.MTU.ordinal()]
+                    + phaseDurations[Phase.DISCOVERING.ordinal()] + phaseDurations[Phase.SUBSCRIBING.ordinal()];
+        } else {
+            total = phase == Phase.IDLE ? 0 : SystemClock.elapsedRealtime() - connectStartTime;
+        }
+        return String.format(Locale.ROOT,
+                "{\"address\":\"%s\",\"phase\":\"%s\",\"attempts\":%d,\"totalMs\":%d,\"connectingMs\":%d,"
+                        + "\"mtuMs\":%d,\"discoveringMs\":%d,\"subscribingMs\":%d}",
+                address, phase, retryCount + 1, total,
+                phaseDurations[Phase.CONNECTING.ordinal()],
+                phaseDurations[Phase.MTU.ordinal()],
+                phaseDurations[Phase.DISCOVERING.ordinal()],
+                phaseDurations[Phase.SUBSCRIBING.ordinal()]);
+    }
+
+    /**
+     * 重置连接相关状态，取消队列中的GATT操作
+     * 写入队列直接清空，调用方应先取出其中的写入回调结果
+     */
+    void reset() {
+        characteristicNotificationEnabled.clear();
+        activeSubscriptions.clear();
+        reads.clearCache();
+        streamWriteData.clear();
+        writeQueues.clear();
+        reliableWriteSupport.clear();
+        lastWriteValue = null;
+        operationQueue.clear();
+        characteristicIndex = null;
+
+        // MTU和链路参数按连接协商，新连接需要重新请求
+        mtuConfigured = false;
+        negotiatedMtu = DEFAULT_MTU;
+        txPhy = BluetoothDevice.PHY_LE_1M;
+        rxPhy = BluetoothDevice.PHY_LE_1M;
+        connectionPriority = BluetoothGatt.CONNECTION_PRIORITY_BALANCED;
+        connectionInterval = 0;
+        peripheralLatency = 0;
+        supervisionTimeout = 0;
+        probeThroughput = -1; // 探测结果只对当时的链路参数有效
+        connectionState = BluetoothProfile.STATE_DISCONNECTED;
+    }
+
+    /**
+     * 存储流式发送过程中的数据
+     */
+    static class StreamWriteData {
+        BluetoothGattCharacteristic characteristic;
+        byte[] data;                    // 完整数据
+        int offset;                     // 已被协议栈接收的字节数
+        int pendingLength;              // 正在发送的数据包长度
+        int chunkSize;                  // 每包大小（MTU - 3）
+        int packetsSent;                // 已发送的数据包数
+        int busyRetries;                // 连续缓冲区已满的次数
+        int originalWriteType;          // 发送前的写入类型
+        long startTime;                 // 开始时间（elapsedRealtime，不受系统时钟调整影响）
+        boolean probe;                  // 是否为吞吐量探测
+    }
+}
@@ -0,0 +1,64 @@
+package com.webbridgesdk.webbridgekit;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattService;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * GATT服务结构的内存索引
+ * 每次服务发现后按UUID索引特征值，收到Service Changed时由BluetoothManager丢弃并重新发现；
+ * 同时缓存UUID解析结果，供写入路径复用。
+ * 特征值对象属于具体的GATT连接，重连后必须重新发现服务才能取得，因此不做跨连接的持久化。
+ */
+final class GattLayoutCache {
+    private static final int MAX_INTERNED_UUIDS = 256;
+    static final String SERVICE_CHANGED_UUID = "00002a05-0000-1000-8000-00805f9b34fb"; // Service Changed特征值
+
+    private static final Map<String, UUID> internedUuids = new ConcurrentHashMap<>();
+
+    private GattLayoutCache() {
+    }
+
+    /**
+     * 解析UUID并缓存结果，避免每次写入都调用UUID.fromString
+     *
+     * @throws IllegalArgumentException UUID格式无效
+     */
+    static UUID uuid(String value) {
+        UUID uuid = internedUuids.get(value);
+        if (uuid == null) {
+            uuid = UUID.fromString(value);
+            if (internedUuids.size() >= MAX_INTERNED_UUIDS) {
+                internedUuids.clear();
+            }
+            internedUuids.put(value, uuid);
+        }
+        return uuid;
+    }
+
+    /**
+     * 为发现的服务建立 服务UUID → 特征值UUID → 特征值 的索引
+     */
+    static Map<UUID, Map<UUID, BluetoothGattCharacteristic>> buildIndex(List<BluetoothGattService> services) {
+        Map<UUID, Map<UUID, BluetoothGattCharacteristic>> index = new HashMap<>();
+        for (BluetoothGattService service : services) {
+            Map<UUID, BluetoothGattCharacteristic> characteristics = index.get(service.getUuid());
+            if (characteristics == null) {
+                characteristics = new HashMap<>();
+                index.put(service.getUuid(), characteristics);
+            }
+            for (BluetoothGattCharacteristic characteristic : service.getCharacteristics()) {
+                // 同一服务下重复的UUID以第一个为准，与getCharacteristic行为一致
+                if (!characteristics.containsKey(characteristic.getUuid())) {
+                    characteristics.put(characteristic.getUuid(), characteristic);
+                }
+            }
+        }
+        return index;
+    }
+}
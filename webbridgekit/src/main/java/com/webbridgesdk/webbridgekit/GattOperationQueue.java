@@ -0,0 +1,327 @@
+package com.webbridgesdk.webbridgekit;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+
+/**
+ * GATT操作队列
+ * Android同一时间只允许一个未完成的GATT操作，所有读、写、描述符、MTU和服务发现操作
+ * 都必须经过此队列串行执行。每个操作由对应的GATT回调完成，并带有独立的超时。
+ * 类型或标识与当前操作不符的回调被丢弃；操作超时后暂停队列，等到迟到的回调或宽限期结束再发起下一个操作，
+ * 避免迟到的回调被当成下一个同类操作的结果。
+ * 队列状态只在构造时传入的Handler线程上修改。
+ */
+class GattOperationQueue {
+    private static final String TAG = "GattOperationQueue";
+
+    /**
+     * 操作优先级，交互命令优先于批量传输
+     */
+    enum Priority {
+        HIGH,    // 交互命令，如单次写入、读取
+        NORMAL,  // 连接建立过程中的操作，如订阅通知
+        BULK     // 批量传输，如分片写入、流式发送
+    }
+
+    /**
+     * 操作类型，用于将GATT回调与当前操作对应
+     */
+    enum Type {
+        WRITE_CHARACTERISTIC,
+        READ_CHARACTERISTIC,
+        WRITE_DESCRIPTOR,
+        READ_DESCRIPTOR,
+        REQUEST_MTU,
+        DISCOVER_SERVICES,
+        EXECUTE_RELIABLE_WRITE,
+        WRITE_BATCH          // 多步操作，依次接收特征值写入和可靠写入提交的回调
+    }
+
+    /**
+     * 队列中的单个GATT操作
+     */
+    abstract static class Operation {
+        final Type type;
+        final Priority priority;
+        final String key;        // 特征值或描述符标识，用于校验回调
+        final long timeoutMs;
+        private TimeoutWheel.Timeout timeout;
+        private int step; // 已计时的步骤数
+        private long startTime;
+
+        Operation(Type type, Priority priority, String key, long timeoutMs) {
+            this.type = type;
+            this.priority = priority;
+            this.key = key;
+            this.timeoutMs = timeoutMs;
+        }
+
+        /**
+         * 从发起操作到现在经过的时间，用于统计GATT延迟
+         */
+        long elapsedMs() {
+            return SystemClock.elapsedRealtime() - startTime;
+        }
+
+        /**
+         * 发起GATT操作
+         *
+         * @return 协议栈是否接受了该操作
+         */
+        abstract boolean execute();
+
+        /**
+         * 是否由该操作处理此类GATT回调，多步操作可接受多种回调
+         */
+        boolean accepts(Type callbackType) {
+            return callbackType == type;
+        }
+
+        /**
+         * 多步操作在回调到达后发起下一步
+         *
+         * @return 已发起下一步时返回true，操作继续占用队列并重新计时；返回false时以onComplete结束
+         */
+        boolean proceed(Type callbackType, int status) {
+            return false;
+        }
+
+        /**
+         * GATT回调到达时调用
+         *
+         * @param status GATT状态码
+         */
+        void onComplete(int status) {
+        }
+
+        /**
+         * 协议栈拒绝发起操作时调用，默认按失败处理
+         */
+        void onRejected() {
+            onComplete(STATUS_REJECTED);
+        }
+
+        /**
+         * 超时未收到GATT回调时调用
+         */
+        void onTimeout() {
+        }
+
+        /**
+         * 连接断开、队列清空时调用
+         */
+        void onCancelled() {
+        }
+    }
+
+    /** 协议栈拒绝发起操作时传给onComplete的状态码 */
+    static final int STATUS_REJECTED = -1;
+    /** 超时未收到GATT回调时使用的状态码 */
+    static final int STATUS_TIMEOUT = -2;
+    /** 操作超时后等待其迟到回调的时长，期间不发起新操作 */
+    static final long STALE_CALLBACK_GRACE_MS = 1000;
+
+    private final Handler handler;
+    private final TimeoutWheel timeoutWheel;
+    private final ArrayDeque<Operation> highQueue = new ArrayDeque<>();
+    private final ArrayDeque<Operation> normalQueue = new ArrayDeque<>();
+    private final ArrayDeque<Operation> bulkQueue = new ArrayDeque<>();
+    private Operation current;
+    private Operation timedOut;  // 已超时、回调可能迟到的操作，不为null时队列暂停
+    private TimeoutWheel.Timeout graceTimeout;
+
+    GattOperationQueue(Handler handler, TimeoutWheel timeoutWheel) {
+        this.handler = handler;
+        this.timeoutWheel = timeoutWheel;
+    }
+
+    /**
+     * 将操作加入队列，空闲时立即执行
+     */
+    void enqueue(Operation operation) {
+        handler.post(() -> {
+            queueFor(operation.priority).add(operation);
+            next();
+        });
+    }
+
+    /**
+     * GATT回调到达时完成当前操作并执行下一个
+     *
+     * @param type   回调对应的操作类型
+     * @param key    回调对应的特征值或描述符标识
+     * @param status GATT状态码
+     */
+    void complete(Type type, String key, int status) {
+        handler.post(() -> {
+            if (current == null && timedOut != null && matches(timedOut, type, key)) {
+                // 超时操作的迟到回调，结果已按超时处理，只恢复队列
+                Log.w(TAG, "收到已超时操作的回调: " + type + ", " + key);
+                resume();
+                return;
+            }
+            Operation operation = current;
+            if (operation == null || !matches(operation, type, key)) {
+                Log.w(TAG, "丢弃未匹配的GATT回调: " + type + ", " + key);
+                return;
+            }
+            boolean continued;
+            try {
+                continued = operation.proceed(type, status);
+            } catch (SecurityException e) {
+                Log.e(TAG, "GATT操作缺少权限: " + e.getMessage());
+                continued = false;
+            }
+            if (continued) {
+                // 下一步已发起，为这一步重新计时
+                operation.timeout.cancel();
+                startTimer(operation);
+                return;
+            }
+            finishCurrent();
+            operation.onComplete(status);
+            next();
+        });
+    }
+
+    /**
+     * 清空队列，取消所有未完成的操作
+     * 在队列所属线程上调用时立即完成，保证调用返回前所有操作的onCancelled都已执行；
+     * 线程即将退出时（如release），投递的任务可能不再执行
+     */
+    void clear() {
+        if (Looper.myLooper() == handler.getLooper()) {
+            cancelPending();
+        } else {
+            handler.post(this::cancelPending);
+        }
+    }
+
+    private void cancelPending() {
+        Operation operation = current;
+        if (operation != null) {
+            finishCurrent();
+            operation.onCancelled();
+        }
+        timedOut = null;
+        if (graceTimeout != null) {
+            graceTimeout.cancel();
+            graceTimeout = null;
+        }
+        cancelAll(highQueue);
+        cancelAll(normalQueue);
+        cancelAll(bulkQueue);
+    }
+
+    private void next() {
+        while (current == null && timedOut == null) {
+            Operation operation = poll();
+            if (operation == null) {
+                return;
+            }
+
+            current = operation;
+            startTimer(operation);
+
+            boolean started;
+            operation.startTime = SystemClock.elapsedRealtime();
+            try {
+                started = operation.execute();
+            } catch (SecurityException e) {
+                Log.e(TAG, "GATT操作缺少权限: " + e.getMessage());
+                started = false;
+            }
+
+            if (!started) {
+                Log.e(TAG, "GATT操作发起失败: " + operation.type + ", " + operation.key);
+                finishCurrent();
+                operation.onRejected();
+            }
+        }
+    }
+
+    /**
+     * 超时由时间轮计时，只有真正超时时才向队列线程投递消息
+     */
+    private void startTimer(Operation operation) {
+        int step = ++operation.step;
+        operation.timeout = timeoutWheel.schedule(() -> handler.post(() -> {
+            // 多步操作的每一步单独计时，已完成步骤的超时不再生效
+            if (current != operation || operation.step != step) {
+                return;
+            }
+            Log.e(TAG, "GATT操作超时: " + operation.type + ", " + operation.key);
+            current = null;
+            operation.timeout = null;
+            timedOut = operation;
+            graceTimeout = timeoutWheel.schedule(() -> handler.post(() -> {
+                if (timedOut == operation) {
+                    Log.w(TAG, "超时操作的回调未到达，继续执行队列: " + operation.type + ", " + operation.key);
+                    resume();
+                }
+            }), STALE_CALLBACK_GRACE_MS);
+            operation.onTimeout();
+        }), operation.timeoutMs);
+    }
+
+    /**
+     * 回调是否属于该操作：类型可被接受，且双方都带标识时标识一致
+     */
+    private static boolean matches(Operation operation, Type type, String key) {
+        return operation.accepts(type)
+                && (key == null || operation.key == null || operation.key.equalsIgnoreCase(key));
+    }
+
+    /**
+     * 结束超时后的暂停，执行下一个操作
+     */
+    private void resume() {
+        timedOut = null;
+        if (graceTimeout != null) {
+            graceTimeout.cancel();
+            graceTimeout = null;
+        }
+        next();
+    }
+
+    private void finishCurrent() {
+        if (current != null && current.timeout != null) {
+            current.timeout.cancel();
+            current.timeout = null;
+        }
+        current = null;
+    }
+
+    private Operation poll() {
+        Operation operation = highQueue.poll();
+        if (operation == null) {
+            operation = normalQueue.poll();
+        }
+        if (operation == null) {
+            operation = bulkQueue.poll();
+        }
+        return operation;
+    }
+
+    private ArrayDeque<Operation> queueFor(Priority priority) {
+        switch (priority) {
+            case HIGH:
+                return highQueue;
+            case NORMAL:
+                return normalQueue;
+            default:
+                return bulkQueue;
+        }
+    }
+
+    private void cancelAll(ArrayDeque<Operation> queue) {
+        Operation operation;
+        while ((operation = queue.poll()) != null) {
+            operation.onCancelled();
+        }
+    }
+}
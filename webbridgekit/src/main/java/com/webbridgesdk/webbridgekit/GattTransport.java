@@ -0,0 +1,121 @@
+package com.webbridgesdk.webbridgekit;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+import android.os.Handler;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * GATT传输层
+ * BluetoothManager通过此接口建立连接和发起GATT操作，默认实现AndroidGattTransport基于系统BluetoothGatt。
+ * 测试中可替换为模拟外设，在JVM上运行连接、分片写入和通知流程。
+ */
+interface GattTransport {
+    /**
+     * 发起连接
+     *
+     * @param callback 连接的回调，必须在handler线程上执行
+     * @param handler  BLE线程
+     * @return 连接句柄，之后的回调以它标识来源；无法发起连接时返回null
+     * @throws SecurityException 缺少蓝牙权限
+     */
+    Link connect(BluetoothDevice device, Callback callback, Handler handler);
+
+    /**
+     * 单个GATT连接，方法与BluetoothGatt一一对应
+     */
+    interface Link {
+        boolean discoverServices();
+
+        List<BluetoothGattService> getServices();
+
+        BluetoothGattService getService(UUID uuid);
+
+        boolean requestMtu(int mtu);
+
+        boolean requestConnectionPriority(int priority);
+
+        void setPreferredPhy(int txPhy, int rxPhy, int phyOptions);
+
+        boolean readCharacteristic(BluetoothGattCharacteristic characteristic);
+
+        boolean writeCharacteristic(BluetoothGattCharacteristic characteristic);
+
+        boolean writeDescriptor(BluetoothGattDescriptor descriptor);
+
+        boolean readDescriptor(BluetoothGattDescriptor descriptor);
+
+        boolean setCharacteristicNotification(BluetoothGattCharacteristic characteristic, boolean enable);
+
+        boolean beginReliableWrite();
+
+        boolean executeReliableWrite();
+
+        void abortReliableWrite();
+
+        void disconnect();
+
+        void close();
+    }
+
+    /**
+     * 连接回调，与BluetoothGattCallback一一对应，以Link代替BluetoothGatt
+     * 读取和通知的内容通过value参数传递，实现方不应读取characteristic.getValue()：
+     * 系统在多个通知之间复用同一个characteristic对象，切换线程后其中的值可能已被后续通知覆盖。
+     */
+    abstract class Callback {
+        public void onConnectionStateChange(Link link, int status, int newState) {
+        }
+
+        public void onMtuChanged(Link link, int mtu, int status) {
+        }
+
+        public void onServicesDiscovered(Link link, int status) {
+        }
+
+        public void onServiceChanged(Link link) {
+        }
+
+        public void onCharacteristicRead(Link link, BluetoothGattCharacteristic characteristic, byte[] value,
+                                         int status) {
+        }
+
+        /**
+         * @param value 回调时特征值中的内容；可靠写入事务中为外设回显的值
+         */
+        public void onCharacteristicWrite(Link link, BluetoothGattCharacteristic characteristic, byte[] value,
+                                          int status) {
+        }
+
+        public void onCharacteristicChanged(Link link, BluetoothGattCharacteristic characteristic, byte[] value) {
+        }
+
+        public void onDescriptorWrite(Link link, BluetoothGattDescriptor descriptor, int status) {
+        }
+
+        public void onDescriptorRead(Link link, BluetoothGattDescriptor descriptor, byte[] value, int status) {
+        }
+
+        public void onReliableWriteCompleted(Link link, int status) {
+        }
+
+        public void onPhyUpdate(Link link, int txPhy, int rxPhy, int status) {
+        }
+
+        public void onPhyRead(Link link, int txPhy, int rxPhy, int status) {
+        }
+
+        /**
+         * 连接参数更新
+         *
+         * @param interval 连接间隔，单位1.25ms
+         * @param timeout  监督超时，单位10ms
+         */
+        public void onConnectionUpdated(Link link, int interval, int latency, int timeout, int status) {
+        }
+    }
+}
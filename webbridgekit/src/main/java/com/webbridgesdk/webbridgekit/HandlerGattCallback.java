@@ -0,0 +1,103 @@
+package com.webbridgesdk.webbridgekit;
+
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCallback;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.os.Handler;
+
+/**
+ * 把GATT回调转发到指定Handler线程
+ * Android 13以下系统先把读取和通知的内容写入共享的characteristic对象再回调，若由系统切换到Handler线程，
+ * 连续的通知可能在BLE线程读取前覆盖尚未处理的值。因此这些版本在Binder线程上接收回调，
+ * 当场取出特征值内容，随回调一起转发到BLE线程，不再写回characteristic对象。
+ */
+class HandlerGattCallback extends BluetoothGattCallback {
+    private final GattTransport.Link link;
+    private final GattTransport.Callback callback;
+    private final Handler handler;
+
+    HandlerGattCallback(GattTransport.Link link, GattTransport.Callback callback, Handler handler) {
+        this.link = link;
+        this.callback = callback;
+        this.handler = handler;
+    }
+
+    @Override
+    public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
+        handler.post(() -> callback.onConnectionStateChange(link, status, newState));
+    }
+
+    @Override
+    public void onServicesDiscovered(BluetoothGatt gatt, int status) {
+        handler.post(() -> callback.onServicesDiscovered(link, status));
+    }
+
+    @Override
+    public void onServiceChanged(BluetoothGatt gatt) {
+        handler.post(() -> callback.onServiceChanged(link));
+    }
+
+    @Override
+    public void onCharacteristicRead(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+        byte[] value = snapshot(characteristic.getValue());
+        handler.post(() -> callback.onCharacteristicRead(link, characteristic, value, status));
+    }
+
+    @Override
+    public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+        byte[] value = snapshot(characteristic.getValue());
+        handler.post(() -> callback.onCharacteristicWrite(link, characteristic, value, status));
+    }
+
+    @Override
+    public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
+        byte[] value = snapshot(characteristic.getValue());
+        handler.post(() -> callback.onCharacteristicChanged(link, characteristic, value));
+    }
+
+    @Override
+    public void onDescriptorRead(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
+        byte[] value = snapshot(descriptor.getValue());
+        handler.post(() -> callback.onDescriptorRead(link, descriptor, value, status));
+    }
+
+    @Override
+    public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
+        handler.post(() -> callback.onDescriptorWrite(link, descriptor, status));
+    }
+
+    @Override
+    public void onReliableWriteCompleted(BluetoothGatt gatt, int status) {
+        handler.post(() -> callback.onReliableWriteCompleted(link, status));
+    }
+
+    @Override
+    public void onMtuChanged(BluetoothGatt gatt, int mtu, int status) {
+        handler.post(() -> callback.onMtuChanged(link, mtu, status));
+    }
+
+    @Override
+    public void onPhyUpdate(BluetoothGatt gatt, int txPhy, int rxPhy, int status) {
+        handler.post(() -> callback.onPhyUpdate(link, txPhy, rxPhy, status));
+    }
+
+    @Override
+    public void onPhyRead(BluetoothGatt gatt, int txPhy, int rxPhy, int status) {
+        handler.post(() -> callback.onPhyRead(link, txPhy, rxPhy, status));
+    }
+
+    /**
+     * 系统隐藏接口，Android 8.0起会回调到子类
+     */
+    public void onConnectionUpdated(BluetoothGatt gatt, int interval, int latency, int timeout, int status) {
+        handler.post(() -> callback.onConnectionUpdated(link, interval, latency, timeout, status));
+    }
+
+    /**
+     * 在Binder线程上复制特征值或描述符内容，之后的通知不会影响已取出的副本
+     */
+    private static byte[] snapshot(byte[] value) {
+        return value == null ? null : value.clone();
+    }
+}
@@ -0,0 +1,237 @@
+package com.webbridgesdk.webbridgekit;
+
+/**
+ * 蓝牙数据通路使用的十六进制/Base64编解码工具
+ * 基于查找表实现，不使用正则和String.format，解码时不产生中间字符串。
+ * 静态方法线程安全；实例方法复用内部字符缓冲区，同一实例只能在单个线程中使用。
+ */
+public final class HexCodec {
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    // 每个字节对应的两个十六进制字符，下标为 (b & 0xFF) * 2
+    private static final char[] HEX_PAIRS = new char[512];
+
+    // 字符到半字节的映射，非十六进制字符为-1，空白字符为-2
+    private static final byte[] HEX_VALUES = new byte[128];
+
+    // Base64字符到6位值的映射，同时支持标准和URL安全字母表；非法字符为-1，空白为-2，'='为-3
+    private static final byte[] BASE64_VALUES = new byte[128];
+
+    private static final byte INVALID = -1;
+    private static final byte WHITESPACE = -2;
+    private static final byte PADDING = -3;
+    private static final byte[] EMPTY = new byte[0];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            HEX_PAIRS[i * 2] = HEX_DIGITS[i >>> 4];
+            HEX_PAIRS[i * 2 + 1] = HEX_DIGITS[i & 0x0F];
+        }
+
+        java.util.Arrays.fill(HEX_VALUES, INVALID);
+        for (int i = 0; i < 10; i++) {
+            HEX_VALUES['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            HEX_VALUES['A' + i] = (byte) (10 + i);
+            HEX_VALUES['a' + i] = (byte) (10 + i);
+        }
+
+        java.util.Arrays.fill(BASE64_VALUES, INVALID);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64_VALUES[alphabet.charAt(i)] = (byte) i;
+        }
+        BASE64_VALUES['-'] = 62;
+        BASE64_VALUES['_'] = 63;
+        BASE64_VALUES['='] = PADDING;
+
+        for (char c : new char[]{' ', '\t', '\r', '\n'}) {
+            HEX_VALUES[c] = WHITESPACE;
+            BASE64_VALUES[c] = WHITESPACE;
+        }
+    }
+
+    private char[] buffer = new char[64];
+
+    /**
+     * 使用内部缓冲区将字节数组编码为大写十六进制字符串
+     * 只在生成最终String时分配一次内存
+     */
+    public String encodeToString(byte[] data) {
+        if (data == null || data.length == 0) {
+            return "";
+        }
+        int required = data.length * 2;
+        if (buffer.length < required) {
+            buffer = new char[Math.max(required, buffer.length * 2)];
+        }
+        encode(data, 0, data.length, buffer, 0);
+        return new String(buffer, 0, required);
+    }
+
+    /**
+     * 将字节数组编码为大写十六进制字符串
+     */
+    public static String encode(byte[] data) {
+        if (data == null || data.length == 0) {
+            return "";
+        }
+        char[] out = new char[data.length * 2];
+        encode(data, 0, data.length, out, 0);
+        return new String(out);
+    }
+
+    /**
+     * 将字节编码到调用方提供的字符缓冲区
+     *
+     * @return 写入的字符数
+     */
+    public static int encode(byte[] src, int offset, int length, char[] dst, int dstOffset) {
+        int j = dstOffset;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            int index = (src[i] & 0xFF) << 1;
+            dst[j++] = HEX_PAIRS[index];
+            dst[j++] = HEX_PAIRS[index + 1];
+        }
+        return length * 2;
+    }
+
+    /**
+     * 将字节以十六进制追加到StringBuilder，用于直接拼接JSON
+     */
+    public static void appendHex(StringBuilder builder, byte[] src, int offset, int length) {
+        builder.ensureCapacity(builder.length() + length * 2);
+        for (int i = offset, end = offset + length; i < end; i++) {
+            int index = (src[i] & 0xFF) << 1;
+            builder.append(HEX_PAIRS[index]).append(HEX_PAIRS[index + 1]);
+        }
+    }
+
+    /**
+     * 解码十六进制字符串
+     * 忽略空白字符，大小写均可；长度为奇数时在前面补0；包含非法字符时返回空数组
+     */
+    public static byte[] decode(CharSequence hex) {
+        if (hex == null) {
+            return EMPTY;
+        }
+        int digits = countHexDigits(hex);
+        if (digits <= 0) {
+            return EMPTY;
+        }
+        byte[] out = new byte[(digits + 1) / 2];
+        decodeDigits(hex, digits, out, 0);
+        return out;
+    }
+
+    /**
+     * 将十六进制字符串解码到调用方提供的缓冲区
+     *
+     * @return 写入的字节数，非法输入或缓冲区不足时返回-1
+     */
+    public static int decode(CharSequence hex, byte[] dst, int dstOffset) {
+        if (hex == null) {
+            return -1;
+        }
+        int digits = countHexDigits(hex);
+        if (digits <= 0) {
+            return -1;
+        }
+        int length = (digits + 1) / 2;
+        if (dst.length - dstOffset < length) {
+            return -1;
+        }
+        decodeDigits(hex, digits, dst, dstOffset);
+        return length;
+    }
+
+    /**
+     * 解码Base64字符串，支持标准和URL安全字母表，填充可省略，忽略空白字符
+     * 非法输入返回空数组
+     */
+    public static byte[] decodeBase64(CharSequence base64) {
+        if (base64 == null) {
+            return EMPTY;
+        }
+
+        // 第一遍：校验并统计有效字符数
+        int symbols = 0;
+        boolean padding = false;
+        for (int i = 0, n = base64.length(); i < n; i++) {
+            char c = base64.charAt(i);
+            byte value = c < 128 ? BASE64_VALUES[c] : INVALID;
+            if (value == WHITESPACE) {
+                continue;
+            }
+            if (value == PADDING) {
+                padding = true;
+                continue;
+            }
+            if (value == INVALID || padding) {
+                return EMPTY;
+            }
+            symbols++;
+        }
+        if (symbols == 0 || symbols % 4 == 1) {
+            return EMPTY;
+        }
+
+        // 第二遍：每4个字符解出3个字节
+        byte[] out = new byte[symbols / 4 * 3 + Math.max(0, symbols % 4 - 1)];
+        int accumulator = 0;
+        int bits = 0;
+        int j = 0;
+        for (int i = 0, n = base64.length(); i < n && j < out.length; i++) {
+            char c = base64.charAt(i);
+            byte value = BASE64_VALUES[c];
+            if (value < 0) {
+                continue;
+            }
+            accumulator = (accumulator << 6) | value;
+            bits += 6;
+            if (bits >= 8) {
+                bits -= 8;
+                out[j++] = (byte) (accumulator >>> bits);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * 统计十六进制数字个数，包含非法字符时返回-1
+     */
+    private static int countHexDigits(CharSequence hex) {
+        int digits = 0;
+        for (int i = 0, n = hex.length(); i < n; i++) {
+            char c = hex.charAt(i);
+            byte value = c < 128 ? HEX_VALUES[c] : INVALID;
+            if (value == INVALID) {
+                return -1;
+            }
+            if (value != WHITESPACE) {
+                digits++;
+            }
+        }
+        return digits;
+    }
+
+    private static void decodeDigits(CharSequence hex, int digits, byte[] dst, int dstOffset) {
+        int j = dstOffset;
+        // 奇数长度时首个数字单独成字节（相当于前面补0）
+        boolean high = digits % 2 == 0;
+        int current = 0;
+        for (int i = 0, n = hex.length(); i < n; i++) {
+            byte value = HEX_VALUES[hex.charAt(i)];
+            if (value < 0) {
+                continue;
+            }
+            if (high) {
+                current = value << 4;
+            } else {
+                dst[j++] = (byte) (current | value);
+            }
+            high = !high;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.webbridgesdk.webbridgekit;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothSocket;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * L2CAP面向连接通道（CoC）
+ * 与GATT连接并存，按PSM打开流式socket，由协议栈做基于信用的流量控制。
+ * 读线程把数据读入缓冲池中的缓冲区，交给投递线程编码后回收；缓冲池耗尽时读线程阻塞，
+ * 不再向对端归还信用，从而把背压传给外设。写入由独立的写线程按顺序发送，排队字节数有上限。
+ * 需要Android 10（API 29）及以上。
+ */
+class L2capChannel {
+    private static final String TAG = "L2capChannel";
+    private static final int READ_BUFFER_COUNT = 16;       // 读缓冲池大小
+    private static final int DEFAULT_READ_BUFFER_SIZE = 1024;
+    private static final long MAX_QUEUED_WRITE_BYTES = 1024 * 1024; // 写队列最多积压的字节数
+    private static final byte[] CLOSE_MARKER = new byte[0];
+
+    /**
+     * 通道事件的接收者，在投递Handler的线程上回调
+     */
+    interface Listener {
+        void onOpened(L2capChannel channel);
+
+        void onData(L2capChannel channel, String hexValue);
+
+        void onClosed(L2capChannel channel, String reason);
+    }
+
+    enum State {
+        CONNECTING,
+        OPEN,
+        CLOSED
+    }
+
+    final String address;
+    final int psm;
+    final boolean secure;
+    private final BluetoothDevice device;
+    private final Handler handler;
+    private final Listener listener;
+    private final HexCodec hexCodec = new HexCodec(); // 只在投递线程使用
+    private final BlockingQueue<byte[]> freeBuffers = new ArrayBlockingQueue<>(READ_BUFFER_COUNT);
+    private final BlockingQueue<byte[]> writeQueue = new LinkedBlockingQueue<>();
+    private final AtomicLong queuedWriteBytes = new AtomicLong();
+
+    private volatile State state = State.CONNECTING;
+    private volatile BluetoothSocket socket;
+    private volatile long openedAt;
+    private volatile long closedAt;
+    // 读计数只由读线程修改，写计数只由写线程修改
+    private volatile long bytesRead;
+    private volatile long packetsRead;
+    private volatile long bytesWritten;
+    private volatile long packetsWritten;
+
+    L2capChannel(BluetoothDevice device, String address, int psm, boolean secure,
+                 Handler handler, Listener listener) {
+        this.device = device;
+        this.address = address;
+        this.psm = psm;
+        this.secure = secure;
+        this.handler = handler;
+        this.listener = listener;
+    }
+
+    State state() {
+        return state;
+    }
+
+    /**
+     * 在后台线程上建立通道，成功后启动读写线程
+     */
+    void open() {
+        Thread connectThread = new Thread(() -> {
+            BluetoothSocket newSocket;
+            try {
+                newSocket = secure ? device.createL2capChannel(psm) : device.createInsecureL2capChannel(psm);
+                socket = newSocket;
+                if (state == State.CLOSED) {
+                    newSocket.close();
+                    return;
+                }
+                newSocket.connect();
+            } catch (IOException | SecurityException e) {
+                Log.e(TAG, "L2CAP通道连接失败: " + address + ", PSM=" + psm + ", " + e.getMessage());
+                close("L2CAP通道连接失败: " + e.getMessage());
+                return;
+            }
+
+            int bufferSize = newSocket.getMaxReceivePacketSize();
+            if (bufferSize <= 0) {
+                bufferSize = DEFAULT_READ_BUFFER_SIZE;
+            }
+            for (int i = 0; i < READ_BUFFER_COUNT; i++) {
+                freeBuffers.offer(new byte[bufferSize]);
+            }
+
+            synchronized (this) {
+                if (state == State.CLOSED) {
+                    return;
+                }
+                state = State.OPEN;
+                openedAt = SystemClock.elapsedRealtime();
+            }
+            Log.i(TAG, "L2CAP通道已打开: " + address + ", PSM=" + psm + ", 接收包大小=" + bufferSize);
+            handler.post(() -> listener.onOpened(this));
+
+            Thread writer = new Thread(this::writeLoop, "l2cap-write-" + psm);
+            writer.setDaemon(true);
+            writer.start();
+            readLoop(newSocket);
+        }, "l2cap-read-" + psm);
+        connectThread.setDaemon(true);
+        connectThread.start();
+    }
+
+    /**
+     * 加入写队列
+     *
+     * @return 通道未打开或积压超过上限时返回false
+     */
+    boolean write(byte[] data) {
+        if (state != State.OPEN || data.length == 0) {
+            return false;
+        }
+        if (queuedWriteBytes.addAndGet(data.length) > MAX_QUEUED_WRITE_BYTES) {
+            queuedWriteBytes.addAndGet(-data.length);
+            return false;
+        }
+        writeQueue.offer(data);
+        return true;
+    }
+
+    /**
+     * 关闭通道，可在任意线程调用，只回调一次onClosed
+     */
+    void close(String reason) {
+        synchronized (this) {
+            if (state == State.CLOSED) {
+                return;
+            }
+            state = State.CLOSED;
+            closedAt = SystemClock.elapsedRealtime();
+        }
+        writeQueue.clear();
+        queuedWriteBytes.set(0);
+        writeQueue.offer(CLOSE_MARKER);
+        BluetoothSocket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                Log.e(TAG, "关闭L2CAP通道出错: " + e.getMessage());
+            }
+        }
+        Log.i(TAG, "L2CAP通道已关闭: " + address + ", 原因: " + reason);
+        handler.post(() -> listener.onClosed(this, reason));
+    }
+
+    private void readLoop(BluetoothSocket socket) {
+        try {
+            InputStream input = socket.getInputStream();
+            while (state == State.OPEN) {
+                // 缓冲池耗尽时在此阻塞，不再读取即不再归还信用
+                byte[] buffer = freeBuffers.take();
+                int length = input.read(buffer);
+                if (length < 0) {
+                    close("对端关闭了L2CAP通道");
+                    return;
+                }
+                bytesRead += length;
+                packetsRead++;
+                handler.post(() -> deliver(buffer, length));
+            }
+        } catch (IOException e) {
+            close(state == State.OPEN ? "L2CAP通道读取失败: " + e.getMessage() : "closed");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close("L2CAP读线程被中断");
+        }
+    }
+
+    private void deliver(byte[] buffer, int length) {
+        String hexValue;
+        if (length == buffer.length) {
+            hexValue = hexCodec.encodeToString(buffer);
+        } else {
+            StringBuilder builder = new StringBuilder(length * 2);
+            HexCodec.appendHex(builder, buffer, 0, length);
+            hexValue = builder.toString();
+        }
+        freeBuffers.offer(buffer);
+        if (state == State.OPEN) {
+            listener.onData(this, hexValue);
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            OutputStream output = socket.getOutputStream();
+            while (true) {
+                byte[] data = writeQueue.take();
+                if (data == CLOSE_MARKER || state != State.OPEN) {
+                    return;
+                }
+                output.write(data);
+                queuedWriteBytes.addAndGet(-data.length);
+                bytesWritten += data.length;
+                packetsWritten++;
+            }
+        } catch (IOException e) {
+            close("L2CAP通道写入失败: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 通道状态和吞吐量统计（字节/秒），可与GATT流式发送的throughput对比
+     */
+    String statsJson() {
+        long start = openedAt;
+        long end = state == State.CLOSED && closedAt != 0 ? closedAt : SystemClock.elapsedRealtime();
+        long elapsedMs = start == 0 ? 0 : Math.max(0, end - start);
+        long read = bytesRead;
+        long written = bytesWritten;
+        return String.format(Locale.ROOT,
+                "{\"address\":\"%s\",\"psm\":%d,\"secure\":%b,\"state\":\"%s\",\"bytesRead\":%d,\"packetsRead\":%d,"
+                        + "\"bytesWritten\":%d,\"packetsWritten\":%d,\"queuedBytes\":%d,\"elapsedMs\":%d,"
+                        + "\"readThroughput\":%d,\"writeThroughput\":%d}",
+                address, psm, secure, state, read, packetsRead, written, packetsWritten, queuedWriteBytes.get(),
+                elapsedMs, elapsedMs > 0 ? read * 1000 / elapsedMs : 0, elapsedMs > 0 ? written * 1000 / elapsedMs : 0);
+    }
+}
@@ -0,0 +1,188 @@
+package com.webbridgesdk.webbridgekit;
+
+import android.os.Handler;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 特征值通知批量投递
+ * 按设备和特征值UUID累积通知，在每个显示帧（或固定间隔、达到最大批量时）
+ * 合并为一个JSON数组，通过一次evaluateJavascript交给H5，避免高频通知占满UI线程。
+ * add可在任意线程调用，刷新在主线程执行。
+ */
+class NotificationBatcher implements Choreographer.FrameCallback {
+    static final int DEFAULT_MAX_BATCH_SIZE = 64;
+
+    /**
+     * 批量数据的输出目标
+     */
+    interface Sink {
+        void onBatch(String json);
+    }
+
+    private final Handler mainHandler;
+    private final BleMetrics metrics;
+    private final Sink sink;
+    private final Object lock = new Object();
+    // 键为 "地址|UUID"，保持首次到达顺序
+    private Map<String, Batch> pending = new LinkedHashMap<>();
+    private volatile boolean enabled = false;
+    private volatile long flushIntervalMs = 0; // 0表示按显示帧刷新
+    private volatile int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    private boolean flushScheduled = false;
+
+    private final Runnable scheduleFrameRunnable = () -> Choreographer.getInstance().postFrameCallback(this);
+    private final Runnable flushRunnable = this::flush;
+
+    NotificationBatcher(Handler mainHandler, BleMetrics metrics, Sink sink) {
+        this.mainHandler = mainHandler;
+        this.metrics = metrics;
+        this.sink = sink;
+    }
+
+    /**
+     * 配置批量投递
+     *
+     * @param enabled         是否开启
+     * @param flushIntervalMs 刷新间隔，0表示按显示帧刷新
+     * @param maxBatchSize    单个特征值累积的最大条数，达到后立即刷新
+     */
+    void configure(boolean enabled, long flushIntervalMs, int maxBatchSize) {
+        this.flushIntervalMs = Math.max(0, flushIntervalMs);
+        this.maxBatchSize = maxBatchSize > 0 ? maxBatchSize : DEFAULT_MAX_BATCH_SIZE;
+        this.enabled = enabled;
+        if (!enabled) {
+            // 关闭时立即投递剩余数据
+            mainHandler.post(flushRunnable);
+        }
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 累积一条通知
+     *
+     * @param address    设备地址
+     * @param uuid       特征值UUID
+     * @param hexValue   十六进制值
+     * @param receivedAt 收到数据时的System.nanoTime()，用于统计投递延迟
+     */
+    void add(String address, String uuid, String hexValue, long receivedAt) {
+        boolean flushNow;
+        boolean schedule;
+        synchronized (lock) {
+            String key = address + "|" + uuid;
+            Batch batch = pending.get(key);
+            if (batch == null) {
+                batch = new Batch(address, uuid);
+                pending.put(key, batch);
+            }
+            batch.values.add(hexValue);
+            batch.timestamps.add(System.currentTimeMillis());
+            batch.receivedAt.add(receivedAt);
+
+            flushNow = batch.values.size() >= maxBatchSize;
+            schedule = !flushScheduled;
+            flushScheduled = true;
+        }
+
+        if (flushNow) {
+            mainHandler.removeCallbacks(flushRunnable);
+            mainHandler.post(flushRunnable);
+        } else if (schedule) {
+            if (flushIntervalMs > 0) {
+                mainHandler.postDelayed(flushRunnable, flushIntervalMs);
+            } else {
+                mainHandler.post(scheduleFrameRunnable);
+            }
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        flush();
+    }
+
+    /**
+     * 清空未投递的数据
+     */
+    void clear() {
+        synchronized (lock) {
+            pending = new LinkedHashMap<>();
+            flushScheduled = false;
+        }
+        mainHandler.removeCallbacks(flushRunnable);
+    }
+
+    /**
+     * 将累积的通知合并为一个JSON数组投递，必须在主线程调用
+     * 格式：[{"address":"..","uuid":"..","values":["AB01",..],"timestamps":[..]},..]
+     */
+    private void flush() {
+        Map<String, Batch> batches;
+        synchronized (lock) {
+            flushScheduled = false;
+            if (pending.isEmpty()) {
+                return;
+            }
+            batches = pending;
+            pending = new LinkedHashMap<>();
+        }
+
+        long now = System.nanoTime();
+        StringBuilder json = new StringBuilder(256);
+        json.append('[');
+        boolean first = true;
+        for (Batch batch : batches.values()) {
+            // 每条通知从GATT回调到随批次投递的延迟，与逐条投递使用同一单调时钟
+            for (int i = 0; i < batch.receivedAt.size(); i++) {
+                metrics.recordDispatch(batch.address, batch.uuid, (now - batch.receivedAt.get(i)) / 1000);
+            }
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            json.append("{\"address\":\"").append(batch.address)
+                    .append("\",\"uuid\":\"").append(batch.uuid)
+                    .append("\",\"values\":[");
+            for (int i = 0; i < batch.values.size(); i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append('"').append(batch.values.get(i)).append('"');
+            }
+            json.append("],\"timestamps\":[");
+            for (int i = 0; i < batch.timestamps.size(); i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append(batch.timestamps.get(i));
+            }
+            json.append("]}");
+        }
+        json.append(']');
+        sink.onBatch(json.toString());
+    }
+
+    /**
+     * 单个特征值累积的通知
+     */
+    private static class Batch {
+        final String address;
+        final String uuid;
+        final List<String> values = new ArrayList<>();
+        final List<Long> timestamps = new ArrayList<>(); // 交给H5的到达时间（毫秒，系统时钟）
+        final List<Long> receivedAt = new ArrayList<>();  // 统计延迟用的到达时间（纳秒，单调时钟）
+
+        Batch(String address, String uuid) {
+            this.address = address;
+            this.uuid = uuid;
+        }
+    }
+}
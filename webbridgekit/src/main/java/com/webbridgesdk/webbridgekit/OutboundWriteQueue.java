@@ -0,0 +1,183 @@
+package com.webbridgesdk.webbridgekit;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 单个特征值的发送队列
+ * H5的多次写入按调用顺序排队，同一特征值同时只有一个数据包（单次写入或整段分片传输）在发送，
+ * 避免其他写入插到分片之间。开启合并后，窗口内连续到达的小写入拼成不超过单包上限的数据包，
+ * 每个原始写入在其所在的数据包确认后各自回调。超过单包上限的写入不参与合并，单独作为分片传输发送。
+ * 只在BLE线程上使用，不是线程安全的。
+ */
+class OutboundWriteQueue {
+    static final long MAX_WINDOW_MS = 1000;
+
+    /**
+     * H5的一次写入
+     */
+    static final class Write {
+        final String id; // 写入ID，随结果回调给H5
+        final byte[] data;
+        final long queuedAt;
+
+        Write(String id, byte[] data, long queuedAt) {
+            this.id = id;
+            this.data = data;
+            this.queuedAt = queuedAt;
+        }
+    }
+
+    /**
+     * 一次发送的数据包
+     */
+    static final class Packet {
+        final byte[] data;
+        final List<Write> writes;
+        String transferId; // 作为分片传输发送时的传输ID，由传输自身回调结果
+
+        Packet(byte[] data, List<Write> writes) {
+            this.data = data;
+            this.writes = writes;
+        }
+    }
+
+    private final ArrayDeque<Write> pending = new ArrayDeque<>();
+    private Packet inFlight;
+    private long windowMs;
+    private long scheduledFlushAt = -1;
+
+    /**
+     * 设置合并窗口：写入最多等待该时长以便与后续写入合并，0为不合并
+     */
+    void setWindow(long windowMs) {
+        if (windowMs < 0 || windowMs > MAX_WINDOW_MS) {
+            throw new IllegalArgumentException("window must be 0-" + MAX_WINDOW_MS + "ms");
+        }
+        this.windowMs = windowMs;
+    }
+
+    void offer(String id, byte[] data, long now) {
+        pending.add(new Write(id, data, now));
+    }
+
+    boolean isBusy() {
+        return inFlight != null;
+    }
+
+    boolean isEmpty() {
+        return inFlight == null && pending.isEmpty();
+    }
+
+    /**
+     * 正在以分片传输发送的传输ID，没有时返回null
+     */
+    String inFlightTransferId() {
+        return inFlight == null ? null : inFlight.transferId;
+    }
+
+    /**
+     * 取出下一个要发送的数据包，取出后直到complete()前队列处于忙碌状态
+     *
+     * @param maxPayload 单包上限（MTU - 3）
+     * @param now        当前时间（毫秒，单调时钟）
+     * @return 数据包；队列为空、正在发送或合并窗口未到时返回null
+     */
+    Packet next(int maxPayload, long now) {
+        if (inFlight != null || pending.isEmpty()) {
+            return null;
+        }
+        Write head = pending.peek();
+        if (windowMs == 0 || head.data.length >= maxPayload) {
+            inFlight = new Packet(pending.poll().data, Collections.singletonList(head));
+            return inFlight;
+        }
+
+        // 从队首开始累加，直到下一条放不下或队列取完
+        int total = 0;
+        int count = 0;
+        boolean full = false;
+        for (Write write : pending) {
+            if (total + write.data.length > maxPayload) {
+                full = true;
+                break;
+            }
+            total += write.data.length;
+            count++;
+        }
+        if (!full && total < maxPayload && now - head.queuedAt < windowMs) {
+            return null; // 继续等待后续写入
+        }
+
+        List<Write> writes = new ArrayList<>(count);
+        if (count == 1) {
+            writes.add(pending.poll());
+            inFlight = new Packet(head.data, writes);
+            return inFlight;
+        }
+        ByteArrayOutputStream data = new ByteArrayOutputStream(total);
+        for (int i = 0; i < count; i++) {
+            Write write = pending.poll();
+            writes.add(write);
+            data.write(write.data, 0, write.data.length);
+        }
+        inFlight = new Packet(data.toByteArray(), writes);
+        return inFlight;
+    }
+
+    /**
+     * 合并窗口到期的时间，用于安排下一次发送
+     *
+     * @return 到期时间；不需要等待时返回-1
+     */
+    long flushAt() {
+        if (inFlight != null || pending.isEmpty() || windowMs == 0) {
+            return -1;
+        }
+        return pending.peek().queuedAt + windowMs;
+    }
+
+    /**
+     * 记录已安排的到期发送，避免重复安排
+     *
+     * @return 该时间是否尚未安排
+     */
+    boolean markFlushScheduled(long at) {
+        if (scheduledFlushAt == at) {
+            return false;
+        }
+        scheduledFlushAt = at;
+        return true;
+    }
+
+    /**
+     * 当前数据包发送结束（成功或失败）
+     *
+     * @return 该数据包包含的写入
+     */
+    List<Write> complete() {
+        Packet packet = inFlight;
+        inFlight = null;
+        return packet == null ? Collections.<Write>emptyList() : packet.writes;
+    }
+
+    /**
+     * 清空队列，连接断开时调用
+     *
+     * @return 尚未确认的写入，包括正在发送的数据包；以分片传输发送的写入由传输自身回调，不包含在内
+     */
+    List<Write> drain() {
+        List<Write> writes = new ArrayList<>();
+        if (inFlight != null && inFlight.transferId == null) {
+            writes.addAll(inFlight.writes);
+        }
+        inFlight = null;
+        writes.addAll(pending);
+        pending.clear();
+        scheduledFlushAt = -1;
+        return writes;
+    }
+}
@@ -0,0 +1,98 @@
+package com.webbridgesdk.webbridgekit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 特征值读取的合并与缓存
+ * 同一特征值同时只发起一次GATT读取，读取期间到达的请求登记为等待者，结果返回时一并应答；
+ * 成功读到的值按时间戳缓存，在调用方给定的TTL内直接应答，不占用射频。
+ * 只在BLE线程上使用，不是线程安全的。
+ */
+class ReadCoalescer {
+    // 特征值UUID → 等待本次读取结果的请求ID，存在即表示读取进行中
+    private final Map<String, List<String>> inFlight = new HashMap<>();
+    private final Map<String, CachedValue> cache = new HashMap<>();
+
+    private static final class CachedValue {
+        final byte[] value;
+        final long readAt;
+
+        CachedValue(byte[] value, long readAt) {
+            this.value = value;
+            this.readAt = readAt;
+        }
+    }
+
+    /**
+     * 登记一个读取请求
+     *
+     * @param requestId 请求ID，为null时只标记读取进行中（不需要单独应答的内部读取）
+     * @return 需要发起新的GATT读取时返回true；已有读取进行中时返回false，结果随该读取返回
+     */
+    boolean join(String uuid, String requestId) {
+        List<String> waiters = inFlight.get(uuid);
+        boolean start = waiters == null;
+        if (start) {
+            waiters = new ArrayList<>(2);
+            inFlight.put(uuid, waiters);
+        }
+        if (requestId != null) {
+            waiters.add(requestId);
+        }
+        return start;
+    }
+
+    boolean isInFlight(String uuid) {
+        return inFlight.containsKey(uuid);
+    }
+
+    /**
+     * 读取结束，取出等待者
+     *
+     * @param value 读到的值，失败时为null（不更新缓存）
+     * @param now   当前时间（毫秒，单调时钟）
+     * @return 等待本次结果的请求ID
+     */
+    List<String> complete(String uuid, byte[] value, long now) {
+        if (value != null) {
+            cache.put(uuid, new CachedValue(value.clone(), now));
+        }
+        List<String> waiters = inFlight.remove(uuid);
+        return waiters == null ? Collections.<String>emptyList() : waiters;
+    }
+
+    /**
+     * TTL内的缓存值
+     *
+     * @param ttlMs 缓存有效期，0表示不使用缓存
+     * @return 缓存值的副本，不存在或已过期时返回null
+     */
+    byte[] cached(String uuid, long ttlMs, long now) {
+        if (ttlMs <= 0) {
+            return null;
+        }
+        CachedValue entry = cache.get(uuid);
+        if (entry == null || now - entry.readAt > ttlMs) {
+            return null;
+        }
+        return entry.value.clone();
+    }
+
+    /**
+     * 写入特征值后缓存不再可信
+     */
+    void invalidate(String uuid) {
+        cache.remove(uuid);
+    }
+
+    /**
+     * 清空缓存，进行中的读取由队列取消回调各自结束
+     */
+    void clearCache() {
+        cache.clear();
+    }
+}
@@ -0,0 +1,410 @@
+package com.webbridgesdk.webbridgekit;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+import android.bluetooth.BluetoothProfile;
+import android.os.Handler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 回放TrafficRecorder导出文件的GATT传输层
+ * 把录制的事件按原顺序转换为GattTransport.Callback回调，交给BluetoothManager处理，
+ * 在JVM上复现现场的连接、MTU协商、写入确认和通知流程。
+ * <p>
+ * 录制中的事件分为两类：连接状态和通知由外设发起，轮到时直接回调；MTU、服务发现、描述符写入、
+ * 读取和写入确认是对本端请求的应答，要等BluetoothManager发起对应请求后才回调，
+ * 写入请求同时与录制的写入内容比对。事件严格按录制顺序回调，录制中有而回放时未发起的请求会使回放停在该处，
+ * 未录制的请求（如读取描述符、可靠写入）直接拒绝，与录制不一致的地方记入mismatches()。
+ * 导出文件不含服务结构，需要在连接前通过addCharacteristic声明。
+ * 所有回调在BLE线程上执行，只能在BLE线程上调用Link的方法。
+ */
+final class ReplayGattTransport implements GattTransport {
+    private static final UUID CCCD = UUID.fromString("00002902-0000-1000-8000-00805f9b34fb");
+
+    private final double speed;
+    private final List<BluetoothGattService> services = new ArrayList<>();
+    // 按大写MAC地址分组的录制事件，重连时从上次断开的位置继续回放
+    private final Map<String, Script> scripts = new HashMap<>();
+    private final List<String> mismatches = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param input TrafficRecorder导出的文件
+     * @param speed 回放速度，1为按原始间隔，2为两倍速；0表示不等待
+     * @throws IOException 文件格式错误或读取失败
+     */
+    ReplayGattTransport(InputStream input, double speed) throws IOException {
+        if (speed < 0) {
+            throw new IllegalArgumentException("speed must be >= 0");
+        }
+        this.speed = speed;
+        TrafficRecorder.read(input, event -> {
+            String address = event.address.toUpperCase(Locale.ROOT);
+            Script script = scripts.get(address);
+            if (script == null) {
+                script = new Script();
+                scripts.put(address, script);
+            }
+            script.events.add(event);
+        });
+    }
+
+    /**
+     * 声明服务结构，服务不存在时创建；可通知或指示的特征值自动带上CCCD。必须在连接前调用
+     */
+    ReplayGattTransport addCharacteristic(String serviceUuid, String characteristicUuid, int properties) {
+        UUID serviceId = UUID.fromString(serviceUuid);
+        BluetoothGattService service = null;
+        for (BluetoothGattService existing : services) {
+            if (existing.getUuid().equals(serviceId)) {
+                service = existing;
+            }
+        }
+        if (service == null) {
+            service = new BluetoothGattService(serviceId, BluetoothGattService.SERVICE_TYPE_PRIMARY);
+            services.add(service);
+        }
+        BluetoothGattCharacteristic characteristic = new BluetoothGattCharacteristic(
+                UUID.fromString(characteristicUuid), properties,
+                BluetoothGattCharacteristic.PERMISSION_READ | BluetoothGattCharacteristic.PERMISSION_WRITE);
+        if ((properties & (BluetoothGattCharacteristic.PROPERTY_NOTIFY
+                | BluetoothGattCharacteristic.PROPERTY_INDICATE)) != 0) {
+            characteristic.addDescriptor(new BluetoothGattDescriptor(CCCD,
+                    BluetoothGattDescriptor.PERMISSION_READ | BluetoothGattDescriptor.PERMISSION_WRITE));
+        }
+        service.addCharacteristic(characteristic);
+        return this;
+    }
+
+    /**
+     * 回放与录制不一致的地方，如写入内容不同、请求没有对应的录制事件
+     */
+    List<String> mismatches() {
+        return Collections.unmodifiableList(mismatches);
+    }
+
+    /**
+     * 指定设备尚未回放的事件数
+     */
+    synchronized int remaining(String address) {
+        Script script = scripts.get(address.toUpperCase(Locale.ROOT));
+        return script == null ? 0 : script.events.size() - script.cursor;
+    }
+
+    @Override
+    public synchronized Link connect(BluetoothDevice device, Callback callback, Handler handler) {
+        String address = device.getAddress().toUpperCase(Locale.ROOT);
+        Script script = scripts.get(address);
+        if (script == null) {
+            script = new Script();
+            scripts.put(address, script);
+        }
+        ReplayLink link = new ReplayLink(script, callback, handler);
+        // 录制可能从连接中途开始（环形缓冲区已覆盖），此时先补一个连接成功
+        TrafficRecorder.Event next = script.cursor < script.events.size() ? script.events.get(script.cursor) : null;
+        if (next == null || next.type != TrafficRecorder.CONNECTION_STATE) {
+            handler.post(() -> {
+                callback.onConnectionStateChange(link, BluetoothGatt.GATT_SUCCESS, BluetoothProfile.STATE_CONNECTED);
+                link.pump();
+            });
+        } else {
+            handler.post(link::pump);
+        }
+        return link;
+    }
+
+    /**
+     * 单个设备的录制事件和回放进度
+     */
+    private static final class Script {
+        final List<TrafficRecorder.Event> events = new ArrayList<>();
+        // 已由本端请求、可以回调的应答，按事件下标索引；值为请求中的特征值或描述符
+        final Map<Integer, Object> requested = new HashMap<>();
+        volatile int cursor; // 下一个要回调的事件
+    }
+
+    private final class ReplayLink implements Link {
+        private final Script script;
+        private final Callback callback;
+        private final Handler handler;
+        private boolean delivering; // 已安排回调，等待执行
+        private boolean closed;
+
+        ReplayLink(Script script, Callback callback, Handler handler) {
+            this.script = script;
+            this.callback = callback;
+            this.handler = handler;
+        }
+
+        /**
+         * 按录制顺序回调下一个事件；轮到的应答尚未被请求时停下等待
+         */
+        void pump() {
+            while (!closed && !delivering && script.cursor < script.events.size()) {
+                int index = script.cursor;
+                TrafficRecorder.Event event = script.events.get(index);
+                if (event.type == TrafficRecorder.WRITE) {
+                    if (!script.requested.containsKey(index)) {
+                        return;
+                    }
+                    // 本端发出的写入，比对已在请求时完成
+                    script.requested.remove(index);
+                    script.cursor++;
+                    continue;
+                }
+                Runnable delivery = delivery(index, event);
+                if (delivery == null) {
+                    return;
+                }
+                script.cursor++;
+                delivering = true;
+                long delayMs = 0;
+                if (speed > 0 && index > 0) {
+                    long gapNanos = event.timestampNanos - script.events.get(index - 1).timestampNanos;
+                    delayMs = Math.max(0, (long) (gapNanos / speed / 1_000_000));
+                }
+                handler.postDelayed(() -> {
+                    delivering = false;
+                    if (!closed) {
+                        delivery.run();
+                        pump();
+                    }
+                }, delayMs);
+            }
+        }
+
+        /**
+         * 把事件转换为回调；应答类事件尚未被请求时返回null
+         */
+        private Runnable delivery(int index, TrafficRecorder.Event event) {
+            switch (event.type) {
+                case TrafficRecorder.CONNECTION_STATE:
+                    return () -> {
+                        if (event.arg == BluetoothProfile.STATE_DISCONNECTED) {
+                            closed = true; // 之后的事件属于下一次连接
+                        }
+                        callback.onConnectionStateChange(this, event.status, event.arg);
+                    };
+                case TrafficRecorder.NOTIFICATION: {
+                    BluetoothGattCharacteristic characteristic = findCharacteristic(event.uuid);
+                    if (characteristic == null) {
+                        mismatches.add("通知的特征值未声明: " + event.uuid);
+                        return () -> { };
+                    }
+                    return () -> callback.onCharacteristicChanged(this, characteristic, event.payload);
+                }
+                default:
+                    break;
+            }
+
+            if (!script.requested.containsKey(index)) {
+                return isResponse(event.type) ? null : () -> { }; // 新版本增加的事件类型，跳过
+            }
+            Object target = script.requested.remove(index);
+            switch (event.type) {
+                case TrafficRecorder.MTU_CHANGED:
+                    return () -> callback.onMtuChanged(this, event.arg, event.status);
+                case TrafficRecorder.SERVICES_DISCOVERED:
+                    return () -> callback.onServicesDiscovered(this, event.status);
+                case TrafficRecorder.DESCRIPTOR_WRITE:
+                    return () -> callback.onDescriptorWrite(this, (BluetoothGattDescriptor) target, event.status);
+                case TrafficRecorder.READ:
+                    return () -> callback.onCharacteristicRead(this, (BluetoothGattCharacteristic) target,
+                            event.payload, event.status);
+                default: {
+                    // 写入确认，回调时带上本次写入的值
+                    BluetoothGattCharacteristic characteristic = (BluetoothGattCharacteristic) target;
+                    byte[] value = characteristic.getValue();
+                    byte[] echo = value == null ? null : value.clone();
+                    return () -> callback.onCharacteristicWrite(this, characteristic, echo, event.status);
+                }
+            }
+        }
+
+        private boolean isResponse(byte type) {
+            return type == TrafficRecorder.MTU_CHANGED || type == TrafficRecorder.SERVICES_DISCOVERED
+                    || type == TrafficRecorder.DESCRIPTOR_WRITE || type == TrafficRecorder.READ
+                    || type == TrafficRecorder.WRITE_ACK;
+        }
+
+        /**
+         * 把请求对应到录制中第一个尚未请求的同类事件
+         *
+         * @return 事件下标，没有时返回-1并记入不一致
+         */
+        private int request(byte type, String uuid, Object target, String description) {
+            if (closed) {
+                return -1;
+            }
+            for (int i = script.cursor; i < script.events.size(); i++) {
+                TrafficRecorder.Event event = script.events.get(i);
+                if (event.type == type && !script.requested.containsKey(i)
+                        && (uuid == null || uuid.equalsIgnoreCase(event.uuid))) {
+                    script.requested.put(i, target);
+                    handler.post(this::pump);
+                    return i;
+                }
+            }
+            mismatches.add("录制中没有对应的" + description + (uuid == null ? "" : ": " + uuid));
+            return -1;
+        }
+
+        @Override
+        public boolean discoverServices() {
+            return request(TrafficRecorder.SERVICES_DISCOVERED, null, null, "服务发现") >= 0;
+        }
+
+        @Override
+        public List<BluetoothGattService> getServices() {
+            return Collections.unmodifiableList(services);
+        }
+
+        @Override
+        public BluetoothGattService getService(UUID uuid) {
+            for (BluetoothGattService service : getServices()) {
+                if (service.getUuid().equals(uuid)) {
+                    return service;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean requestMtu(int mtu) {
+            return request(TrafficRecorder.MTU_CHANGED, null, null, "MTU协商") >= 0;
+        }
+
+        @Override
+        public boolean requestConnectionPriority(int priority) {
+            return !closed;
+        }
+
+        @Override
+        public void setPreferredPhy(int txPhy, int rxPhy, int phyOptions) {
+            // PHY事件不在录制范围内
+        }
+
+        @Override
+        public boolean readCharacteristic(BluetoothGattCharacteristic characteristic) {
+            return request(TrafficRecorder.READ, characteristic.getUuid().toString(), characteristic,
+                    "读取") >= 0;
+        }
+
+        @Override
+        public boolean writeCharacteristic(BluetoothGattCharacteristic characteristic) {
+            String uuid = characteristic.getUuid().toString();
+            int index = request(TrafficRecorder.WRITE, uuid, characteristic, "写入");
+            if (index < 0) {
+                return false;
+            }
+            // 录制的负载超过上限时被截断，只比对保留的部分
+            TrafficRecorder.Event recorded = script.events.get(index);
+            byte[] value = characteristic.getValue();
+            byte[] sent = value == null ? new byte[0] : value;
+            boolean truncated = (recorded.flags & TrafficRecorder.FLAG_TRUNCATED) != 0;
+            if (truncated ? sent.length < recorded.payload.length
+                    || !Arrays.equals(Arrays.copyOf(sent, recorded.payload.length), recorded.payload)
+                    : !Arrays.equals(sent, recorded.payload)) {
+                mismatches.add("写入内容与录制不一致: " + uuid + ", 录制 " + HexCodec.encode(recorded.payload)
+                        + ", 回放 " + HexCodec.encode(sent));
+            }
+            for (int i = index + 1; i < script.events.size(); i++) {
+                TrafficRecorder.Event event = script.events.get(i);
+                if (event.type == TrafficRecorder.WRITE_ACK && uuid.equalsIgnoreCase(event.uuid)
+                        && !script.requested.containsKey(i)) {
+                    script.requested.put(i, characteristic);
+                    return true;
+                }
+            }
+            mismatches.add("录制中没有写入确认: " + uuid);
+            return true;
+        }
+
+        @Override
+        public boolean writeDescriptor(BluetoothGattDescriptor descriptor) {
+            BluetoothGattCharacteristic characteristic = descriptor.getCharacteristic();
+            String uuid = characteristic == null ? null : characteristic.getUuid().toString();
+            if (uuid == null) {
+                mismatches.add("描述符不属于任何特征值: " + descriptor.getUuid());
+                return false;
+            }
+            return request(TrafficRecorder.DESCRIPTOR_WRITE, uuid, descriptor, "描述符写入") >= 0;
+        }
+
+        @Override
+        public boolean readDescriptor(BluetoothGattDescriptor descriptor) {
+            return false; // 描述符读取不在录制范围内
+        }
+
+        @Override
+        public boolean setCharacteristicNotification(BluetoothGattCharacteristic characteristic, boolean enable) {
+            return !closed;
+        }
+
+        @Override
+        public boolean beginReliableWrite() {
+            return false; // 可靠写入不在录制范围内
+        }
+
+        @Override
+        public boolean executeReliableWrite() {
+            return false;
+        }
+
+        @Override
+        public void abortReliableWrite() {
+        }
+
+        @Override
+        public void disconnect() {
+            if (closed) {
+                return;
+            }
+            // 主动断开：跳过本次连接剩余的录制，下次连接从录制中的断开之后继续
+            for (int i = script.cursor; i < script.events.size(); i++) {
+                TrafficRecorder.Event event = script.events.get(i);
+                if (event.type == TrafficRecorder.CONNECTION_STATE
+                        && event.arg == BluetoothProfile.STATE_DISCONNECTED) {
+                    script.cursor = i + 1;
+                    break;
+                }
+            }
+            script.requested.clear();
+            closed = true;
+            handler.post(() -> callback.onConnectionStateChange(this, BluetoothGatt.GATT_SUCCESS,
+                    BluetoothProfile.STATE_DISCONNECTED));
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        private BluetoothGattCharacteristic findCharacteristic(String uuid) {
+            if (uuid == null) {
+                return null;
+            }
+            UUID id = UUID.fromString(uuid);
+            for (BluetoothGattService service : getServices()) {
+                BluetoothGattCharacteristic characteristic = service.getCharacteristic(id);
+                if (characteristic != null) {
+                    return characteristic;
+                }
+            }
+            return null;
+        }
+    }
+}
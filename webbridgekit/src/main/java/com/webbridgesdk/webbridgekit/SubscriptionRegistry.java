@@ -0,0 +1,120 @@
+package com.webbridgesdk.webbridgekit;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * 单个设备的通知订阅策略和引用计数
+ * 策略决定服务发现后自动订阅哪些特征值：all为全部可通知的特征值（默认，与之前的行为一致），
+ * allowlist为连接时给出的列表，onDemand为不自动订阅。H5通过subscribe/unsubscribe增减引用，
+ * 策略本身持有一个引用，引用归零时才关闭通知。按设备保存，断线重连后按同样的策略和引用恢复订阅。
+ * 只在BLE线程上使用，不是线程安全的。
+ */
+class SubscriptionRegistry {
+    enum Policy {
+        ALL,
+        ALLOWLIST,
+        ON_DEMAND
+    }
+
+    private Policy policy = Policy.ALL;
+    private final Set<String> allowlist = new HashSet<>();
+    private final Map<String, Integer> references = new HashMap<>();
+
+    /**
+     * 按名称解析策略："all"、"allowlist"、"onDemand"（忽略大小写和分隔符）
+     *
+     * @throws IllegalArgumentException 未知策略
+     */
+    static Policy parsePolicy(String name) {
+        String normalized = name.replace("_", "").replace("-", "").toUpperCase(Locale.ROOT);
+        for (Policy policy : Policy.values()) {
+            if (policy.name().replace("_", "").equals(normalized)) {
+                return policy;
+            }
+        }
+        throw new IllegalArgumentException("unknown subscription policy: " + name);
+    }
+
+    /**
+     * 设置策略，allowlist只在ALLOWLIST策略下使用
+     *
+     * @throws IllegalArgumentException UUID格式无效
+     */
+    void setPolicy(Policy policy, Collection<String> uuids) {
+        this.policy = policy;
+        allowlist.clear();
+        if (uuids != null) {
+            for (String uuid : uuids) {
+                allowlist.add(UUID.fromString(uuid).toString());
+            }
+        }
+    }
+
+    Policy policy() {
+        return policy;
+    }
+
+    /**
+     * 策略是否要求订阅该特征值
+     *
+     * @param notifiable 特征值是否支持通知（all策略只订阅通知，不订阅指示）
+     */
+    boolean heldByPolicy(String uuid, boolean notifiable) {
+        switch (policy) {
+            case ALL:
+                return notifiable;
+            case ALLOWLIST:
+                return allowlist.contains(uuid);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 是否需要保持订阅
+     */
+    boolean isWanted(String uuid, boolean notifiable) {
+        return heldByPolicy(uuid, notifiable) || references.containsKey(uuid);
+    }
+
+    /**
+     * 增加一个H5引用
+     *
+     * @return 增加后H5持有的引用数
+     */
+    int acquire(String uuid) {
+        Integer count = references.get(uuid);
+        int updated = count == null ? 1 : count + 1;
+        references.put(uuid, updated);
+        return updated;
+    }
+
+    /**
+     * 释放一个H5引用，未持有时不变
+     *
+     * @return 释放后H5持有的引用数
+     */
+    int release(String uuid) {
+        Integer count = references.get(uuid);
+        if (count == null || count <= 1) {
+            references.remove(uuid);
+            return 0;
+        }
+        references.put(uuid, count - 1);
+        return count - 1;
+    }
+
+    /**
+     * 总引用数，策略持有时计1
+     */
+    int referenceCount(String uuid, boolean notifiable) {
+        Integer count = references.get(uuid);
+        return (count == null ? 0 : count) + (heldByPolicy(uuid, notifiable) ? 1 : 0);
+    }
+}
@@ -0,0 +1,229 @@
+package com.webbridgesdk.webbridgekit;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 哈希时间轮
+ * 为GATT操作和连接超时提供可取消的定时任务，在独立线程上计时，不向主线程投递消息。
+ * 每个槽位是一个双向链表，调度和取消都是O(1)；任务到期后在时间轮线程上执行，
+ * 需要访问连接状态的任务应自行切换到对应线程。
+ * 没有待执行任务时线程处于等待状态，不会空转。
+ */
+final class TimeoutWheel {
+    private static final String TAG = "TimeoutWheel";
+    static final long DEFAULT_TICK_MS = 10;
+    private static final int DEFAULT_WHEEL_SIZE = 512; // 10ms × 512 ≈ 5秒一圈
+
+    private final long tickNanos;
+    private final int mask;
+    private final Timeout[] buckets;
+    private final Object lock = new Object();
+    private final long startNanos = System.nanoTime();
+    private final String threadName;
+    private long currentTick; // 下一个待处理的刻度
+    private int pending;
+    private Thread worker;
+    private boolean stopped;
+
+    /**
+     * 可取消的定时任务句柄
+     */
+    static final class Timeout {
+        private final TimeoutWheel wheel;
+        private final Runnable task;
+        private long rounds;     // 还需转过的圈数
+        private int bucket = -1; // 所在槽位，-1表示不在时间轮中
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(TimeoutWheel wheel, Runnable task) {
+            this.wheel = wheel;
+            this.task = task;
+        }
+
+        /**
+         * 取消任务
+         *
+         * @return 任务是否在执行前被取消
+         */
+        boolean cancel() {
+            return wheel.cancel(this);
+        }
+    }
+
+    TimeoutWheel(String threadName) {
+        this(threadName, DEFAULT_TICK_MS, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * @param tickMs    刻度（毫秒），即超时精度
+     * @param wheelSize 槽位数，必须为2的幂
+     */
+    TimeoutWheel(String threadName, long tickMs, int wheelSize) {
+        if (tickMs <= 0 || wheelSize <= 0 || (wheelSize & (wheelSize - 1)) != 0) {
+            throw new IllegalArgumentException("tickMs must be positive and wheelSize a power of two");
+        }
+        this.threadName = threadName;
+        this.tickNanos = tickMs * 1_000_000L;
+        this.mask = wheelSize - 1;
+        this.buckets = new Timeout[wheelSize];
+    }
+
+    /**
+     * 在指定延迟后执行任务，精度为一个刻度
+     *
+     * @return 用于取消的句柄
+     */
+    Timeout schedule(Runnable task, long delayMs) {
+        Timeout timeout = new Timeout(this, task);
+        synchronized (lock) {
+            if (stopped) {
+                return timeout;
+            }
+            if (pending == 0) {
+                // 空闲期间没有推进刻度，直接追上当前时间
+                currentTick = Math.max(currentTick, elapsedTicks());
+            }
+            long ticks = (Math.max(0, delayMs) * 1_000_000L + tickNanos - 1) / tickNanos;
+            long deadline = Math.max(currentTick, elapsedTicks() + ticks);
+            timeout.rounds = (deadline - currentTick) / buckets.length;
+            timeout.bucket = (int) (deadline & mask);
+            Timeout head = buckets[timeout.bucket];
+            timeout.next = head;
+            if (head != null) {
+                head.prev = timeout;
+            }
+            buckets[timeout.bucket] = timeout;
+
+            if (++pending == 1) {
+                if (worker == null) {
+                    worker = new Thread(this::run, threadName);
+                    worker.setDaemon(true);
+                    worker.start();
+                } else {
+                    lock.notifyAll();
+                }
+            }
+        }
+        return timeout;
+    }
+
+    /**
+     * 当前未到期的任务数
+     */
+    int pendingCount() {
+        synchronized (lock) {
+            return pending;
+        }
+    }
+
+    /**
+     * 停止计时线程并丢弃所有未到期的任务
+     */
+    void stop() {
+        synchronized (lock) {
+            stopped = true;
+            for (int i = 0; i < buckets.length; i++) {
+                Timeout timeout = buckets[i];
+                while (timeout != null) {
+                    Timeout next = timeout.next;
+                    timeout.bucket = -1;
+                    timeout.prev = null;
+                    timeout.next = null;
+                    timeout = next;
+                }
+                buckets[i] = null;
+            }
+            pending = 0;
+            lock.notifyAll();
+        }
+    }
+
+    private boolean cancel(Timeout timeout) {
+        synchronized (lock) {
+            if (timeout.bucket < 0) {
+                return false;
+            }
+            unlink(timeout);
+            pending--;
+            return true;
+        }
+    }
+
+    private void unlink(Timeout timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            buckets[timeout.bucket] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.bucket = -1;
+        timeout.prev = null;
+        timeout.next = null;
+    }
+
+    private long elapsedTicks() {
+        return (System.nanoTime() - startNanos) / tickNanos;
+    }
+
+    private void run() {
+        List<Timeout> expired = new ArrayList<>();
+        while (true) {
+            synchronized (lock) {
+                try {
+                    while (pending == 0 && !stopped) {
+                        lock.wait();
+                    }
+                    if (stopped) {
+                        return;
+                    }
+                    long now = elapsedTicks();
+                    if (currentTick > now) {
+                        long waitNanos = (currentTick * tickNanos) - (System.nanoTime() - startNanos);
+                        if (waitNanos > 0) {
+                            lock.wait(waitNanos / 1_000_000L, (int) (waitNanos % 1_000_000L));
+                        }
+                        continue;
+                    }
+                    while (currentTick <= now && pending > 0) {
+                        expireBucket((int) (currentTick & mask), expired);
+                        currentTick++;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+
+            for (int i = 0; i < expired.size(); i++) {
+                try {
+                    expired.get(i).task.run();
+                } catch (RuntimeException e) {
+                    // 单个任务异常不影响时间轮继续运行
+                    Log.e(TAG, "Timeout task failed: " + e.getMessage());
+                }
+            }
+            expired.clear();
+        }
+    }
+
+    private void expireBucket(int bucket, List<Timeout> expired) {
+        Timeout timeout = buckets[bucket];
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.rounds <= 0) {
+                unlink(timeout);
+                pending--;
+                expired.add(timeout);
+            } else {
+                timeout.rounds--;
+            }
+            timeout = next;
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package com.webbridgesdk.webbridgekit;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * GATT事件记录器
+ * 把连接状态、MTU、写入及其确认、通知、读取等事件以二进制格式写入预分配的环形缓冲区，
+ * 缓冲区满时覆盖最旧的记录，始终保留最近一段时间的流量。记录时不分配对象
+ * （特征值UUID首次出现时登记一次），可常开；需要排查问题时导出为文件，再由TrafficReplayer回放。
+ * <p>
+ * 记录格式（大端）：u16 记录长度、u8 类型、u8 标志、i16 状态码、i64 时间戳（纳秒，单调时钟）、
+ * 6字节设备地址、u16 特征值编号、i32 参数、负载。
+ * 导出文件：8字节魔数、i64 导出时的系统时间（毫秒）、i64 对应的单调时钟（纳秒）、
+ * i32 UUID数量及各UUID（u16长度 + UTF-8）、i32 记录数、i32 记录字节数、按时间顺序排列的记录。
+ */
+final class TrafficRecorder {
+    static final int DEFAULT_CAPACITY = 1024 * 1024;
+    static final int MAX_CAPACITY = 16 * 1024 * 1024;
+    static final int HEADER_SIZE = 26;
+    static final int MAX_PAYLOAD = 512; // ATT属性值上限，超出部分截断
+
+    // 事件类型
+    static final byte CONNECTION_STATE = 1;    // status为GATT状态码，arg为新的连接状态
+    static final byte MTU_CHANGED = 2;         // arg为MTU
+    static final byte SERVICES_DISCOVERED = 3;
+    static final byte WRITE = 4;               // 负载为写入的数据，arg为写入类型
+    static final byte WRITE_ACK = 5;
+    static final byte NOTIFICATION = 6;        // 负载为通知的值
+    static final byte READ = 7;                // 负载为读到的值
+    static final byte DESCRIPTOR_WRITE = 8;
+
+    static final int FLAG_TRUNCATED = 1;       // 负载超过MAX_PAYLOAD被截断
+    static final int NO_UUID = 0xFFFF;
+
+    private static final byte[] MAGIC = {'W', 'B', 'K', 'R', 'E', 'C', '0', '1'};
+
+    /**
+     * 回放时的单个事件
+     */
+    static final class Event {
+        final byte type;
+        final int flags;
+        final int status;
+        final long timestampNanos;
+        final String address;
+        final String uuid;   // 无特征值的事件为null
+        final int arg;
+        final byte[] payload;
+
+        Event(byte type, int flags, int status, long timestampNanos, String address, String uuid, int arg,
+              byte[] payload) {
+            this.type = type;
+            this.flags = flags;
+            this.status = status;
+            this.timestampNanos = timestampNanos;
+            this.address = address;
+            this.uuid = uuid;
+            this.arg = arg;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * 导出文件中事件的接收者
+     */
+    interface Visitor {
+        void onEvent(Event event);
+    }
+
+    private byte[] ring;
+    private int head;   // 最旧记录的起始位置
+    private int tail;   // 下一条记录的写入位置
+    private int used;
+    private int count;  // 缓冲区中的记录数
+    private long recorded;
+    private long overwritten;
+    private volatile boolean enabled = true;
+    private final Map<String, Integer> uuidIds = new HashMap<>();
+    private final List<String> uuids = new ArrayList<>();
+
+    TrafficRecorder(int capacity) {
+        ring = new byte[checkCapacity(capacity)];
+    }
+
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 重新分配缓冲区，已有记录被清除
+     */
+    synchronized void resize(int capacity) {
+        ring = new byte[checkCapacity(capacity)];
+        clear();
+    }
+
+    synchronized void clear() {
+        head = 0;
+        tail = 0;
+        used = 0;
+        count = 0;
+        uuids.clear();
+        uuidIds.clear();
+    }
+
+    void record(byte type, String address, String uuid, int status, int arg) {
+        record(type, address, uuid, status, arg, null, 0, 0, System.nanoTime());
+    }
+
+    void record(byte type, String address, String uuid, int status, int arg, byte[] payload) {
+        record(type, address, uuid, status, arg, payload, 0, payload == null ? 0 : payload.length, System.nanoTime());
+    }
+
+    /**
+     * 追加一条记录，缓冲区不足时覆盖最旧的记录
+     */
+    synchronized void record(byte type, String address, String uuid, int status, int arg,
+                             byte[] payload, int offset, int length, long timestampNanos) {
+        if (!enabled) {
+            return;
+        }
+        int payloadLength = Math.min(length, MAX_PAYLOAD);
+        int size = HEADER_SIZE + payloadLength;
+        if (size > ring.length) {
+            return;
+        }
+        while (ring.length - used < size) {
+            evictOldest();
+        }
+
+        putShort(size);
+        put(type);
+        put(length > MAX_PAYLOAD ? FLAG_TRUNCATED : 0);
+        putShort(status);
+        putLong(timestampNanos);
+        putAddress(address);
+        putShort(uuidId(uuid));
+        putInt(arg);
+        if (payloadLength > 0) {
+            int first = Math.min(payloadLength, ring.length - tail);
+            System.arraycopy(payload, offset, ring, tail, first);
+            System.arraycopy(payload, offset + first, ring, 0, payloadLength - first);
+            tail = (tail + payloadLength) % ring.length;
+        }
+        used += size;
+        count++;
+        recorded++;
+    }
+
+    /**
+     * 按时间顺序导出缓冲区中的记录，不清除
+     */
+    synchronized void dump(OutputStream output) throws IOException {
+        DataOutputStream out = new DataOutputStream(output);
+        out.write(MAGIC);
+        out.writeLong(System.currentTimeMillis());
+        out.writeLong(System.nanoTime());
+        out.writeInt(uuids.size());
+        for (String uuid : uuids) {
+            byte[] bytes = uuid.getBytes(StandardCharsets.UTF_8);
+            out.writeShort(bytes.length);
+            out.write(bytes);
+        }
+        out.writeInt(count);
+        out.writeInt(used);
+        int first = Math.min(used, ring.length - head);
+        out.write(ring, head, first);
+        out.write(ring, 0, used - first);
+        out.flush();
+    }
+
+    synchronized String statsJson() {
+        return String.format(Locale.ROOT,
+                "{\"enabled\":%b,\"capacity\":%d,\"usedBytes\":%d,\"records\":%d,\"recorded\":%d,\"overwritten\":%d}",
+                enabled, ring.length, used, count, recorded, overwritten);
+    }
+
+    /**
+     * 读取导出文件，按时间顺序回调每个事件
+     *
+     * @throws IOException 文件格式错误或读取失败
+     */
+    static void read(InputStream input, Visitor visitor) throws IOException {
+        DataInputStream in = new DataInputStream(input);
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("not a traffic log");
+        }
+        in.readLong(); // 导出时的系统时间
+        in.readLong(); // 导出时的单调时钟
+        String[] uuidTable = new String[in.readInt()];
+        for (int i = 0; i < uuidTable.length; i++) {
+            byte[] bytes = new byte[in.readUnsignedShort()];
+            in.readFully(bytes);
+            uuidTable[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        int records = in.readInt();
+        in.readInt(); // 记录字节数
+        byte[] address = new byte[6];
+        for (int i = 0; i < records; i++) {
+            int size = in.readUnsignedShort();
+            if (size < HEADER_SIZE) {
+                throw new EOFException("corrupt record at " + i);
+            }
+            byte type = in.readByte();
+            int flags = in.readUnsignedByte();
+            int status = in.readShort();
+            long timestamp = in.readLong();
+            in.readFully(address);
+            int uuidId = in.readUnsignedShort();
+            int arg = in.readInt();
+            byte[] payload = new byte[size - HEADER_SIZE];
+            in.readFully(payload);
+            String uuid = uuidId == NO_UUID || uuidId >= uuidTable.length ? null : uuidTable[uuidId];
+            visitor.onEvent(new Event(type, flags, status, timestamp, formatAddress(address), uuid, arg, payload));
+        }
+    }
+
+    private static int checkCapacity(int capacity) {
+        if (capacity < HEADER_SIZE + MAX_PAYLOAD || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("capacity out of range: " + capacity);
+        }
+        return capacity;
+    }
+
+    private void evictOldest() {
+        int size = ((ring[head] & 0xFF) << 8) | (ring[(head + 1) % ring.length] & 0xFF);
+        head = (head + size) % ring.length;
+        used -= size;
+        count--;
+        overwritten++;
+    }
+
+    private int uuidId(String uuid) {
+        if (uuid == null) {
+            return NO_UUID;
+        }
+        Integer id = uuidIds.get(uuid);
+        if (id == null) {
+            if (uuids.size() >= NO_UUID) {
+                return NO_UUID;
+            }
+            id = uuids.size();
+            uuids.add(uuid);
+            uuidIds.put(uuid, id);
+        }
+        return id;
+    }
+
+    private void put(int value) {
+        ring[tail] = (byte) value;
+        if (++tail == ring.length) {
+            tail = 0;
+        }
+    }
+
+    private void putShort(int value) {
+        put(value >>> 8);
+        put(value);
+    }
+
+    private void putInt(int value) {
+        putShort(value >>> 16);
+        putShort(value);
+    }
+
+    private void putLong(long value) {
+        putInt((int) (value >>> 32));
+        putInt((int) value);
+    }
+
+    /**
+     * 按字符解析"AA:BB:CC:DD:EE:FF"，不分配对象；格式不符的部分记为0
+     */
+    private void putAddress(String address) {
+        int index = 0;
+        for (int i = 0; i < 6; i++) {
+            int value = 0;
+            for (int digit = 0; digit < 2; digit++) {
+                int nibble = address != null && index < address.length()
+                        ? Character.digit(address.charAt(index), 16) : 0;
+                value = (value << 4) | Math.max(nibble, 0);
+                index++;
+            }
+            put(value);
+            index++; // 跳过冒号
+        }
+    }
+
+    private static String formatAddress(byte[] address) {
+        StringBuilder builder = new StringBuilder(17);
+        for (int i = 0; i < address.length; i++) {
+            if (i > 0) {
+                builder.append(':');
+            }
+            HexCodec.appendHex(builder, address, i, 1);
+        }
+        return builder.toString();
+    }
+}
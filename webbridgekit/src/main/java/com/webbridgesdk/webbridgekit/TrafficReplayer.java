@@ -0,0 +1,109 @@
+package com.webbridgesdk.webbridgekit;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 回放TrafficRecorder导出的文件
+ * 按记录顺序把事件交给与GATT回调对应的Sink，可按原始时间间隔（乘以速度系数）回放，
+ * 也可不等待直接回放，用于在JVM上做回归测试和性能测试。
+ * 只解码事件；需要让录制的流量经过BluetoothManager的回调处理时使用ReplayGattTransport。
+ */
+class TrafficReplayer {
+    /**
+     * 回放事件的接收者，与BluetoothGattCallback的回调一一对应
+     * 写入事件由本端发起，回放时用于校验发送的数据
+     */
+    interface Sink {
+        void onConnectionStateChange(String address, int status, int newState);
+
+        void onMtuChanged(String address, int mtu, int status);
+
+        void onServicesDiscovered(String address, int status);
+
+        void onCharacteristicWrite(String address, String uuid, byte[] value, int writeType);
+
+        void onWriteAcknowledged(String address, String uuid, int status);
+
+        void onCharacteristicChanged(String address, String uuid, byte[] value);
+
+        void onCharacteristicRead(String address, String uuid, byte[] value, int status);
+
+        void onDescriptorWrite(String address, String uuid, int status);
+    }
+
+    private final double speed;
+
+    /**
+     * @param speed 回放速度，1为按原始间隔，2为两倍速；0表示不等待
+     */
+    TrafficReplayer(double speed) {
+        if (speed < 0) {
+            throw new IllegalArgumentException("speed must be >= 0");
+        }
+        this.speed = speed;
+    }
+
+    /**
+     * 回放整个文件
+     *
+     * @return 回放的事件数
+     * @throws IOException 文件格式错误或读取失败
+     */
+    int replay(InputStream input, Sink sink) throws IOException {
+        int[] count = new int[1];
+        long[] previous = {Long.MIN_VALUE};
+        TrafficRecorder.read(input, event -> {
+            if (speed > 0 && previous[0] != Long.MIN_VALUE) {
+                pause((long) ((event.timestampNanos - previous[0]) / speed));
+            }
+            previous[0] = event.timestampNanos;
+            dispatch(event, sink);
+            count[0]++;
+        });
+        return count[0];
+    }
+
+    private static void dispatch(TrafficRecorder.Event event, Sink sink) {
+        switch (event.type) {
+            case TrafficRecorder.CONNECTION_STATE:
+                sink.onConnectionStateChange(event.address, event.status, event.arg);
+                break;
+            case TrafficRecorder.MTU_CHANGED:
+                sink.onMtuChanged(event.address, event.arg, event.status);
+                break;
+            case TrafficRecorder.SERVICES_DISCOVERED:
+                sink.onServicesDiscovered(event.address, event.status);
+                break;
+            case TrafficRecorder.WRITE:
+                sink.onCharacteristicWrite(event.address, event.uuid, event.payload, event.arg);
+                break;
+            case TrafficRecorder.WRITE_ACK:
+                sink.onWriteAcknowledged(event.address, event.uuid, event.status);
+                break;
+            case TrafficRecorder.NOTIFICATION:
+                sink.onCharacteristicChanged(event.address, event.uuid, event.payload);
+                break;
+            case TrafficRecorder.READ:
+                sink.onCharacteristicRead(event.address, event.uuid, event.payload, event.status);
+                break;
+            case TrafficRecorder.DESCRIPTOR_WRITE:
+                sink.onDescriptorWrite(event.address, event.uuid, event.status);
+                break;
+            default:
+                // 新版本增加的事件类型，旧的回放端忽略
+                break;
+        }
+    }
+
+    private static void pause(long nanos) {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(nanos / 1_000_000, (int) (nanos % 1_000_000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -11,6 +11,8 @@ import androidx.webkit.WebViewCompat;
 import androidx.webkit.WebViewFeature;
 import androidx.webkit.WebSettingsCompat;
 import org.json.JSONObject;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -60,15 +62,12 @@ public class WebViewBridge implements CameraManager.WebViewCallback {
     }
 
     private void initManagers() {
-        // 确保蓝牙初始化在主线程完成，并具有一定的延迟
+        // 确保蓝牙初始化在主线程完成
         activity.runOnUiThread(() -> {
             bluetoothManager = new BluetoothManager(activity, this);
-            // 为蓝牙适配器准备时间
-            android.os.Handler handler = new android.os.Handler(android.os.Looper.getMainLooper());
-            handler.postDelayed(() -> {
-                // 初始化操作完成后的回调
-                evaluateJavascript("javascript:if(window.onBluetoothReady) window.onBluetoothReady()");
-            }, 1000); // 给蓝牙适配器1秒的初始化时间
+            // 适配器正在开启时等待系统广播，否则立即通知H5
+            bluetoothManager.runWhenAdapterReady(() ->
+                    evaluateJavascript("javascript:if(window.onBluetoothReady) window.onBluetoothReady()"));
         });
         
         // 相机管理器可以立即初始化
@@ -156,6 +155,24 @@ public class WebViewBridge implements CameraManager.WebViewCallback {
         return compatibilityChecker.getDeviceInfo();
     }
 
+    /**
+     * 获取蓝牙性能计数快照（JSON），供宿主应用上报遥测
+     * @param reset 是否在快照后清零
+     */
+    public String getBluetoothMetrics(boolean reset) {
+        return bluetoothManager != null ? bluetoothManager.snapshotMetrics(reset) : null;
+    }
+
+    /**
+     * 导出最近的蓝牙通信记录，供宿主应用随问题反馈上传
+     * @param output 输出流，由调用方关闭
+     */
+    public void dumpBluetoothTrafficLog(OutputStream output) throws IOException {
+        if (bluetoothManager != null) {
+            bluetoothManager.dumpTrafficLog(output);
+        }
+    }
+
     /**
      * 释放所有资源
      */
@@ -0,0 +1,182 @@
+package com.webbridgesdk.webbridgekit;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 多个特征值的批量写入
+ * 按顺序连续写入一组特征值，结束时只回调一次汇总结果。
+ * 可靠写入模式下所有写入在beginReliableWrite/executeReliableWrite事务中提交，任一失败则整体撤销；
+ * 顺序模式逐个带响应写入，遇到失败即停止，之前的写入已生效。
+ * 只在BLE线程上修改。
+ */
+class WriteBatch {
+    static final int MAX_ENTRIES = 32;
+    static final int MAX_VALUE_LENGTH = 512; // ATT属性值上限
+    /** 可靠写入中外设回显的值与发送的不一致时使用的状态码 */
+    static final int STATUS_ECHO_MISMATCH = -3;
+
+    enum Mode {
+        AUTO,       // 外设支持时使用可靠写入，否则顺序写入
+        RELIABLE,
+        SEQUENTIAL
+    }
+
+    static final class Entry {
+        final String serviceUuid;
+        final String characteristicUuid;
+        final byte[] value;
+
+        Entry(String serviceUuid, String characteristicUuid, byte[] value) {
+            this.serviceUuid = serviceUuid;
+            this.characteristicUuid = characteristicUuid;
+            this.value = value;
+        }
+    }
+
+    final String id;
+    final String address;
+    final Mode requestedMode;
+    final List<Entry> entries;
+    private Mode mode;
+    private int written;          // 外设已确认的写入数
+    private int failedIndex = -1;
+    private int status;
+    private String error;
+    private boolean committed;
+    private final long startedAt;
+    private long elapsedMs;
+
+    WriteBatch(String id, String address, Mode requestedMode, List<Entry> entries, long now) {
+        this.id = id;
+        this.address = address;
+        this.requestedMode = requestedMode;
+        this.entries = Collections.unmodifiableList(new ArrayList<>(entries));
+        this.mode = requestedMode == Mode.RELIABLE ? Mode.RELIABLE : Mode.SEQUENTIAL;
+        this.startedAt = now;
+    }
+
+    /**
+     * 解析H5传入的批量写入
+     * [{"service":"..","characteristic":"..","value":"hex"},...]
+     * 或 {"mode":"auto|reliable|sequential","writes":[...]}
+     *
+     * @throws JSONException 格式错误、条目为空或超过上限、十六进制无效
+     */
+    static WriteBatch fromJson(String id, String address, String json, long now) throws JSONException {
+        String trimmed = json == null ? "" : json.trim();
+        JSONArray writes;
+        Mode mode = Mode.AUTO;
+        if (trimmed.startsWith("[")) {
+            writes = new JSONArray(trimmed);
+        } else {
+            JSONObject batch = new JSONObject(trimmed);
+            writes = batch.getJSONArray("writes");
+            try {
+                mode = Mode.valueOf(batch.optString("mode", "auto").toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new JSONException("unknown mode: " + batch.optString("mode"));
+            }
+        }
+        if (writes.length() == 0 || writes.length() > MAX_ENTRIES) {
+            throw new JSONException("batch must contain 1-" + MAX_ENTRIES + " writes");
+        }
+
+        List<Entry> entries = new ArrayList<>(writes.length());
+        for (int i = 0; i < writes.length(); i++) {
+            JSONObject write = writes.getJSONObject(i);
+            byte[] value = HexCodec.decode(write.getString("value"));
+            if (value.length == 0 || value.length > MAX_VALUE_LENGTH) {
+                throw new JSONException("invalid value at index " + i);
+            }
+            entries.add(new Entry(write.getString("service"), write.getString("characteristic"), value));
+        }
+        return new WriteBatch(id, address, mode, entries, now);
+    }
+
+    Mode mode() {
+        return mode;
+    }
+
+    /**
+     * 确定实际的写入方式，在开始写入前调用一次
+     */
+    void useMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * 下一个待写入条目的序号，全部写完时等于条目数
+     */
+    int nextIndex() {
+        return written;
+    }
+
+    /**
+     * 当前条目已被外设确认
+     *
+     * @return 是否还有待写入的条目
+     */
+    boolean acknowledge() {
+        written++;
+        return written < entries.size();
+    }
+
+    /**
+     * 全部写入已生效
+     */
+    void commit(long now) {
+        committed = true;
+        elapsedMs = now - startedAt;
+    }
+
+    /**
+     * 批量写入失败
+     *
+     * @param index  失败的条目序号，提交阶段失败时为-1
+     * @param status GATT状态码
+     * @param error  失败原因
+     */
+    void fail(int index, int status, String error, long now) {
+        this.failedIndex = index;
+        this.status = status;
+        this.error = error;
+        this.committed = false;
+        elapsedMs = now - startedAt;
+    }
+
+    boolean isCommitted() {
+        return committed;
+    }
+
+    /**
+     * 在外设上生效的条目数：可靠写入失败时整体撤销为0，顺序写入失败时为失败前已确认的条目数
+     */
+    int applied() {
+        if (committed) {
+            return entries.size();
+        }
+        return mode == Mode.RELIABLE ? 0 : written;
+    }
+
+    /**
+     * 汇总结果
+     * {"batchId","address","success","mode","applied","total","failedIndex","failedUuid","status","error","elapsedMs"}
+     */
+    String resultJson() {
+        String failedUuid = failedIndex >= 0 && failedIndex < entries.size()
+                ? "\"" + entries.get(failedIndex).characteristicUuid + "\"" : "null";
+        return String.format(Locale.ROOT,
+                "{\"batchId\":\"%s\",\"address\":\"%s\",\"success\":%b,\"mode\":\"%s\",\"applied\":%d,"
+                        + "\"total\":%d,\"failedIndex\":%d,\"failedUuid\":%s,\"status\":%d,\"error\":%s,"
+                        + "\"elapsedMs\":%d}",
+                id, address, committed, mode.name().toLowerCase(Locale.ROOT), applied(), entries.size(),
+                failedIndex, failedUuid, status, error == null ? "null" : "\"" + error + "\"", elapsedMs);
+    }
+}
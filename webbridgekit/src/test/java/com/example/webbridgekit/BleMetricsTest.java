@@ -0,0 +1,126 @@
+package com.webbridgesdk.webbridgekit;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * BleMetrics 单元测试，在开发机（JVM）上运行
+ */
+public class BleMetricsTest {
+    private static final String ADDRESS = "AA:BB:CC:DD:EE:FF";
+    private static final String UUID_A = "0000fff1-0000-1000-8000-00805f9b34fb";
+    private static final String UUID_B = "0000fff2-0000-1000-8000-00805f9b34fb";
+
+    @Test
+    public void counters_aggregatePerConnectionAndCharacteristic() {
+        BleMetrics metrics = new BleMetrics();
+        metrics.recordWriteIssued(ADDRESS, UUID_A, 20);
+        metrics.recordWriteResult(ADDRESS, UUID_A, true, 12);
+        metrics.recordWriteIssued(ADDRESS, UUID_B, 10);
+        metrics.recordWriteResult(ADDRESS, UUID_B, false, 0);
+        metrics.recordNotification(ADDRESS, UUID_A, 8);
+        metrics.recordRead(ADDRESS, UUID_B, 4);
+
+        String snapshot = metrics.snapshot(false);
+        String connection = section(snapshot, "connections");
+        assertTrue(connection.contains("\"address\":\"" + ADDRESS + "\""));
+        assertTrue(connection.contains("\"bytesIn\":12,\"bytesOut\":30,\"writes\":2,\"writeFailures\":1,"
+                + "\"notifications\":1,"));
+        assertTrue(connection.contains("\"writeLatency\":{\"count\":1,"));
+
+        String a = entry(snapshot, UUID_A);
+        assertTrue(a.contains("\"bytesIn\":8,\"bytesOut\":20,\"writes\":1,\"writeFailures\":0,"));
+        String b = entry(snapshot, UUID_B);
+        assertTrue(b.contains("\"bytesIn\":4,\"bytesOut\":10,\"writes\":1,\"writeFailures\":1,"));
+    }
+
+    @Test
+    public void histogram_percentilesUseBucketUpperBound() {
+        BleMetrics metrics = new BleMetrics();
+        for (int i = 0; i < 90; i++) {
+            metrics.recordDispatch(ADDRESS, UUID_A, 300);     // ≤0.5ms
+        }
+        for (int i = 0; i < 10; i++) {
+            metrics.recordDispatch(ADDRESS, UUID_A, 40_000);  // ≤50ms
+        }
+
+        String connection = section(metrics.snapshot(false), "connections");
+        assertTrue(connection, connection.contains(
+                "\"dispatchLatency\":{\"count\":100,\"avgMs\":4.27,\"p50Ms\":0.50,\"p95Ms\":50,\"p99Ms\":50,"));
+    }
+
+    @Test
+    public void histogram_overflowBucketReportsNullPercentile() {
+        BleMetrics metrics = new BleMetrics();
+        metrics.recordDispatch(ADDRESS, UUID_A, 5_000_000);
+        String connection = section(metrics.snapshot(false), "connections");
+        assertTrue(connection, connection.contains("\"p99Ms\":null"));
+        assertTrue(connection, connection.contains("\"counts\":[0,0,0,0,0,0,0,0,0,0,0,0,1]}}"));
+    }
+
+    @Test
+    public void reset_clearsCountersAndDropsIdleEntries() {
+        BleMetrics metrics = new BleMetrics();
+        metrics.recordNotification(ADDRESS, UUID_A, 8);
+
+        assertTrue(section(metrics.snapshot(true), "connections").contains("\"notifications\":1,"));
+        // 重置后的窗口内没有活动，下一次重置时移除
+        assertTrue(section(metrics.snapshot(true), "connections").contains("\"notifications\":0,"));
+        assertEquals("", section(metrics.snapshot(false), "connections"));
+    }
+
+    @Test
+    public void concurrentRecording_countsEverySample() throws InterruptedException {
+        BleMetrics metrics = new BleMetrics();
+        int threads = 4;
+        int perThread = 10_000;
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    metrics.recordNotification(ADDRESS, UUID_A, 1);
+                }
+                done.countDown();
+            }).start();
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        String connection = section(metrics.snapshot(false), "connections");
+        int total = threads * perThread;
+        assertTrue(connection, connection.contains("\"bytesIn\":" + total + ","));
+        assertTrue(connection, connection.contains("\"notifications\":" + total + ","));
+    }
+
+    /**
+     * 取出快照中某个数组的内容（不含方括号）
+     */
+    private static String section(String snapshot, String name) {
+        int start = snapshot.indexOf("\"" + name + "\":[") + name.length() + 4;
+        int depth = 1;
+        int end = start;
+        while (depth > 0) {
+            char c = snapshot.charAt(end++);
+            if (c == '[') {
+                depth++;
+            } else if (c == ']') {
+                depth--;
+            }
+        }
+        return snapshot.substring(start, end - 1);
+    }
+
+    /**
+     * 取出characteristics中指定UUID的记录
+     */
+    private static String entry(String snapshot, String uuid) {
+        String characteristics = section(snapshot, "characteristics");
+        int start = characteristics.indexOf("\"uuid\":\"" + uuid + "\"");
+        assertTrue("missing " + uuid, start >= 0);
+        int end = characteristics.indexOf("\"writeLatency\"", start);
+        return characteristics.substring(start, end);
+    }
+}
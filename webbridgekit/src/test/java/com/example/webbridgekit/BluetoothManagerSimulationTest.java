@@ -0,0 +1,227 @@
+package com.webbridgesdk.webbridgekit;
+
+import android.Manifest;
+import android.app.Application;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * BluetoothManager 在模拟外设上的连接、分片写入和通知流程
+ * 单元测试只断言数据完整和顺序正确；吞吐量和通知到脚本的延迟为手动运行的基准，默认忽略，结果输出到标准输出
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class BluetoothManagerSimulationTest {
+    private static final String ADDRESS = "AA:BB:CC:DD:EE:01";
+    private static final String SERVICE = "0000fff0-0000-1000-8000-00805f9b34fb";
+    private static final String RX = "0000fff1-0000-1000-8000-00805f9b34fb"; // 外设通知
+    private static final String TX = "0000fff2-0000-1000-8000-00805f9b34fb"; // 写入
+    private static final long TIMEOUT_MS = 30_000;
+
+    private final List<String> scripts = new CopyOnWriteArrayList<>();
+    // 每条脚本执行时的System.nanoTime()，与scripts按下标对应；脚本只在主线程上依次执行
+    private final List<Long> scriptTimes = new CopyOnWriteArrayList<>();
+    private SimulatedPeripheral peripheral;
+    private BluetoothManager manager;
+
+    @After
+    public void tearDown() {
+        if (manager != null) {
+            manager.release();
+        }
+        if (peripheral != null) {
+            peripheral.shutdown();
+        }
+    }
+
+    @Test
+    public void connect_negotiatesMtuAndBecomesReady() throws InterruptedException {
+        start(new SimulatedPeripheral().maxMtu(185).latencyMs(5));
+        connect();
+
+        assertEquals(1, count("onBluetoothConnected"));
+        assertTrue(first("onServicesDiscovered").contains(SERVICE));
+        assertTrue(manager.getLinkReport(ADDRESS).contains("\"mtu\":185"));
+    }
+
+    @Test
+    public void chunkedWrite_deliversAllBytesInOrder() throws InterruptedException {
+        start(new SimulatedPeripheral().maxMtu(247).latencyMs(2).packetLoss(0.05));
+        connect();
+
+        byte[] payload = new byte[16 * 1024];
+        new Random(7).nextBytes(payload);
+        String writeId = manager.writeRawHexData(ADDRESS, SERVICE, TX, HexCodec.encode(payload));
+        await("onWriteCompleted", () -> count("onWriteCompleted") > 0);
+
+        String completed = first("onWriteCompleted");
+        assertTrue(completed.contains("\"status\":\"success\""));
+        assertTrue(completed.contains("\"writeId\":\"" + writeId + "\""));
+        assertArrayEquals(payload, peripheral.receivedData(TX));
+    }
+
+    @Test
+    public void notifications_arriveCompleteAndInOrder() throws InterruptedException {
+        int total = 1000;
+        start(new SimulatedPeripheral().notifications(500, 20, total));
+        connect();
+        await(total + " notifications", () -> notifications().size() >= total);
+
+        List<String> received = notifications();
+        assertEquals(total, received.size());
+        long previousSentAt = Long.MIN_VALUE;
+        for (int i = 0; i < total; i++) {
+            long sentAt = sentAt(received.get(i));
+            assertTrue("通知乱序: " + i, sentAt > previousSentAt);
+            previousSentAt = sentAt;
+        }
+    }
+
+    @Ignore("基准测试，需要时手动运行")
+    @Test
+    public void benchmark_chunkedWriteThroughput() throws InterruptedException {
+        start(new SimulatedPeripheral().maxMtu(247).latencyMs(2).packetLoss(0.05));
+        connect();
+
+        byte[] payload = new byte[64 * 1024];
+        new Random(7).nextBytes(payload);
+        long startedAt = System.nanoTime();
+        manager.writeRawHexData(ADDRESS, SERVICE, TX, HexCodec.encode(payload));
+        await("onWriteCompleted", () -> count("onWriteCompleted") > 0);
+        long elapsedNanos = System.nanoTime() - startedAt;
+
+        assertArrayEquals(payload, peripheral.receivedData(TX));
+        System.out.println(String.format("chunked write %dB: %d writes, %d retransmissions, %.1f KB/s",
+                payload.length, peripheral.writes(), peripheral.retransmissions(),
+                payload.length / 1024.0 / (elapsedNanos / 1e9)));
+    }
+
+    @Ignore("基准测试，需要时手动运行")
+    @Test
+    public void benchmark_notificationToScriptLatency() throws InterruptedException {
+        int total = 5000;
+        start(new SimulatedPeripheral().notifications(1000, 20, total));
+        connect();
+        await(total + " notifications", () -> notifications().size() >= total);
+
+        // 从外设发出（通知前8字节）到脚本执行的延迟
+        long[] latencies = new long[total];
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        int index = 0;
+        for (int i = 0; i < scripts.size() && index < total; i++) {
+            String script = scripts.get(i);
+            if (!isNotification(script)) {
+                continue;
+            }
+            long executedAt = scriptTimes.get(i);
+            latencies[index++] = executedAt - sentAt(script);
+            first = Math.min(first, executedAt);
+            last = Math.max(last, executedAt);
+        }
+        Arrays.sort(latencies);
+        double seconds = Math.max(1, last - first) / 1e9;
+        System.out.println(String.format("notifications: %d sent, %d delivered in %.2fs (%.0f/s), "
+                        + "event-to-script p50 %dus, p95 %dus, max %dus",
+                peripheral.notificationsSent(), total, seconds, total / seconds, latencies[total / 2] / 1000,
+                latencies[total * 95 / 100] / 1000, latencies[total - 1] / 1000));
+    }
+
+    private void start(SimulatedPeripheral configured) {
+        Application application = RuntimeEnvironment.getApplication();
+        shadowOf(application).grantPermissions(Manifest.permission.BLUETOOTH_CONNECT,
+                Manifest.permission.BLUETOOTH_SCAN);
+        shadowOf(BluetoothAdapter.getDefaultAdapter()).setEnabled(true);
+        peripheral = configured
+                .addCharacteristic(SERVICE, RX, BluetoothGattCharacteristic.PROPERTY_NOTIFY)
+                .addCharacteristic(SERVICE, TX, BluetoothGattCharacteristic.PROPERTY_WRITE
+                        | BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE);
+        manager = new BluetoothManager(application,
+                script -> {
+                    scriptTimes.add(System.nanoTime());
+                    scripts.add(script);
+                }, peripheral);
+    }
+
+    private void connect() throws InterruptedException {
+        manager.connectToDevice(ADDRESS);
+        await("onConnectionReady", () -> count("onConnectionReady") > 0);
+    }
+
+    /**
+     * 等待条件成立
+     * 模拟时钟随真实时间推进，使BLE线程上的延迟任务按时执行；投递到主线程的脚本在此执行
+     */
+    private void await(String description, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT_MS * 1_000_000L;
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("等待" + description + "超时，已收到: " + scripts.size() + "条回调");
+            }
+            shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(1));
+            Thread.sleep(1);
+        }
+    }
+
+    private int count(String callback) {
+        int count = 0;
+        for (String script : scripts) {
+            if (script.startsWith("javascript:window." + callback + "(")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private String first(String callback) {
+        for (String script : scripts) {
+            if (script.startsWith("javascript:window." + callback + "(")) {
+                return script;
+            }
+        }
+        throw new AssertionError("没有收到" + callback);
+    }
+
+    private List<String> notifications() {
+        List<String> notifications = new ArrayList<>();
+        for (String script : scripts) {
+            if (isNotification(script)) {
+                notifications.add(script);
+            }
+        }
+        return notifications;
+    }
+
+    private static boolean isNotification(String script) {
+        return script.startsWith("javascript:window.onCharacteristicChanged(") && script.contains(RX);
+    }
+
+    /**
+     * 模拟外设写在通知前8字节的发送时间
+     */
+    private static long sentAt(String js) {
+        String marker = "\"hexValue\":\"";
+        int start = js.indexOf(marker) + marker.length();
+        return Long.parseUnsignedLong(js.substring(start, start + 16), 16);
+    }
+}
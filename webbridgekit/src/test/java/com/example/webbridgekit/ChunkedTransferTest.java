@@ -0,0 +1,139 @@
+package com.webbridgesdk.webbridgekit;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * ChunkedTransfer 单元测试，在开发机（JVM）上运行
+ */
+public class ChunkedTransferTest {
+    private static byte[] payload(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+
+    private static ChunkedTransfer transfer(byte[] data) {
+        return new ChunkedTransfer("t1", "AA:BB:CC:DD:EE:FF", "fff0", "fff2", data);
+    }
+
+    @Test
+    public void chunks_coverPayloadInOrder() {
+        byte[] data = payload(50);
+        ChunkedTransfer transfer = transfer(data);
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+
+        boolean done = false;
+        int chunks = 0;
+        while (!done) {
+            byte[] chunk = transfer.nextChunk(20);
+            sent.write(chunk, 0, chunk.length);
+            done = transfer.acknowledge();
+            chunks++;
+        }
+
+        assertEquals(3, chunks);
+        assertArrayEquals(data, sent.toByteArray());
+        assertEquals(ChunkedTransfer.State.COMPLETED, transfer.state());
+        assertEquals(50, transfer.acknowledgedOffset());
+    }
+
+    @Test
+    public void retry_resendsSameChunk() {
+        ChunkedTransfer transfer = transfer(payload(30));
+        transfer.nextChunk(20);
+        transfer.acknowledge();
+
+        byte[] first = transfer.nextChunk(20).clone();
+        assertTrue(transfer.retryChunk(3));
+        assertArrayEquals(first, transfer.nextChunk(20));
+        assertEquals(20, transfer.acknowledgedOffset());
+    }
+
+    @Test
+    public void retry_limitedPerChunk() {
+        ChunkedTransfer transfer = transfer(payload(60));
+        transfer.nextChunk(20);
+        assertTrue(transfer.retryChunk(2));
+        transfer.nextChunk(20);
+        assertTrue(transfer.retryChunk(2));
+        transfer.nextChunk(20);
+        assertFalse(transfer.retryChunk(2));
+
+        // 确认后重发计数从零开始
+        ChunkedTransfer other = transfer(payload(60));
+        other.nextChunk(20);
+        assertTrue(other.retryChunk(1));
+        other.nextChunk(20);
+        other.acknowledge();
+        other.nextChunk(20);
+        assertTrue(other.retryChunk(1));
+    }
+
+    @Test
+    public void pause_keepsAcknowledgedOffsetAndResumesWithNewChunkSize() {
+        byte[] data = payload(100);
+        ChunkedTransfer transfer = transfer(data);
+        transfer.nextChunk(20);
+        transfer.acknowledge();
+        transfer.nextChunk(20); // 在途片段，断线后丢弃
+        int generation = transfer.generation();
+
+        transfer.pause(1000);
+        assertEquals(ChunkedTransfer.State.PAUSED, transfer.state());
+        assertTrue(generation != transfer.generation());
+        assertEquals(20, transfer.acknowledgedOffset());
+
+        transfer.resume();
+        // 重连后MTU变大，从已确认的偏移继续
+        byte[] chunk = transfer.nextChunk(244);
+        assertEquals(80, chunk.length);
+        assertEquals(20, chunk[0]);
+        assertTrue(transfer.acknowledge());
+    }
+
+    @Test
+    public void pauseExpired_onlyAfterWindow() {
+        ChunkedTransfer transfer = transfer(payload(10));
+        transfer.pause(1000);
+        assertFalse(transfer.pauseExpired(1500, 1000));
+        assertTrue(transfer.pauseExpired(2500, 1000));
+
+        transfer.resume();
+        assertFalse(transfer.pauseExpired(5000, 1000));
+    }
+
+    @Test
+    public void finish_invalidatesInFlightOperations() {
+        ChunkedTransfer transfer = transfer(payload(10));
+        int generation = transfer.generation();
+        transfer.finish(ChunkedTransfer.State.CANCELLED);
+        assertTrue(generation != transfer.generation());
+        assertFalse(transfer.isActive());
+    }
+
+    @Test
+    public void progress_throttledByInterval() {
+        ChunkedTransfer transfer = transfer(payload(10));
+        assertTrue(transfer.shouldReportProgress(1000, 250));
+        assertFalse(transfer.shouldReportProgress(1100, 250));
+        assertTrue(transfer.shouldReportProgress(1250, 250));
+        // 强制上报不受间隔限制
+        assertTrue(transfer.shouldReportProgress(1260, 0));
+    }
+
+    @Test
+    public void toJson_reportsProgress() {
+        ChunkedTransfer transfer = transfer(payload(40));
+        transfer.nextChunk(10);
+        transfer.acknowledge();
+        assertEquals("{\"transferId\":\"t1\",\"address\":\"AA:BB:CC:DD:EE:FF\",\"uuid\":\"fff2\","
+                        + "\"state\":\"RUNNING\",\"sent\":10,\"total\":40,\"percent\":25,\"chunks\":1,\"retries\":0}",
+                transfer.toJson());
+    }
+}
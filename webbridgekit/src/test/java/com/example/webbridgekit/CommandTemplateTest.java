@@ -0,0 +1,119 @@
+package com.webbridgesdk.webbridgekit;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * CommandTemplate 单元测试，在开发机（JVM）上运行
+ */
+public class CommandTemplateTest {
+    private static final String SERVICE = "0000fff0-0000-1000-8000-00805f9b34fb";
+    private static final String UUID_A = "0000fff2-0000-1000-8000-00805f9b34fb";
+
+    private final byte[] buffer = new byte[CommandTemplate.MAX_FRAME_SIZE];
+
+    /**
+     * 7B | cmd(u8) | len(u8) | value(u16) | data(hex) | CRC16/MODBUS | 7D
+     */
+    private static CommandTemplate frameTemplate() {
+        return new CommandTemplate(SERVICE, UUID_A, HexCodec.decode("7B"), HexCodec.decode("7D"),
+                Arrays.asList(
+                        CommandTemplate.Field.integer("cmd", 1, false, true, null),
+                        CommandTemplate.Field.length("len", 1, true, 0),
+                        CommandTemplate.Field.integer("value", 2, false, true, 0L),
+                        CommandTemplate.Field.hex("data", 0)),
+                Checksum.CRC16_MODBUS, 1);
+    }
+
+    private String encode(CommandTemplate template, Map<String, ?> params) {
+        int length = template.encode(params, buffer);
+        return HexCodec.encode(Arrays.copyOf(buffer, length));
+    }
+
+    @Test
+    public void encode_assemblesFieldsLengthAndChecksum() {
+        Map<String, Object> params = new HashMap<>();
+        params.put("cmd", 0x10);
+        params.put("value", 0x1234);
+        params.put("data", "AABB");
+
+        byte[] body = HexCodec.decode("1004" + "1234" + "AABB");
+        byte[] crc = new byte[2];
+        Checksum.CRC16_MODBUS.write(Checksum.CRC16_MODBUS.compute(body, 0, body.length), crc, 0);
+        assertEquals("7B" + HexCodec.encode(body) + HexCodec.encode(crc) + "7D",
+                encode(frameTemplate(), params));
+    }
+
+    @Test
+    public void encode_usesDefaultsAndLittleEndian() {
+        CommandTemplate template = new CommandTemplate(SERVICE, UUID_A, new byte[0], new byte[0],
+                Arrays.asList(
+                        CommandTemplate.Field.constant(new byte[]{0x55}),
+                        CommandTemplate.Field.integer("level", 2, true, false, -2L),
+                        CommandTemplate.Field.integer("id", 4, false, false, null)),
+                Checksum.XOR8, 0);
+        Map<String, Object> params = new HashMap<>();
+        params.put("id", 0x01020304L);
+
+        // XOR8: 55 ^ FE ^ FF ^ 04 ^ 03 ^ 02 ^ 01 = 50
+        assertEquals("55FEFF0403020150", encode(template, params));
+    }
+
+    @Test
+    public void encode_rejectsMissingOrOutOfRangeValues() {
+        CommandTemplate template = frameTemplate();
+        Map<String, Object> params = new HashMap<>();
+        params.put("data", "");
+        assertRejected(template, params);
+
+        params.put("cmd", 256);
+        assertRejected(template, params);
+
+        params.put("cmd", 1);
+        params.put("data", "XYZ");
+        assertRejected(template, params);
+    }
+
+    @Test
+    public void encode_rejectsFixedHexOfWrongLength() {
+        CommandTemplate template = new CommandTemplate(SERVICE, UUID_A, new byte[0], new byte[0],
+                Collections.singletonList(CommandTemplate.Field.hex("key", 4)), Checksum.NONE, 0);
+        assertRejected(template, Collections.singletonMap("key", "010203"));
+        assertEquals("01020304", encode(template, Collections.singletonMap("key", "01020304")));
+    }
+
+    @Test
+    public void encode_rejectsFrameLargerThanBuffer() {
+        CommandTemplate template = new CommandTemplate(SERVICE, UUID_A, new byte[0], new byte[0],
+                Collections.singletonList(CommandTemplate.Field.hex("data", 0)), Checksum.CRC32, 0);
+        try {
+            template.encode(Collections.singletonMap("data", "010203"), new byte[5]);
+            fail("CRC32放不下时应报错");
+        } catch (IllegalArgumentException expected) {
+            // 预期异常
+        }
+        assertEquals(7, template.encode(Collections.singletonMap("data", "010203"), new byte[7]));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsDuplicateFieldNames() {
+        new CommandTemplate(SERVICE, UUID_A, new byte[0], new byte[0], Arrays.asList(
+                CommandTemplate.Field.hex("data", 0), CommandTemplate.Field.hex("data", 0)),
+                Checksum.NONE, 0);
+    }
+
+    private void assertRejected(CommandTemplate template, Map<String, ?> params) {
+        try {
+            template.encode(params, buffer);
+            fail("参数无效时应报错: " + params);
+        } catch (IllegalArgumentException expected) {
+            // 预期异常
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.webbridgesdk.webbridgekit;
+
+import org.junit.Test;
+
+import static com.webbridgesdk.webbridgekit.DeliveryPolicy.Decision.DEFER;
+import static com.webbridgesdk.webbridgekit.DeliveryPolicy.Decision.DELIVER;
+import static com.webbridgesdk.webbridgekit.DeliveryPolicy.Decision.DROP;
+import static org.junit.Assert.*;
+
+/**
+ * DeliveryPolicy 单元测试，在开发机（JVM）上运行
+ */
+public class DeliveryPolicyTest {
+    private static final byte[] A = {1};
+    private static final byte[] B = {2};
+    private static final byte[] C = {3};
+
+    @Test
+    public void minInterval_dropsNotificationsInsideWindow() {
+        DeliveryPolicy policy = new DeliveryPolicy(100, false, false, 1);
+        assertEquals(DELIVER, policy.offer(A, 0));
+        assertEquals(DROP, policy.offer(B, 50));
+        assertEquals(DELIVER, policy.offer(C, 100));
+        assertTrue(policy.statsJson().contains("\"received\":3,\"delivered\":2,"));
+        assertTrue(policy.statsJson().contains("\"interval\":1,"));
+    }
+
+    @Test
+    public void latestOnly_defersNewestValueToEndOfWindow() {
+        DeliveryPolicy policy = new DeliveryPolicy(100, false, true, 1);
+        assertEquals(DELIVER, policy.offer(A, 0));
+        assertEquals(DEFER, policy.offer(B, 20));
+        assertEquals(DROP, policy.offer(C, 40));
+        assertEquals(100, policy.dueAt());
+
+        assertArrayEquals(C, policy.takePending(100));
+        assertNull(policy.takePending(100));
+        assertEquals(200, policy.dueAt());
+        assertTrue(policy.statsJson().contains("\"replaced\":1}"));
+    }
+
+    @Test
+    public void latestOnly_newerDeliveryReplacesStalePending() {
+        DeliveryPolicy policy = new DeliveryPolicy(100, false, true, 1);
+        policy.offer(A, 0);
+        policy.offer(B, 50);
+        // 补投尚未执行时间隔已过，新值直接投递
+        assertEquals(DELIVER, policy.offer(C, 150));
+        assertNull(policy.takePending(151));
+    }
+
+    @Test
+    public void dropUnchanged_comparesWithLastDeliveredValue() {
+        DeliveryPolicy policy = new DeliveryPolicy(0, true, false, 1);
+        byte[] value = {1, 2};
+        assertEquals(DELIVER, policy.offer(value, 0));
+        value[1] = 9; // 调用方复用数组，策略保存副本
+        assertEquals(DROP, policy.offer(new byte[]{1, 2}, 1));
+        assertEquals(DELIVER, policy.offer(new byte[]{1, 3}, 2));
+        assertTrue(policy.statsJson().contains("\"unchanged\":1,"));
+    }
+
+    @Test
+    public void sampleEvery_deliversEveryNth() {
+        DeliveryPolicy policy = new DeliveryPolicy(0, false, false, 3);
+        int delivered = 0;
+        for (int i = 0; i < 9; i++) {
+            if (policy.offer(new byte[]{(byte) i}, i) == DELIVER) {
+                delivered++;
+            }
+        }
+        assertEquals(3, delivered);
+        assertTrue(policy.statsJson().contains("\"sampling\":6,"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidSampling() {
+        new DeliveryPolicy(0, false, false, 0);
+    }
+}
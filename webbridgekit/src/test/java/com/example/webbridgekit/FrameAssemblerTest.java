@@ -0,0 +1,131 @@
+package com.webbridgesdk.webbridgekit;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * FrameAssembler 和 Checksum 单元测试，在开发机（JVM）上运行
+ */
+public class FrameAssemblerTest {
+    private static final byte[] CHECK_INPUT = "123456789".getBytes(StandardCharsets.US_ASCII);
+
+    private final List<String> frames = new ArrayList<>();
+    private final FrameAssembler.Sink sink = frame -> frames.add(hex(frame));
+
+    @Test
+    public void checksum_matchesStandardCheckValues() {
+        assertEquals(0xF4, Checksum.CRC8.compute(CHECK_INPUT, 0, CHECK_INPUT.length));
+        assertEquals(0x4B37, Checksum.CRC16_MODBUS.compute(CHECK_INPUT, 0, CHECK_INPUT.length));
+        assertEquals(0x29B1, Checksum.CRC16_CCITT.compute(CHECK_INPUT, 0, CHECK_INPUT.length));
+        assertEquals(0xCBF43926, Checksum.CRC32.compute(CHECK_INPUT, 0, CHECK_INPUT.length));
+        assertEquals(Checksum.CRC16_MODBUS, Checksum.parse("crc16modbus"));
+        assertEquals(Checksum.NONE, Checksum.parse(null));
+    }
+
+    @Test
+    public void checksum_writesInProtocolByteOrder() {
+        byte[] modbus = new byte[2];
+        Checksum.CRC16_MODBUS.write(0x4B37, modbus, 0);
+        assertEquals("374B", hex(modbus));
+        byte[] ccitt = new byte[2];
+        Checksum.CRC16_CCITT.write(0x29B1, ccitt, 0);
+        assertEquals("29B1", hex(ccitt));
+        assertEquals(0x4B37, Checksum.CRC16_MODBUS.read(modbus, 0));
+        byte[] crc32 = new byte[4];
+        Checksum.CRC32.write(0xCBF43926, crc32, 0);
+        assertEquals("2639F4CB", hex(crc32));
+        assertEquals(0xCBF43926, Checksum.CRC32.read(crc32, 0));
+    }
+
+    @Test
+    public void markers_reassembleFrameSplitAcrossNotifications() {
+        FrameAssembler framer = FrameAssembler.markers((byte) 0x7B, (byte) 0x7D, Checksum.NONE, 64);
+        framer.feed(bytes("007B0102"), sink);
+        assertTrue(frames.isEmpty());
+        framer.feed(bytes("037D7B04"), sink);
+        framer.feed(bytes("7D"), sink);
+
+        assertEquals(2, frames.size());
+        assertEquals("7B0102037D", frames.get(0));
+        assertEquals("7B047D", frames.get(1));
+        assertTrue(framer.statsJson().contains("\"discardedBytes\":1,"));
+    }
+
+    @Test
+    public void markers_dropFrameWithBadChecksum() {
+        FrameAssembler framer = FrameAssembler.markers((byte) 0x7B, (byte) 0x7D, Checksum.XOR8, 64);
+        framer.feed(bytes("7B0102037D"), sink);  // 01^02=03，正确
+        framer.feed(bytes("7B0102047D"), sink);  // 错误
+
+        assertEquals(1, frames.size());
+        assertEquals("7B0102037D", frames.get(0));
+        assertEquals(1, framer.checksumErrors());
+    }
+
+    @Test
+    public void lengthPrefixed_deliversCompleteFramesWithChecksum() {
+        byte[] frame = {(byte) 0xAA, 0x00, 0x03, 0x11, 0x22, 0x33, 0, 0};
+        int crc = Checksum.CRC16_MODBUS.compute(frame, 0, 6);
+        Checksum.CRC16_MODBUS.write(crc, frame, 6);
+        FrameAssembler framer = FrameAssembler.lengthPrefixed(1, 2, true, false, Checksum.CRC16_MODBUS, 64);
+
+        String wire = hex(frame) + hex(frame);
+        framer.feed(bytes(wire.substring(0, 6)), sink);
+        framer.feed(bytes(wire.substring(6, 22)), sink);
+        assertEquals(1, frames.size());
+        framer.feed(bytes(wire.substring(22)), sink);
+
+        assertEquals(2, frames.size());
+        assertEquals(hex(frame), frames.get(1));
+        assertEquals(0, framer.checksumErrors());
+    }
+
+    @Test
+    public void lengthPrefixed_resyncsAfterOversizedLength() {
+        FrameAssembler framer = FrameAssembler.lengthPrefixed(0, 1, true, false, Checksum.NONE, 8);
+        framer.feed(bytes("FF020102"), sink);
+
+        assertEquals(1, frames.size());
+        assertEquals("020102", frames.get(0));
+        assertEquals(1, framer.lengthErrors());
+    }
+
+    @Test
+    public void delimited_splitsOnDelimiterAcrossChunks() {
+        FrameAssembler framer = FrameAssembler.delimited(bytes("0D0A"), Checksum.NONE, 64);
+        framer.feed(bytes("41420D"), sink);
+        assertTrue(frames.isEmpty());
+        framer.feed(bytes("0A430D0A"), sink);
+
+        assertEquals(2, frames.size());
+        assertEquals("4142", frames.get(0));
+        assertEquals("43", frames.get(1));
+        assertTrue(framer.statsJson().contains("\"bufferedBytes\":0}"));
+    }
+
+    @Test
+    public void reset_discardsPartialFrame() {
+        FrameAssembler framer = FrameAssembler.markers((byte) 0x7B, (byte) 0x7D, Checksum.NONE, 64);
+        framer.feed(bytes("7B0102"), sink);
+        framer.reset();
+        framer.feed(bytes("037D7B057D"), sink);
+
+        assertEquals(1, frames.size());
+        assertEquals("7B057D", frames.get(0));
+    }
+
+    private static byte[] bytes(String hex) {
+        return HexCodec.decode(hex);
+    }
+
+    private static String hex(byte[] data) {
+        StringBuilder builder = new StringBuilder();
+        HexCodec.appendHex(builder, data, 0, data.length);
+        return builder.toString();
+    }
+}
@@ -0,0 +1,95 @@
+package com.webbridgesdk.webbridgekit;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * HexCodec 与原有实现（String.format逐字节编码、正则校验解码）的对比
+ * 单元测试只断言两种实现结果一致；耗时对比为手动运行的基准，默认忽略，结果输出到标准输出
+ */
+public class HexCodecBenchmarkTest {
+    private static final int WARMUP_ROUNDS = 2_000;
+    private static final int MEASURE_ROUNDS = 20_000;
+    private static final int PAYLOAD_SIZE = 244; // MTU 247 时单个通知的最大载荷
+
+    @Test
+    public void encode_matchesLegacy() {
+        byte[] payload = randomPayload();
+        assertEquals(legacyEncode(payload), new HexCodec().encodeToString(payload));
+    }
+
+    @Test
+    public void decode_matchesLegacy() {
+        String hex = HexCodec.encode(randomPayload()).toLowerCase();
+        assertArrayEquals(legacyDecode(hex), HexCodec.decode(hex));
+    }
+
+    @Ignore("基准测试，需要时手动运行")
+    @Test
+    public void benchmark() {
+        byte[] payload = randomPayload();
+        HexCodec codec = new HexCodec();
+        report("encode " + PAYLOAD_SIZE + "B",
+                measure(() -> legacyEncode(payload)), measure(() -> codec.encodeToString(payload)));
+
+        String hex = HexCodec.encode(payload).toLowerCase();
+        report("decode " + PAYLOAD_SIZE + "B",
+                measure(() -> legacyDecode(hex)), measure(() -> HexCodec.decode(hex)));
+    }
+
+    private static byte[] randomPayload() {
+        byte[] payload = new byte[PAYLOAD_SIZE];
+        new Random(42).nextBytes(payload);
+        return payload;
+    }
+
+    private static long measure(Runnable task) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            task.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURE_ROUNDS; i++) {
+            task.run();
+        }
+        return (System.nanoTime() - start) / MEASURE_ROUNDS;
+    }
+
+    private static void report(String name, long legacyNanos, long codecNanos) {
+        System.out.println(String.format("%s: legacy %d ns/op, HexCodec %d ns/op (%.1fx)",
+                name, legacyNanos, codecNanos, (double) legacyNanos / Math.max(1, codecNanos)));
+    }
+
+    // 以下为BluetoothManager原有实现，作为对比基准
+
+    private static String legacyEncode(byte[] data) {
+        StringBuilder hexStringBuilder = new StringBuilder();
+        for (byte b : data) {
+            hexStringBuilder.append(String.format("%02X", b));
+        }
+        return hexStringBuilder.toString();
+    }
+
+    private static byte[] legacyDecode(String hexString) {
+        if (hexString == null || hexString.isEmpty()) {
+            return new byte[0];
+        }
+        hexString = hexString.toUpperCase().replace(" ", "");
+        if (!hexString.matches("[0-9A-F]+")) {
+            return new byte[0];
+        }
+        if (hexString.length() % 2 != 0) {
+            hexString = "0" + hexString;
+        }
+        int len = hexString.length();
+        byte[] bytes = new byte[len / 2];
+        for (int i = 0; i < len; i += 2) {
+            bytes[i / 2] = (byte) ((Character.digit(hexString.charAt(i), 16) << 4)
+                    + Character.digit(hexString.charAt(i + 1), 16));
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,120 @@
+package com.webbridgesdk.webbridgekit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * HexCodec 编解码单元测试，在开发机（JVM）上运行
+ */
+public class HexCodecTest {
+
+    @Test
+    public void encode_producesUpperCaseHex() {
+        byte[] data = {0x7B, (byte) 0x86, 0x48, 0x00, (byte) 0xFF, 0x7D};
+        assertEquals("7B864800FF7D", HexCodec.encode(data));
+        assertEquals("7B864800FF7D", new HexCodec().encodeToString(data));
+    }
+
+    @Test
+    public void encode_emptyAndNull() {
+        assertEquals("", HexCodec.encode(new byte[0]));
+        assertEquals("", HexCodec.encode(null));
+        assertEquals("", new HexCodec().encodeToString(null));
+    }
+
+    @Test
+    public void encodeToString_reusesAndGrowsBuffer() {
+        HexCodec codec = new HexCodec();
+        byte[] large = new byte[300];
+        for (int i = 0; i < large.length; i++) {
+            large[i] = (byte) i;
+        }
+        assertEquals(HexCodec.encode(large), codec.encodeToString(large));
+        // 缓冲区扩容后仍能正确编码更短的数据
+        assertEquals("0102", codec.encodeToString(new byte[]{1, 2}));
+    }
+
+    @Test
+    public void encode_intoCallerBuffer() {
+        char[] out = new char[8];
+        int written = HexCodec.encode(new byte[]{0x00, 0x12, (byte) 0xAB}, 1, 2, out, 2);
+        assertEquals(4, written);
+        assertEquals("12AB", new String(out, 2, 4));
+    }
+
+    @Test
+    public void appendHex_appendsToBuilder() {
+        StringBuilder builder = new StringBuilder("{\"hex\":\"");
+        HexCodec.appendHex(builder, new byte[]{0x0A, (byte) 0xBC}, 0, 2);
+        builder.append("\"}");
+        assertEquals("{\"hex\":\"0ABC\"}", builder.toString());
+    }
+
+    @Test
+    public void decode_acceptsMixedCaseAndWhitespace() {
+        byte[] expected = {0x7B, (byte) 0x86, 0x48, 0x14, 0x7D};
+        assertArrayEquals(expected, HexCodec.decode("7B864814 7D"));
+        assertArrayEquals(expected, HexCodec.decode("7b 86 48 14 7d"));
+        assertArrayEquals(expected, HexCodec.decode("7B8648\n147D"));
+    }
+
+    @Test
+    public void decode_oddLengthPadsLeadingZero() {
+        assertArrayEquals(new byte[]{0x0A, (byte) 0xBC}, HexCodec.decode("ABC"));
+        assertArrayEquals(new byte[]{0x05}, HexCodec.decode("5"));
+    }
+
+    @Test
+    public void decode_invalidInputReturnsEmpty() {
+        assertEquals(0, HexCodec.decode("7G").length);
+        assertEquals(0, HexCodec.decode("").length);
+        assertEquals(0, HexCodec.decode("   ").length);
+        assertEquals(0, HexCodec.decode(null).length);
+        assertEquals(0, HexCodec.decode("0x12").length);
+        assertEquals(0, HexCodec.decode("１２").length);
+    }
+
+    @Test
+    public void decode_intoCallerBuffer() {
+        byte[] out = new byte[4];
+        assertEquals(2, HexCodec.decode("ABCD", out, 1));
+        assertEquals((byte) 0xAB, out[1]);
+        assertEquals((byte) 0xCD, out[2]);
+        assertEquals(-1, HexCodec.decode("ABCDEF", out, 2));
+        assertEquals(-1, HexCodec.decode("XY", out, 0));
+    }
+
+    @Test
+    public void decode_roundTripsAllByteValues() {
+        byte[] all = new byte[256];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = (byte) i;
+        }
+        assertArrayEquals(all, HexCodec.decode(HexCodec.encode(all)));
+    }
+
+    @Test
+    public void decodeBase64_standardAndUrlSafe() {
+        assertArrayEquals(new byte[]{0x7B, (byte) 0x86, 0x48, 0x14, 0x7D}, HexCodec.decodeBase64("e4ZIFH0="));
+        assertArrayEquals(new byte[]{(byte) 0xFB, (byte) 0xFF}, HexCodec.decodeBase64("+/8="));
+        assertArrayEquals(new byte[]{(byte) 0xFB, (byte) 0xFF}, HexCodec.decodeBase64("-_8"));
+        assertArrayEquals("hello".getBytes(), HexCodec.decodeBase64("aGVs bG8="));
+    }
+
+    @Test
+    public void decodeBase64_unpaddedLengths() {
+        assertArrayEquals("f".getBytes(), HexCodec.decodeBase64("Zg"));
+        assertArrayEquals("fo".getBytes(), HexCodec.decodeBase64("Zm8"));
+        assertArrayEquals("foo".getBytes(), HexCodec.decodeBase64("Zm9v"));
+    }
+
+    @Test
+    public void decodeBase64_invalidInputReturnsEmpty() {
+        assertEquals(0, HexCodec.decodeBase64("Z").length);
+        assertEquals(0, HexCodec.decodeBase64("Zm9v!").length);
+        assertEquals(0, HexCodec.decodeBase64("Zg==Zg").length);
+        assertEquals(0, HexCodec.decodeBase64("").length);
+        assertEquals(0, HexCodec.decodeBase64(null).length);
+    }
+}
@@ -0,0 +1,107 @@
+package com.webbridgesdk.webbridgekit;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * OutboundWriteQueue 单元测试，在开发机（JVM）上运行
+ */
+public class OutboundWriteQueueTest {
+    private static final int MAX_PAYLOAD = 20;
+
+    @Test
+    public void withoutWindow_sendsOneWriteAtATimeInOrder() {
+        OutboundWriteQueue queue = new OutboundWriteQueue();
+        queue.offer("w1", new byte[]{1}, 0);
+        queue.offer("w2", new byte[]{2}, 0);
+
+        OutboundWriteQueue.Packet first = queue.next(MAX_PAYLOAD, 0);
+        assertArrayEquals(new byte[]{1}, first.data);
+        assertTrue(queue.isBusy());
+        assertNull(queue.next(MAX_PAYLOAD, 0));
+
+        assertEquals(1, queue.complete().size());
+        assertArrayEquals(new byte[]{2}, queue.next(MAX_PAYLOAD, 0).data);
+        queue.complete();
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void window_coalescesSmallWritesAfterExpiry() {
+        OutboundWriteQueue queue = new OutboundWriteQueue();
+        queue.setWindow(10);
+        queue.offer("w1", new byte[]{1, 2}, 100);
+        queue.offer("w2", new byte[]{3}, 105);
+
+        assertNull(queue.next(MAX_PAYLOAD, 105));
+        assertEquals(110, queue.flushAt());
+        assertTrue(queue.markFlushScheduled(110));
+        assertFalse(queue.markFlushScheduled(110));
+
+        OutboundWriteQueue.Packet packet = queue.next(MAX_PAYLOAD, 110);
+        assertArrayEquals(new byte[]{1, 2, 3}, packet.data);
+        assertEquals(2, packet.writes.size());
+        assertEquals("w1", packet.writes.get(0).id);
+        assertEquals("w2", packet.writes.get(1).id);
+        assertEquals(-1, queue.flushAt());
+        assertEquals(2, queue.complete().size());
+    }
+
+    @Test
+    public void window_sendsImmediatelyWhenPacketIsFull() {
+        OutboundWriteQueue queue = new OutboundWriteQueue();
+        queue.setWindow(100);
+        queue.offer("w1", new byte[12], 0);
+        queue.offer("w2", new byte[8], 1);
+        queue.offer("w3", new byte[5], 2);
+
+        OutboundWriteQueue.Packet packet = queue.next(MAX_PAYLOAD, 2);
+        assertEquals(MAX_PAYLOAD, packet.data.length);
+        assertEquals(2, packet.writes.size());
+
+        // 下一条放不下也立即发送
+        queue.complete();
+        queue.offer("w4", new byte[18], 3);
+        assertEquals(5, queue.next(MAX_PAYLOAD, 3).data.length);
+    }
+
+    @Test
+    public void largeWrite_isSentAloneAndNotDrainedWhenTransferring() {
+        OutboundWriteQueue queue = new OutboundWriteQueue();
+        queue.setWindow(100);
+        byte[] large = new byte[64];
+        queue.offer("w1", large, 0);
+        queue.offer("w2", new byte[]{1}, 0);
+
+        OutboundWriteQueue.Packet packet = queue.next(MAX_PAYLOAD, 0);
+        assertSame(large, packet.data);
+        packet.transferId = "t1";
+        assertEquals("t1", queue.inFlightTransferId());
+
+        // 分片传输的结果由传输自身回调，只返回排队中的写入
+        List<OutboundWriteQueue.Write> drained = queue.drain();
+        assertEquals(1, drained.size());
+        assertArrayEquals(new byte[]{1}, drained.get(0).data);
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void drain_returnsInFlightAndPendingWrites() {
+        OutboundWriteQueue queue = new OutboundWriteQueue();
+        queue.offer("w1", new byte[]{1}, 0);
+        queue.offer("w2", new byte[]{2}, 0);
+        queue.next(MAX_PAYLOAD, 0);
+
+        assertEquals(2, queue.drain().size());
+        assertNull(queue.inFlightTransferId());
+        assertTrue(queue.complete().isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsWindowOutOfRange() {
+        new OutboundWriteQueue().setWindow(OutboundWriteQueue.MAX_WINDOW_MS + 1);
+    }
+}
@@ -0,0 +1,67 @@
+package com.webbridgesdk.webbridgekit;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * ReadCoalescer 单元测试，在开发机（JVM）上运行
+ */
+public class ReadCoalescerTest {
+    private static final String UUID_A = "0000fff1-0000-1000-8000-00805f9b34fb";
+    private static final String UUID_B = "0000fff2-0000-1000-8000-00805f9b34fb";
+
+    @Test
+    public void concurrentReads_shareOneGattRead() {
+        ReadCoalescer reads = new ReadCoalescer();
+        assertTrue(reads.join(UUID_A, "r1"));
+        assertFalse(reads.join(UUID_A, "r2"));
+        assertFalse(reads.join(UUID_A, null));
+        assertTrue(reads.join(UUID_B, "r3"));
+
+        List<String> waiters = reads.complete(UUID_A, new byte[]{1}, 0);
+        assertEquals(Arrays.asList("r1", "r2"), waiters);
+        assertFalse(reads.isInFlight(UUID_A));
+        assertTrue(reads.isInFlight(UUID_B));
+        assertTrue(reads.join(UUID_A, "r4"));
+    }
+
+    @Test
+    public void cache_answersWithinTtlOnly() {
+        ReadCoalescer reads = new ReadCoalescer();
+        reads.join(UUID_A, "r1");
+        reads.complete(UUID_A, new byte[]{1, 2}, 1_000);
+
+        assertArrayEquals(new byte[]{1, 2}, reads.cached(UUID_A, 500, 1_400));
+        assertNull(reads.cached(UUID_A, 500, 1_600));
+        assertNull(reads.cached(UUID_A, 0, 1_000));
+    }
+
+    @Test
+    public void failedRead_keepsPreviousCacheAndReleasesWaiters() {
+        ReadCoalescer reads = new ReadCoalescer();
+        reads.join(UUID_A, "r1");
+        reads.complete(UUID_A, new byte[]{7}, 0);
+        reads.join(UUID_A, "r2");
+
+        assertEquals(Arrays.asList("r2"), reads.complete(UUID_A, null, 10));
+        assertArrayEquals(new byte[]{7}, reads.cached(UUID_A, 100, 10));
+        assertTrue(reads.complete(UUID_A, null, 10).isEmpty());
+    }
+
+    @Test
+    public void invalidate_dropsCachedValue() {
+        ReadCoalescer reads = new ReadCoalescer();
+        byte[] value = {5};
+        reads.join(UUID_A, null);
+        reads.complete(UUID_A, value, 0);
+        value[0] = 6; // 缓存保存副本
+
+        assertArrayEquals(new byte[]{5}, reads.cached(UUID_A, 100, 0));
+        reads.invalidate(UUID_A);
+        assertNull(reads.cached(UUID_A, 100, 0));
+    }
+}
@@ -0,0 +1,372 @@
+package com.webbridgesdk.webbridgekit;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+import android.bluetooth.BluetoothProfile;
+import android.os.Handler;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 进程内的模拟BLE外设，实现GattTransport供BluetoothManager在JVM上连接
+ * 可配置MTU上限、单次交互延迟、丢包率、通知速率和服务结构。
+ * 延迟在独立线程上计时，结果投递到BLE线程，与系统回调的线程模型一致。
+ * 丢包按链路层处理：丢失的包被重传，表现为多一次延迟，数据不会丢失。
+ * 通知的前8字节为发送时的System.nanoTime()，供测试计算通知到脚本的延迟。
+ */
+class SimulatedPeripheral implements GattTransport {
+    static final UUID CCCD = UUID.fromString("00002902-0000-1000-8000-00805f9b34fb");
+    static final UUID EXTENDED_PROPERTIES = UUID.fromString("00002900-0000-1000-8000-00805f9b34fb");
+
+    private final List<BluetoothGattService> services = new ArrayList<>();
+    private final ScheduledExecutorService radio = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "simulated-peripheral");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Random random = new Random(42);
+    private final Map<UUID, ByteArrayOutputStream> received = new HashMap<>();
+    private final Map<UUID, ScheduledFuture<?>> notifiers = new HashMap<>();
+    private final List<PendingWrite> reliableWrites = new ArrayList<>(); // 可靠写入事务中尚未提交的写入
+    private final AtomicInteger writes = new AtomicInteger();
+    private final AtomicInteger notificationsSent = new AtomicInteger();
+    private final AtomicInteger retransmissions = new AtomicInteger();
+
+    private int maxMtu = 247;
+    private long latencyMs;
+    private double packetLoss;
+    private int notificationRateHz;
+    private int notificationSize = 20;
+    private int notificationLimit = Integer.MAX_VALUE;
+
+    private static final class PendingWrite {
+        final UUID uuid;
+        final byte[] value;
+
+        PendingWrite(UUID uuid, byte[] value) {
+            this.uuid = uuid;
+            this.value = value;
+        }
+    }
+
+    private volatile Link link;
+    private volatile Callback callback;
+    private volatile Handler handler;
+
+    SimulatedPeripheral maxMtu(int maxMtu) {
+        this.maxMtu = maxMtu;
+        return this;
+    }
+
+    /**
+     * 每次交互（请求到回调）的单程延迟
+     */
+    SimulatedPeripheral latencyMs(long latencyMs) {
+        this.latencyMs = latencyMs;
+        return this;
+    }
+
+    /**
+     * 链路层丢包率，0-1
+     */
+    SimulatedPeripheral packetLoss(double packetLoss) {
+        this.packetLoss = packetLoss;
+        return this;
+    }
+
+    /**
+     * 订阅后按固定速率发送通知
+     *
+     * @param rateHz 每秒通知数，0为不发送
+     * @param size   每条通知的字节数，不少于8
+     * @param limit  每个特征值最多发送的条数
+     */
+    SimulatedPeripheral notifications(int rateHz, int size, int limit) {
+        this.notificationRateHz = rateHz;
+        this.notificationSize = Math.max(8, size);
+        this.notificationLimit = limit;
+        return this;
+    }
+
+    /**
+     * 添加特征值，服务不存在时创建；可通知或指示的特征值自动带上CCCD，
+     * 声明扩展属性的特征值带上支持可靠写入的扩展属性描述符
+     */
+    SimulatedPeripheral addCharacteristic(String serviceUuid, String characteristicUuid, int properties) {
+        UUID serviceId = UUID.fromString(serviceUuid);
+        BluetoothGattService service = null;
+        for (BluetoothGattService existing : services) {
+            if (existing.getUuid().equals(serviceId)) {
+                service = existing;
+            }
+        }
+        if (service == null) {
+            service = new BluetoothGattService(serviceId, BluetoothGattService.SERVICE_TYPE_PRIMARY);
+            services.add(service);
+        }
+        BluetoothGattCharacteristic characteristic = new BluetoothGattCharacteristic(
+                UUID.fromString(characteristicUuid), properties,
+                BluetoothGattCharacteristic.PERMISSION_READ | BluetoothGattCharacteristic.PERMISSION_WRITE);
+        if ((properties & (BluetoothGattCharacteristic.PROPERTY_NOTIFY
+                | BluetoothGattCharacteristic.PROPERTY_INDICATE)) != 0) {
+            characteristic.addDescriptor(new BluetoothGattDescriptor(CCCD,
+                    BluetoothGattDescriptor.PERMISSION_READ | BluetoothGattDescriptor.PERMISSION_WRITE));
+        }
+        if ((properties & BluetoothGattCharacteristic.PROPERTY_EXTENDED_PROPS) != 0) {
+            BluetoothGattDescriptor extended = new BluetoothGattDescriptor(EXTENDED_PROPERTIES,
+                    BluetoothGattDescriptor.PERMISSION_READ);
+            extended.setValue(new byte[]{0x01, 0x00});
+            characteristic.addDescriptor(extended);
+        }
+        service.addCharacteristic(characteristic);
+        return this;
+    }
+
+    /**
+     * 外设收到的某个特征值的全部数据（按到达顺序拼接）
+     */
+    synchronized byte[] receivedData(String characteristicUuid) {
+        ByteArrayOutputStream data = received.get(UUID.fromString(characteristicUuid));
+        return data == null ? new byte[0] : data.toByteArray();
+    }
+
+    int writes() {
+        return writes.get();
+    }
+
+    int notificationsSent() {
+        return notificationsSent.get();
+    }
+
+    int retransmissions() {
+        return retransmissions.get();
+    }
+
+    void shutdown() {
+        radio.shutdownNow();
+    }
+
+    @Override
+    public Link connect(BluetoothDevice device, Callback callback, Handler handler) {
+        SimulatedLink created = new SimulatedLink();
+        this.link = created;
+        this.callback = callback;
+        this.handler = handler;
+        deliver(() -> callback.onConnectionStateChange(created, BluetoothGatt.GATT_SUCCESS,
+                BluetoothProfile.STATE_CONNECTED));
+        return created;
+    }
+
+    /**
+     * 经过链路延迟（含重传）后在BLE线程上执行回调
+     */
+    private void deliver(Runnable event) {
+        long delay = latencyMs;
+        while (packetLoss > 0 && nextLoss()) {
+            retransmissions.incrementAndGet();
+            delay += Math.max(latencyMs, 1);
+        }
+        radio.schedule(() -> handler.post(event), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized boolean nextLoss() {
+        return random.nextDouble() < packetLoss;
+    }
+
+    private synchronized void store(UUID uuid, byte[] value) {
+        ByteArrayOutputStream data = received.get(uuid);
+        if (data == null) {
+            data = new ByteArrayOutputStream();
+            received.put(uuid, data);
+        }
+        data.write(value, 0, value.length);
+    }
+
+    private synchronized void startNotifications(BluetoothGattCharacteristic characteristic) {
+        UUID uuid = characteristic.getUuid();
+        if (notificationRateHz <= 0 || notifiers.containsKey(uuid)) {
+            return;
+        }
+        AtomicInteger sent = new AtomicInteger();
+        long periodMicros = 1_000_000L / notificationRateHz;
+        notifiers.put(uuid, radio.scheduleAtFixedRate(() -> {
+            if (sent.getAndIncrement() >= notificationLimit) {
+                stopNotifications(uuid);
+                return;
+            }
+            byte[] value = new byte[notificationSize];
+            long sentAt = System.nanoTime();
+            for (int i = 0; i < 8; i++) {
+                value[i] = (byte) (sentAt >>> (56 - i * 8));
+            }
+            if (notificationSize > 8) {
+                value[8] = (byte) sent.get(); // 相邻通知内容不同
+            }
+            notificationsSent.incrementAndGet();
+            Link current = link;
+            deliver(() -> callback.onCharacteristicChanged(current, characteristic, value));
+        }, periodMicros, periodMicros, TimeUnit.MICROSECONDS));
+    }
+
+    private synchronized void stopNotifications(UUID uuid) {
+        ScheduledFuture<?> notifier = notifiers.remove(uuid);
+        if (notifier != null) {
+            notifier.cancel(false);
+        }
+    }
+
+    private synchronized void stopAllNotifications() {
+        for (ScheduledFuture<?> notifier : notifiers.values()) {
+            notifier.cancel(false);
+        }
+        notifiers.clear();
+    }
+
+    private final class SimulatedLink implements Link {
+        private boolean reliable;
+
+        @Override
+        public boolean discoverServices() {
+            deliver(() -> callback.onServicesDiscovered(this, BluetoothGatt.GATT_SUCCESS));
+            return true;
+        }
+
+        @Override
+        public List<BluetoothGattService> getServices() {
+            return Collections.unmodifiableList(services);
+        }
+
+        @Override
+        public BluetoothGattService getService(UUID uuid) {
+            for (BluetoothGattService service : services) {
+                if (service.getUuid().equals(uuid)) {
+                    return service;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean requestMtu(int mtu) {
+            int granted = Math.min(mtu, maxMtu);
+            deliver(() -> callback.onMtuChanged(this, granted, BluetoothGatt.GATT_SUCCESS));
+            return true;
+        }
+
+        @Override
+        public boolean requestConnectionPriority(int priority) {
+            return true;
+        }
+
+        @Override
+        public void setPreferredPhy(int txPhy, int rxPhy, int phyOptions) {
+        }
+
+        @Override
+        public boolean readCharacteristic(BluetoothGattCharacteristic characteristic) {
+            byte[] value = receivedData(characteristic.getUuid().toString());
+            deliver(() -> callback.onCharacteristicRead(this, characteristic, value, BluetoothGatt.GATT_SUCCESS));
+            return true;
+        }
+
+        @Override
+        public boolean writeCharacteristic(BluetoothGattCharacteristic characteristic) {
+            byte[] value = characteristic.getValue();
+            if (value == null || value.length > maxMtu - GattConnection.ATT_WRITE_HEADER_SIZE) {
+                return false;
+            }
+            byte[] copy = Arrays.copyOf(value, value.length);
+            writes.incrementAndGet();
+            if (reliable) {
+                synchronized (reliableWrites) {
+                    reliableWrites.add(new PendingWrite(characteristic.getUuid(), copy));
+                }
+            } else {
+                store(characteristic.getUuid(), copy);
+            }
+            deliver(() -> callback.onCharacteristicWrite(this, characteristic, copy, BluetoothGatt.GATT_SUCCESS));
+            return true;
+        }
+
+        @Override
+        public boolean writeDescriptor(BluetoothGattDescriptor descriptor) {
+            BluetoothGattCharacteristic characteristic = descriptor.getCharacteristic();
+            if (CCCD.equals(descriptor.getUuid()) && characteristic != null) {
+                if (Arrays.equals(descriptor.getValue(), BluetoothGattDescriptor.DISABLE_NOTIFICATION_VALUE)) {
+                    stopNotifications(characteristic.getUuid());
+                } else {
+                    startNotifications(characteristic);
+                }
+            }
+            deliver(() -> callback.onDescriptorWrite(this, descriptor, BluetoothGatt.GATT_SUCCESS));
+            return true;
+        }
+
+        @Override
+        public boolean readDescriptor(BluetoothGattDescriptor descriptor) {
+            byte[] value = descriptor.getValue();
+            deliver(() -> callback.onDescriptorRead(this, descriptor, value, BluetoothGatt.GATT_SUCCESS));
+            return true;
+        }
+
+        @Override
+        public boolean setCharacteristicNotification(BluetoothGattCharacteristic characteristic, boolean enable) {
+            return true;
+        }
+
+        @Override
+        public boolean beginReliableWrite() {
+            reliable = true;
+            return true;
+        }
+
+        @Override
+        public boolean executeReliableWrite() {
+            reliable = false;
+            synchronized (reliableWrites) {
+                for (PendingWrite write : reliableWrites) {
+                    store(write.uuid, write.value);
+                }
+                reliableWrites.clear();
+            }
+            deliver(() -> callback.onReliableWriteCompleted(this, BluetoothGatt.GATT_SUCCESS));
+            return true;
+        }
+
+        @Override
+        public void abortReliableWrite() {
+            reliable = false;
+            synchronized (reliableWrites) {
+                reliableWrites.clear();
+            }
+        }
+
+        @Override
+        public void disconnect() {
+            stopAllNotifications();
+            deliver(() -> callback.onConnectionStateChange(this, BluetoothGatt.GATT_SUCCESS,
+                    BluetoothProfile.STATE_DISCONNECTED));
+        }
+
+        @Override
+        public void close() {
+            stopAllNotifications();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.webbridgesdk.webbridgekit;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * SubscriptionRegistry 单元测试，在开发机（JVM）上运行
+ */
+public class SubscriptionRegistryTest {
+    private static final String UUID_A = "0000fff1-0000-1000-8000-00805f9b34fb";
+    private static final String UUID_B = "0000fff2-0000-1000-8000-00805f9b34fb";
+
+    @Test
+    public void defaultPolicy_subscribesNotifiableCharacteristicsOnly() {
+        SubscriptionRegistry registry = new SubscriptionRegistry();
+        assertEquals(SubscriptionRegistry.Policy.ALL, registry.policy());
+        assertTrue(registry.isWanted(UUID_A, true));
+        assertFalse(registry.isWanted(UUID_B, false));
+    }
+
+    @Test
+    public void allowlist_normalizesUuids() {
+        SubscriptionRegistry registry = new SubscriptionRegistry();
+        registry.setPolicy(SubscriptionRegistry.Policy.ALLOWLIST,
+                Collections.singletonList("0000FFF1-0000-1000-8000-00805F9B34FB"));
+        assertTrue(registry.isWanted(UUID_A, true));
+        assertFalse(registry.isWanted(UUID_B, true));
+    }
+
+    @Test
+    public void onDemand_followsReferenceCount() {
+        SubscriptionRegistry registry = new SubscriptionRegistry();
+        registry.setPolicy(SubscriptionRegistry.parsePolicy("onDemand"), null);
+        assertFalse(registry.isWanted(UUID_A, true));
+
+        assertEquals(1, registry.acquire(UUID_A));
+        assertEquals(2, registry.acquire(UUID_A));
+        assertEquals(1, registry.release(UUID_A));
+        assertTrue(registry.isWanted(UUID_A, true));
+        assertEquals(0, registry.release(UUID_A));
+        assertFalse(registry.isWanted(UUID_A, true));
+        assertEquals(0, registry.release(UUID_A));
+    }
+
+    @Test
+    public void policyHoldsItsOwnReference() {
+        SubscriptionRegistry registry = new SubscriptionRegistry();
+        registry.acquire(UUID_A);
+        assertEquals(2, registry.referenceCount(UUID_A, true));
+        registry.release(UUID_A);
+        assertEquals(1, registry.referenceCount(UUID_A, true));
+        assertTrue(registry.isWanted(UUID_A, true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parsePolicy_rejectsUnknownName() {
+        SubscriptionRegistry.parsePolicy("some");
+    }
+}
@@ -0,0 +1,103 @@
+package com.webbridgesdk.webbridgekit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * TimeoutWheel 单元测试，在开发机（JVM）上运行
+ */
+public class TimeoutWheelTest {
+    private final TimeoutWheel wheel = new TimeoutWheel("test-timeouts", 5, 64);
+
+    @After
+    public void tearDown() {
+        wheel.stop();
+    }
+
+    @Test
+    public void schedule_firesAfterDelay() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+        wheel.schedule(latch::countDown, 50);
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("fired too early: " + elapsedMs, elapsedMs >= 45);
+        assertEquals(0, wheel.pendingCount());
+    }
+
+    @Test
+    public void schedule_delayLongerThanOneRotation() throws InterruptedException {
+        // 5ms × 64 = 320ms一圈，500ms需要跨圈
+        CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+        wheel.schedule(latch::countDown, 500);
+
+        assertFalse(latch.await(350, TimeUnit.MILLISECONDS));
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("fired too early: " + elapsedMs, elapsedMs >= 495);
+    }
+
+    @Test
+    public void cancel_preventsExecution() throws InterruptedException {
+        AtomicInteger fired = new AtomicInteger();
+        TimeoutWheel.Timeout timeout = wheel.schedule(fired::incrementAndGet, 20);
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+        assertEquals(0, wheel.pendingCount());
+
+        Thread.sleep(100);
+        assertEquals(0, fired.get());
+    }
+
+    @Test
+    public void cancel_afterFireReturnsFalse() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        TimeoutWheel.Timeout timeout = wheel.schedule(latch::countDown, 10);
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertFalse(timeout.cancel());
+    }
+
+    @Test
+    public void manyTimeouts_onlyUncancelledFire() throws InterruptedException {
+        int count = 5_000;
+        CountDownLatch latch = new CountDownLatch(count / 2);
+        AtomicInteger fired = new AtomicInteger();
+        List<TimeoutWheel.Timeout> timeouts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            timeouts.add(wheel.schedule(() -> {
+                fired.incrementAndGet();
+                latch.countDown();
+            }, 20 + (i % 200)));
+        }
+        // 取消一半
+        for (int i = 0; i < count; i += 2) {
+            assertTrue(timeouts.get(i).cancel());
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        assertEquals(count / 2, fired.get());
+        assertEquals(0, wheel.pendingCount());
+    }
+
+    @Test
+    public void stop_discardsPending() throws InterruptedException {
+        AtomicInteger fired = new AtomicInteger();
+        wheel.schedule(fired::incrementAndGet, 20);
+        wheel.stop();
+        assertEquals(0, wheel.pendingCount());
+
+        Thread.sleep(80);
+        assertEquals(0, fired.get());
+    }
+}
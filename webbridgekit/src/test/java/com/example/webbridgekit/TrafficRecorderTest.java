@@ -0,0 +1,159 @@
+package com.webbridgesdk.webbridgekit;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * TrafficRecorder 和 TrafficReplayer 单元测试，在开发机（JVM）上运行
+ */
+public class TrafficRecorderTest {
+    private static final String ADDRESS = "AA:BB:CC:DD:EE:0F";
+    private static final String UUID_TX = "0000fff1-0000-1000-8000-00805f9b34fb";
+    private static final String UUID_RX = "0000fff2-0000-1000-8000-00805f9b34fb";
+    private static final int CAPACITY = TrafficRecorder.HEADER_SIZE + TrafficRecorder.MAX_PAYLOAD;
+
+    @Test
+    public void dumpAndRead_preservesEventsInOrder() throws IOException {
+        TrafficRecorder recorder = new TrafficRecorder(4096);
+        recorder.record(TrafficRecorder.CONNECTION_STATE, ADDRESS, null, 0, 2, null, 0, 0, 100);
+        recorder.record(TrafficRecorder.MTU_CHANGED, ADDRESS, null, 0, 247, null, 0, 0, 200);
+        recorder.record(TrafficRecorder.WRITE, ADDRESS, UUID_TX, 0, 2, new byte[]{1, 2, 3}, 0, 3, 300);
+        recorder.record(TrafficRecorder.WRITE_ACK, ADDRESS, UUID_TX, 133, 0, null, 0, 0, 400);
+        recorder.record(TrafficRecorder.NOTIFICATION, ADDRESS, UUID_RX, 0, 0, new byte[]{9, 8}, 0, 2, 500);
+
+        List<TrafficRecorder.Event> events = readBack(recorder);
+        assertEquals(5, events.size());
+        assertEquals(TrafficRecorder.CONNECTION_STATE, events.get(0).type);
+        assertEquals(ADDRESS, events.get(0).address);
+        assertNull(events.get(0).uuid);
+        assertEquals(2, events.get(0).arg);
+        assertEquals(247, events.get(1).arg);
+        assertEquals(UUID_TX, events.get(2).uuid);
+        assertArrayEquals(new byte[]{1, 2, 3}, events.get(2).payload);
+        assertEquals(133, events.get(3).status);
+        assertEquals(UUID_RX, events.get(4).uuid);
+        assertArrayEquals(new byte[]{9, 8}, events.get(4).payload);
+        assertEquals(500, events.get(4).timestampNanos);
+    }
+
+    @Test
+    public void record_overwritesOldestWhenFull() throws IOException {
+        TrafficRecorder recorder = new TrafficRecorder(CAPACITY);
+        byte[] payload = new byte[100];
+        for (int i = 0; i < 20; i++) {
+            payload[0] = (byte) i;
+            recorder.record(TrafficRecorder.NOTIFICATION, ADDRESS, UUID_RX, 0, 0, payload, 0, payload.length, i);
+        }
+
+        List<TrafficRecorder.Event> events = readBack(recorder);
+        int kept = CAPACITY / (TrafficRecorder.HEADER_SIZE + payload.length);
+        assertEquals(kept, events.size());
+        // 保留最新的记录，跨越缓冲区末尾的记录完整还原
+        for (int i = 0; i < kept; i++) {
+            assertEquals(20 - kept + i, events.get(i).timestampNanos);
+            assertEquals(20 - kept + i, events.get(i).payload[0]);
+        }
+        assertTrue(recorder.statsJson().contains("\"recorded\":20,\"overwritten\":" + (20 - kept)));
+    }
+
+    @Test
+    public void record_truncatesLongPayload() throws IOException {
+        TrafficRecorder recorder = new TrafficRecorder(4096);
+        byte[] payload = new byte[TrafficRecorder.MAX_PAYLOAD + 10];
+        recorder.record(TrafficRecorder.WRITE, ADDRESS, UUID_TX, 0, 1, payload);
+
+        TrafficRecorder.Event event = readBack(recorder).get(0);
+        assertEquals(TrafficRecorder.MAX_PAYLOAD, event.payload.length);
+        assertEquals(TrafficRecorder.FLAG_TRUNCATED, event.flags);
+    }
+
+    @Test
+    public void disabled_recordsNothing() throws IOException {
+        TrafficRecorder recorder = new TrafficRecorder(4096);
+        recorder.setEnabled(false);
+        recorder.record(TrafficRecorder.MTU_CHANGED, ADDRESS, null, 0, 185);
+        assertTrue(readBack(recorder).isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void read_rejectsForeignFile() throws IOException {
+        TrafficRecorder.read(new ByteArrayInputStream(new byte[32]), event -> { });
+    }
+
+    @Test
+    public void replay_dispatchesToMatchingCallbacks() throws IOException {
+        TrafficRecorder recorder = new TrafficRecorder(4096);
+        recorder.record(TrafficRecorder.CONNECTION_STATE, ADDRESS, null, 0, 2);
+        recorder.record(TrafficRecorder.MTU_CHANGED, ADDRESS, null, 0, 247);
+        recorder.record(TrafficRecorder.SERVICES_DISCOVERED, ADDRESS, null, 0, 0);
+        recorder.record(TrafficRecorder.DESCRIPTOR_WRITE, ADDRESS, UUID_RX, 0, 0);
+        recorder.record(TrafficRecorder.WRITE, ADDRESS, UUID_TX, 0, 1, new byte[]{0x10});
+        recorder.record(TrafficRecorder.WRITE_ACK, ADDRESS, UUID_TX, 0, 0);
+        recorder.record(TrafficRecorder.NOTIFICATION, ADDRESS, UUID_RX, 0, 0, new byte[]{0x20});
+        recorder.record(TrafficRecorder.READ, ADDRESS, UUID_RX, 0, 0, new byte[]{0x30});
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        recorder.dump(output);
+        StringBuilder calls = new StringBuilder();
+        int count = new TrafficReplayer(0).replay(new ByteArrayInputStream(output.toByteArray()),
+                new TrafficReplayer.Sink() {
+                    @Override
+                    public void onConnectionStateChange(String address, int status, int newState) {
+                        calls.append("state").append(newState).append(' ');
+                    }
+
+                    @Override
+                    public void onMtuChanged(String address, int mtu, int status) {
+                        calls.append("mtu").append(mtu).append(' ');
+                    }
+
+                    @Override
+                    public void onServicesDiscovered(String address, int status) {
+                        calls.append("services ");
+                    }
+
+                    @Override
+                    public void onCharacteristicWrite(String address, String uuid, byte[] value, int writeType) {
+                        calls.append("write").append(HexCodec.encode(value)).append(' ');
+                    }
+
+                    @Override
+                    public void onWriteAcknowledged(String address, String uuid, int status) {
+                        calls.append("ack ");
+                    }
+
+                    @Override
+                    public void onCharacteristicChanged(String address, String uuid, byte[] value) {
+                        calls.append("notify").append(HexCodec.encode(value)).append(' ');
+                    }
+
+                    @Override
+                    public void onCharacteristicRead(String address, String uuid, byte[] value, int status) {
+                        calls.append("read").append(HexCodec.encode(value));
+                    }
+
+                    @Override
+                    public void onDescriptorWrite(String address, String uuid, int status) {
+                        calls.append("cccd ");
+                    }
+                });
+
+        assertEquals(8, count);
+        assertEquals("state2 mtu247 services cccd write10 ack notify20 read30", calls.toString());
+    }
+
+    private static List<TrafficRecorder.Event> readBack(TrafficRecorder recorder) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        recorder.dump(output);
+        List<TrafficRecorder.Event> events = new ArrayList<>();
+        TrafficRecorder.read(new ByteArrayInputStream(output.toByteArray()), events::add);
+        return events;
+    }
+}
@@ -0,0 +1,134 @@
+package com.webbridgesdk.webbridgekit;
+
+import android.Manifest;
+import android.app.Application;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * 录制BluetoothManager与模拟外设的一次会话，再通过ReplayGattTransport回放给新的BluetoothManager，
+ * 比对两次产生的JS回调
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class TrafficReplayTest {
+    private static final String ADDRESS = "AA:BB:CC:DD:EE:02";
+    private static final String SERVICE = "0000fff0-0000-1000-8000-00805f9b34fb";
+    private static final String RX = "0000fff1-0000-1000-8000-00805f9b34fb"; // 外设通知
+    private static final String TX = "0000fff2-0000-1000-8000-00805f9b34fb"; // 写入
+    private static final int RX_PROPERTIES = BluetoothGattCharacteristic.PROPERTY_NOTIFY;
+    private static final int TX_PROPERTIES = BluetoothGattCharacteristic.PROPERTY_WRITE;
+    private static final int NOTIFICATIONS = 50;
+    private static final String COMMAND = "7B0110AA7D";
+    private static final long TIMEOUT_MS = 30_000;
+
+    private final List<BluetoothManager> managers = new ArrayList<>();
+    private SimulatedPeripheral peripheral;
+
+    @After
+    public void tearDown() {
+        for (BluetoothManager manager : managers) {
+            manager.release();
+        }
+        if (peripheral != null) {
+            peripheral.shutdown();
+        }
+    }
+
+    @Test
+    public void replay_reproducesRecordedCallbacks() throws IOException, InterruptedException {
+        grantBluetooth();
+
+        // 录制：连接、收通知、发送一条命令
+        peripheral = new SimulatedPeripheral().maxMtu(185).latencyMs(1)
+                .notifications(200, 20, NOTIFICATIONS)
+                .addCharacteristic(SERVICE, RX, RX_PROPERTIES)
+                .addCharacteristic(SERVICE, TX, TX_PROPERTIES);
+        List<String> recorded = new CopyOnWriteArrayList<>();
+        BluetoothManager recording = runSession(peripheral, recorded);
+        ByteArrayOutputStream dump = new ByteArrayOutputStream();
+        recording.dumpTrafficLog(dump);
+
+        // 回放：同样的服务结构，事件来自录制
+        ReplayGattTransport replay = new ReplayGattTransport(new ByteArrayInputStream(dump.toByteArray()), 0)
+                .addCharacteristic(SERVICE, RX, RX_PROPERTIES)
+                .addCharacteristic(SERVICE, TX, TX_PROPERTIES);
+        List<String> replayed = new CopyOnWriteArrayList<>();
+        BluetoothManager replaying = runSession(replay, replayed);
+
+        assertEquals(replay.mismatches().toString(), 0, replay.mismatches().size());
+        assertEquals(0, replay.remaining(ADDRESS));
+        assertEquals(matching(recorded, "onCharacteristicChanged"), matching(replayed, "onCharacteristicChanged"));
+        assertEquals(matching(recorded, "onWriteCompleted"), matching(replayed, "onWriteCompleted"));
+        assertEquals(matching(recorded, "onServicesDiscovered"), matching(replayed, "onServicesDiscovered"));
+        assertTrue(replaying.getLinkReport(ADDRESS).contains("\"mtu\":185"));
+    }
+
+    /**
+     * 连接后等待全部通知，再发送命令并等待写入完成
+     */
+    private BluetoothManager runSession(GattTransport transport, List<String> scripts) throws InterruptedException {
+        BluetoothManager manager = new BluetoothManager(RuntimeEnvironment.getApplication(), scripts::add, transport);
+        managers.add(manager);
+        manager.connectToDevice(ADDRESS);
+        await(scripts, "onConnectionReady", () -> !matching(scripts, "onConnectionReady").isEmpty());
+        await(scripts, NOTIFICATIONS + " notifications",
+                () -> matching(scripts, "onCharacteristicChanged").size() >= NOTIFICATIONS);
+        manager.writeRawHexData(ADDRESS, SERVICE, TX, COMMAND);
+        await(scripts, "onWriteCompleted", () -> !matching(scripts, "onWriteCompleted").isEmpty());
+        assertTrue(matching(scripts, "onWriteCompleted").get(0).contains("\"status\":\"success\""));
+        return manager;
+    }
+
+    private static void grantBluetooth() {
+        Application application = RuntimeEnvironment.getApplication();
+        shadowOf(application).grantPermissions(Manifest.permission.BLUETOOTH_CONNECT,
+                Manifest.permission.BLUETOOTH_SCAN);
+        shadowOf(BluetoothAdapter.getDefaultAdapter()).setEnabled(true);
+    }
+
+    /**
+     * 等待条件成立，期间执行投递到主线程的脚本
+     */
+    private static void await(List<String> scripts, String description, BooleanSupplier condition)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT_MS * 1_000_000L;
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("等待" + description + "超时，已收到: " + scripts.size() + "条回调");
+            }
+            shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(1));
+            Thread.sleep(1);
+        }
+    }
+
+    private static List<String> matching(List<String> scripts, String callback) {
+        List<String> matching = new ArrayList<>();
+        for (String script : scripts) {
+            if (script.startsWith("javascript:window." + callback + "(")) {
+                matching.add(script);
+            }
+        }
+        return matching;
+    }
+}
@@ -0,0 +1,70 @@
+package com.webbridgesdk.webbridgekit;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * WriteBatch 单元测试，在开发机（JVM）上运行
+ */
+public class WriteBatchTest {
+    private static final String ADDRESS = "AA:BB:CC:DD:EE:FF";
+    private static final String SERVICE = "0000fff0-0000-1000-8000-00805f9b34fb";
+    private static final String UUID_A = "0000fff1-0000-1000-8000-00805f9b34fb";
+    private static final String UUID_B = "0000fff2-0000-1000-8000-00805f9b34fb";
+
+    private static WriteBatch batch(WriteBatch.Mode mode) {
+        return new WriteBatch("b1", ADDRESS, mode, Arrays.asList(
+                new WriteBatch.Entry(SERVICE, UUID_A, new byte[]{1}),
+                new WriteBatch.Entry(SERVICE, UUID_B, new byte[]{2})), 1_000);
+    }
+
+    @Test
+    public void autoMode_defaultsToSequentialUntilChosen() {
+        WriteBatch batch = batch(WriteBatch.Mode.AUTO);
+        assertEquals(WriteBatch.Mode.SEQUENTIAL, batch.mode());
+        batch.useMode(WriteBatch.Mode.RELIABLE);
+        assertEquals(WriteBatch.Mode.RELIABLE, batch.mode());
+    }
+
+    @Test
+    public void acknowledge_walksEntriesInOrder() {
+        WriteBatch batch = batch(WriteBatch.Mode.SEQUENTIAL);
+        assertEquals(0, batch.nextIndex());
+        assertTrue(batch.acknowledge());
+        assertEquals(1, batch.nextIndex());
+        assertFalse(batch.acknowledge());
+
+        batch.commit(1_250);
+        assertTrue(batch.isCommitted());
+        assertEquals("{\"batchId\":\"b1\",\"address\":\"" + ADDRESS + "\",\"success\":true,\"mode\":\"sequential\","
+                + "\"applied\":2,\"total\":2,\"failedIndex\":-1,\"failedUuid\":null,\"status\":0,\"error\":null,"
+                + "\"elapsedMs\":250}", batch.resultJson());
+    }
+
+    @Test
+    public void sequentialFailure_reportsEntriesAlreadyApplied() {
+        WriteBatch batch = batch(WriteBatch.Mode.SEQUENTIAL);
+        batch.acknowledge();
+        batch.fail(1, 3, "写入失败，错误码: 3", 1_100);
+
+        assertFalse(batch.isCommitted());
+        assertEquals(1, batch.applied());
+        String json = batch.resultJson();
+        assertTrue(json, json.contains("\"success\":false,"));
+        assertTrue(json, json.contains("\"failedIndex\":1,\"failedUuid\":\"" + UUID_B + "\",\"status\":3,"));
+    }
+
+    @Test
+    public void reliableFailure_rollsBackAllEntries() {
+        WriteBatch batch = batch(WriteBatch.Mode.RELIABLE);
+        batch.acknowledge();
+        batch.acknowledge();
+        batch.fail(-1, 0x85, "提交可靠写入失败", 1_100);
+
+        assertEquals(0, batch.applied());
+        assertTrue(batch.resultJson().contains("\"mode\":\"reliable\",\"applied\":0,"));
+    }
+}